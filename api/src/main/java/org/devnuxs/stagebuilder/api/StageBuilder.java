@@ -14,7 +14,119 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.SOURCE)
 @Target(ElementType.TYPE)
 public @interface StageBuilder {
-    // No properties for the first version as specified
+
+    /**
+     * Additional companion classes to generate next to the stage builder.
+     * 
+     * @return the features to generate for the annotated type
+     */
+    Feature[] features() default {};
+
+    /**
+     * Whether every field must be read and set without reflection.
+     * 
+     * <p>In strict mode, a field that cannot be read through a record accessor, a public getter or
+     * a public field, or set through a public all-args constructor, a public setter or a public
+     * non-final field is a compile error instead of a reflective fallback. Strict mode can also be
+     * enabled for all types with the processor option {@code -Astagebuilder.strict}.</p>
+     * 
+     * @return true to reject reflective field access
+     */
+    boolean strict() default false;
+
+    /**
+     * Optional companion classes that can be generated next to the stage builder.
+     * 
+     * <p>Each feature produces a separate class in the package of the annotated type,
+     * named after the type with a feature specific suffix.</p>
+     */
+    enum Feature {
+        /**
+         * Generates a {@code <Type>BinaryCodec} that writes and reads the type to and from a
+         * {@link java.nio.ByteBuffer} using a compact binary format.
+         */
+        BINARY_CODEC,
+
+        /**
+         * Generates a {@code <Type>View} flyweight over fixed-size records in a
+         * {@link java.nio.ByteBuffer}, with a nested {@code Writer} that appends records through
+         * a staged API. Only supported for types whose fields are all primitives.
+         */
+        FLYWEIGHT_VIEW,
+
+        /**
+         * Generates a {@code <Type>Json} that writes the type as a JSON object to an
+         * {@link Appendable} and reads it back from a {@link CharSequence} without reflection.
+         */
+        JSON,
+
+        /**
+         * Generates a {@code <Type>CsvDecoder} that binds the columns of a header line to fields
+         * once and decodes delimited rows, optionally as a parallel stream.
+         */
+        CSV,
+
+        /**
+         * Generates a {@code <Type>RowMapper} that maps {@link java.sql.ResultSet} rows using
+         * column indices resolved once per query and the typed getters of each field.
+         */
+        ROW_MAPPER,
+
+        /**
+         * Generates a {@code <Type>SerializationProxy} that replaces default Java serialization
+         * with an {@link java.io.Externalizable} form rebuilt through the stage builder.
+         */
+        SERIALIZATION_PROXY,
+
+        /**
+         * Generates a {@code <Type>RecordLog}, an append-only log of segment files that are
+         * replayed through memory mapping. Implies {@link #BINARY_CODEC}, which encodes the records.
+         */
+        RECORD_LOG,
+
+        /**
+         * Generates a {@code <Type>AsyncStageBuilder} whose stages accept values,
+         * {@link java.util.concurrent.CompletionStage}s or {@link java.util.concurrent.Callable}s and
+         * whose {@code build()} returns a {@link java.util.concurrent.CompletableFuture} of the instance.
+         * Callables run concurrently on virtual threads, or on the executor passed to
+         * {@code buildConcurrently}.
+         */
+        ASYNC_BUILDER,
+
+        /**
+         * Generates a {@code <Type>FlowAssembler}, a {@link java.util.concurrent.Flow.Publisher}
+         * that zips the elements of one publisher per field into instances, with bounded
+         * prefetch and batched demand towards the sources.
+         */
+        FLOW_ASSEMBLER,
+
+        /**
+         * Generates a {@code <Type>Atomic} with lock-free {@code updateX}, {@code setX} and
+         * {@code compareAndSetX} per field. Types with a public all-args constructor are updated
+         * by copy inside an {@link java.util.concurrent.atomic.AtomicReference}; mutable classes
+         * in place through {@link java.lang.invoke.VarHandle}s.
+         */
+        ATOMIC,
+
+        /**
+         * Generates a {@code <Type>Bulk} whose updates set or map fields of every element of a
+         * list or array, copying each element once and using fork/join for large inputs.
+         */
+        BULK,
+
+        /**
+         * Generates a {@code <Type>Columns} batch storing rows in one growable array per field,
+         * appended through the stage order and merged across threads without locking.
+         */
+        COLUMNS,
+
+        /**
+         * Generates a {@code <Type>Collectors} with stream {@link java.util.stream.Collector}s
+         * taking one extractor per field, and bulk factories creating instances from parallel
+         * column arrays.
+         */
+        COLLECTORS
+    }
     
     /**
      * Marks a field as optional in the stage builder.
@@ -76,4 +76,11 @@ public class StageBuilderTest {
         assertTrue(java.util.Arrays.asList(target.value()).contains(ElementType.RECORD_COMPONENT));
         assertFalse(java.util.Arrays.asList(target.value()).contains(ElementType.METHOD));
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testFeaturesDefaultToNone() throws NoSuchMethodException {
+        // Verify that no companion classes are requested unless features are listed
+        Object defaultValue = StageBuilder.class.getMethod("features").getDefaultValue();
+        assertArrayEquals(new StageBuilder.Feature[0], (StageBuilder.Feature[]) defaultValue);
+    }
+}
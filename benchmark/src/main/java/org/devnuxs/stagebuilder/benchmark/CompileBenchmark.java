@@ -0,0 +1,288 @@
+package org.devnuxs.stagebuilder.benchmark;
+
+import org.devnuxs.stagebuilder.processor.StageBuilderProcessor;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Measures how compiling with the {@link StageBuilderProcessor} scales with the size of a code base.
+ *
+ * <p>For every combination of type and field counts, a synthetic corpus from the
+ * {@link CorpusGenerator} is compiled by javac in this JVM, once without annotation processing as
+ * a baseline and once with the processor. After warm-up iterations, the median wall time, the bytes
+ * allocated by all threads during the compilation and the volume of generated sources are
+ * reported. The difference to the baseline is the cost of the processor, including compiling the
+ * code it generates.</p>
+ *
+ * <p>A second table compiles {@value #WIDE_TYPES} setter POJOs for each of the {@code --wide}
+ * field counts, since constructors are limited to 255 parameter slots. It reports the overhead per
+ * field, which stays flat as long as the processor does linear work per type.</p>
+ *
+ * <pre>
+ * ./gradlew :benchmark:run --args="--types 100,500,1000 --fields 5,20,50 --wide 100,400 --iterations 5"
+ * </pre>
+ *
+ * <p>Options: {@code --types}, {@code --fields}, {@code --wide} (comma separated, empty to skip
+ * the wide types, default 100,200,400), {@code --warmup} (default 2),
+ * {@code --iterations} (default 5), {@code --csv <file>} to also write the results as CSV, and any
+ * number of {@code -A<key>=<value>} processor options such as {@code -Astagebuilder.emitter=direct}.</p>
+ */
+public final class CompileBenchmark {
+
+    /**
+     * The result of one compilation.
+     *
+     * @param nanos the wall time
+     * @param allocatedBytes the bytes allocated by all threads
+     * @param generatedFiles the number of generated source files
+     * @param generatedBytes the size of the generated source files
+     */
+    record Measurement(long nanos, long allocatedBytes, int generatedFiles, long generatedBytes) {
+    }
+
+    private record Result(String corpus, int types, int fields, Measurement baseline, Measurement processed) {
+    }
+
+    /** The number of types compiled per wide field count. */
+    static final int WIDE_TYPES = 10;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private CompileBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the command line options
+     * @throws IOException if the CSV report cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int[] types = {10, 100, 500};
+        int[] fields = {5, 20, 50};
+        int[] wideFields = {100, 200, 400};
+        int warmup = 2;
+        int iterations = 5;
+        Path csv = null;
+        List<String> processorOptions = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--types" -> types = parseCounts(args[++i]);
+                case "--fields" -> fields = parseCounts(args[++i]);
+                case "--wide" -> wideFields = parseCounts(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--csv" -> csv = Path.of(args[++i]);
+                default -> {
+                    if (!args[i].startsWith("-A")) {
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                    }
+                    processorOptions.add(args[i]);
+                }
+            }
+        }
+
+        PrintStream out = System.out;
+        out.printf(Locale.ROOT, "%6s %6s %12s %12s %12s %12s %10s %12s%n",
+            "types", "fields", "baseline ms", "process ms", "overhead ms", "alloc MB", "gen files", "gen KB");
+        List<Result> results = new ArrayList<>();
+        for (int typeCount : types) {
+            for (int fieldCount : fields) {
+                List<CorpusGenerator.Source> corpus = CorpusGenerator.generate(typeCount, fieldCount);
+                Measurement baseline = measure(corpus, false, processorOptions, warmup, iterations);
+                Measurement processed = measure(corpus, true, processorOptions, warmup, iterations);
+                Result result = new Result("mixed", typeCount, fieldCount, baseline, processed);
+                results.add(result);
+                out.printf(Locale.ROOT, "%6d %6d %12.1f %12.1f %12.1f %12.1f %10d %12.1f%n",
+                    typeCount, fieldCount, millis(baseline.nanos()), millis(processed.nanos()),
+                    millis(processed.nanos() - baseline.nanos()), processed.allocatedBytes() / 1048576.0,
+                    processed.generatedFiles(), processed.generatedBytes() / 1024.0);
+            }
+        }
+        if (wideFields.length > 0) {
+            out.printf(Locale.ROOT, "%nwide setter POJOs, %d types each%n", WIDE_TYPES);
+            out.printf(Locale.ROOT, "%6s %12s %12s %12s %12s %12s%n",
+                "fields", "baseline ms", "process ms", "overhead ms", "us/field", "alloc MB");
+        }
+        for (int fieldCount : wideFields) {
+            List<CorpusGenerator.Source> corpus = CorpusGenerator.generate(WIDE_TYPES, fieldCount, CorpusGenerator.Shape.SETTER_POJO);
+            Measurement baseline = measure(corpus, false, processorOptions, warmup, iterations);
+            Measurement processed = measure(corpus, true, processorOptions, warmup, iterations);
+            results.add(new Result("wide", WIDE_TYPES, fieldCount, baseline, processed));
+            long overhead = processed.nanos() - baseline.nanos();
+            out.printf(Locale.ROOT, "%6d %12.1f %12.1f %12.1f %12.2f %12.1f%n",
+                fieldCount, millis(baseline.nanos()), millis(processed.nanos()), millis(overhead),
+                overhead / 1000.0 / ((long) WIDE_TYPES * fieldCount), processed.allocatedBytes() / 1048576.0);
+        }
+        if (csv != null) {
+            writeCsv(csv, results);
+        }
+    }
+
+    private static Measurement measure(List<CorpusGenerator.Source> corpus, boolean process, List<String> processorOptions,
+                                       int warmup, int iterations) {
+        for (int i = 0; i < warmup; i++) {
+            compile(corpus, process, processorOptions);
+        }
+        List<Measurement> measurements = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            measurements.add(compile(corpus, process, processorOptions));
+        }
+        measurements.sort(Comparator.comparingLong(Measurement::nanos));
+        return measurements.get(measurements.size() / 2);
+    }
+
+    /**
+     * Compiles a corpus into a temporary directory, which is deleted afterwards.
+     *
+     * @param corpus the sources to compile
+     * @param process whether to run the stage builder processor
+     * @param processorOptions the {@code -A} options passed to the processor
+     * @return the measurement
+     * @throws IllegalStateException if the corpus does not compile
+     */
+    static Measurement compile(List<CorpusGenerator.Source> corpus, boolean process, List<String> processorOptions) {
+        Path output;
+        try {
+            output = Files.createTempDirectory("stagebuilder-benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            return compile(corpus, process, processorOptions, output);
+        } finally {
+            delete(output);
+        }
+    }
+
+    /**
+     * Compiles a corpus into the {@code classes} and {@code generated} directories of an output directory.
+     *
+     * @param corpus the sources to compile
+     * @param process whether to run the stage builder processor
+     * @param processorOptions the {@code -A} options passed to the processor
+     * @param output the output directory
+     * @return the measurement
+     * @throws IllegalStateException if the corpus does not compile
+     */
+    static Measurement compile(List<CorpusGenerator.Source> corpus, boolean process, List<String> processorOptions, Path output) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+            Path classes = Files.createDirectories(output.resolve("classes"));
+            Path generated = Files.createDirectories(output.resolve("generated"));
+
+            List<String> options = new ArrayList<>(List.of(
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", classes.toString(),
+                "-s", generated.toString(),
+                "-proc:" + (process ? "full" : "none")));
+            options.addAll(processorOptions);
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                corpus.stream().map(SourceFile::new).toList());
+            if (process) {
+                task.setProcessors(List.of(new StageBuilderProcessor()));
+            }
+
+            long[] threads = THREADS.getAllThreadIds();
+            long allocatedBefore = sum(THREADS.getThreadAllocatedBytes(threads));
+            long start = System.nanoTime();
+            boolean success = task.call();
+            long nanos = System.nanoTime() - start;
+            // Threads started during the compilation, e.g. of the fork/join pool, count from zero
+            long allocated = sum(THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) - allocatedBefore;
+
+            if (!success) {
+                throw new IllegalStateException("Corpus does not compile: " + diagnostics.getDiagnostics().stream()
+                    .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                    .findFirst().map(diagnostic -> diagnostic.getMessage(Locale.ROOT)).orElse("unknown error"));
+            }
+            int files = 0;
+            long bytes = 0;
+            try (Stream<Path> paths = Files.walk(generated)) {
+                for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                    files++;
+                    bytes += Files.size(path);
+                }
+            }
+            return new Measurement(nanos, allocated, files, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long sum(long[] values) {
+        // Threads that ended in between report -1
+        return Arrays.stream(values).filter(value -> value > 0).sum();
+    }
+
+    static void delete(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCsv(Path csv, List<Result> results) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("corpus,types,fields,baselineNanos,processNanos,baselineAllocatedBytes,processAllocatedBytes,generatedFiles,generatedBytes");
+        for (Result result : results) {
+            lines.add(result.corpus() + "," + result.types() + "," + result.fields() + "," + result.baseline().nanos() + "," + result.processed().nanos()
+                + "," + result.baseline().allocatedBytes() + "," + result.processed().allocatedBytes()
+                + "," + result.processed().generatedFiles() + "," + result.processed().generatedBytes());
+        }
+        Files.write(csv, lines, StandardCharsets.UTF_8);
+    }
+
+    private static int[] parseCounts(String value) {
+        if (value.isBlank()) {
+            return new int[0];
+        }
+        return Arrays.stream(value.split(",")).mapToInt(count -> Integer.parseInt(count.trim())).toArray();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * An in-memory source file of the corpus.
+     */
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final String content;
+
+        SourceFile(CorpusGenerator.Source source) {
+            super(URI.create("string:///" + source.qualifiedName().replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = source.content();
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
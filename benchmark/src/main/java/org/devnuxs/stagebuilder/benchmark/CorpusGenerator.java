@@ -0,0 +1,243 @@
+package org.devnuxs.stagebuilder.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic corpora of types annotated with {@code @StageBuilder}.
+ *
+ * <p>A corpus of N types with M fields each mixes the shapes the processor handles differently:
+ * records, classes with an all-args constructor, setter-based POJOs and records nested in a
+ * class. Fields cycle through primitives, wrappers, strings and collections, and every third
+ * field is optional and every fifth has a default. Corpora of a single shape are used for wide
+ * types, where the field count exceeds what a constructor can take. Corpora are deterministic, so
+ * runs of the same size compile the same sources.</p>
+ */
+public final class CorpusGenerator {
+
+    /** The number of packages the types are spread over. */
+    public static final int PACKAGES = 16;
+
+    /**
+     * The shape of a generated type.
+     */
+    public enum Shape {
+        /** A record, created through its canonical constructor. */
+        RECORD,
+        /** A class with a public all-args constructor and getters. */
+        CONSTRUCTOR_CLASS,
+        /** A class with a no-args constructor, private fields, getters and setters. */
+        SETTER_POJO,
+        /** A record nested in a class. */
+        NESTED_RECORD
+    }
+
+    /**
+     * A generated source file.
+     *
+     * @param qualifiedName the qualified name of the top-level type
+     * @param content the source code
+     */
+    public record Source(String qualifiedName, String content) {
+    }
+
+    private record FieldType(String name, String defaultValue, String sampleValue) {
+    }
+
+    private static final FieldType[] FIELD_TYPES = {
+        new FieldType("String", "none", "\"value\""),
+        new FieldType("int", "7", "1"),
+        new FieldType("long", "7L", "1L"),
+        new FieldType("double", "1.5", "1.0"),
+        new FieldType("boolean", "true", "false"),
+        new FieldType("Integer", "7", "1"),
+        new FieldType("java.util.List<String>", null, "java.util.List.of()"),
+        new FieldType("java.util.Map<String, Long>", null, "java.util.Map.of()")
+    };
+
+    private CorpusGenerator() {
+    }
+
+    /**
+     * Generates a corpus.
+     *
+     * @param types the number of annotated types
+     * @param fields the number of fields per type
+     * @return the source files, one per type
+     */
+    public static List<Source> generate(int types, int fields) {
+        List<Source> sources = new ArrayList<>(types);
+        for (int i = 0; i < types; i++) {
+            sources.add(generateType(i, fields, shape(i)));
+        }
+        return sources;
+    }
+
+    /**
+     * Generates a corpus of a single shape.
+     *
+     * @param types the number of annotated types
+     * @param fields the number of fields per type
+     * @param shape the shape of every type
+     * @return the source files, one per type
+     */
+    public static List<Source> generate(int types, int fields, Shape shape) {
+        List<Source> sources = new ArrayList<>(types);
+        for (int i = 0; i < types; i++) {
+            sources.add(generateType(i, fields, shape));
+        }
+        return sources;
+    }
+
+    /**
+     * Returns the shape of a type in a corpus.
+     *
+     * @param index the index of the type in the corpus
+     * @return the shape, cycling through all shapes
+     */
+    public static Shape shape(int index) {
+        Shape[] shapes = Shape.values();
+        return shapes[index % shapes.length];
+    }
+
+    /**
+     * Returns an expression that creates a type of a corpus through its stage builder, setting only
+     * the required fields.
+     *
+     * @param index the index of the type in the corpus
+     * @param fields the number of fields of the type
+     * @return the expression
+     */
+    public static String builderExpression(int index, int fields) {
+        StringBuilder expression = new StringBuilder(builderName(index)).append(".builder()");
+        for (int i = 0; i < fields; i++) {
+            if (annotation(i).isEmpty()) {
+                expression.append('.').append(fieldName(i)).append('(').append(type(i).sampleValue()).append(')');
+            }
+        }
+        return expression.append(".build()").toString();
+    }
+
+    /**
+     * Returns an expression that copies a type of a corpus through {@code from()} of its stage builder.
+     *
+     * @param index the index of the type in the corpus
+     * @param original an expression of type {@code Object} for the instance to copy
+     * @return the expression
+     */
+    public static String fromExpression(int index, String original) {
+        String typeName = packageName(index) + "." + (shape(index) == Shape.NESTED_RECORD
+            ? typeName(index) + "." + typeName(index) + "Value"
+            : typeName(index));
+        return builderName(index) + ".from((" + typeName + ") " + original + ").build()";
+    }
+
+    private static String builderName(int index) {
+        return packageName(index) + "." + typeName(index) + (shape(index) == Shape.NESTED_RECORD ? "Value" : "") + "StageBuilder";
+    }
+
+    private static String packageName(int index) {
+        return "bench.p" + (index % PACKAGES);
+    }
+
+    private static String typeName(int index) {
+        return "Type" + index;
+    }
+
+    /**
+     * Generates a single type.
+     *
+     * @param index the index of the type in the corpus, which determines its name and package
+     * @param fields the number of fields
+     * @param shape the shape of the type
+     * @return the source file
+     */
+    public static Source generateType(int index, int fields, Shape shape) {
+        String packageName = packageName(index);
+        String name = typeName(index);
+        StringBuilder source = new StringBuilder()
+            .append("package ").append(packageName).append(";\n\n")
+            .append("import org.devnuxs.stagebuilder.api.StageBuilder;\n\n");
+        switch (shape) {
+            case RECORD -> appendRecord(source, name, fields, "");
+            case CONSTRUCTOR_CLASS -> appendConstructorClass(source, name, fields);
+            case SETTER_POJO -> appendSetterPojo(source, name, fields);
+            case NESTED_RECORD -> {
+                source.append("public class ").append(name).append(" {\n");
+                appendRecord(source, name + "Value", fields, "    ");
+                source.append("}\n");
+            }
+        }
+        return new Source(packageName + "." + name, source.toString());
+    }
+
+    private static void appendRecord(StringBuilder source, String name, int fields, String indent) {
+        source.append(indent).append("@StageBuilder\n")
+            .append(indent).append("public ").append(indent.isEmpty() ? "" : "static ").append("record ").append(name).append("(\n");
+        for (int i = 0; i < fields; i++) {
+            source.append(indent).append("    ").append(annotation(i)).append(type(i).name()).append(' ').append(fieldName(i))
+                .append(i < fields - 1 ? ",\n" : ") {\n");
+        }
+        source.append(indent).append("}\n");
+    }
+
+    private static void appendConstructorClass(StringBuilder source, String name, int fields) {
+        source.append("@StageBuilder\npublic class ").append(name).append(" {\n");
+        for (int i = 0; i < fields; i++) {
+            source.append("    private final ").append(type(i).name()).append(' ').append(fieldName(i)).append(";\n");
+        }
+        // The constructor parameters define the stages of a class with an all-args constructor
+        source.append("\n    public ").append(name).append("(");
+        for (int i = 0; i < fields; i++) {
+            source.append(i > 0 ? ", " : "").append(annotation(i)).append(type(i).name()).append(' ').append(fieldName(i));
+        }
+        source.append(") {\n");
+        for (int i = 0; i < fields; i++) {
+            source.append("        this.").append(fieldName(i)).append(" = ").append(fieldName(i)).append(";\n");
+        }
+        source.append("    }\n");
+        appendGetters(source, fields);
+        source.append("}\n");
+    }
+
+    private static void appendSetterPojo(StringBuilder source, String name, int fields) {
+        source.append("@StageBuilder\npublic class ").append(name).append(" {\n");
+        for (int i = 0; i < fields; i++) {
+            source.append("    ").append(annotation(i)).append("private ").append(type(i).name()).append(' ').append(fieldName(i)).append(";\n");
+        }
+        appendGetters(source, fields);
+        for (int i = 0; i < fields; i++) {
+            source.append("\n    public void set").append(capitalized(i)).append("(").append(type(i).name()).append(' ')
+                .append(fieldName(i)).append(") {\n        this.").append(fieldName(i)).append(" = ").append(fieldName(i))
+                .append(";\n    }\n");
+        }
+        source.append("}\n");
+    }
+
+    private static void appendGetters(StringBuilder source, int fields) {
+        for (int i = 0; i < fields; i++) {
+            source.append("\n    public ").append(type(i).name()).append(" get").append(capitalized(i)).append("() {\n        return ")
+                .append(fieldName(i)).append(";\n    }\n");
+        }
+    }
+
+    private static String annotation(int field) {
+        FieldType type = type(field);
+        if (field % 5 == 4 && type.defaultValue() != null) {
+            return "@StageBuilder.Default(\"" + type.defaultValue() + "\") ";
+        }
+        return field % 3 == 2 ? "@StageBuilder.Optional " : "";
+    }
+
+    private static FieldType type(int field) {
+        return FIELD_TYPES[field % FIELD_TYPES.length];
+    }
+
+    private static String fieldName(int field) {
+        return "field" + field;
+    }
+
+    private static String capitalized(int field) {
+        return "Field" + field;
+    }
+}
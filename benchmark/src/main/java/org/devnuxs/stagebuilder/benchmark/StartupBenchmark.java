@@ -0,0 +1,374 @@
+package org.devnuxs.stagebuilder.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Measures the startup cost of generated stage builders in fresh JVMs.
+ *
+ * <p>For every type count, a corpus from the {@link CorpusGenerator} is compiled with the processor
+ * together with a driver, which creates every type with {@code builder()...build()} and copies it
+ * with {@code from(obj).build()}. The driver is launched in new JVMs without class data sharing,
+ * with the default CDS archive of the JDK and with an AppCDS archive recorded by a training run.
+ * Each configuration reports the median of:</p>
+ * <ul>
+ *   <li>the wall time of the process</li>
+ *   <li>the time to the first {@code build()}, and to all builds and copies</li>
+ *   <li>the classes loaded and the metaspace used per type</li>
+ * </ul>
+ * <p>A run with {@code -Xlog:class+load} additionally breaks the loaded classes of the generated code
+ * down into stage builders, stage interfaces, {@code Builder} and {@code FromBuilder} classes.</p>
+ *
+ * <pre>
+ * ./gradlew :benchmark:startup --args="--types 10,100,1000 --fields 10 --runs 5"
+ * </pre>
+ *
+ * <p>Options: {@code --types} (comma separated), {@code --fields} (default 10), {@code --runs} (default
+ * 5), {@code --csv <file>} to also write the results as CSV, and any number of {@code -A<key>=<value>}
+ * processor options, whose effect on startup can be compared this way.</p>
+ */
+public final class StartupBenchmark {
+
+    /**
+     * The class data sharing configuration of a launched JVM.
+     */
+    enum Sharing {
+        /** No class data sharing, {@code -Xshare:off}. */
+        OFF,
+        /** The default CDS archive of the JDK classes. */
+        DEFAULT,
+        /** A dynamic AppCDS archive of the classes loaded by a training run. */
+        APPCDS
+    }
+
+    static final String DRIVER = "bench.StartupMain";
+
+    // Types per driver class, which keeps the methods of wide corpora below the class file limits
+    private static final int CHUNK = 32;
+
+    private record Result(int types, int fields, Sharing sharing, Map<String, Long> metrics) {
+    }
+
+    private StartupBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the command line options
+     * @throws IOException if the corpus cannot be packaged or the CSV report cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int[] types = {10, 100, 1000};
+        int fields = 10;
+        int runs = 5;
+        Path csv = null;
+        List<String> processorOptions = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--types" -> types = Arrays.stream(args[++i].split(",")).mapToInt(count -> Integer.parseInt(count.trim())).toArray();
+                case "--fields" -> fields = Integer.parseInt(args[++i]);
+                case "--runs" -> runs = Integer.parseInt(args[++i]);
+                case "--csv" -> csv = Path.of(args[++i]);
+                default -> {
+                    if (!args[i].startsWith("-A")) {
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                    }
+                    processorOptions.add(args[i]);
+                }
+            }
+        }
+
+        PrintStream out = System.out;
+        List<Result> results = new ArrayList<>();
+        for (int typeCount : types) {
+            Path output = Files.createTempDirectory("stagebuilder-startup");
+            try {
+                Path jar = build(typeCount, fields, processorOptions, output);
+                Map<String, Integer> loaded = loadedClasses(jar, output);
+                out.printf(Locale.ROOT, "%n%d types x %d fields, generated classes loaded per type:", typeCount, fields);
+                loaded.forEach((kind, count) -> out.printf(Locale.ROOT, " %.1f %s", count / (double) typeCount, kind));
+                out.printf(Locale.ROOT, "%n%8s %12s %14s %12s %12s %14s %14s%n",
+                    "cds", "process ms", "first build ms", "builds ms", "copies ms", "classes/type", "metaspace/type");
+                for (Sharing sharing : Sharing.values()) {
+                    Map<String, Long> metrics = measure(jar, sharing, runs, output);
+                    results.add(new Result(typeCount, fields, sharing, metrics));
+                    out.printf(Locale.ROOT, "%8s %12.1f %14.2f %12.1f %12.1f %14.1f %14.0f%n",
+                        sharing.name().toLowerCase(Locale.ROOT), millis(metrics.get("processNanos")),
+                        millis(metrics.get("firstBuildNanos")), millis(metrics.get("buildNanos")),
+                        millis(metrics.get("fromNanos")), metrics.get("loadedClasses") / (double) typeCount,
+                        metrics.get("metaspaceBytes") / (double) typeCount);
+                }
+            } finally {
+                CompileBenchmark.delete(output);
+            }
+        }
+        if (csv != null) {
+            writeCsv(csv, results);
+        }
+    }
+
+    /**
+     * Compiles a corpus with the processor and its driver, and packages the classes into a jar,
+     * since class data sharing only archives classes loaded from jars.
+     *
+     * @param types the number of types
+     * @param fields the number of fields per type
+     * @param processorOptions the {@code -A} options passed to the processor
+     * @param output the directory to compile into
+     * @return the jar
+     * @throws IOException if the jar cannot be written
+     */
+    static Path build(int types, int fields, List<String> processorOptions, Path output) throws IOException {
+        List<CorpusGenerator.Source> sources = new ArrayList<>(CorpusGenerator.generate(types, fields));
+        sources.addAll(generateDriver(types, fields));
+        CompileBenchmark.compile(sources, true, processorOptions, output);
+
+        Path classes = output.resolve("classes");
+        Path jar = output.resolve("corpus.jar");
+        try (JarOutputStream stream = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> paths = Files.walk(classes)) {
+            for (Path path : paths.filter(Files::isRegularFile).sorted().toList()) {
+                stream.putNextEntry(new JarEntry(classes.relativize(path).toString().replace('\\', '/')));
+                Files.copy(path, stream);
+                stream.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    /**
+     * Generates the driver, which prints its measurements as {@code key=value} lines.
+     *
+     * <p>The first type is created in {@code main} itself, so its time only covers loading and
+     * initializing its builder. The other types are dispatched to chunk classes.</p>
+     *
+     * @param types the number of types
+     * @param fields the number of fields per type
+     * @return the sources of the driver
+     */
+    static List<CorpusGenerator.Source> generateDriver(int types, int fields) {
+        List<CorpusGenerator.Source> sources = new ArrayList<>();
+        int chunks = (types + CHUNK - 1) / CHUNK;
+        StringBuilder main = new StringBuilder("""
+            package bench;
+
+            import java.lang.management.ClassLoadingMXBean;
+            import java.lang.management.ManagementFactory;
+            import java.lang.management.MemoryPoolMXBean;
+
+            public final class StartupMain {
+                public static void main(String[] args) {
+                    ClassLoadingMXBean loading = ManagementFactory.getClassLoadingMXBean();
+                    MemoryPoolMXBean metaspace = null;
+                    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                        if (pool.getName().equals("Metaspace")) {
+                            metaspace = pool;
+                        }
+                    }
+                    long classes = loading.getTotalLoadedClassCount();
+                    long metaspaceUsed = metaspace.getUsage().getUsed();
+                    long start = System.nanoTime();
+            """)
+            .append("        Object first = ").append(CorpusGenerator.builderExpression(0, fields)).append(";\n")
+            .append("""
+                    long firstBuild = System.nanoTime() - start;
+                    Object[] built = new Object[COUNT];
+                    built[0] = first;
+                    for (int i = 1; i < built.length; i++) {
+                        built[i] = build(i);
+                    }
+                    long builds = System.nanoTime() - start;
+                    for (int i = 0; i < built.length; i++) {
+                        built[i] = from(i, built[i]);
+                    }
+                    long froms = System.nanoTime() - start - builds;
+                    long loaded = loading.getTotalLoadedClassCount() - classes;
+                    long metaspaceGrowth = metaspace.getUsage().getUsed() - metaspaceUsed;
+                    System.out.println("firstBuildNanos=" + firstBuild);
+                    System.out.println("buildNanos=" + builds);
+                    System.out.println("fromNanos=" + froms);
+                    System.out.println("loadedClasses=" + loaded);
+                    System.out.println("metaspaceBytes=" + metaspaceGrowth);
+                }
+
+                private static Object build(int i) {
+                    switch (i / CHUNK) {
+            """.replace("COUNT", Integer.toString(types)).replace("CHUNK", Integer.toString(CHUNK)));
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            main.append("            case ").append(chunk).append(": return StartupChunk").append(chunk).append(".build(i);\n");
+        }
+        main.append("""
+                        default: throw new IllegalArgumentException();
+                    }
+                }
+
+                private static Object from(int i, Object original) {
+                    switch (i / CHUNK) {
+            """.replace("CHUNK", Integer.toString(CHUNK)));
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            main.append("            case ").append(chunk).append(": return StartupChunk").append(chunk).append(".from(i, original);\n");
+        }
+        main.append("""
+                        default: throw new IllegalArgumentException();
+                    }
+                }
+            }
+            """);
+        sources.add(new CorpusGenerator.Source(DRIVER, main.toString()));
+
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            StringBuilder build = new StringBuilder();
+            StringBuilder from = new StringBuilder();
+            for (int i = chunk * CHUNK; i < Math.min(types, (chunk + 1) * CHUNK); i++) {
+                build.append("            case ").append(i).append(": return ").append(CorpusGenerator.builderExpression(i, fields)).append(";\n");
+                from.append("            case ").append(i).append(": return ").append(CorpusGenerator.fromExpression(i, "original")).append(";\n");
+            }
+            sources.add(new CorpusGenerator.Source("bench.StartupChunk" + chunk, "package bench;\n\n"
+                + "final class StartupChunk" + chunk + " {\n"
+                + "    static Object build(int i) {\n        switch (i) {\n" + build
+                + "            default: throw new IllegalArgumentException();\n        }\n    }\n\n"
+                + "    static Object from(int i, Object original) {\n        switch (i) {\n" + from
+                + "            default: throw new IllegalArgumentException();\n        }\n    }\n}\n"));
+        }
+        return sources;
+    }
+
+    /**
+     * Launches the driver in fresh JVMs and returns the median of every metric.
+     *
+     * @param jar the corpus jar
+     * @param sharing the class data sharing configuration
+     * @param runs the number of JVMs to launch
+     * @param output the directory for the AppCDS archive
+     * @return the median metrics, including the wall time of the process as {@code processNanos}
+     */
+    static Map<String, Long> measure(Path jar, Sharing sharing, int runs, Path output) {
+        List<String> options = switch (sharing) {
+            case OFF -> List.of("-Xshare:off");
+            case DEFAULT -> List.of();
+            case APPCDS -> {
+                Path archive = output.resolve("corpus.jsa");
+                if (!Files.exists(archive)) {
+                    launch(jar, List.of("-XX:ArchiveClassesAtExit=" + archive));
+                }
+                yield List.of("-XX:SharedArchiveFile=" + archive);
+            }
+        };
+        Map<String, List<Long>> samples = new LinkedHashMap<>();
+        for (int i = 0; i < runs; i++) {
+            launch(jar, options).forEach((key, value) -> samples.computeIfAbsent(key, k -> new ArrayList<>()).add(value));
+        }
+        Map<String, Long> medians = new LinkedHashMap<>();
+        samples.forEach((key, values) -> {
+            values.sort(Comparator.naturalOrder());
+            medians.put(key, values.get(values.size() / 2));
+        });
+        return medians;
+    }
+
+    /**
+     * Counts the classes of the generated code loaded by the driver, by kind.
+     *
+     * @param jar the corpus jar
+     * @param output the directory for the class loading log
+     * @return the number of loaded classes by kind, in a stable order
+     */
+    static Map<String, Integer> loadedClasses(Path jar, Path output) {
+        Path log = output.resolve("class-load.log");
+        launch(jar, List.of("-Xlog:class+load=info:file=" + log + ":none"));
+        Map<String, Integer> counts = new TreeMap<>();
+        try {
+            for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+                String kind = kind(line.split(" ", 2)[0]);
+                if (kind != null) {
+                    counts.merge(kind, 1, Integer::sum);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return counts;
+    }
+
+    private static String kind(String className) {
+        if (!className.startsWith("bench.p") || !className.contains("StageBuilder")) {
+            return null;
+        }
+        int nested = className.indexOf('$');
+        if (nested < 0) {
+            return "stage builders";
+        }
+        String member = className.substring(nested + 1);
+        if (member.equals("Builder") || member.equals("FromBuilder")) {
+            return member;
+        }
+        return member.endsWith("Stage") ? "stage interfaces" : "other";
+    }
+
+    private static Map<String, Long> launch(Path jar, List<String> jvmOptions) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.addAll(List.of("-cp", jar.toString(), DRIVER));
+        try {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output;
+            try (var stdout = process.getInputStream()) {
+                output = new String(stdout.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            int exitCode = process.waitFor();
+            long nanos = System.nanoTime() - start;
+            if (exitCode != 0) {
+                throw new IllegalStateException("Driver failed with exit code " + exitCode + ":\n" + output);
+            }
+            Map<String, Long> metrics = new LinkedHashMap<>();
+            metrics.put("processNanos", nanos);
+            for (String line : output.lines().toList()) {
+                int separator = line.indexOf('=');
+                // The JVM may print warnings, e.g. about the archive
+                if (separator > 0 && line.substring(separator + 1).matches("-?\\d+")) {
+                    metrics.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+                }
+            }
+            return metrics;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the driver", e);
+        }
+    }
+
+    private static void writeCsv(Path csv, List<Result> results) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("types,fields,cds,processNanos,firstBuildNanos,buildNanos,fromNanos,loadedClasses,metaspaceBytes");
+        for (Result result : results) {
+            Map<String, Long> metrics = result.metrics();
+            lines.add(result.types() + "," + result.fields() + "," + result.sharing().name().toLowerCase(Locale.ROOT)
+                + "," + metrics.get("processNanos") + "," + metrics.get("firstBuildNanos") + "," + metrics.get("buildNanos")
+                + "," + metrics.get("fromNanos") + "," + metrics.get("loadedClasses") + "," + metrics.get("metaspaceBytes"));
+        }
+        Files.write(csv, lines, StandardCharsets.UTF_8);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,54 @@
+package org.devnuxs.stagebuilder.benchmark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that the synthetic corpora compile, so that the benchmark measures valid code bases.
+ */
+public class CorpusGeneratorTest {
+
+    @Test
+    public void testCorpusCompilesWithProcessor() {
+        // Test that every shape with optional, default and collection fields compiles, with packages reused
+        List<CorpusGenerator.Source> corpus = CorpusGenerator.generate(CorpusGenerator.PACKAGES + 4, 11);
+
+        CompileBenchmark.Measurement measurement = CompileBenchmark.compile(corpus, true, List.of());
+
+        // Verify one stage builder per type is generated
+        assertEquals(CorpusGenerator.PACKAGES + 4, measurement.generatedFiles());
+        assertTrue(measurement.generatedBytes() > 0);
+        assertTrue(measurement.nanos() > 0);
+    }
+
+    @Test
+    public void testWideCorpusCompilesWithProcessor() {
+        // Test that setter POJOs wider than any constructor compile, as measured by the wide-type table
+        List<CorpusGenerator.Source> corpus = CorpusGenerator.generate(2, 300, CorpusGenerator.Shape.SETTER_POJO);
+
+        CompileBenchmark.Measurement measurement = CompileBenchmark.compile(corpus, true, List.of());
+
+        // Verify one stage builder per type is generated
+        assertEquals(2, measurement.generatedFiles());
+        assertTrue(measurement.generatedBytes() > 0);
+    }
+
+    @Test
+    public void testBaselineGeneratesNothing() {
+        // Test that the baseline compiles the same corpus without running the processor
+        CompileBenchmark.Measurement measurement = CompileBenchmark.compile(CorpusGenerator.generate(4, 3), false, List.of());
+
+        // Verify no sources are generated
+        assertEquals(0, measurement.generatedFiles());
+    }
+
+    @Test
+    public void testCorpusIsDeterministic() {
+        // Test that corpora of the same size are identical
+        assertEquals(CorpusGenerator.generate(5, 9), CorpusGenerator.generate(5, 9));
+    }
+}
@@ -0,0 +1,52 @@
+package org.devnuxs.stagebuilder.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the startup harness with a small corpus in fresh JVMs.
+ */
+public class StartupBenchmarkTest {
+
+    private static final int TYPES = CorpusGenerator.Shape.values().length * 2;
+
+    @Test
+    public void testGeneratedClassesLoadedPerType(@TempDir Path output) throws IOException {
+        // Test that every type loads its stage builder, Builder and FromBuilder once
+        Path jar = StartupBenchmark.build(TYPES, 7, List.of(), output);
+
+        Map<String, Integer> loaded = StartupBenchmark.loadedClasses(jar, output);
+
+        // Verify the breakdown by kind, with one stage interface per required field and the build stage
+        assertEquals(TYPES, loaded.get("stage builders"), loaded.toString());
+        assertEquals(TYPES, loaded.get("Builder"), loaded.toString());
+        assertEquals(TYPES, loaded.get("FromBuilder"), loaded.toString());
+        assertTrue(loaded.get("stage interfaces") >= TYPES * 2, loaded.toString());
+    }
+
+    @Test
+    public void testMeasureWithAppCds(@TempDir Path output) throws IOException {
+        // Test that the driver reports its metrics with an AppCDS archive recorded by a training run
+        Path jar = StartupBenchmark.build(TYPES, 3, List.of(), output);
+
+        Map<String, Long> metrics = StartupBenchmark.measure(jar, StartupBenchmark.Sharing.APPCDS, 1, output);
+
+        // Verify the archive exists and every metric is reported
+        assertTrue(Files.exists(output.resolve("corpus.jsa")));
+        assertTrue(metrics.get("processNanos") > 0, metrics.toString());
+        assertTrue(metrics.get("firstBuildNanos") > 0, metrics.toString());
+        assertTrue(metrics.get("buildNanos") >= metrics.get("firstBuildNanos"), metrics.toString());
+        assertTrue(metrics.get("fromNanos") > 0, metrics.toString());
+        assertTrue(metrics.get("loadedClasses") >= TYPES, metrics.toString());
+        assertTrue(metrics.containsKey("metaspaceBytes"), metrics.toString());
+    }
+}
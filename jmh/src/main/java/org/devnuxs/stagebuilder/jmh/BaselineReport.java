@@ -0,0 +1,118 @@
+package org.devnuxs.stagebuilder.jmh;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stores benchmark scores as CSV and compares a run against a stored baseline.
+ *
+ * <p>A baseline is only meaningful on the machine and JDK it was recorded with, so none is
+ * checked in: record one with {@code --save} before a change and compare with {@code --baseline}
+ * after it.</p>
+ */
+final class BaselineReport {
+
+    static final String HEADER = "benchmark,mode,score,error,unit,allocBytesPerOp";
+
+    // The GC profiler reports fractions of a byte per operation even for code that does not allocate more
+    private static final double ALLOCATION_TOLERANCE = 8;
+
+    /**
+     * The score of one benchmark in one mode.
+     *
+     * @param benchmark the benchmark method, e.g. {@code BuilderBenchmark.personBuilder}
+     * @param mode the JMH mode, {@code thrpt} or {@code avgt}
+     * @param score the primary score
+     * @param error the score error at 99.9%
+     * @param unit the unit of the score
+     * @param allocBytesPerOp the bytes allocated per operation, or {@code NaN} without the GC profiler
+     */
+    record Score(String benchmark, String mode, double score, double error, String unit, double allocBytesPerOp) {
+
+        String key() {
+            return benchmark + "/" + mode;
+        }
+
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+
+    private BaselineReport() {
+    }
+
+    static void write(Path csv, List<Score> scores) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Score score : scores) {
+            lines.add(String.format(Locale.ROOT, "%s,%s,%s,%s,%s,%s", score.benchmark(), score.mode(), score.score(),
+                score.error(), score.unit(), score.allocBytesPerOp()));
+        }
+        Files.write(csv, lines, StandardCharsets.UTF_8);
+    }
+
+    static Map<String, Score> read(Path csv) throws IOException {
+        List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            throw new IOException(csv + " is not a baseline written with --save");
+        }
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] columns = line.split(",");
+            Score score = new Score(columns[0], columns[1], Double.parseDouble(columns[2]), Double.parseDouble(columns[3]),
+                columns[4], Double.parseDouble(columns[5]));
+            scores.put(score.key(), score);
+        }
+        return scores;
+    }
+
+    /**
+     * Prints the change of every score against the baseline.
+     *
+     * @param out the stream to print to
+     * @param scores the scores of this run
+     * @param baseline the stored scores by {@link Score#key()}
+     * @param threshold the relative slowdown, e.g. {@code 0.1}, above which a score is a regression
+     * @return the number of regressions
+     */
+    static int compare(PrintStream out, List<Score> scores, Map<String, Score> baseline, double threshold) {
+        out.printf(Locale.ROOT, "%-40s %5s %14s %14s %9s %12s %12s%n",
+            "benchmark", "mode", "baseline", "score", "change", "base B/op", "B/op");
+        int regressions = 0;
+        for (Score score : scores) {
+            Score base = baseline.get(score.key());
+            if (base == null) {
+                out.printf(Locale.ROOT, "%-40s %5s %14s %14.3f %9s %12s %12.1f%n",
+                    score.benchmark(), score.mode(), "-", score.score(), "new", "-", score.allocBytesPerOp());
+                continue;
+            }
+            double change = (score.score() - base.score()) / base.score();
+            double slowdown = score.higherIsBetter() ? -change : change;
+            // A change within the combined error is noise, however large it is relative to the score
+            boolean regression = slowdown > threshold
+                && Math.abs(score.score() - base.score()) > finite(score.error()) + finite(base.error());
+            boolean allocates = score.allocBytesPerOp() > base.allocBytesPerOp() + ALLOCATION_TOLERANCE;
+            if (regression || allocates) {
+                regressions++;
+            }
+            out.printf(Locale.ROOT, "%-40s %5s %14.3f %14.3f %+8.1f%% %12.1f %12.1f%s%n",
+                score.benchmark(), score.mode(), base.score(), score.score(), change * 100,
+                base.allocBytesPerOp(), score.allocBytesPerOp(),
+                regression ? "  REGRESSION" : allocates ? "  MORE ALLOCATION" : "");
+        }
+        return regressions;
+    }
+
+    private static double finite(double error) {
+        // A single measurement iteration has no error
+        return Double.isNaN(error) ? 0 : error;
+    }
+}
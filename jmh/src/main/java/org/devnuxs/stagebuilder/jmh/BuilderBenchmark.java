@@ -0,0 +1,201 @@
+package org.devnuxs.stagebuilder.jmh;
+
+import org.devnuxs.stagebuilder.jmh.model.Account;
+import org.devnuxs.stagebuilder.jmh.model.AccountStageBuilder;
+import org.devnuxs.stagebuilder.jmh.model.Customer;
+import org.devnuxs.stagebuilder.jmh.model.CustomerStageBuilder;
+import org.devnuxs.stagebuilder.jmh.model.PersonRecord;
+import org.devnuxs.stagebuilder.jmh.model.PersonRecordStageBuilder;
+import org.devnuxs.stagebuilder.jmh.model.Settings;
+import org.devnuxs.stagebuilder.jmh.model.SettingsStageBuilder;
+import org.devnuxs.stagebuilder.jmh.model.Trade;
+import org.devnuxs.stagebuilder.jmh.model.TradeStageBuilder;
+import org.devnuxs.stagebuilder.jmh.model.Wide;
+import org.devnuxs.stagebuilder.jmh.model.WideStageBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@code builder()...build()} and {@code from(obj)...build()} of the generated stage
+ * builders against the hand-written construction they replace.
+ *
+ * <p>Every shape has a {@code Builder}, a {@code From} and, where the type can be created without
+ * the builder, a {@code Constructor} benchmark. {@link Account} has no hand-written baseline since
+ * its fields can only be set through reflection; {@link Customer} has the same shape with setters.
+ * The inputs are read from non-final fields, so they cannot be constant-folded.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class BuilderBenchmark {
+
+    String name = "Ada";
+    String email = "ada@example.com";
+    int age = 36;
+    long quantity = 100;
+    double price = 12.5;
+
+    PersonRecord person;
+    Trade trade;
+    Customer customer;
+    Account account;
+    Wide wide;
+    Settings settings;
+
+    /**
+     * Creates the originals of the {@code from()} benchmarks.
+     */
+    @Setup
+    public void setup() {
+        person = personBuilder();
+        trade = tradeBuilder();
+        customer = customerBuilder();
+        account = accountBuilder();
+        wide = wideBuilder();
+        settings = settingsBuilder();
+    }
+
+    @Benchmark
+    public PersonRecord personBuilder() {
+        return PersonRecordStageBuilder.builder()
+            .name(name)
+            .age(age)
+            .email(email)
+            .build();
+    }
+
+    @Benchmark
+    public PersonRecord personFrom() {
+        return PersonRecordStageBuilder.from(person)
+            .age(age)
+            .build();
+    }
+
+    @Benchmark
+    public PersonRecord personConstructor() {
+        return new PersonRecord(name, age, email);
+    }
+
+    @Benchmark
+    public Trade tradeBuilder() {
+        return TradeStageBuilder.builder()
+            .symbol(name)
+            .quantity(quantity)
+            .price(price)
+            .venue(email)
+            .build();
+    }
+
+    @Benchmark
+    public Trade tradeFrom() {
+        return TradeStageBuilder.from(trade)
+            .price(price)
+            .build();
+    }
+
+    @Benchmark
+    public Trade tradeConstructor() {
+        return new Trade(name, quantity, price, email);
+    }
+
+    @Benchmark
+    public Customer customerBuilder() {
+        return CustomerStageBuilder.builder()
+            .name(name)
+            .email(email)
+            .age(age)
+            .build();
+    }
+
+    @Benchmark
+    public Customer customerFrom() {
+        return CustomerStageBuilder.from(customer)
+            .age(age)
+            .build();
+    }
+
+    @Benchmark
+    public Customer customerConstructor() {
+        Customer result = new Customer();
+        result.setName(name);
+        result.setEmail(email);
+        result.setAge(age);
+        return result;
+    }
+
+    @Benchmark
+    public Account accountBuilder() {
+        return AccountStageBuilder.builder()
+            .owner(name)
+            .iban(email)
+            .balance(quantity)
+            .build();
+    }
+
+    @Benchmark
+    public Account accountFrom() {
+        return AccountStageBuilder.from(account)
+            .balance(quantity)
+            .build();
+    }
+
+    @Benchmark
+    public Wide wideBuilder() {
+        return WideStageBuilder.builder()
+            .field0(name).field1(age).field2(quantity).field3(price)
+            .field4(true).field5(age).field6(email).field7(quantity)
+            .field8(name).field9(age).field10(quantity).field11(price)
+            .field12(true).field13(age).field14(email).field15(quantity)
+            .field16(name).field17(age).field18(quantity).field19(price)
+            .field20(true).field21(age).field22(email).field23(quantity)
+            .build();
+    }
+
+    @Benchmark
+    public Wide wideFrom() {
+        return WideStageBuilder.from(wide)
+            .field11(price)
+            .build();
+    }
+
+    @Benchmark
+    public Wide wideConstructor() {
+        return new Wide(
+            name, age, quantity, price, true, age, email, quantity,
+            name, age, quantity, price, true, age, email, quantity,
+            name, age, quantity, price, true, age, email, quantity);
+    }
+
+    @Benchmark
+    public Settings settingsBuilder() {
+        return SettingsStageBuilder.builder()
+            .host(name)
+            .user(email)
+            .build();
+    }
+
+    @Benchmark
+    public Settings settingsFrom() {
+        return SettingsStageBuilder.from(settings)
+            .port(age)
+            .build();
+    }
+
+    @Benchmark
+    public Settings settingsConstructor() {
+        return new Settings(name, 8080, 30L, false, email, null, null, null);
+    }
+}
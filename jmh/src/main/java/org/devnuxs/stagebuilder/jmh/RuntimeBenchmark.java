@@ -0,0 +1,106 @@
+package org.devnuxs.stagebuilder.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the {@link BuilderBenchmark} with the GC profiler and optionally stores or compares the scores.
+ *
+ * <pre>
+ * ./gradlew :jmh:run --args="--save before.csv"
+ * ./gradlew :jmh:run --args="--baseline before.csv"
+ * </pre>
+ *
+ * <p>Options: {@code --include <regex>} to select benchmarks, {@code --save <file>} to store the
+ * scores as a baseline, {@code --baseline <file>} to compare against a stored baseline,
+ * {@code --threshold <percent>} for the slowdown reported as a regression (default 10), and
+ * {@code --quick} for a single short iteration, which only checks that the benchmarks run.
+ * The run exits with status 1 if the comparison finds a regression or more allocation.</p>
+ */
+public final class RuntimeBenchmark {
+
+    private RuntimeBenchmark() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args the command line options
+     * @throws IOException if a baseline cannot be read or written
+     * @throws RunnerException if JMH fails
+     */
+    public static void main(String[] args) throws IOException, RunnerException {
+        String include = BuilderBenchmark.class.getSimpleName();
+        Path save = null;
+        Path baseline = null;
+        double threshold = 0.1;
+        boolean quick = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--include" -> include = args[++i];
+                case "--save" -> save = Path.of(args[++i]);
+                case "--baseline" -> baseline = Path.of(args[++i]);
+                case "--threshold" -> threshold = Double.parseDouble(args[++i]) / 100;
+                case "--quick" -> quick = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        // Fail before a run of several minutes rather than after it
+        Map<String, BaselineReport.Score> stored = baseline != null ? BaselineReport.read(baseline) : null;
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .include(include)
+            .addProfiler(GCProfiler.class);
+        if (quick) {
+            options.warmupIterations(1).measurementIterations(1).forks(1);
+        }
+        List<BaselineReport.Score> scores = toScores(new Runner(options.build()).run());
+
+        if (save != null) {
+            BaselineReport.write(save, scores);
+        }
+        if (stored != null && BaselineReport.compare(System.out, scores, stored, threshold) > 0) {
+            System.exit(1);
+        }
+    }
+
+    // JMH declares the secondary results with the raw Result type
+    @SuppressWarnings("rawtypes")
+    private static double getAllocation(RunResult result) {
+        double alloc = Double.NaN;
+        for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+            // The label is prefixed with a middle dot in older JMH versions
+            if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                alloc = secondary.getValue().getScore();
+            }
+        }
+        return alloc;
+    }
+
+    private static List<BaselineReport.Score> toScores(Collection<RunResult> results) {
+        List<BaselineReport.Score> scores = new ArrayList<>();
+        for (RunResult result : results) {
+            Result<?> primary = result.getPrimaryResult();
+            double alloc = getAllocation(result);
+            String benchmark = result.getParams().getBenchmark();
+            scores.add(new BaselineReport.Score(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1),
+                result.getParams().getMode().shortLabel(), primary.getScore(), primary.getScoreError(),
+                primary.getScoreUnit(), alloc));
+        }
+        scores.sort(Comparator.comparing(BaselineReport.Score::key));
+        return scores;
+    }
+}
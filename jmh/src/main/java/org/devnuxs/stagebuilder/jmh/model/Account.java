@@ -0,0 +1,31 @@
+package org.devnuxs.stagebuilder.jmh.model;
+
+import org.devnuxs.stagebuilder.api.StageBuilder;
+
+/**
+ * A class with private fields and no setters, which the builder can only set through reflection.
+ */
+@StageBuilder
+public class Account {
+    private String owner;
+    private String iban;
+    private long balance;
+    @StageBuilder.Optional
+    private String currency;
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getIban() {
+        return iban;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+}
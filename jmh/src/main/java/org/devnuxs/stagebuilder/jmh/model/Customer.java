@@ -0,0 +1,47 @@
+package org.devnuxs.stagebuilder.jmh.model;
+
+import org.devnuxs.stagebuilder.api.StageBuilder;
+
+/**
+ * A class with a no-args constructor, built through its setters.
+ */
+@StageBuilder
+public class Customer {
+    private String name;
+    private String email;
+    private int age;
+    @StageBuilder.Optional
+    private String phone;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public void setAge(int age) {
+        this.age = age;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public void setPhone(String phone) {
+        this.phone = phone;
+    }
+}
@@ -0,0 +1,14 @@
+package org.devnuxs.stagebuilder.jmh.model;
+
+import org.devnuxs.stagebuilder.api.StageBuilder;
+
+/**
+ * A record, built through its canonical constructor.
+ *
+ * @param name the name
+ * @param age the age
+ * @param email the email address
+ */
+@StageBuilder
+public record PersonRecord(String name, int age, String email) {
+}
@@ -0,0 +1,29 @@
+package org.devnuxs.stagebuilder.jmh.model;
+
+import java.util.List;
+import java.util.Map;
+
+import org.devnuxs.stagebuilder.api.StageBuilder;
+
+/**
+ * A record where all fields but one are optional or have a default.
+ *
+ * @param host the host
+ * @param port the port
+ * @param timeout the timeout in seconds
+ * @param secure whether to use TLS
+ * @param user the user
+ * @param password the password
+ * @param tags the tags
+ * @param headers the headers
+ */
+@StageBuilder
+public record Settings(String host,
+                       @StageBuilder.Default("8080") int port,
+                       @StageBuilder.Default("30L") long timeout,
+                       @StageBuilder.Default("false") boolean secure,
+                       @StageBuilder.Optional String user,
+                       @StageBuilder.Optional String password,
+                       @StageBuilder.Optional List<String> tags,
+                       @StageBuilder.Optional Map<String, String> headers) {
+}
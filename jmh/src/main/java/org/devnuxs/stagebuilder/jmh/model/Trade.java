@@ -0,0 +1,45 @@
+package org.devnuxs.stagebuilder.jmh.model;
+
+import org.devnuxs.stagebuilder.api.StageBuilder;
+
+/**
+ * A class with an all-args constructor, built through that constructor.
+ */
+@StageBuilder
+public class Trade {
+    private final String symbol;
+    private final long quantity;
+    private final double price;
+    private final String venue;
+
+    /**
+     * Creates a trade.
+     *
+     * @param symbol the symbol
+     * @param quantity the quantity
+     * @param price the price
+     * @param venue the venue
+     */
+    public Trade(String symbol, long quantity, double price, String venue) {
+        this.symbol = symbol;
+        this.quantity = quantity;
+        this.price = price;
+        this.venue = venue;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public String getVenue() {
+        return venue;
+    }
+}
@@ -0,0 +1,59 @@
+package org.devnuxs.stagebuilder.jmh.model;
+
+import org.devnuxs.stagebuilder.api.StageBuilder;
+
+/**
+ * A wide record with 24 required fields, one stage each.
+ *
+ * @param field0 field 0
+ * @param field1 field 1
+ * @param field2 field 2
+ * @param field3 field 3
+ * @param field4 field 4
+ * @param field5 field 5
+ * @param field6 field 6
+ * @param field7 field 7
+ * @param field8 field 8
+ * @param field9 field 9
+ * @param field10 field 10
+ * @param field11 field 11
+ * @param field12 field 12
+ * @param field13 field 13
+ * @param field14 field 14
+ * @param field15 field 15
+ * @param field16 field 16
+ * @param field17 field 17
+ * @param field18 field 18
+ * @param field19 field 19
+ * @param field20 field 20
+ * @param field21 field 21
+ * @param field22 field 22
+ * @param field23 field 23
+ */
+@StageBuilder
+public record Wide(
+                   String field0,
+                   int field1,
+                   long field2,
+                   double field3,
+                   boolean field4,
+                   Integer field5,
+                   String field6,
+                   long field7,
+                   String field8,
+                   int field9,
+                   long field10,
+                   double field11,
+                   boolean field12,
+                   Integer field13,
+                   String field14,
+                   long field15,
+                   String field16,
+                   int field17,
+                   long field18,
+                   double field19,
+                   boolean field20,
+                   Integer field21,
+                   String field22,
+                   long field23) {
+}
@@ -0,0 +1,95 @@
+package org.devnuxs.stagebuilder.jmh;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests storing benchmark scores and comparing them against a baseline.
+ */
+public class BaselineReportTest {
+
+    private static final BaselineReport.Score THROUGHPUT =
+        new BaselineReport.Score("BuilderBenchmark.personBuilder", "thrpt", 0.2, 0.01, "ops/ns", 24);
+    private static final BaselineReport.Score AVERAGE_TIME =
+        new BaselineReport.Score("BuilderBenchmark.personBuilder", "avgt", 5.0, 0.2, "ns/op", 24);
+
+    @Test
+    public void testWriteAndRead(@TempDir Path directory) throws IOException {
+        // Test that a saved baseline reads back with the same scores
+        Path csv = directory.resolve("baseline.csv");
+        BaselineReport.write(csv, List.of(THROUGHPUT, AVERAGE_TIME));
+
+        Map<String, BaselineReport.Score> baseline = BaselineReport.read(csv);
+
+        // Verify the scores are keyed by benchmark and mode
+        assertEquals(THROUGHPUT, baseline.get("BuilderBenchmark.personBuilder/thrpt"));
+        assertEquals(AVERAGE_TIME, baseline.get("BuilderBenchmark.personBuilder/avgt"));
+    }
+
+    @Test
+    public void testSlowdownIsRegression() {
+        // Test that lower throughput and higher average time above the threshold are regressions
+        Map<String, BaselineReport.Score> baseline = Map.of(THROUGHPUT.key(), THROUGHPUT, AVERAGE_TIME.key(), AVERAGE_TIME);
+        List<BaselineReport.Score> scores = List.of(
+            new BaselineReport.Score(THROUGHPUT.benchmark(), "thrpt", 0.15, 0.01, "ops/ns", 24),
+            new BaselineReport.Score(AVERAGE_TIME.benchmark(), "avgt", 7.0, 0.2, "ns/op", 24));
+
+        StringBuilder out = new StringBuilder();
+        int regressions = compare(out, scores, baseline);
+
+        // Verify both modes are reported
+        assertEquals(2, regressions);
+        assertTrue(out.toString().contains("-25.0%  "), out.toString());
+        assertTrue(out.toString().contains("+40.0%  "), out.toString());
+    }
+
+    @Test
+    public void testNoiseAndSpeedupAreNoRegression() {
+        // Test that a slowdown within the error, a speedup and a new benchmark pass
+        Map<String, BaselineReport.Score> baseline = Map.of(THROUGHPUT.key(), THROUGHPUT, AVERAGE_TIME.key(), AVERAGE_TIME);
+        List<BaselineReport.Score> scores = List.of(
+            new BaselineReport.Score(THROUGHPUT.benchmark(), "thrpt", 0.3, 0.01, "ops/ns", 24),
+            new BaselineReport.Score(AVERAGE_TIME.benchmark(), "avgt", 6.0, 1.0, "ns/op", 24.5),
+            new BaselineReport.Score("BuilderBenchmark.personFrom", "avgt", 6.0, 0.2, "ns/op", 24));
+
+        StringBuilder out = new StringBuilder();
+        int regressions = compare(out, scores, baseline);
+
+        // Verify nothing is flagged and the new benchmark is listed
+        assertEquals(0, regressions, out.toString());
+        assertTrue(out.toString().contains("new"), out.toString());
+    }
+
+    @Test
+    public void testMoreAllocationIsRegression() {
+        // Test that an additional object per operation is flagged even at the same speed
+        Map<String, BaselineReport.Score> baseline = Map.of(AVERAGE_TIME.key(), AVERAGE_TIME);
+        List<BaselineReport.Score> scores = List.of(
+            new BaselineReport.Score(AVERAGE_TIME.benchmark(), "avgt", 5.0, 0.2, "ns/op", 48));
+
+        StringBuilder out = new StringBuilder();
+        int regressions = compare(out, scores, baseline);
+
+        // Verify the allocation is reported
+        assertEquals(1, regressions);
+        assertTrue(out.toString().contains("MORE ALLOCATION"), out.toString());
+    }
+
+    private static int compare(StringBuilder out, List<BaselineReport.Score> scores, Map<String, BaselineReport.Score> baseline) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int regressions = BaselineReport.compare(new PrintStream(bytes, true, StandardCharsets.UTF_8), scores, baseline, 0.1);
+        out.append(bytes.toString(StandardCharsets.UTF_8));
+        return regressions;
+    }
+}
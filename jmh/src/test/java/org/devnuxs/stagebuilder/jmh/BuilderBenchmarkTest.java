@@ -0,0 +1,39 @@
+package org.devnuxs.stagebuilder.jmh;
+
+import org.devnuxs.stagebuilder.jmh.model.Account;
+import org.devnuxs.stagebuilder.jmh.model.Customer;
+import org.devnuxs.stagebuilder.jmh.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that the builder benchmarks create the same objects as their hand-written baselines.
+ */
+public class BuilderBenchmarkTest {
+
+    @Test
+    public void testBuildersMatchBaselines() {
+        // Test that every shape compares like with like
+        BuilderBenchmark benchmark = new BuilderBenchmark();
+        benchmark.setup();
+
+        // Verify records are equal to the constructor baseline
+        assertEquals(benchmark.personConstructor(), benchmark.personBuilder());
+        assertEquals(benchmark.personConstructor(), benchmark.personFrom());
+        assertEquals(benchmark.wideConstructor(), benchmark.wideBuilder());
+        assertEquals(benchmark.wideConstructor(), benchmark.wideFrom());
+        assertEquals(benchmark.settingsConstructor(), benchmark.settingsBuilder());
+
+        // Verify classes carry the same values
+        Trade trade = benchmark.tradeFrom();
+        assertEquals(benchmark.tradeConstructor().getSymbol(), trade.getSymbol());
+        assertEquals(benchmark.tradeConstructor().getPrice(), trade.getPrice());
+        Customer customer = benchmark.customerFrom();
+        assertEquals(benchmark.customerConstructor().getEmail(), customer.getEmail());
+        assertEquals(benchmark.customerConstructor().getAge(), customer.getAge());
+        Account account = benchmark.accountFrom();
+        assertEquals(benchmark.name, account.getOwner());
+        assertEquals(benchmark.quantity, account.getBalance());
+    }
+}
@@ -0,0 +1,319 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Generates the {@code <Type>AsyncStageBuilder} companion class.
+ *
+ * <p>The async builder has the same stage order as the stage builder, but every stage accepts
+ * a value, a {@link CompletionStage} of the value or a {@link Callable} computing it.
+ * {@code build()} returns a {@link CompletableFuture} that completes once the last pending input
+ * completes: the pending inputs are combined with a single {@link CompletableFuture#allOf} and
+ * one continuation assembles the instance through the stage builder. No thread blocks while
+ * waiting.</p>
+ *
+ * <p>Callables are started together when the instance is built, on virtual threads or on the
+ * executor passed to {@code buildConcurrently}, so the latency is that of the slowest field. The
+ * first failure completes the result and cancels the remaining callables. Without callables no
+ * task is created.</p>
+ */
+public class AsyncStageBuilderGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "AsyncStageBuilder";
+    private static final String BUILD_STAGE = "BuildStage";
+    private static final ClassName TASK = ClassName.get("", "Task");
+
+    private final StageInterfaceGenerator stageInterfaceGenerator = new StageInterfaceGenerator();
+
+    /**
+     * Gets the name of the async builder class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the async builder class
+     */
+    public static String getAsyncBuilderClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        TypeName futureOfTarget = ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), targetClassName);
+
+        MethodSpec buildMethod = MethodSpec.methodBuilder("build")
+            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+            .addJavadoc("Builds the instance once all pending inputs have completed. Callables run concurrently on\n"
+                + "virtual threads. The returned future completes exceptionally if any input fails.\n")
+            .returns(futureOfTarget)
+            .build();
+        MethodSpec buildConcurrentlyMethod = MethodSpec.methodBuilder("buildConcurrently")
+            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+            .addJavadoc("Builds the instance like {@link #build()}, running callables on {@code executor}.\n")
+            .addParameter(Executor.class, "executor")
+            .returns(futureOfTarget)
+            .build();
+        List<TypeSpec> stageInterfaces = stageInterfaceGenerator.generateCustomStageInterfaces(
+            fields, BUILD_STAGE, List.of(buildMethod, buildConcurrentlyMethod),
+            field -> List.of(TypeName.get(field.type), getStageType(field), getCallableType(field)));
+
+        TypeSpec.Builder asyncBuilder = TypeSpec.classBuilder(getAsyncBuilderClassName(className))
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Staged builder for {@link $T} accepting values, pending results or computations for\n"
+                + "every field.\n", targetClassName)
+            .addTypes(stageInterfaces)
+            .addField(FieldSpec.builder(Executor.class, "VIRTUAL_THREADS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T::startVirtualThread", Thread.class)
+                .build())
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+            .addMethod(MethodSpec.methodBuilder("builder")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Creates a new async staged builder.\n")
+                .returns(ClassName.get("", stageInterfaces.get(0).name))
+                .addStatement("return new Builder()")
+                .build())
+            .addType(generateBuilderClass(fields, stageInterfaces, targetClassName, builderClassName))
+            .addType(generateTaskClass());
+        return asyncBuilder.build();
+    }
+
+    private static TypeName getStageType(FieldInfo field) {
+        return ParameterizedTypeName.get(ClassName.get(CompletionStage.class),
+            WildcardTypeName.subtypeOf(TypeName.get(field.type).box()));
+    }
+
+    private static TypeName getCallableType(FieldInfo field) {
+        return ParameterizedTypeName.get(ClassName.get(Callable.class),
+            WildcardTypeName.subtypeOf(TypeName.get(field.type).box()));
+    }
+
+    private static TypeName getFutureType(FieldInfo field) {
+        return ParameterizedTypeName.get(ClassName.get(CompletableFuture.class),
+            WildcardTypeName.subtypeOf(TypeName.get(field.type).box()));
+    }
+
+    private TypeSpec generateBuilderClass(List<FieldInfo> fields, List<TypeSpec> stageInterfaces,
+                                          ClassName targetClassName, ClassName builderClassName) {
+        TypeSpec.Builder builder = TypeSpec.classBuilder("Builder")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+        for (TypeSpec stageInterface : stageInterfaces) {
+            builder.addSuperinterface(ClassName.get("", stageInterface.name));
+        }
+        for (FieldInfo field : fields) {
+            builder.addField(FieldSpec.builder(TypeName.get(field.type), field.name, Modifier.PRIVATE)
+                .initializer(CodeGenerationUtils.getZeroValue(field.type))
+                .build());
+            builder.addField(getFutureType(field), field.name + "Future", Modifier.PRIVATE);
+            builder.addField(getCallableType(field), field.name + "Callable", Modifier.PRIVATE);
+            if (field.isOptional || field.hasDefault) {
+                builder.addField(boolean.class, field.name + "Set", Modifier.PRIVATE);
+            }
+        }
+
+        // Each stage method returns the interface that declares the next step
+        for (TypeSpec stageInterface : stageInterfaces) {
+            for (MethodSpec stageMethod : stageInterface.methodSpecs) {
+                if (!stageMethod.name.equals("build") && !stageMethod.name.equals("buildConcurrently")) {
+                    builder.addMethod(generateStageMethod(fields, stageMethod));
+                }
+            }
+        }
+        builder.addMethod(MethodSpec.methodBuilder("build")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), targetClassName))
+            .addStatement("return buildConcurrently(VIRTUAL_THREADS)")
+            .build());
+        builder.addMethod(generateBuildConcurrentlyMethod(fields, targetClassName));
+        builder.addMethod(generateCombineMethod(fields, targetClassName));
+        builder.addMethod(generateAssembleMethod(fields, targetClassName, builderClassName));
+        return builder.build();
+    }
+
+    private MethodSpec generateStageMethod(List<FieldInfo> fields, MethodSpec stageMethod) {
+        FieldInfo field = fields.stream().filter(candidate -> candidate.name.equals(stageMethod.name)).findFirst().orElseThrow();
+        TypeName parameterType = stageMethod.parameters.get(0).type;
+        MethodSpec.Builder method = MethodSpec.methodBuilder(field.name)
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(parameterType, field.name)
+            .returns(stageMethod.returnType);
+        if (parameterType.equals(TypeName.get(field.type))) {
+            method.addStatement("this.$N = $N", field.name, field.name)
+                .addStatement("this.$N = null", field.name + "Future")
+                .addStatement("this.$N = null", field.name + "Callable");
+        } else if (parameterType.equals(getStageType(field))) {
+            method.addStatement("this.$N = $N.toCompletableFuture()", field.name + "Future", field.name)
+                .addStatement("this.$N = null", field.name + "Callable");
+        } else {
+            method.addStatement("this.$N = $N", field.name + "Callable", field.name)
+                .addStatement("this.$N = null", field.name + "Future");
+        }
+        if (field.isOptional || field.hasDefault) {
+            method.addStatement("this.$N = true", field.name + "Set");
+        }
+        return method.addStatement("return this").build();
+    }
+
+    private MethodSpec generateBuildConcurrentlyMethod(List<FieldInfo> fields, ClassName targetClassName) {
+        TypeName futureOfTarget = ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), targetClassName);
+        TypeName taskList = ParameterizedTypeName.get(ClassName.get(List.class), ParameterizedTypeName.get(TASK, WildcardTypeName.subtypeOf(Object.class)));
+        CodeBlock.Builder noCallables = CodeBlock.builder();
+        for (int i = 0; i < fields.size(); i++) {
+            noCallables.add(i == 0 ? "$N == null" : " && $N == null", fields.get(i).name + "Callable");
+        }
+        MethodSpec.Builder method = MethodSpec.methodBuilder("buildConcurrently")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(Executor.class, "executor")
+            .returns(futureOfTarget)
+            .beginControlFlow("if ($L)", noCallables.build())
+            .addStatement("return combine()")
+            .endControlFlow()
+            .addStatement("$T tasks = new $T<>()", taskList, ArrayList.class);
+        for (FieldInfo field : fields) {
+            String callable = field.name + "Callable";
+            TypeName boxed = TypeName.get(field.type).box();
+            method.beginControlFlow("if ($N != null)", callable)
+                .addStatement("$T task = new $T<>($N)", ParameterizedTypeName.get(TASK, boxed), TASK, callable)
+                .addStatement("tasks.add(task)")
+                .addStatement("this.$N = task.future", field.name + "Future")
+                .addStatement("this.$N = null", callable)
+                .endControlFlow();
+        }
+        return method.beginControlFlow("try")
+            .beginControlFlow("for ($T<?> task : tasks)", TASK)
+            .addStatement("executor.execute(task)")
+            .endControlFlow()
+            .nextControlFlow("catch ($T e)", RejectedExecutionException.class)
+            .addStatement("tasks.forEach(task -> task.cancel(true))")
+            .addStatement("return $T.failedFuture(e)", CompletableFuture.class)
+            .endControlFlow()
+            .addStatement("$T result = combine()", futureOfTarget)
+            .addComment("Fail fast: the first failure completes the result, which cancels the remaining tasks")
+            .addStatement("result.whenComplete((value, failure) -> $T.cancelOnFailure(tasks, failure))", TASK)
+            .beginControlFlow("for ($T<?> task : tasks)", TASK)
+            .addStatement("task.future.whenComplete((value, failure) -> $T.completeOnFailure(result, failure))", TASK)
+            .endControlFlow()
+            .addStatement("return result")
+            .build();
+    }
+
+    private MethodSpec generateCombineMethod(List<FieldInfo> fields, ClassName targetClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("combine")
+            .addModifiers(Modifier.PRIVATE)
+            .returns(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), targetClassName))
+            .addStatement("int pending = 0");
+        for (FieldInfo field : fields) {
+            method.beginControlFlow("if ($N != null && !$N.isDone())", field.name + "Future", field.name + "Future")
+                .addStatement("pending++")
+                .endControlFlow();
+        }
+        method.beginControlFlow("if (pending == 0)")
+            .beginControlFlow("try")
+            .addStatement("return $T.completedFuture(assemble())", CompletableFuture.class)
+            .nextControlFlow("catch ($T e)", RuntimeException.class)
+            .addComment("Failed inputs and builder errors surface through the returned future")
+            .addStatement("return $T.failedFuture(e)", CompletableFuture.class)
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("$T<?>[] futures = new $T<?>[pending]", CompletableFuture.class, CompletableFuture.class)
+            .addStatement("int index = 0");
+        for (FieldInfo field : fields) {
+            String future = field.name + "Future";
+            method.beginControlFlow("if ($N != null && !$N.isDone())", future, future)
+                .addStatement("futures[index++] = $N", future)
+                .endControlFlow();
+        }
+        return method.addStatement("$T<?> all = pending == 1 ? futures[0] : $T.allOf(futures)",
+                CompletableFuture.class, CompletableFuture.class)
+            .addStatement("return all.thenApply(ignored -> assemble())")
+            .build();
+    }
+
+    private MethodSpec generateAssembleMethod(List<FieldInfo> fields, ClassName targetClassName, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("assemble")
+            .addModifiers(Modifier.PRIVATE)
+            .addJavadoc("Builds the instance from the completed inputs; {@code join()} does not block here.\n")
+            .returns(targetClassName);
+        for (FieldInfo field : fields) {
+            String future = field.name + "Future";
+            method.addStatement("$T $N = $N != null ? $N.join() : this.$N", TypeName.get(field.type),
+                field.name + "Value", future, future, field.name);
+        }
+        CodeBlock build = CodeGenerationUtils.buildThroughStages(fields, builderClassName,
+            field -> field.name + "Value", field -> "this." + field.name + "Set");
+        return method.addCode(build).build();
+    }
+
+    private TypeSpec generateTaskClass() {
+        TypeVariableName t = TypeVariableName.get("T");
+        TypeName taskList = ParameterizedTypeName.get(ClassName.get(List.class), ParameterizedTypeName.get(TASK, WildcardTypeName.subtypeOf(Object.class)));
+        return TypeSpec.classBuilder(TASK.simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Runs a callable and publishes its outcome; cancelling it interrupts the running callable.\n")
+            .addTypeVariable(t)
+            .superclass(ParameterizedTypeName.get(ClassName.get(FutureTask.class), t))
+            .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), t), "future", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", CompletableFuture.class)
+                .build())
+            .addMethod(MethodSpec.constructorBuilder()
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Callable.class), WildcardTypeName.subtypeOf(t)), "callable")
+                .addStatement("super(callable::call)")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("done")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PROTECTED)
+                .beginControlFlow("if (isCancelled())")
+                .addStatement("future.cancel(false)")
+                .addStatement("return")
+                .endControlFlow()
+                .beginControlFlow("try")
+                .addStatement("future.complete(get())")
+                .nextControlFlow("catch ($T e)", ExecutionException.class)
+                .addStatement("future.completeExceptionally(e.getCause())")
+                .nextControlFlow("catch ($T e)", InterruptedException.class)
+                .addStatement("$T.currentThread().interrupt()", Thread.class)
+                .addStatement("future.completeExceptionally(e)")
+                .endControlFlow()
+                .build())
+            .addMethod(MethodSpec.methodBuilder("cancelOnFailure")
+                .addModifiers(Modifier.STATIC)
+                .addParameter(taskList, "tasks")
+                .addParameter(Throwable.class, "failure")
+                .beginControlFlow("if (failure != null)")
+                .beginControlFlow("for ($T<?> task : tasks)", TASK)
+                .addStatement("task.cancel(true)")
+                .endControlFlow()
+                .endControlFlow()
+                .build())
+            .addMethod(MethodSpec.methodBuilder("completeOnFailure")
+                .addModifiers(Modifier.STATIC)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), WildcardTypeName.subtypeOf(Object.class)), "result")
+                .addParameter(Throwable.class, "failure")
+                .beginControlFlow("if (failure != null)")
+                .addStatement("result.completeExceptionally(failure)")
+                .endControlFlow()
+                .build())
+            .build();
+    }
+}
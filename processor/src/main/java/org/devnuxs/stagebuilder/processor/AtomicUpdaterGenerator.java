@@ -0,0 +1,235 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates the {@code <Type>Atomic} companion class.
+ *
+ * <p>For types with a public all-args constructor, such as records, the companion offers
+ * {@code updateX}, {@code setX} and {@code compareAndSetX} per field on an
+ * {@link AtomicReference} holding an instance. Each runs a compare-and-exchange loop that swaps
+ * in a copy made directly through the constructor, and skips the write if the field already has
+ * the new value. Fields of such types must be readable through an accessor, a public getter or
+ * as public fields, so that no retry falls back to reflection. For mutable classes the companion offers the same operations on the fields of
+ * an instance through one {@link VarHandle} per field.</p>
+ */
+public class AtomicUpdaterGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "Atomic";
+
+    /**
+     * Gets the name of the atomic companion class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the atomic companion class
+     */
+    public static String getAtomicClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        TypeSpec.Builder atomic = TypeSpec.classBuilder(getAtomicClassName(className))
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+        if (!fields.isEmpty() && CodeGenerationUtils.hasAllArgsConstructor(fields, members)) {
+            ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+            atomic.addJavadoc("Lock-free field updates of {@link $T} instances held in an {@link $T}.\n",
+                targetClassName, AtomicReference.class);
+            for (FieldInfo field : fields) {
+                // Every retry copies the instance, so each field must be readable without reflection
+                CodeGenerationUtils.requireDirectRead(field, members, "atomic companion");
+            }
+            for (FieldInfo field : fields) {
+                addReferenceMethods(atomic, fields, field, members, targetClassName, builderClassName);
+            }
+        } else {
+            atomic.addJavadoc("Lock-free field updates of mutable {@link $T} instances.\n", targetClassName);
+            addVarHandleMethods(atomic, fields, members, targetClassName);
+        }
+        return atomic.build();
+    }
+
+    private static String getMethodSuffix(FieldInfo field) {
+        return CodeGenerationUtils.capitalizeFirstLetter(field.name);
+    }
+
+    private void addReferenceMethods(TypeSpec.Builder atomic, List<FieldInfo> fields, FieldInfo field, MemberIndex members,
+                                     ClassName targetClassName, ClassName builderClassName) {
+        TypeName referenceType = ParameterizedTypeName.get(ClassName.get(AtomicReference.class), targetClassName);
+        TypeName fieldType = TypeName.get(field.type);
+        String suffix = getMethodSuffix(field);
+        String read = CodeGenerationUtils.getFieldReadCode(field, members, "current", builderClassName);
+        CodeBlock copy = CodeGenerationUtils.getCopyCode(fields, members, targetClassName, "current", builderClassName,
+            candidate -> candidate == field ? "value" : null);
+
+        atomic.addMethod(MethodSpec.methodBuilder("update" + suffix)
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Atomically replaces the instance held by {@code reference} with a copy whose {@code $L} is\n"
+                + "the result of {@code function}, retrying on contention. {@code function} may be called more\n"
+                + "than once and should be free of side effects.\n\n"
+                + "@return the instance held after the update\n", field.name)
+            .addParameter(referenceType, "reference")
+            .addParameter(CodeGenerationUtils.getUnaryOperatorType(field.type), "function")
+            .returns(targetClassName)
+            .addCode(casLoop(field, targetClassName, read, copy, CodeBlock.builder()
+                .addStatement("$T value = $L", fieldType, CodeGenerationUtils.getApplyUnaryOperatorCode(field.type, "function", "currentValue"))
+                .beginControlFlow("if ($L)", CodeGenerationUtils.getSameValueCode(field.type, "value", "currentValue", false))
+                .addStatement("return current")
+                .endControlFlow()
+                .build(), "next"))
+            .build());
+        atomic.addMethod(MethodSpec.methodBuilder("set" + suffix)
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Atomically replaces the instance held by {@code reference} with a copy whose {@code $L} is\n"
+                + "{@code value}. Nothing is written if the field already has that value.\n\n"
+                + "@return the instance held after the update\n", field.name)
+            .addParameter(referenceType, "reference")
+            .addParameter(fieldType, "value")
+            .returns(targetClassName)
+            .addCode(casLoop(field, targetClassName, read, copy, CodeBlock.builder()
+                .beginControlFlow("if ($L)", CodeGenerationUtils.getSameValueCode(field.type, "value", "currentValue", false))
+                .addStatement("return current")
+                .endControlFlow()
+                .build(), "next"))
+            .build());
+        atomic.addMethod(MethodSpec.methodBuilder("compareAndSet" + suffix)
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Atomically replaces the instance held by {@code reference} with a copy whose {@code $L} is\n"
+                + "{@code value}, if the field currently equals {@code expected}.\n\n"
+                + "@return true if the field equals {@code value} afterwards, false if it did not equal\n"
+                + "{@code expected}\n", field.name)
+            .addParameter(referenceType, "reference")
+            .addParameter(fieldType, "expected")
+            .addParameter(fieldType, "value")
+            .returns(boolean.class)
+            .addCode(casLoop(field, targetClassName, read, copy, CodeBlock.builder()
+                .beginControlFlow("if (!($L))", CodeGenerationUtils.getSameValueCode(field.type, "currentValue", "expected", false))
+                .addStatement("return false")
+                .endControlFlow()
+                .beginControlFlow("if ($L)", CodeGenerationUtils.getSameValueCode(field.type, "value", "currentValue", false))
+                .addStatement("return true")
+                .endControlFlow()
+                .build(), "true"))
+            .build());
+    }
+
+    private CodeBlock casLoop(FieldInfo field, ClassName targetClassName, String read, CodeBlock copy,
+                              CodeBlock computeValue, String result) {
+        return CodeBlock.builder()
+            .addStatement("$T current = reference.get()", targetClassName)
+            .beginControlFlow("while (true)")
+            .addStatement("$T currentValue = $L", TypeName.get(field.type), read)
+            .add(computeValue)
+            .addStatement("$T next = $L", targetClassName, copy)
+            .addStatement("$T witness = reference.compareAndExchange(current, next)", targetClassName)
+            .beginControlFlow("if (witness == current)")
+            .addStatement("return $L", result)
+            .endControlFlow()
+            .addStatement("current = witness")
+            .endControlFlow()
+            .build();
+    }
+
+    private void addVarHandleMethods(TypeSpec.Builder atomic, List<FieldInfo> fields, MemberIndex members,
+                                     ClassName targetClassName) {
+        CodeBlock.Builder lookups = CodeBlock.builder()
+            .beginControlFlow("try")
+            .addStatement("$T lookup = $T.privateLookupIn($T.class, $T.lookup())", MethodHandles.Lookup.class,
+                MethodHandles.class, targetClassName, MethodHandles.class);
+        for (FieldInfo field : fields) {
+            checkMutableField(field, members);
+            String handle = CodeGenerationUtils.toConstantName(field.name);
+            TypeName fieldType = TypeName.get(field.type);
+            TypeName erasure = fieldType instanceof ParameterizedTypeName ? ((ParameterizedTypeName) fieldType).rawType : fieldType;
+            AnnotationSpec unchecked = fieldType instanceof ParameterizedTypeName
+                ? AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build()
+                : null;
+            String suffix = getMethodSuffix(field);
+            atomic.addField(VarHandle.class, handle, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+            lookups.addStatement("$N = lookup.findVarHandle($T.class, $S, $T.class)", handle, targetClassName, field.name, erasure);
+
+            MethodSpec.Builder get = MethodSpec.methodBuilder("get" + suffix)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Reads {@code $L} with volatile semantics.\n", field.name)
+                .addParameter(targetClassName, "obj")
+                .returns(fieldType)
+                .addStatement("return ($T) $N.getVolatile(obj)", fieldType, handle);
+            MethodSpec.Builder update = MethodSpec.methodBuilder("update" + suffix)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Atomically replaces {@code $L} with the result of {@code function}, retrying on\n"
+                    + "contention. Nothing is written if the value is unchanged.\n\n"
+                    + "@return the value after the update\n", field.name)
+                .addParameter(targetClassName, "obj")
+                .addParameter(CodeGenerationUtils.getUnaryOperatorType(field.type), "function")
+                .returns(fieldType)
+                .addStatement("$T current = ($T) $N.getVolatile(obj)", fieldType, fieldType, handle)
+                .beginControlFlow("while (true)")
+                .addStatement("$T value = $L", fieldType, CodeGenerationUtils.getApplyUnaryOperatorCode(field.type, "function", "current"))
+                .beginControlFlow("if ($L)", CodeGenerationUtils.getSameValueCode(field.type, "value", "current", true))
+                .addStatement("return current")
+                .endControlFlow()
+                .addStatement("$T witness = ($T) $N.compareAndExchange(obj, current, value)", fieldType, fieldType, handle)
+                .beginControlFlow("if ($L)", CodeGenerationUtils.getSameValueCode(field.type, "witness", "current", true))
+                .addStatement("return value")
+                .endControlFlow()
+                .addStatement("current = witness")
+                .endControlFlow();
+            if (unchecked != null) {
+                get.addAnnotation(unchecked);
+                update.addAnnotation(unchecked);
+            }
+            atomic.addMethod(get.build());
+            atomic.addMethod(MethodSpec.methodBuilder("set" + suffix)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Writes {@code $L} with volatile semantics.\n", field.name)
+                .addParameter(targetClassName, "obj")
+                .addParameter(fieldType, "value")
+                .addStatement("$N.setVolatile(obj, value)", handle)
+                .build());
+            atomic.addMethod(MethodSpec.methodBuilder("compareAndSet" + suffix)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Atomically sets {@code $L} to {@code value} if it is {@code expected}, comparing references\n"
+                    + "by identity and floating point values bitwise.\n", field.name)
+                .addParameter(targetClassName, "obj")
+                .addParameter(fieldType, "expected")
+                .addParameter(fieldType, "value")
+                .returns(boolean.class)
+                .addStatement("return $N.compareAndSet(obj, expected, value)", handle)
+                .build());
+            atomic.addMethod(update.build());
+        }
+        lookups.nextControlFlow("catch ($T e)", ReflectiveOperationException.class)
+            .addStatement("throw new $T(e)", ExceptionInInitializerError.class)
+            .endControlFlow();
+        atomic.addStaticBlock(lookups.build());
+    }
+
+    private static void checkMutableField(FieldInfo field, MemberIndex members) {
+        VariableElement variable = members.getField(field.name);
+        if (variable != null && !variable.getModifiers().contains(Modifier.FINAL) && !variable.getModifiers().contains(Modifier.STATIC)) {
+            if (field.type.getKind() == TypeKind.TYPEVAR) {
+                throw new UnsupportedFieldException(field, "Field '" + field.name + "' of type variable type " + field.type
+                    + " is not supported by the atomic companion");
+            }
+            return;
+        }
+        throw new UnsupportedFieldException(field, "Field '" + field.name + "' has no non-final instance field for atomic access;"
+            + " declare a public all-args constructor to update immutable instances instead");
+    }
+}
@@ -0,0 +1,451 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+
+import javax.lang.model.element.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the {@code <Type>BinaryCodec} companion class.
+ *
+ * <p>The codec writes a message header made of the schema fingerprint and the field count,
+ * followed by the fields in declaration order. Primitives use fixed-width encodings except
+ * {@code int} and {@code long}, which use zig-zag varints. Strings are length-prefixed UTF-8,
+ * enums are encoded by ordinal and wrapper types carry a presence byte.</p>
+ *
+ * <p>Fields are read through record accessors, public getters or public fields, never through
+ * reflection, so fields without any of them are rejected.</p>
+ *
+ * <p>Fields can be appended to a type without breaking existing data: the reader accepts any
+ * message whose fields are a prefix of the current field list and leaves the missing fields
+ * to the defaults of the generated builder.</p>
+ */
+public class BinaryCodecGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "BinaryCodec";
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Gets the name of the codec class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the codec class
+     */
+    public static String getCodecClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    /**
+     * Computes the schema fingerprints of every prefix of the field list.
+     *
+     * <p>The fingerprint is a 64-bit FNV-1a hash over the names and types of the fields. The
+     * element at index {@code n} is the fingerprint of the first {@code n} fields.</p>
+     *
+     * @param fields the fields of the annotated type
+     * @return the prefix fingerprints, with {@code fields.size() + 1} elements
+     */
+    public static long[] computePrefixFingerprints(List<FieldInfo> fields) {
+        long[] fingerprints = new long[fields.size() + 1];
+        long hash = FNV_OFFSET_BASIS;
+        fingerprints[0] = hash;
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            String entry = field.name + ":" + field.type.toString() + ";";
+            for (byte b : entry.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xFF;
+                hash *= FNV_PRIME;
+            }
+            fingerprints[i + 1] = hash;
+        }
+        return fingerprints;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        Set<ValueKind> kinds = EnumSet.noneOf(ValueKind.class);
+        for (FieldInfo field : fields) {
+            ValueKind kind = ValueKind.of(field.type);
+            if (kind == ValueKind.OTHER) {
+                throw new UnsupportedFieldException(field, "Field '" + field.name + "' of type " + field.type
+                    + " is not supported by the binary codec; supported are primitives, their wrappers, String, enums and byte[]");
+            }
+            CodeGenerationUtils.requireDirectRead(field, members, "binary codec");
+            kinds.add(kind.unboxed());
+        }
+
+        TypeSpec.Builder codec = TypeSpec.classBuilder(getCodecClassName(className))
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Compact binary codec for {@link $T}.\n", targetClassName);
+
+        addSchemaConstants(codec, fields);
+        codec.addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+        codec.addMethod(createWriteMethod(targetClassName));
+        codec.addMethod(createWriteFieldsMethod(fields, targetClassName, members, builderClassName));
+        codec.addMethod(createReadMethod(targetClassName));
+        codec.addMethod(createCheckSchemaMethod(className));
+        codec.addMethod(createReadFieldsMethod(fields, targetClassName, builderClassName));
+        addHelperMethods(codec, kinds);
+        return codec.build();
+    }
+
+    private void addSchemaConstants(TypeSpec.Builder codec, List<FieldInfo> fields) {
+        long[] fingerprints = computePrefixFingerprints(fields);
+        int minFieldCount = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            if (!fields.get(i).isOptional && !fields.get(i).hasDefault) {
+                minFieldCount = i + 1;
+            }
+        }
+        CodeBlock.Builder prefixes = CodeBlock.builder().add("{");
+        for (int i = 0; i < fingerprints.length; i++) {
+            prefixes.add(i == 0 ? "$LL" : ", $LL", toHexLiteral(fingerprints[i]));
+        }
+        prefixes.add("}");
+
+        codec.addField(FieldSpec.builder(long.class, "SCHEMA_FINGERPRINT", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Fingerprint of the current field list.\n")
+            .initializer("$LL", toHexLiteral(fingerprints[fields.size()]))
+            .build());
+        codec.addField(FieldSpec.builder(int.class, "FIELD_COUNT", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Number of fields written by this codec.\n")
+            .initializer("$L", fields.size())
+            .build());
+        codec.addField(FieldSpec.builder(int.class, "MIN_FIELD_COUNT", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .initializer("$L", minFieldCount)
+            .build());
+        codec.addField(FieldSpec.builder(long[].class, "PREFIX_FINGERPRINTS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .initializer(prefixes.build())
+            .build());
+        for (FieldInfo field : fields) {
+            if (ValueKind.of(field.type) == ValueKind.ENUM) {
+                TypeName enumType = TypeName.get(field.type);
+                codec.addField(FieldSpec.builder(ArrayTypeName.of(enumType), getEnumValuesName(field), Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$T.values()", enumType)
+                    .build());
+            }
+        }
+    }
+
+    private static String toHexLiteral(long value) {
+        return "0x" + Long.toHexString(value);
+    }
+
+    private static String getEnumValuesName(FieldInfo field) {
+        return CodeGenerationUtils.toConstantName(field.name) + "_VALUES";
+    }
+
+    private MethodSpec createWriteMethod(ClassName targetClassName) {
+        return MethodSpec.methodBuilder("write")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Writes the schema header and all fields of {@code obj} at the position of {@code buf}.\n")
+            .addParameter(targetClassName, "obj")
+            .addParameter(ByteBuffer.class, "buf")
+            .addStatement("buf.putLong(SCHEMA_FINGERPRINT)")
+            .addStatement("writeVarLong(buf, FIELD_COUNT)")
+            .addStatement("writeFields(obj, buf)")
+            .build();
+    }
+
+    private MethodSpec createWriteFieldsMethod(List<FieldInfo> fields, ClassName targetClassName,
+                                               MemberIndex members, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("writeFields")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Writes all fields of {@code obj} without the schema header.\n")
+            .addParameter(targetClassName, "obj")
+            .addParameter(ByteBuffer.class, "buf");
+        for (FieldInfo field : fields) {
+            String local = field.name + "Value";
+            method.addStatement("$T $N = $L", TypeName.get(field.type), local,
+                CodeGenerationUtils.getFieldReadCode(field, members, "obj", builderClassName));
+            ValueKind kind = ValueKind.of(field.type);
+            if (kind.isBoxed()) {
+                method.beginControlFlow("if ($N == null)", local)
+                    .addStatement("buf.put((byte) 0)")
+                    .nextControlFlow("else")
+                    .addStatement("buf.put((byte) 1)")
+                    .addStatement(writeCode(kind.unboxed(), local))
+                    .endControlFlow();
+            } else {
+                method.addStatement(writeCode(kind, local));
+            }
+        }
+        return method.build();
+    }
+
+    private CodeBlock writeCode(ValueKind kind, String value) {
+        switch (kind) {
+            case BOOLEAN: return CodeBlock.of("buf.put((byte) ($N ? 1 : 0))", value);
+            case BYTE: return CodeBlock.of("buf.put($N)", value);
+            case SHORT: return CodeBlock.of("buf.putShort($N)", value);
+            case CHAR: return CodeBlock.of("buf.putChar($N)", value);
+            case INT: return CodeBlock.of("writeVarLong(buf, (($N << 1) ^ ($N >> 31)) & 0xFFFFFFFFL)", value, value);
+            case LONG: return CodeBlock.of("writeVarLong(buf, ($N << 1) ^ ($N >> 63))", value, value);
+            case FLOAT: return CodeBlock.of("buf.putFloat($N)", value);
+            case DOUBLE: return CodeBlock.of("buf.putDouble($N)", value);
+            case STRING: return CodeBlock.of("writeString(buf, $N)", value);
+            case ENUM: return CodeBlock.of("writeVarLong(buf, $N == null ? 0L : $N.ordinal() + 1L)", value, value);
+            case BYTE_ARRAY: return CodeBlock.of("writeBytes(buf, $N)", value);
+            default: throw new IllegalArgumentException("Unsupported value kind " + kind);
+        }
+    }
+
+    private CodeBlock readCode(FieldInfo field, ValueKind kind) {
+        switch (kind) {
+            case BOOLEAN: return CodeBlock.of("buf.get() != 0");
+            case BYTE: return CodeBlock.of("buf.get()");
+            case SHORT: return CodeBlock.of("buf.getShort()");
+            case CHAR: return CodeBlock.of("buf.getChar()");
+            case INT: return CodeBlock.of("readZigZagInt(buf)");
+            case LONG: return CodeBlock.of("readZigZagLong(buf)");
+            case FLOAT: return CodeBlock.of("buf.getFloat()");
+            case DOUBLE: return CodeBlock.of("buf.getDouble()");
+            case STRING: return CodeBlock.of("readString(buf)");
+            case ENUM: return CodeBlock.of("readEnum(buf, $N)", getEnumValuesName(field));
+            case BYTE_ARRAY: return CodeBlock.of("readBytes(buf)");
+            default:
+                if (kind.isBoxed()) {
+                    return CodeBlock.of("buf.get() == 0 ? null : $L", readCode(field, kind.unboxed()));
+                }
+                throw new IllegalArgumentException("Unsupported value kind " + kind);
+        }
+    }
+
+    private MethodSpec createReadMethod(ClassName targetClassName) {
+        return MethodSpec.methodBuilder("read")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Reads a message written by {@link #write} at the position of {@code buf}.\n")
+            .addParameter(ByteBuffer.class, "buf")
+            .returns(targetClassName)
+            .addStatement("long fingerprint = buf.getLong()")
+            .addStatement("int fieldCount = (int) readVarLong(buf)")
+            .addStatement("checkSchema(fingerprint, fieldCount)")
+            .addStatement("return readFields(buf, fieldCount)")
+            .build();
+    }
+
+    private MethodSpec createCheckSchemaMethod(String className) {
+        return MethodSpec.methodBuilder("checkSchema")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Verifies that data written with the given schema can be read by this codec.\n\n"
+                + "@param fingerprint the fingerprint of the writer's field list\n"
+                + "@param fieldCount the number of fields written\n"
+                + "@throws IllegalArgumentException if the writer's fields are not a compatible prefix\n")
+            .addParameter(long.class, "fingerprint")
+            .addParameter(int.class, "fieldCount")
+            .beginControlFlow("if (fieldCount < MIN_FIELD_COUNT || fieldCount > FIELD_COUNT || PREFIX_FINGERPRINTS[fieldCount] != fingerprint)")
+            .addStatement("throw new $T($S + $T.toHexString(fingerprint) + $S + fieldCount + $S)",
+                IllegalArgumentException.class, "Incompatible schema 0x", Long.class, " with ",
+                " fields for " + className)
+            .endControlFlow()
+            .build();
+    }
+
+    private MethodSpec createReadFieldsMethod(List<FieldInfo> fields,
+                                              ClassName targetClassName, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("readFields")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Reads the first {@code fieldCount} fields without a schema header.\n\n"
+                + "<p>Fields beyond {@code fieldCount} keep the defaults of the stage builder.</p>\n")
+            .addParameter(ByteBuffer.class, "buf")
+            .addParameter(int.class, "fieldCount")
+            .returns(targetClassName);
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            String local = field.name + "Value";
+            CodeBlock read = readCode(field, ValueKind.of(field.type));
+            if (!field.isOptional && !field.hasDefault) {
+                method.addStatement("$T $N = $L", TypeName.get(field.type), local, read);
+            } else {
+                method.addStatement("$T $N = $L", TypeName.get(field.type), local, CodeGenerationUtils.getZeroValue(field.type));
+                method.beginControlFlow("if (fieldCount > $L)", i)
+                    .addStatement("$N = $L", local, read)
+                    .endControlFlow();
+            }
+        }
+        method.addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName,
+            field -> field.name + "Value",
+            field -> "fieldCount > " + fields.indexOf(field)));
+        return method.build();
+    }
+
+    private void addHelperMethods(TypeSpec.Builder codec, Set<ValueKind> kinds) {
+        codec.addMethod(MethodSpec.methodBuilder("writeVarLong")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(ByteBuffer.class, "buf")
+            .addParameter(long.class, "value")
+            .beginControlFlow("while ((value & ~0x7FL) != 0)")
+            .addStatement("buf.put((byte) ((value & 0x7F) | 0x80))")
+            .addStatement("value >>>= 7")
+            .endControlFlow()
+            .addStatement("buf.put((byte) value)")
+            .build());
+        codec.addMethod(MethodSpec.methodBuilder("readVarLong")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(ByteBuffer.class, "buf")
+            .returns(long.class)
+            .addStatement("long result = 0")
+            .beginControlFlow("for (int shift = 0; shift < 64; shift += 7)")
+            .addStatement("byte b = buf.get()")
+            .addStatement("result |= (long) (b & 0x7F) << shift")
+            .beginControlFlow("if (b >= 0)")
+            .addStatement("return result")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("throw new $T($S)", IllegalArgumentException.class, "Malformed varint")
+            .build());
+        if (kinds.contains(ValueKind.INT)) {
+            codec.addMethod(MethodSpec.methodBuilder("readZigZagInt")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ByteBuffer.class, "buf")
+                .returns(int.class)
+                .addStatement("int value = (int) readVarLong(buf)")
+                .addStatement("return (value >>> 1) ^ -(value & 1)")
+                .build());
+        }
+        if (kinds.contains(ValueKind.LONG)) {
+            codec.addMethod(MethodSpec.methodBuilder("readZigZagLong")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ByteBuffer.class, "buf")
+                .returns(long.class)
+                .addStatement("long value = readVarLong(buf)")
+                .addStatement("return (value >>> 1) ^ -(value & 1)")
+                .build());
+        }
+        if (kinds.contains(ValueKind.STRING)) {
+            codec.addMethod(createWriteStringMethod());
+            codec.addMethod(createReadStringMethod());
+        }
+        if (kinds.contains(ValueKind.ENUM)) {
+            TypeVariableName e = TypeVariableName.get("E");
+            codec.addMethod(MethodSpec.methodBuilder("readEnum")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addTypeVariable(e)
+                .addParameter(ByteBuffer.class, "buf")
+                .addParameter(ArrayTypeName.of(e), "values")
+                .returns(e)
+                .addStatement("int ordinal = (int) readVarLong(buf)")
+                .addStatement("return ordinal == 0 ? null : values[ordinal - 1]")
+                .build());
+        }
+        if (kinds.contains(ValueKind.BYTE_ARRAY)) {
+            codec.addMethod(MethodSpec.methodBuilder("writeBytes")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ByteBuffer.class, "buf")
+                .addParameter(byte[].class, "value")
+                .beginControlFlow("if (value == null)")
+                .addStatement("buf.put((byte) 0)")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("writeVarLong(buf, value.length + 1L)")
+                .addStatement("buf.put(value)")
+                .build());
+            codec.addMethod(MethodSpec.methodBuilder("readBytes")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ByteBuffer.class, "buf")
+                .returns(byte[].class)
+                .addStatement("int length = (int) readVarLong(buf) - 1")
+                .beginControlFlow("if (length < 0)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("byte[] value = new byte[length]")
+                .addStatement("buf.get(value)")
+                .addStatement("return value")
+                .build());
+        }
+    }
+
+    private MethodSpec createWriteStringMethod() {
+        // Encodes UTF-8 straight into the buffer; unpaired surrogates become '?' like String.getBytes
+        return MethodSpec.methodBuilder("writeString")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(ByteBuffer.class, "buf")
+            .addParameter(String.class, "value")
+            .beginControlFlow("if (value == null)")
+            .addStatement("buf.put((byte) 0)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("int length = value.length()")
+            .addStatement("int utf8Length = 0")
+            .beginControlFlow("for (int i = 0; i < length; i++)")
+            .addStatement("char c = value.charAt(i)")
+            .beginControlFlow("if (c < 0x80)")
+            .addStatement("utf8Length += 1")
+            .nextControlFlow("else if (c < 0x800)")
+            .addStatement("utf8Length += 2")
+            .nextControlFlow("else if ($T.isHighSurrogate(c) && i + 1 < length && $T.isLowSurrogate(value.charAt(i + 1)))",
+                Character.class, Character.class)
+            .addStatement("utf8Length += 4")
+            .addStatement("i++")
+            .nextControlFlow("else if ($T.isSurrogate(c))", Character.class)
+            .addStatement("utf8Length += 1")
+            .nextControlFlow("else")
+            .addStatement("utf8Length += 3")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("writeVarLong(buf, utf8Length + 1L)")
+            .beginControlFlow("for (int i = 0; i < length; i++)")
+            .addStatement("char c = value.charAt(i)")
+            .beginControlFlow("if (c < 0x80)")
+            .addStatement("buf.put((byte) c)")
+            .nextControlFlow("else if (c < 0x800)")
+            .addStatement("buf.put((byte) (0xC0 | (c >> 6)))")
+            .addStatement("buf.put((byte) (0x80 | (c & 0x3F)))")
+            .nextControlFlow("else if ($T.isHighSurrogate(c) && i + 1 < length && $T.isLowSurrogate(value.charAt(i + 1)))",
+                Character.class, Character.class)
+            .addStatement("int codePoint = $T.toCodePoint(c, value.charAt(++i))", Character.class)
+            .addStatement("buf.put((byte) (0xF0 | (codePoint >> 18)))")
+            .addStatement("buf.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))")
+            .addStatement("buf.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))")
+            .addStatement("buf.put((byte) (0x80 | (codePoint & 0x3F)))")
+            .nextControlFlow("else if ($T.isSurrogate(c))", Character.class)
+            .addStatement("buf.put((byte) '?')")
+            .nextControlFlow("else")
+            .addStatement("buf.put((byte) (0xE0 | (c >> 12)))")
+            .addStatement("buf.put((byte) (0x80 | ((c >> 6) & 0x3F)))")
+            .addStatement("buf.put((byte) (0x80 | (c & 0x3F)))")
+            .endControlFlow()
+            .endControlFlow()
+            .build();
+    }
+
+    private MethodSpec createReadStringMethod() {
+        return MethodSpec.methodBuilder("readString")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(ByteBuffer.class, "buf")
+            .returns(String.class)
+            .addStatement("int length = (int) readVarLong(buf) - 1")
+            .beginControlFlow("if (length < 0)")
+            .addStatement("return null")
+            .endControlFlow()
+            .beginControlFlow("if (length > buf.remaining())")
+            .addStatement("throw new $T()", BufferUnderflowException.class)
+            .endControlFlow()
+            .addStatement("int position = buf.position()")
+            .addStatement("String value")
+            .beginControlFlow("if (buf.hasArray())")
+            .addStatement("value = new String(buf.array(), buf.arrayOffset() + position, length, $T.UTF_8)", StandardCharsets.class)
+            .nextControlFlow("else")
+            .addStatement("byte[] bytes = new byte[length]")
+            .addStatement("buf.get(position, bytes)")
+            .addStatement("value = new String(bytes, $T.UTF_8)", StandardCharsets.class)
+            .endControlFlow()
+            .addStatement("buf.position(position + length)")
+            .addStatement("return value")
+            .build();
+    }
+}
@@ -1,36 +1,53 @@
 package org.devnuxs.stagebuilder.processor;
 
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 
-import javax.lang.model.element.Element;
-import javax.lang.model.element.ElementKind;
-import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
-import javax.lang.model.element.TypeElement;
-import javax.lang.model.element.VariableElement;
 import javax.lang.model.util.Elements;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Generates the Builder inner class for the stage builder pattern.
  */
 public class BuilderClassGenerator {
 
+    private final StageInterfaceGenerator stageInterfaceGenerator = new StageInterfaceGenerator();
+
     /**
      * Generates the Builder inner class.
      * 
      * @param fields the list of fields to include in the builder
      * @param className the name of the class being built
-     * @param typeElement the type element of the class being built
+     * @param members the member index of the class being built
+     * @param packageName the package name
+     * @return the TypeSpec for the Builder inner class
+     */
+    public TypeSpec generateBuilderInnerClass(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        return generateBuilderInnerClass(fields, className, members, packageName, false);
+    }
+    
+    /**
+     * Generates the Builder inner class, optionally without reflective field access.
+     * 
+     * @param fields the list of fields to include in the builder
+     * @param className the name of the class being built
+     * @param members the member index of the class being built
      * @param packageName the package name
+     * @param strict whether fields are only set directly, which requires every field to be settable
+     *               through {@link CodeGenerationUtils#getFieldWriteCode} or the all-args constructor
      * @return the TypeSpec for the Builder inner class
      */
-    public TypeSpec generateBuilderInnerClass(List<FieldInfo> fields, String className, TypeElement typeElement, String packageName) {
+    public TypeSpec generateBuilderInnerClass(List<FieldInfo> fields, String className, MemberIndex members,
+                                              String packageName, boolean strict) {
         TypeSpec.Builder builder = TypeSpec.classBuilder("Builder")
             .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
 
@@ -40,9 +57,10 @@ public class BuilderClassGenerator {
         List<FieldInfo> optionalFields = getOptionalFields(fields);
 
         addSuperInterfaces(builder, requiredFields);
-        addFields(builder, fields);
+        // Required fields are set once by their stage, only BuildStage fields accumulate
+        addFields(builder, fields, optionalFields);
         addSetterMethods(builder, requiredFields, optionalFields);
-        addBuildMethodSmart(builder, fields, optionalFields, className, typeElement, packageName);
+        addBuildMethodSmart(builder, fields, optionalFields, optionalFields, className, members, packageName, strict);
         return builder.build();
     }
     
@@ -51,18 +69,33 @@ public class BuilderClassGenerator {
      * 
      * @param fields the list of fields to include in the builder
      * @param className the name of the class being built
-     * @param typeElement the type element of the class being built
+     * @param members the member index of the class being built
+     * @param packageName the package name
+     * @return the TypeSpec for the FromBuilder inner class
+     */
+    public TypeSpec generateFromBuilderInnerClass(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        return generateFromBuilderInnerClass(fields, className, members, packageName, false);
+    }
+    
+    /**
+     * Generates the FromBuilder inner class, optionally without reflective field access.
+     * 
+     * @param fields the list of fields to include in the builder
+     * @param className the name of the class being built
+     * @param members the member index of the class being built
      * @param packageName the package name
+     * @param strict whether fields are only set directly, see {@link #generateBuilderInnerClass}
      * @return the TypeSpec for the FromBuilder inner class
      */
-    public TypeSpec generateFromBuilderInnerClass(List<FieldInfo> fields, String className, TypeElement typeElement, String packageName) {
+    public TypeSpec generateFromBuilderInnerClass(List<FieldInfo> fields, String className, MemberIndex members,
+                                                  String packageName, boolean strict) {
         TypeSpec.Builder builder = TypeSpec.classBuilder("FromBuilder")
             .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
             .addSuperinterface(ClassName.get("", "FromStage"));
 
-        addFields(builder, fields);
+        addFields(builder, fields, fields);
         addFromBuilderSetterMethods(builder, fields);
-        addBuildMethodSmart(builder, fields, getOptionalFields(fields), className, typeElement, packageName);
+        addBuildMethodSmart(builder, fields, getOptionalFields(fields), fields, className, members, packageName, strict);
         
         return builder.build();
     }
@@ -75,9 +108,11 @@ public class BuilderClassGenerator {
                 .addParameter(TypeName.get(field.type), field.name)
                 .returns(ClassName.get("", "FromStage"))
                 .addStatement("this.$N = $N", field.name, field.name)
+                .addCode(resetAccumulator(field))
                 .addStatement("return this")
                 .build();
             builder.addMethod(setterMethod);
+            addAccumulatorMethods(builder, field, "FromStage");
         }
     }
     
@@ -106,7 +141,7 @@ public class BuilderClassGenerator {
         // Don't implement FromStage in Builder to avoid method conflicts
     }
     
-    private void addFields(TypeSpec.Builder builder, List<FieldInfo> fields) {
+    private void addFields(TypeSpec.Builder builder, List<FieldInfo> fields, List<FieldInfo> accumulatedFields) {
         for (FieldInfo field : fields) {
             FieldSpec.Builder fieldSpecBuilder = FieldSpec.builder(TypeName.get(field.type), field.name, Modifier.PRIVATE);
             if (field.hasDefault && field.defaultValue != null && !field.defaultValue.isEmpty()) {
@@ -118,6 +153,93 @@ public class BuilderClassGenerator {
                 }
             }
             builder.addField(fieldSpecBuilder.build());
+            CollectionKind kind = CollectionKind.of(field.type);
+            if (kind != null && accumulatedFields.contains(field)) {
+                builder.addField(kind.getAccumulatorType(field.type), field.name + "Accumulator", Modifier.PRIVATE);
+                builder.addField(TypeName.INT, field.name + "Capacity", Modifier.PRIVATE);
+            }
+        }
+    }
+    
+    private CodeBlock resetAccumulator(FieldInfo field) {
+        if (CollectionKind.of(field.type) == null) {
+            return CodeBlock.of("");
+        }
+        return CodeBlock.builder().addStatement("this.$N = null", field.name + "Accumulator").build();
+    }
+    
+    /**
+     * Adds the element-wise accumulator methods of a collection field.
+     * 
+     * <p>The accumulator is created on the first mutation, presized with the capacity hint, and
+     * starts from the current value, so a collection taken over by {@code from()} is only copied
+     * when it is actually changed.</p>
+     */
+    private void addAccumulatorMethods(TypeSpec.Builder builder, FieldInfo field, String returnType) {
+        CollectionKind kind = CollectionKind.of(field.type);
+        if (kind == null) {
+            return;
+        }
+        String accumulator = field.name + "Accumulator";
+        String capacity = field.name + "Capacity";
+        TypeName accumulatorType = kind.getAccumulatorType(field.type);
+        
+        builder.addMethod(MethodSpec.methodBuilder(accumulator)
+            .addModifiers(Modifier.PRIVATE)
+            .returns(accumulatorType)
+            .beginControlFlow("if (this.$N == null)", accumulator)
+            .addStatement("int size = Math.max(this.$N, this.$N != null ? this.$N.size() : 0)", capacity, field.name, field.name)
+            .addStatement("this.$N = $L", accumulator, kind.newAccumulator("size"))
+            .beginControlFlow("if (this.$N != null)", field.name)
+            .addStatement("this.$N.$N(this.$N)", accumulator, kind.getAddAllMethod(), field.name)
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("return this.$N", accumulator)
+            .build());
+        
+        for (Map.Entry<CollectionKind.Accumulation, MethodSpec> entry
+                : stageInterfaceGenerator.generateAccumulatorMethods(field, returnType).entrySet()) {
+            MethodSpec method = entry.getValue();
+            MethodSpec.Builder implementation = MethodSpec.methodBuilder(method.name)
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addParameters(method.parameters)
+                .returns(method.returnType);
+            switch (entry.getKey()) {
+                case ADD -> implementation.addStatement("$N().$N($L)", accumulator, kind.getAddMethod(),
+                    method.parameters.stream().map(parameter -> parameter.name).collect(Collectors.joining(", ")));
+                case ADD_ALL -> implementation.addStatement("$N().$N($N)", accumulator, kind.getAddAllMethod(), method.parameters.get(0));
+                case CAPACITY -> {
+                    implementation.addStatement("this.$N = expectedSize", capacity);
+                    CodeBlock ensureCapacity = kind.ensureCapacity(accumulator, "expectedSize");
+                    if (ensureCapacity != null) {
+                        implementation.beginControlFlow("if (this.$N != null)", accumulator)
+                            .addStatement(ensureCapacity)
+                            .endControlFlow();
+                    }
+                }
+            }
+            builder.addMethod(implementation.addStatement("return this").build());
+        }
+    }
+    
+    /**
+     * Wraps the accumulators of collection fields into their final unmodifiable values without copying.
+     * 
+     * <p>The accumulator is released, so a mutation after {@code build()} starts a new copy instead
+     * of changing a collection that is already owned by a built instance.</p>
+     */
+    private void addAccumulatorFreeze(MethodSpec.Builder buildMethod, List<FieldInfo> accumulatedFields) {
+        for (FieldInfo field : accumulatedFields) {
+            CollectionKind kind = CollectionKind.of(field.type);
+            if (kind == null) {
+                continue;
+            }
+            String accumulator = field.name + "Accumulator";
+            buildMethod.beginControlFlow("if (this.$N != null)", accumulator)
+                .addStatement("this.$N = $L", field.name, kind.unmodifiable("this." + accumulator))
+                .addStatement("this.$N = null", accumulator)
+                .endControlFlow();
         }
     }
     
@@ -156,9 +278,11 @@ public class BuilderClassGenerator {
                 .addParameter(TypeName.get(optionalField.type), optionalField.name)
                 .returns(ClassName.get("", CodeGenerationUtils.getBuildStage()))
                 .addStatement("this.$N = $N", optionalField.name, optionalField.name)
+                .addCode(resetAccumulator(optionalField))
                 .addStatement("return this")
                 .build();
             builder.addMethod(setterMethod);
+            addAccumulatorMethods(builder, optionalField, CodeGenerationUtils.getBuildStage());
         }
     }
     
@@ -174,18 +298,22 @@ public class BuilderClassGenerator {
     
     /**
      * Adds a build method that uses the all-args constructor if available, otherwise falls back to no-args constructor and setters/fields.
+     * In strict mode, setters and fields are accessed directly instead of through reflection.
      */
-    private void addBuildMethodSmart(TypeSpec.Builder builder, List<FieldInfo> fields, List<FieldInfo> optionalFields, String className, TypeElement typeElement, String packageName) {
-        ClassName targetClassName = CodeGenerationUtils.getClassName(typeElement, packageName);
+    private void addBuildMethodSmart(TypeSpec.Builder builder, List<FieldInfo> fields, List<FieldInfo> optionalFields,
+                                     List<FieldInfo> accumulatedFields, String className, MemberIndex members, String packageName,
+                                     boolean strict) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
         
         MethodSpec.Builder buildMethod = MethodSpec.methodBuilder("build")
             .addModifiers(Modifier.PUBLIC)
             .addAnnotation(Override.class)
             .returns(targetClassName);
+        addAccumulatorFreeze(buildMethod, accumulatedFields);
 
         // Always try to use all-args constructor ONLY if it matches the number of fields, otherwise use no-args constructor
         boolean useAllArgsConstructor = false;
-        if (!fields.isEmpty() && hasAllArgsConstructor(fields, typeElement)) {
+        if (!fields.isEmpty() && CodeGenerationUtils.hasAllArgsConstructor(fields, members)) {
             useAllArgsConstructor = true;
         }
 
@@ -202,9 +330,13 @@ public class BuilderClassGenerator {
             buildMethod.addStatement("$T obj = new $T()", targetClassName, targetClassName);
             // Set all fields (required, optional, default) via setters or direct access
             for (FieldInfo field : fields) {
+                if (strict) {
+                    buildMethod.addStatement("$L", CodeGenerationUtils.getFieldWriteCode(field, members, "obj", "this." + field.name));
+                    continue;
+                }
                 String setterName = "set" + Character.toUpperCase(field.name.charAt(0)) + field.name.substring(1);
                 buildMethod.beginControlFlow("try")
-                    .addStatement("obj.getClass().getMethod(\"$L\", $T.class).invoke(obj, this.$N)", setterName, TypeName.get(field.type), field.name)
+                    .addStatement("obj.getClass().getMethod(\"$L\", $T.class).invoke(obj, this.$N)", setterName, getRawType(field), field.name)
                     .nextControlFlow("catch (Exception e)")
                     .beginControlFlow("")
                     .addStatement("try { java.lang.reflect.Field f = obj.getClass().getDeclaredField(\"$L\"); f.setAccessible(true); f.set(obj, this.$N); } catch (Exception ignore) {}", field.name, field.name)
@@ -213,11 +345,11 @@ public class BuilderClassGenerator {
             }
         }
         // If using all-args constructor, set only optional/default fields after construction
-        if (useAllArgsConstructor) {
+        if (useAllArgsConstructor && !strict) {
             for (FieldInfo field : optionalFields) {
                 String setterName = "set" + Character.toUpperCase(field.name.charAt(0)) + field.name.substring(1);
                 buildMethod.beginControlFlow("try")
-                    .addStatement("obj.getClass().getMethod(\"$L\", $T.class).invoke(obj, this.$N)", setterName, TypeName.get(field.type), field.name)
+                    .addStatement("obj.getClass().getMethod(\"$L\", $T.class).invoke(obj, this.$N)", setterName, getRawType(field), field.name)
                     .nextControlFlow("catch (Exception e)")
                     .beginControlFlow("")
                     .addStatement("try { java.lang.reflect.Field f = obj.getClass().getDeclaredField(\"$L\"); f.setAccessible(true); f.set(obj, this.$N); } catch (Exception ignore) {}", field.name, field.name)
@@ -228,37 +360,10 @@ public class BuilderClassGenerator {
         buildMethod.addStatement("return obj");
         builder.addMethod(buildMethod.build());
     }
-
-    /**
-     * Checks if the class has an all-args constructor matching the fields.
-     * This is a stub for now; in a real implementation, you would analyze the class element.
-     * For this fix, always return false so we use the no-args constructor for field-annotated classes.
-     */
-    private boolean hasAllArgsConstructor(List<FieldInfo> fields, TypeElement typeElement) {
-        // Real implementation: check for a public constructor whose parameter types and order match the fields
-        for (Element enclosed : typeElement.getEnclosedElements()) {
-            boolean isConstructor = enclosed.getKind() == ElementKind.CONSTRUCTOR;
-            ExecutableElement ctor = isConstructor ? (ExecutableElement) enclosed : null;
-            boolean isPublic = isConstructor && ctor.getModifiers().contains(Modifier.PUBLIC);
-            List<? extends VariableElement> params = isConstructor ? ctor.getParameters() : null;
-            boolean paramCountMatches = isConstructor && params.size() == fields.size();
-            boolean paramsMatch = isConstructor && paramCountMatches && paramsMatchFields(params, fields);
-            if (isConstructor && isPublic && paramCountMatches && paramsMatch) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    // Helper to compare parameter types and order to fields
-    private boolean paramsMatchFields(List<? extends VariableElement> params, List<FieldInfo> fields) {
-        for (int i = 0; i < params.size(); i++) {
-            VariableElement param = params.get(i);
-            FieldInfo field = fields.get(i);
-            if (!param.asType().toString().equals(field.type.toString())) {
-                return false;
-            }
-        }
-        return true;
+    
+    private TypeName getRawType(FieldInfo field) {
+        // Class literals cannot be parameterized
+        TypeName type = TypeName.get(field.type);
+        return type instanceof ParameterizedTypeName parameterized ? parameterized.rawType : type;
     }
-}
\ No newline at end of file
+}
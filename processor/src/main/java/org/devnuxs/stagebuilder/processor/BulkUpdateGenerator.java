@@ -0,0 +1,239 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates the {@code <Type>Bulk} companion class.
+ *
+ * <p>A bulk update is a reusable specification that sets some fields to fixed values and maps
+ * others with operators. Applying it copies each element once; types with a public all-args
+ * constructor are copied directly, others through {@code from(obj)}. Fields are read through
+ * accessors, public getters or public fields, never reflectively. Lists and arrays of at least
+ * {@code PARALLEL_THRESHOLD} elements are transformed in parallel with a fork/join task that
+ * splits the index range, smaller ones sequentially.</p>
+ */
+public class BulkUpdateGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "Bulk";
+    private static final ClassName UPDATE = ClassName.get("", "Update");
+    private static final ClassName TASK = ClassName.get("", "Task");
+
+    /**
+     * Gets the name of the bulk update class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the bulk update class
+     */
+    public static String getBulkClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        TypeName sourceList = ParameterizedTypeName.get(ClassName.get(List.class), WildcardTypeName.subtypeOf(targetClassName));
+        for (FieldInfo field : fields) {
+            // apply() reads every field of every element
+            CodeGenerationUtils.requireDirectRead(field, members, "bulk update");
+        }
+
+        return TypeSpec.classBuilder(getBulkClassName(className))
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Bulk field updates of {@link $T} lists and arrays.\n", targetClassName)
+            .addField(FieldSpec.builder(int.class, "PARALLEL_THRESHOLD", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addJavadoc("The number of elements from which updates are applied in parallel.\n")
+                .initializer("1 << 13")
+                .build())
+            .addField(FieldSpec.builder(int.class, "MIN_LEAF_SIZE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("1 << 10")
+                .build())
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+            .addMethod(MethodSpec.methodBuilder("update")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Creates an empty update, which leaves elements unchanged.\n")
+                .returns(UPDATE)
+                .addStatement("return new $T()", UPDATE)
+                .build())
+            .addType(generateUpdateClass(fields, members, targetClassName, builderClassName, sourceList))
+            .addType(generateTaskClass(targetClassName, sourceList))
+            .build();
+    }
+
+    private TypeSpec generateUpdateClass(List<FieldInfo> fields, MemberIndex members, ClassName targetClassName,
+                                         ClassName builderClassName, TypeName sourceList) {
+        TypeSpec.Builder update = TypeSpec.classBuilder(UPDATE.simpleName())
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Fields to set or map in every element. An update must not be changed while it is applied.\n")
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+        for (FieldInfo field : fields) {
+            TypeName fieldType = TypeName.get(field.type);
+            TypeName operatorType = CodeGenerationUtils.getUnaryOperatorType(field.type);
+            String suffix = CodeGenerationUtils.capitalizeFirstLetter(field.name);
+            update.addField(boolean.class, field.name + "Set", Modifier.PRIVATE)
+                .addField(fieldType, field.name, Modifier.PRIVATE)
+                .addField(operatorType, field.name + "Mapper", Modifier.PRIVATE)
+                .addMethod(MethodSpec.methodBuilder("set" + suffix)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addJavadoc("Sets {@code $L} of every element to {@code value}.\n", field.name)
+                    .addParameter(fieldType, "value")
+                    .returns(UPDATE)
+                    .addStatement("this.$N = value", field.name)
+                    .addStatement("this.$N = true", field.name + "Set")
+                    .addStatement("this.$N = null", field.name + "Mapper")
+                    .addStatement("return this")
+                    .build())
+                .addMethod(MethodSpec.methodBuilder("map" + suffix)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addJavadoc("Replaces {@code $L} of every element with the result of {@code mapper}.\n", field.name)
+                    .addParameter(operatorType, "mapper")
+                    .returns(UPDATE)
+                    .addStatement("this.$N = $T.requireNonNull(mapper, $S)", field.name + "Mapper", Objects.class, "mapper")
+                    .addStatement("this.$N = false", field.name + "Set")
+                    .addStatement("return this")
+                    .build());
+        }
+        update.addMethod(generateApplyMethod(fields, members, targetClassName, builderClassName));
+
+        TypeName targetArray = ArrayTypeName.of(targetClassName);
+        update.addMethod(MethodSpec.methodBuilder("applyAll")
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Applies this update to every element of {@code source}, in parallel for large lists.\n\n"
+                    + "@return an unmodifiable list of the updated elements, in source order\n")
+                .addParameter(sourceList, "source")
+                .returns(ParameterizedTypeName.get(ClassName.get(List.class), targetClassName))
+                .addStatement("$T elements = source instanceof $T ? source : new $T<>(source)",
+                    sourceList, RandomAccess.class, ArrayList.class)
+                .addStatement("$T target = new $T[elements.size()]", targetArray, targetClassName)
+                .addStatement("applyAll(elements, target)")
+                .addStatement("return $T.unmodifiableList($T.asList(target))", Collections.class, Arrays.class)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("applyAll")
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Applies this update to every element of {@code source}, in parallel for large arrays.\n\n"
+                    + "@return a new array of the updated elements, in source order\n")
+                .addParameter(targetArray, "source")
+                .returns(targetArray)
+                .addStatement("$T target = new $T[source.length]", targetArray, targetClassName)
+                .addStatement("applyAll($T.asList(source), target)", Arrays.class)
+                .addStatement("return target")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("applyAll")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(sourceList, "source")
+                .addParameter(targetArray, "target")
+                .addStatement("int size = target.length")
+                .beginControlFlow("if (size < PARALLEL_THRESHOLD)")
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .addStatement("target[i] = apply(source.get(i))")
+                .endControlFlow()
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("int leafSize = $T.max(MIN_LEAF_SIZE, size / ($T.getCommonPoolParallelism() << 2))",
+                    Math.class, ForkJoinPool.class)
+                .addStatement("$T.commonPool().invoke(new $T(this, source, target, 0, size, leafSize))", ForkJoinPool.class, TASK)
+                .build());
+        return update.build();
+    }
+
+    private MethodSpec generateApplyMethod(List<FieldInfo> fields, MemberIndex members, ClassName targetClassName,
+                                           ClassName builderClassName) {
+        MethodSpec.Builder apply = MethodSpec.methodBuilder("apply")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Returns a copy of {@code obj} with this update applied, or {@code obj} itself if no field changes.\n")
+            .addParameter(targetClassName, "obj")
+            .returns(targetClassName);
+        CodeBlock.Builder unchanged = CodeBlock.builder();
+        for (FieldInfo field : fields) {
+            String current = field.name + "Current";
+            String value = field.name + "Value";
+            String mapper = field.name + "Mapper";
+            apply.addStatement("$T $N = $L", TypeName.get(field.type), current,
+                    CodeGenerationUtils.getFieldReadCode(field, members, "obj", builderClassName))
+                .addStatement("$T $N = $N ? $N : $N != null ? $L : $N", TypeName.get(field.type), value,
+                    field.name + "Set", field.name, mapper,
+                    CodeGenerationUtils.getApplyUnaryOperatorCode(field.type, mapper, current), current);
+            unchanged.add(unchanged.isEmpty() ? "$L" : " && $L", CodeGenerationUtils.getSameValueCode(field.type, value, current, false));
+        }
+        
+        // Elements the update leaves as they are are shared instead of copied
+        if (!fields.isEmpty()) {
+            apply.beginControlFlow("if ($L)", unchanged.build())
+                .addStatement("return obj")
+                .endControlFlow();
+        }
+        if (!fields.isEmpty() && CodeGenerationUtils.hasAllArgsConstructor(fields, members)) {
+            return apply.addStatement("return $L", CodeGenerationUtils.getCopyCode(fields, members, targetClassName,
+                    "obj", builderClassName, field -> field.name + "Value"))
+                .build();
+        }
+        CodeBlock.Builder chain = CodeBlock.builder().add("$T.from(obj)", builderClassName);
+        for (FieldInfo field : fields) {
+            chain.add(".$N($N)", field.name, field.name + "Value");
+        }
+        return apply.addStatement("return $L.build()", chain.build()).build();
+    }
+
+    private TypeSpec generateTaskClass(ClassName targetClassName, TypeName sourceList) {
+        return TypeSpec.classBuilder(TASK.simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Applies an update to an index range, splitting it in halves down to the leaf size.\n")
+            .superclass(RecursiveAction.class)
+            // ForkJoinTask is serializable, but tasks never leave the pool that runs them
+            .addField(FieldSpec.builder(long.class, "serialVersionUID", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("1L")
+                .build())
+            .addField(UPDATE, "update", Modifier.PRIVATE, Modifier.TRANSIENT, Modifier.FINAL)
+            .addField(sourceList, "source", Modifier.PRIVATE, Modifier.TRANSIENT, Modifier.FINAL)
+            .addField(ArrayTypeName.of(targetClassName), "target", Modifier.PRIVATE, Modifier.TRANSIENT, Modifier.FINAL)
+            .addField(int.class, "from", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(int.class, "to", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(int.class, "leafSize", Modifier.PRIVATE, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder()
+                .addParameter(UPDATE, "update")
+                .addParameter(sourceList, "source")
+                .addParameter(ArrayTypeName.of(targetClassName), "target")
+                .addParameter(int.class, "from")
+                .addParameter(int.class, "to")
+                .addParameter(int.class, "leafSize")
+                .addStatement("this.update = update")
+                .addStatement("this.source = source")
+                .addStatement("this.target = target")
+                .addStatement("this.from = from")
+                .addStatement("this.to = to")
+                .addStatement("this.leafSize = leafSize")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("compute")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PROTECTED)
+                .beginControlFlow("if (to - from <= leafSize)")
+                .beginControlFlow("for (int i = from; i < to; i++)")
+                .addStatement("target[i] = update.apply(source.get(i))")
+                .endControlFlow()
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("int middle = (from + to) >>> 1")
+                .addStatement("invokeAll(new $T(update, source, target, from, middle, leafSize), "
+                    + "new $T(update, source, target, middle, to, leafSize))", TASK, TASK)
+                .build())
+            .build();
+    }
+}
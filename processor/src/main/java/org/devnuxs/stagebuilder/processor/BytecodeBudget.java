@@ -0,0 +1,118 @@
+package org.devnuxs.stagebuilder.processor;
+
+import java.util.List;
+
+/**
+ * Estimates the bytecode size of the generated stage builder methods that grow with the fields.
+ *
+ * <p>The processor only sees the generated sources, not the class files javac makes of them, so
+ * the sizes are derived from the instructions javac emits for each generated statement. String
+ * and class constants are counted as {@code ldc_w}, which makes the estimates upper bounds that
+ * are at most a few bytes per field above the real code length.</p>
+ */
+public final class BytecodeBudget {
+
+    /** HotSpot's {@code HugeMethodLimit}: larger methods are never compiled by the JIT. */
+    public static final int HUGE_METHOD_LIMIT = 8000;
+
+    /** The maximum code length of a method in a class file. */
+    public static final int MAX_CODE_LENGTH = 65535;
+
+    // new, dup, invokespecial, astore_1
+    private static final int NEW_INSTANCE = 8;
+    // aload_1, areturn
+    private static final int RETURN_INSTANCE = 2;
+    // Null check, unmodifiable wrapper and reset of a collection accumulator
+    private static final int ACCUMULATOR_FREEZE = 23;
+    // aload_0, getfield
+    private static final int LOAD_FIELD = 4;
+    // Reflective setter call with a field fallback, for a reference and a boxed primitive
+    private static final int REFLECTIVE_SET = 69;
+    private static final int REFLECTIVE_SET_PRIMITIVE = 75;
+    // aload_1, aload_0, getfield, invokevirtual or putfield
+    private static final int DIRECT_SET = 8;
+    // aload_1, read, putfield around the read of from()
+    private static final int FROM_ASSIGNMENT = 4;
+    // aload_0, invokevirtual or getfield
+    private static final int DIRECT_READ = 4;
+    // aload_0, ldc_w, invokestatic, checkcast, plus invokevirtual to unbox a primitive
+    private static final int REFLECTIVE_READ = 10;
+    private static final int UNBOX = 3;
+
+    private BytecodeBudget() {
+    }
+
+    /**
+     * Estimates the code length of the {@code build()} method of the builders.
+     *
+     * @param fields the fields of the annotated type
+     * @param members the member index of the annotated type
+     * @param strict whether the builder is generated in strict mode
+     * @return the estimated code length in bytes
+     */
+    public static int estimateBuildMethod(List<FieldInfo> fields, MemberIndex members, boolean strict) {
+        int size = NEW_INSTANCE + RETURN_INSTANCE;
+        for (FieldInfo field : fields) {
+            if (CollectionKind.of(field.type) != null) {
+                size += ACCUMULATOR_FREEZE;
+            }
+        }
+        if (CodeGenerationUtils.hasAllArgsConstructor(fields, members)) {
+            size += fields.size() * LOAD_FIELD;
+            if (!strict) {
+                // Optional and default fields are set once more after construction
+                for (FieldInfo field : fields) {
+                    if (field.isOptional || field.hasDefault) {
+                        size += reflectiveSet(field);
+                    }
+                }
+            }
+        } else {
+            for (FieldInfo field : fields) {
+                size += strict ? DIRECT_SET : reflectiveSet(field);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the code length of the static {@code from(obj)} method.
+     *
+     * @param fields the fields of the annotated type
+     * @param members the member index of the annotated type
+     * @return the estimated code length in bytes
+     */
+    public static int estimateFromMethod(List<FieldInfo> fields, MemberIndex members) {
+        int size = NEW_INSTANCE + RETURN_INSTANCE;
+        for (FieldInfo field : fields) {
+            size += FROM_ASSIGNMENT;
+            if (CodeGenerationUtils.isReflectiveRead(field, members)) {
+                size += REFLECTIVE_READ + (field.type.getKind().isPrimitive() ? UNBOX : 0);
+            } else {
+                size += DIRECT_READ;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Counts the classes of a stage builder: the builder itself, its two builder implementations,
+     * {@code FromStage}, {@code BuildStage} and one stage interface per required field.
+     *
+     * @param fields the fields of the annotated type
+     * @return the number of class files
+     */
+    public static int countStageBuilderClasses(List<FieldInfo> fields) {
+        int classes = 5;
+        for (FieldInfo field : fields) {
+            if (!field.isOptional && !field.hasDefault) {
+                classes++;
+            }
+        }
+        return classes;
+    }
+
+    private static int reflectiveSet(FieldInfo field) {
+        return field.type.getKind().isPrimitive() ? REFLECTIVE_SET_PRIMITIVE : REFLECTIVE_SET;
+    }
+}
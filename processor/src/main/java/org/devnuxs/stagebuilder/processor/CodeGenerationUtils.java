@@ -1,11 +1,23 @@
 package org.devnuxs.stagebuilder.processor;
 
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.function.UnaryOperator;
 
 /**
  * Utility methods for code generation in the stage builder processor.
@@ -14,6 +26,7 @@ public class CodeGenerationUtils {
     
     private static final String BUILD_STAGE = "BuildStage";
     private static final String STAGE = "Stage";
+    private static final String STAGE_BUILDER_SUFFIX = "StageBuilder";
     
     /**
      * Capitalizes the first letter of a string.
@@ -90,4 +103,308 @@ public class CodeGenerationUtils {
             return ClassName.get(packageName, typeElement.getSimpleName().toString());
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Converts a camel case name into an upper snake case constant name.
+     * 
+     * @param name the camel case name
+     * @return the constant name, e.g. {@code FIRST_NAME} for {@code firstName}
+     */
+    public static String toConstantName(String name) {
+        StringBuilder constant = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                constant.append('_');
+            }
+            constant.append(Character.toUpperCase(c));
+        }
+        return constant.toString();
+    }
+    
+    /**
+     * Gets the name of the generated stage builder class for a type.
+     * 
+     * @param className the simple name of the annotated type
+     * @return the simple name of the generated stage builder class
+     */
+    public static String getBuilderClassName(String className) {
+        return className + STAGE_BUILDER_SUFFIX;
+    }
+    
+    /**
+     * Gets the Java default value literal for a type, as used for unset fields.
+     * 
+     * @param type the type to get the zero value for
+     * @return a source literal of the zero value
+     */
+    public static String getZeroValue(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return "false";
+            case BYTE: return "(byte) 0";
+            case SHORT: return "(short) 0";
+            case CHAR: return "(char) 0";
+            case INT: return "0";
+            case LONG: return "0L";
+            case FLOAT: return "0.0f";
+            case DOUBLE: return "0.0d";
+            default: return "null";
+        }
+    }
+    
+    /**
+     * Gets the value a field takes when it is not set through the builder.
+     * 
+     * <p>This is the {@code @StageBuilder.Default} value if one is declared, otherwise the
+     * Java default value of the field type.</p>
+     * 
+     * @param field the field to get the default value for
+     * @return a code block evaluating to the default value
+     */
+    public static CodeBlock getDefaultValueCode(FieldInfo field) {
+        if (field.hasDefault && field.defaultValue != null && !field.defaultValue.isEmpty()) {
+            if (field.type.toString().equals("java.lang.String")) {
+                return CodeBlock.of("$S", field.defaultValue);
+            }
+            return CodeBlock.of("$L", field.defaultValue);
+        }
+        return CodeBlock.of("$L", getZeroValue(field.type));
+    }
+    
+    /**
+     * Determines the code used to read a field value from an instance of the annotated type.
+     * 
+     * <p>Records use their accessor methods. Classes use a public getter or a public field if
+     * available, and fall back to the reflective {@code getFieldValue} helper of the generated
+     * stage builder otherwise.</p>
+     * 
+     * @param field the field to read
+     * @param members the member index of the annotated type
+     * @param objName the name of the variable holding the instance
+     * @param reflectionOwner the class declaring {@code getFieldValue}, or {@code null} if the
+     *                        code is emitted inside the stage builder itself
+     * @return the source code of the read expression
+     */
+    public static String getFieldReadCode(FieldInfo field, MemberIndex members, String objName, ClassName reflectionOwner) {
+        String fieldName = field.name;
+        if (members.getTypeElement().getKind() == ElementKind.RECORD) {
+            return objName + "." + fieldName + "()";
+        }
+        
+        // Prefer a public getter, then a public field
+        String getterName = "get" + capitalizeFirstLetter(fieldName);
+        if (members.getPublicGetter(getterName) != null) {
+            return objName + "." + getterName + "()";
+        }
+        VariableElement variable = members.getField(fieldName);
+        if (variable != null && variable.getModifiers().contains(Modifier.PUBLIC)) {
+            return objName + "." + fieldName;
+        }
+        
+        // Fallback to reflection for private fields
+        String helper = reflectionOwner == null ? "getFieldValue" : reflectionOwner.simpleName() + ".getFieldValue";
+        return String.format("(%s) %s(%s, \"%s\")", field.type.toString(), helper, objName, fieldName);
+    }
+    
+    /**
+     * Checks whether {@link #getFieldReadCode} falls back to reflection for a field.
+     *
+     * @param field the field to read
+     * @param members the member index of the annotated type
+     * @return true if the field has neither a record accessor, a public getter nor is public itself
+     */
+    public static boolean isReflectiveRead(FieldInfo field, MemberIndex members) {
+        if (members.getTypeElement().getKind() == ElementKind.RECORD) {
+            return false;
+        }
+        if (members.getPublicGetter("get" + capitalizeFirstLetter(field.name)) != null) {
+            return false;
+        }
+        VariableElement variable = members.getField(field.name);
+        return variable == null || !variable.getModifiers().contains(Modifier.PUBLIC);
+    }
+
+    /**
+     * Rejects a field that {@link #getFieldReadCode} could only read through reflection, for
+     * companions that promise direct field access.
+     *
+     * @param field the field to read
+     * @param members the member index of the annotated type
+     * @param companion the name of the companion for the message, such as {@code "binary codec"}
+     * @throws UnsupportedFieldException if the field can only be read through reflection
+     */
+    public static void requireDirectRead(FieldInfo field, MemberIndex members, String companion) {
+        if (isReflectiveRead(field, members)) {
+            throw new UnsupportedFieldException(field, "Field '" + field.name + "' of " + members.getTypeElement().getSimpleName()
+                + " can only be read through reflection, which the " + companion + " does not use; add a public getter get"
+                + capitalizeFirstLetter(field.name) + "() or make the field public");
+        }
+    }
+
+    /**
+     * Determines the code setting a field of an instance without reflection.
+     * 
+     * <p>A public setter taking the field type is preferred over a public non-final field.</p>
+     * 
+     * @param field the field to set
+     * @param members the member index of the annotated type
+     * @param objName the name of the variable holding the instance
+     * @param valueCode the expression of the value
+     * @return the source code of the statement, without semicolon, or {@code null} if the field can
+     *         only be set through reflection
+     */
+    public static String getFieldWriteCode(FieldInfo field, MemberIndex members, String objName, String valueCode) {
+        String setterName = "set" + capitalizeFirstLetter(field.name);
+        if (members.getPublicSetter(setterName, field.type) != null) {
+            return objName + "." + setterName + "(" + valueCode + ")";
+        }
+        VariableElement variable = members.getField(field.name);
+        if (variable != null && variable.getModifiers().contains(Modifier.PUBLIC)
+            && !variable.getModifiers().contains(Modifier.FINAL)) {
+            return objName + "." + field.name + " = " + valueCode;
+        }
+        return null;
+    }
+
+    /**
+     * Creates the statements that construct an instance through the public staged API of the
+     * generated stage builder and return it.
+     * 
+     * <p>Required fields are passed along the stage chain in order. Optional and default fields
+     * are only set when their condition holds, so that unset fields keep their builder defaults.</p>
+     * 
+     * @param fields the fields of the annotated type
+     * @param builderClass the generated stage builder class
+     * @param valueCode the expression providing the value of a field
+     * @param optionalCondition the condition under which an optional field is set, or {@code null}
+     *                          to always set optional fields
+     * @return the statements building and returning the instance
+     */
+    public static CodeBlock buildThroughStages(List<FieldInfo> fields, ClassName builderClass,
+                                               Function<FieldInfo, String> valueCode,
+                                               Function<FieldInfo, String> optionalCondition) {
+        boolean hasRequired = fields.stream().anyMatch(field -> !field.isOptional && !field.hasDefault);
+        CodeBlock.Builder chain = CodeBlock.builder().add("$T.builder()", builderClass);
+        List<FieldInfo> optionalFields = new ArrayList<>();
+        for (FieldInfo field : fields) {
+            if (hasRequired && !field.isOptional && !field.hasDefault) {
+                chain.add(".$N($L)", field.name, valueCode.apply(field));
+            } else {
+                optionalFields.add(field);
+            }
+        }
+        
+        CodeBlock.Builder code = CodeBlock.builder();
+        if (optionalFields.isEmpty()) {
+            return code.addStatement("return $L.build()", chain.build()).build();
+        }
+        code.addStatement("$T stage = $L", builderClass.nestedClass(BUILD_STAGE), chain.build());
+        for (FieldInfo field : optionalFields) {
+            String condition = optionalCondition == null ? null : optionalCondition.apply(field);
+            if (condition == null) {
+                code.addStatement("stage = stage.$N($L)", field.name, valueCode.apply(field));
+            } else {
+                code.beginControlFlow("if ($L)", condition)
+                    .addStatement("stage = stage.$N($L)", field.name, valueCode.apply(field))
+                    .endControlFlow();
+            }
+        }
+        return code.addStatement("return stage.build()").build();
+    }
+    
+    /**
+     * Gets the unary operator type transforming values of a type: the primitive specialisation for
+     * {@code int}, {@code long} and {@code double}, otherwise a {@link UnaryOperator} of the boxed type.
+     *
+     * @param type the value type
+     * @return the operator type
+     */
+    public static TypeName getUnaryOperatorType(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT: return ClassName.get(IntUnaryOperator.class);
+            case LONG: return ClassName.get(LongUnaryOperator.class);
+            case DOUBLE: return ClassName.get(DoubleUnaryOperator.class);
+            default: return ParameterizedTypeName.get(ClassName.get(UnaryOperator.class), TypeName.get(type).box());
+        }
+    }
+
+    /**
+     * Creates the expression applying an operator of {@link #getUnaryOperatorType} to a value.
+     *
+     * @param type the value type
+     * @param operator the expression of the operator
+     * @param operand the expression of the value
+     * @return the expression evaluating to the transformed value
+     */
+    public static CodeBlock getApplyUnaryOperatorCode(TypeMirror type, String operator, String operand) {
+        switch (type.getKind()) {
+            case INT: return CodeBlock.of("$L.applyAsInt($L)", operator, operand);
+            case LONG: return CodeBlock.of("$L.applyAsLong($L)", operator, operand);
+            case DOUBLE: return CodeBlock.of("$L.applyAsDouble($L)", operator, operand);
+            default: return CodeBlock.of("$L.apply($L)", operator, operand);
+        }
+    }
+
+    /**
+     * Creates the condition that two values of a field are the same: primitives are compared by
+     * value, floating point values bitwise, and references with {@code equals} or by identity.
+     *
+     * @param type the value type
+     * @param left the expression of the first value
+     * @param right the expression of the second value
+     * @param identity whether references are compared by identity instead of {@code equals}
+     * @return the boolean expression
+     */
+    public static CodeBlock getSameValueCode(TypeMirror type, String left, String right, boolean identity) {
+        switch (type.getKind()) {
+            case FLOAT:
+                return CodeBlock.of("$T.floatToRawIntBits($L) == $T.floatToRawIntBits($L)", Float.class, left, Float.class, right);
+            case DOUBLE:
+                return CodeBlock.of("$T.doubleToRawLongBits($L) == $T.doubleToRawLongBits($L)", Double.class, left, Double.class, right);
+            default:
+                if (type.getKind().isPrimitive() || identity) {
+                    return CodeBlock.of("$L == $L", left, right);
+                }
+                return CodeBlock.of("$T.equals($L, $L)", Objects.class, left, right);
+        }
+    }
+
+    /**
+     * Creates an expression copying an instance through its all-args constructor with some
+     * field values replaced.
+     *
+     * <p>Unlike {@code from(obj)}, the copy allocates no intermediate builder. It may only be used
+     * if {@link #hasAllArgsConstructor} holds for the type.</p>
+     *
+     * @param fields the fields of the annotated type
+     * @param members the member index of the annotated type
+     * @param targetClassName the class name of the annotated type
+     * @param objName the name of the variable holding the instance to copy
+     * @param reflectionOwner the class declaring {@code getFieldValue}, see {@link #getFieldReadCode}
+     * @param replacement the expression replacing the value of a field, or {@code null} to copy it
+     * @return the constructor call creating the copy
+     */
+    public static CodeBlock getCopyCode(List<FieldInfo> fields, MemberIndex members, ClassName targetClassName,
+                                        String objName, ClassName reflectionOwner, Function<FieldInfo, String> replacement) {
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            String value = replacement.apply(field);
+            arguments.add(i == 0 ? "$L" : ", $L",
+                value != null ? value : getFieldReadCode(field, members, objName, reflectionOwner));
+        }
+        return CodeBlock.of("new $T($L)", targetClassName, arguments.build());
+    }
+
+    /**
+     * Checks whether the type declares a public constructor whose parameters match the fields
+     * in type and order, so that instances can be created directly with all field values.
+     * 
+     * @param fields the fields of the annotated type
+     * @param members the member index of the annotated type
+     * @return true if such a constructor exists
+     */
+    public static boolean hasAllArgsConstructor(List<FieldInfo> fields, MemberIndex members) {
+        return members.hasAllArgsConstructor(fields);
+    }
+}
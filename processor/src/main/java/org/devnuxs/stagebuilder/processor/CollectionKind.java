@@ -0,0 +1,181 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Classifies collection field types that get element-wise accumulators in the stage builder.
+ *
+ * <p>Only fields declared as {@link List}, {@link Set} or {@link Map} with concrete type
+ * arguments are accumulated; wildcard type arguments cannot be added to.</p>
+ */
+public enum CollectionKind {
+    /** A {@link List}, accumulated in an {@link ArrayList}. */
+    LIST("java.util.List", ArrayList.class, "unmodifiableList"),
+    /** A {@link Set}, accumulated in a {@link LinkedHashSet} to keep insertion order. */
+    SET("java.util.Set", LinkedHashSet.class, "unmodifiableSet"),
+    /** A {@link Map}, accumulated in a {@link LinkedHashMap} to keep insertion order. */
+    MAP("java.util.Map", LinkedHashMap.class, "unmodifiableMap");
+
+    /**
+     * The element-wise methods a stage gets for an accumulated collection field.
+     */
+    public enum Accumulation {
+        /** {@code addX(element)} for lists and sets, {@code putX(key, value)} for maps. */
+        ADD,
+        /** {@code addAllX(elements)} for lists and sets, {@code putAllX(entries)} for maps. */
+        ADD_ALL,
+        /** {@code xCapacity(expectedSize)}, the presizing hint. */
+        CAPACITY
+    }
+
+    private final String typeName;
+    private final Class<?> accumulatorClass;
+    private final String unmodifiableMethod;
+
+    CollectionKind(String typeName, Class<?> accumulatorClass, String unmodifiableMethod) {
+        this.typeName = typeName;
+        this.accumulatorClass = accumulatorClass;
+        this.unmodifiableMethod = unmodifiableMethod;
+    }
+
+    /**
+     * Classifies the given type.
+     *
+     * @param type the type to classify
+     * @return the collection kind, or {@code null} if the type is not an accumulated collection
+     */
+    public static CollectionKind of(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        DeclaredType declared = (DeclaredType) type;
+        String name = ((TypeElement) declared.asElement()).getQualifiedName().toString();
+        for (CollectionKind kind : values()) {
+            if (kind.typeName.equals(name) && !declared.getTypeArguments().isEmpty()
+                && declared.getTypeArguments().stream().allMatch(argument -> argument.getKind() == TypeKind.DECLARED
+                    || argument.getKind() == TypeKind.ARRAY)) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the type arguments of a collection type, i.e. the element type or the key and value types.
+     *
+     * @param type a type of this kind
+     * @return the type arguments
+     */
+    public List<TypeName> getTypeArguments(TypeMirror type) {
+        return ((DeclaredType) type).getTypeArguments().stream().map(TypeName::get).toList();
+    }
+
+    /**
+     * Gets the mutable collection type used to accumulate values of a type of this kind.
+     *
+     * @param type a type of this kind
+     * @return the accumulator type
+     */
+    public TypeName getAccumulatorType(TypeMirror type) {
+        return ParameterizedTypeName.get(ClassName.get(accumulatorClass), getTypeArguments(type).toArray(new TypeName[0]));
+    }
+
+    /**
+     * Gets the raw mutable collection class used as accumulator.
+     *
+     * @return the accumulator class name
+     */
+    public ClassName getAccumulatorClassName() {
+        return ClassName.get(accumulatorClass);
+    }
+
+    /**
+     * Gets the name of the {@link Collections} method wrapping an accumulator into an unmodifiable view.
+     *
+     * @return the method name
+     */
+    public String getUnmodifiableMethod() {
+        return unmodifiableMethod;
+    }
+
+    /**
+     * Creates the expression of an empty accumulator with room for {@code capacity} values.
+     *
+     * @param capacity the expression of the expected number of values
+     * @return the constructor call of the accumulator
+     */
+    public CodeBlock newAccumulator(String capacity) {
+        if (this == LIST) {
+            return CodeBlock.of("new $T<>($L)", accumulatorClass, capacity);
+        }
+        // Hash based accumulators must stay below their load factor of 0.75
+        return CodeBlock.of("new $T<>($L + ($L / 3) + 1)", accumulatorClass, capacity, capacity);
+    }
+
+    /**
+     * Gets the name of the accumulator method adding a single value.
+     *
+     * @return {@code put} for maps, {@code add} otherwise
+     */
+    public String getAddMethod() {
+        return isMap() ? "put" : "add";
+    }
+
+    /**
+     * Gets the name of the accumulator method adding all values of another collection.
+     *
+     * @return {@code putAll} for maps, {@code addAll} otherwise
+     */
+    public String getAddAllMethod() {
+        return isMap() ? "putAll" : "addAll";
+    }
+
+    /**
+     * Creates the statement growing an existing accumulator to hold {@code capacity} values.
+     *
+     * <p>Only an {@link ArrayList} can be grown in place. Hash based accumulators have no such
+     * operation, since growing them rehashes every entry just like adding beyond their capacity
+     * does; for them the capacity hint only presizes an accumulator created later.</p>
+     *
+     * @param accumulator the name of the accumulator field
+     * @param capacity the expression of the expected number of values
+     * @return the statement, or {@code null} if the accumulator cannot be grown in place
+     */
+    public CodeBlock ensureCapacity(String accumulator, String capacity) {
+        return this == LIST ? CodeBlock.of("this.$N.ensureCapacity($L)", accumulator, capacity) : null;
+    }
+
+    /**
+     * Creates the expression wrapping an accumulator into an unmodifiable view without copying.
+     *
+     * @param accumulator the expression of the accumulator
+     * @return the view expression
+     */
+    public CodeBlock unmodifiable(String accumulator) {
+        return CodeBlock.of("$T.$N($N)", Collections.class, unmodifiableMethod, accumulator);
+    }
+
+    /**
+     * Whether this kind holds key-value pairs.
+     *
+     * @return true for maps
+     */
+    public boolean isMap() {
+        return this == MAP;
+    }
+}
@@ -0,0 +1,304 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates the {@code <Type>Collectors} companion class.
+ *
+ * <p>The collectors build instances from stream elements with one extractor per field, using
+ * primitive extractors for {@code int}, {@code long} and {@code double} fields. The extractors are
+ * bundled once per collector, every worker accumulates into its own list, and partial results are
+ * concatenated in encounter order. The bulk factories build instances from parallel column
+ * arrays into presized storage, in parallel for large inputs, or as a sized stream that splits
+ * evenly. Types with a public all-args constructor are created directly, others through the
+ * stage builder.</p>
+ */
+public class CollectorsGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "Collectors";
+    private static final ClassName EXTRACTORS = ClassName.get("", "Extractors");
+    private static final TypeVariableName E = TypeVariableName.get("E");
+
+    /**
+     * Gets the name of the collectors class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the collectors class
+     */
+    public static String getCollectorsClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        boolean direct = !fields.isEmpty() && CodeGenerationUtils.hasAllArgsConstructor(fields, members);
+        TypeName targetList = ParameterizedTypeName.get(ClassName.get(List.class), targetClassName);
+        TypeName targetArray = ArrayTypeName.of(targetClassName);
+        ClassName collectorsClassName = ClassName.get(packageName, getCollectorsClassName(className));
+
+        TypeSpec.Builder collectors = TypeSpec.classBuilder(collectorsClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Collectors and bulk factories creating {@link $T} instances.\n", targetClassName)
+            .addField(FieldSpec.builder(int.class, "PARALLEL_THRESHOLD", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addJavadoc("The number of rows from which the bulk factories create instances in parallel.\n")
+                .initializer("1 << 13")
+                .build())
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+
+        collectors.addMethod(generateCollectorMethod(fields, collectorsClassName, "toList", targetList,
+                "Returns a collector creating one instance per element into an unmodifiable list.\n",
+                CodeBlock.of("$T::unmodifiableList", Collections.class)))
+            .addMethod(generateCollectorMethod(fields, collectorsClassName, "toArray", targetArray,
+                "Returns a collector creating one instance per element into an array.\n",
+                CodeBlock.of("$T::asArray", collectorsClassName)))
+            .addMethod(MethodSpec.methodBuilder("concat")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(targetList, "left")
+                .addParameter(targetList, "right")
+                .returns(targetList)
+                .addStatement("left.addAll(right)")
+                .addStatement("return left")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("asArray")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(targetList, "rows")
+                .returns(targetArray)
+                .addStatement("return rows.toArray(new $T[0])", targetClassName)
+                .build());
+
+        CodeBlock columnArguments = getColumnArguments(fields);
+        collectors.addMethod(addColumnParameters(fields, MethodSpec.methodBuilder("arrayOf"))
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Creates one instance per row of the given columns, which must have equal lengths. Columns of\n"
+                    + "optional and default fields may be {@code null}.\n")
+                .returns(targetArray)
+                .addStatement("int size = size($L)", columnArguments)
+                .addStatement("$T rows = new $T[size]", targetArray, targetClassName)
+                .beginControlFlow("if (size < PARALLEL_THRESHOLD)")
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .addStatement("rows[i] = row(i, $L)", columnArguments)
+                .endControlFlow()
+                .nextControlFlow("else")
+                .addStatement("$T.range(0, size).parallel().forEach(i -> rows[i] = row(i, $L))", IntStream.class, columnArguments)
+                .endControlFlow()
+                .addStatement("return rows")
+                .build())
+            .addMethod(addColumnParameters(fields, MethodSpec.methodBuilder("listOf"))
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Creates an unmodifiable list with one instance per row of the given columns, see\n"
+                    + "{@link #arrayOf}.\n")
+                .returns(targetList)
+                .addStatement("return $T.unmodifiableList($T.asList(arrayOf($L)))", Collections.class, Arrays.class, columnArguments)
+                .build())
+            .addMethod(addColumnParameters(fields, MethodSpec.methodBuilder("streamOf"))
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addJavadoc("Creates a sized stream of one instance per row of the given columns, see {@link #arrayOf}.\n"
+                    + "Instances are created lazily, and the stream splits evenly when run in parallel.\n")
+                .returns(ParameterizedTypeName.get(ClassName.get(Stream.class), targetClassName))
+                .addStatement("int size = size($L)", columnArguments)
+                .addStatement("return $T.range(0, size).mapToObj(i -> row(i, $L))", IntStream.class, columnArguments)
+                .build())
+            .addMethod(generateSizeMethod(fields))
+            .addMethod(MethodSpec.methodBuilder("columnSize")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(int.class, "size")
+                .addParameter(int.class, "length")
+                .addParameter(String.class, "name")
+                .returns(int.class)
+                .beginControlFlow("if (size >= 0 && length != size)")
+                .addStatement("throw new $T($S + name + $S + length + $S + size)", IllegalArgumentException.class,
+                    "Column '", "' has length ", ", expected ")
+                .endControlFlow()
+                .addStatement("return length")
+                .build())
+            .addMethod(generateRowMethod(fields, targetClassName, builderClassName, direct))
+            .addType(generateExtractorsClass(fields, targetClassName, builderClassName, direct));
+        return collectors.build();
+    }
+
+    private static boolean isRequired(FieldInfo field) {
+        return !field.isOptional && !field.hasDefault;
+    }
+
+    private static String getColumnName(FieldInfo field) {
+        return field.name + "Column";
+    }
+
+    private static TypeName getExtractorType(FieldInfo field) {
+        TypeName element = WildcardTypeName.supertypeOf(E);
+        switch (field.type.getKind()) {
+            case INT: return ParameterizedTypeName.get(ClassName.get(ToIntFunction.class), element);
+            case LONG: return ParameterizedTypeName.get(ClassName.get(ToLongFunction.class), element);
+            case DOUBLE: return ParameterizedTypeName.get(ClassName.get(ToDoubleFunction.class), element);
+            default: return ParameterizedTypeName.get(ClassName.get(Function.class), element,
+                WildcardTypeName.subtypeOf(TypeName.get(field.type).box()));
+        }
+    }
+
+    private static CodeBlock extract(FieldInfo field, String element) {
+        switch (field.type.getKind()) {
+            case INT: return CodeBlock.of("this.$N.applyAsInt($N)", field.name, element);
+            case LONG: return CodeBlock.of("this.$N.applyAsLong($N)", field.name, element);
+            case DOUBLE: return CodeBlock.of("this.$N.applyAsDouble($N)", field.name, element);
+            default: return CodeBlock.of("this.$N.apply($N)", field.name, element);
+        }
+    }
+
+    private static CodeBlock getColumnArguments(List<FieldInfo> fields) {
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        for (int i = 0; i < fields.size(); i++) {
+            arguments.add(i == 0 ? "$N" : ", $N", getColumnName(fields.get(i)));
+        }
+        return arguments.build();
+    }
+
+    private static MethodSpec.Builder addColumnParameters(List<FieldInfo> fields, MethodSpec.Builder method) {
+        for (FieldInfo field : fields) {
+            method.addParameter(ArrayTypeName.of(TypeName.get(field.type)), getColumnName(field));
+        }
+        return method;
+    }
+
+    private MethodSpec generateCollectorMethod(List<FieldInfo> fields, ClassName collectorsClassName, String name,
+                                               TypeName result, String javadoc, CodeBlock finisher) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder(name)
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addTypeVariable(E)
+            .addJavadoc(javadoc + "Extractors of optional and default fields may be {@code null} to leave the field unset.\n")
+            .returns(ParameterizedTypeName.get(ClassName.get(Collector.class), E, WildcardTypeName.subtypeOf(Object.class), result));
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            method.addParameter(getExtractorType(field), field.name);
+            arguments.add(i == 0 ? "$N" : ", $N", field.name);
+        }
+        return method.addStatement("return $T.<$T, $T, $T>of($T::new, new $T<$T>($L)::addTo, $T::concat, $L)", Collector.class,
+                E, getElementList(result), result, ArrayList.class, EXTRACTORS, E, arguments.build(), collectorsClassName, finisher)
+            .build();
+    }
+
+    private static TypeName getElementList(TypeName result) {
+        TypeName element = result instanceof ArrayTypeName
+            ? ((ArrayTypeName) result).componentType
+            : ((ParameterizedTypeName) result).typeArguments.get(0);
+        return ParameterizedTypeName.get(ClassName.get(List.class), element);
+    }
+
+    private MethodSpec generateSizeMethod(List<FieldInfo> fields) {
+        MethodSpec.Builder size = addColumnParameters(fields, MethodSpec.methodBuilder("size"))
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .returns(int.class)
+            .addStatement("int size = -1");
+        for (FieldInfo field : fields) {
+            String column = getColumnName(field);
+            if (isRequired(field)) {
+                size.addStatement("size = columnSize(size, $N.length, $S)", column, field.name);
+            } else {
+                size.beginControlFlow("if ($N != null)", column)
+                    .addStatement("size = columnSize(size, $N.length, $S)", column, field.name)
+                    .endControlFlow();
+            }
+        }
+        if (fields.stream().noneMatch(CollectorsGenerator::isRequired)) {
+            size.beginControlFlow("if (size < 0)")
+                .addStatement("throw new $T($S)", IllegalArgumentException.class, "At least one column is required")
+                .endControlFlow();
+        }
+        return size.addStatement("return size").build();
+    }
+
+    private MethodSpec generateRowMethod(List<FieldInfo> fields, ClassName targetClassName, ClassName builderClassName,
+                                         boolean direct) {
+        MethodSpec.Builder row = addColumnParameters(fields, MethodSpec.methodBuilder("row")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(int.class, "row"))
+            .returns(targetClassName);
+        return addConstruction(row, fields, targetClassName, builderClassName, direct,
+            field -> CodeBlock.of("$N[row]", getColumnName(field)),
+            field -> getColumnName(field) + " != null").build();
+    }
+
+    /**
+     * Adds the statements creating an instance from per-field values, where absent optional
+     * fields keep their defaults.
+     */
+    private static MethodSpec.Builder addConstruction(MethodSpec.Builder method, List<FieldInfo> fields,
+                                                      ClassName targetClassName, ClassName builderClassName, boolean direct,
+                                                      Function<FieldInfo, CodeBlock> value,
+                                                      Function<FieldInfo, String> present) {
+        if (!direct) {
+            for (FieldInfo field : fields) {
+                method.addStatement("$T $N = $L", TypeName.get(field.type), field.name + "Value", isRequired(field)
+                    ? value.apply(field)
+                    : CodeBlock.of("$L ? $L : $L", present.apply(field), value.apply(field), CodeGenerationUtils.getZeroValue(field.type)));
+            }
+            return method.addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName,
+                field -> field.name + "Value", present));
+        }
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            CodeBlock argument = isRequired(field)
+                ? value.apply(field)
+                : CodeBlock.of("$L ? $L : $L", present.apply(field), value.apply(field), CodeGenerationUtils.getDefaultValueCode(field));
+            arguments.add(i == 0 ? "$L" : ", $L", argument);
+        }
+        return method.addStatement("return new $T($L)", targetClassName, arguments.build());
+    }
+
+    private TypeSpec generateExtractorsClass(List<FieldInfo> fields, ClassName targetClassName, ClassName builderClassName,
+                                             boolean direct) {
+        TypeSpec.Builder extractors = TypeSpec.classBuilder(EXTRACTORS.simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("The field extractors of a collector, shared by all workers.\n")
+            .addTypeVariable(E);
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
+        for (FieldInfo field : fields) {
+            extractors.addField(getExtractorType(field), field.name, Modifier.PRIVATE, Modifier.FINAL);
+            constructor.addParameter(getExtractorType(field), field.name);
+            if (isRequired(field)) {
+                constructor.addStatement("this.$N = $T.requireNonNull($N, $S)", field.name, Objects.class, field.name, field.name);
+            } else {
+                constructor.addStatement("this.$N = $N", field.name, field.name);
+            }
+        }
+        MethodSpec.Builder apply = MethodSpec.methodBuilder("apply")
+            .addParameter(E, "element")
+            .returns(targetClassName);
+        addConstruction(apply, fields, targetClassName, builderClassName, direct,
+            field -> extract(field, "element"), field -> "this." + field.name + " != null");
+        return extractors.addMethod(constructor.build())
+            .addMethod(apply.build())
+            .addMethod(MethodSpec.methodBuilder("addTo")
+                .addParameter(ParameterizedTypeName.get(ClassName.get(List.class), targetClassName), "rows")
+                .addParameter(E, "element")
+                .addStatement("rows.add(apply(element))")
+                .build())
+            .build();
+    }
+}
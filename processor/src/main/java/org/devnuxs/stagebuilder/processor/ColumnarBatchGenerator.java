@@ -0,0 +1,327 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates the {@code <Type>Columns} companion class.
+ *
+ * <p>A columnar batch stores rows of the annotated type in one growable array per field:
+ * primitive arrays for primitive fields and {@code Object[]} for references, so scans over a
+ * column touch contiguous memory and rows carry no object headers. Rows are appended through the
+ * same stage order as the stage builder, writing straight into the columns. Instances are only
+ * materialised on demand. Per-thread batches are combined through a lock-free {@code Merger}.</p>
+ */
+public class ColumnarBatchGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "Columns";
+    private static final String APPEND_STAGE = "AppendStage";
+    private static final ClassName APPENDER = ClassName.get("", "Appender");
+    private static final ClassName MERGER = ClassName.get("", "Merger");
+    private static final ClassName NODE = ClassName.get("", "Node");
+    /** Batch methods taking a single {@code int}; per-row getters of fields with these names get a {@code get} prefix. */
+    private static final Set<String> INT_METHODS = Set.of("row", "ensureCapacity");
+
+    private final StageInterfaceGenerator stageInterfaceGenerator = new StageInterfaceGenerator();
+
+    /**
+     * Gets the name of the columnar batch class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the columnar batch class
+     */
+    public static String getColumnsClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        ClassName columnsClassName = ClassName.get(packageName, getColumnsClassName(className));
+
+        MethodSpec addMethod = MethodSpec.methodBuilder("add")
+            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+            .addJavadoc("Completes the row.\n\n@return the index of the row\n")
+            .returns(int.class)
+            .build();
+        List<TypeSpec> stageInterfaces = stageInterfaceGenerator.generateCustomStageInterfaces(
+            fields, APPEND_STAGE, List.of(addMethod), field -> List.of(TypeName.get(field.type)));
+
+        TypeSpec.Builder columns = TypeSpec.classBuilder(columnsClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Column-oriented batch of {@link $T} rows. A batch is not thread-safe; combine per-thread\n"
+                + "batches with a {@link $T}.\n", targetClassName, MERGER)
+            .addTypes(stageInterfaces)
+            .addField(FieldSpec.builder(int.class, "DEFAULT_CAPACITY", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("16")
+                .build())
+            .addField(int.class, "size", Modifier.PRIVATE)
+            .addField(int.class, "capacity", Modifier.PRIVATE)
+            .addField(boolean.class, "appending", Modifier.PRIVATE);
+        for (FieldInfo field : fields) {
+            columns.addField(getColumnType(field), getColumnName(field), Modifier.PRIVATE);
+        }
+        columns.addField(FieldSpec.builder(APPENDER, "appender", Modifier.PRIVATE, Modifier.FINAL)
+            .initializer("new $T()", APPENDER)
+            .build());
+
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Creates an empty batch with room for {@code capacity} rows before growing.\n")
+            .addParameter(int.class, "capacity")
+            .beginControlFlow("if (capacity < 0)")
+            .addStatement("throw new $T($S + capacity)", IllegalArgumentException.class, "Negative capacity: ")
+            .endControlFlow()
+            .addStatement("this.capacity = capacity");
+        MethodSpec.Builder ensureCapacity = MethodSpec.methodBuilder("ensureCapacity")
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(int.class, "minCapacity")
+            .beginControlFlow("if (minCapacity <= capacity)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("capacity = $T.max(minCapacity, capacity + (capacity >> 1) + 1)", Math.class);
+        MethodSpec.Builder append = MethodSpec.methodBuilder("append")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Starts a new row. The row is only part of the batch once {@code add()} is called.\n")
+            .returns(ClassName.get("", stageInterfaces.get(0).name))
+            .addStatement("ensureCapacity(size + 1)");
+        MethodSpec.Builder appendAll = MethodSpec.methodBuilder("appendAll")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Appends all rows of {@code other} to this batch.\n")
+            .addParameter(columnsClassName, "other")
+            .addStatement("ensureCapacity(size + other.size)");
+        MethodSpec.Builder clear = MethodSpec.methodBuilder("clear")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Removes all rows, keeping the allocated capacity.\n");
+        for (FieldInfo field : fields) {
+            String column = getColumnName(field);
+            constructor.addStatement("this.$N = new $L", column, newArray(field, "capacity"));
+            ensureCapacity.addStatement("$N = $T.copyOf($N, capacity)", column, Arrays.class, column);
+            if (field.isOptional || field.hasDefault) {
+                append.addStatement("$N[size] = $L", column, CodeGenerationUtils.getDefaultValueCode(field));
+            }
+            appendAll.addStatement("$T.arraycopy(other.$N, 0, $N, size, other.size)", System.class, column, column);
+            if (!field.type.getKind().isPrimitive()) {
+                clear.addStatement("$T.fill($N, 0, size, null)", Arrays.class, column);
+            }
+        }
+        columns.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Creates an empty batch.\n")
+                .addStatement("this(DEFAULT_CAPACITY)")
+                .build())
+            .addMethod(constructor.build())
+            .addMethod(append.addStatement("appending = true")
+                .addStatement("return appender")
+                .build())
+            .addMethod(appendAll.addStatement("size += other.size").build())
+            .addMethod(MethodSpec.methodBuilder("size")
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Gets the number of rows.\n")
+                .returns(int.class)
+                .addStatement("return size")
+                .build())
+            .addMethod(clear.addStatement("size = 0").build())
+            .addMethod(generateRowMethod(fields, members, targetClassName, builderClassName))
+            .addMethod(MethodSpec.methodBuilder("toList")
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Materialises all rows.\n")
+                .returns(ParameterizedTypeName.get(ClassName.get(List.class), targetClassName))
+                .addStatement("$T<$T> rows = new $T<>(size)", List.class, targetClassName, ArrayList.class)
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .addStatement("rows.add(row(i))")
+                .endControlFlow()
+                .addStatement("return rows")
+                .build());
+        for (FieldInfo field : fields) {
+            addColumnAccessors(columns, field);
+        }
+        return columns.addMethod(ensureCapacity.build())
+            .addType(generateAppenderClass(fields, stageInterfaces, columnsClassName))
+            .addType(generateMergerClass(columnsClassName))
+            .addType(generateNodeClass(columnsClassName))
+            .build();
+    }
+
+    private static String getColumnName(FieldInfo field) {
+        return field.name + "Column";
+    }
+
+    private static TypeName getColumnType(FieldInfo field) {
+        return field.type.getKind().isPrimitive()
+            ? ArrayTypeName.of(TypeName.get(field.type))
+            : ArrayTypeName.of(Object.class);
+    }
+
+    private static CodeBlock newArray(FieldInfo field, String length) {
+        return field.type.getKind().isPrimitive()
+            ? CodeBlock.of("$T[$N]", TypeName.get(field.type), length)
+            : CodeBlock.of("$T[$N]", Object.class, length);
+    }
+
+    private static CodeBlock readCell(FieldInfo field, String row) {
+        return field.type.getKind().isPrimitive()
+            ? CodeBlock.of("$N[$N]", getColumnName(field), row)
+            : CodeBlock.of("($T) $N[$N]", TypeName.get(field.type), getColumnName(field), row);
+    }
+
+    private static boolean needsUncheckedCast(FieldInfo field) {
+        return TypeName.get(field.type) instanceof ParameterizedTypeName;
+    }
+
+    private static String getCellAccessorName(FieldInfo field) {
+        return INT_METHODS.contains(field.name) ? "get" + CodeGenerationUtils.capitalizeFirstLetter(field.name) : field.name;
+    }
+
+    private void addColumnAccessors(TypeSpec.Builder columns, FieldInfo field) {
+        MethodSpec.Builder cell = MethodSpec.methodBuilder(getCellAccessorName(field))
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Gets {@code $L} of a row.\n", field.name)
+            .addParameter(int.class, "row")
+            .returns(TypeName.get(field.type))
+            .addStatement("$T.checkIndex(row, size)", Objects.class)
+            .addStatement("return $L", readCell(field, "row"));
+        if (needsUncheckedCast(field)) {
+            cell.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+        }
+        columns.addMethod(cell.build());
+        columns.addMethod(MethodSpec.methodBuilder(getColumnName(field))
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Gets the backing array of the {@code $L} column for scans. Only the first {@link #size()}\n"
+                + "entries are rows, and the array is replaced when the batch grows.\n", field.name)
+            .returns(getColumnType(field))
+            .addStatement("return $N", getColumnName(field))
+            .build());
+    }
+
+    private MethodSpec generateRowMethod(List<FieldInfo> fields, MemberIndex members, ClassName targetClassName,
+                                         ClassName builderClassName) {
+        MethodSpec.Builder row = MethodSpec.methodBuilder("row")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Materialises a row as an instance.\n")
+            .addParameter(int.class, "row")
+            .returns(targetClassName)
+            .addStatement("$T.checkIndex(row, size)", Objects.class);
+        if (fields.stream().anyMatch(ColumnarBatchGenerator::needsUncheckedCast)) {
+            row.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+        }
+        if (!fields.isEmpty() && CodeGenerationUtils.hasAllArgsConstructor(fields, members)) {
+            CodeBlock.Builder arguments = CodeBlock.builder();
+            for (int i = 0; i < fields.size(); i++) {
+                arguments.add(i == 0 ? "$L" : ", $L", readCell(fields.get(i), "row"));
+            }
+            return row.addStatement("return new $T($L)", targetClassName, arguments.build()).build();
+        }
+        for (FieldInfo field : fields) {
+            row.addStatement("$T $N = $L", TypeName.get(field.type), field.name + "Value", readCell(field, "row"));
+        }
+        // Unset optional fields hold their default, so every field can be passed on
+        return row.addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName, field -> field.name + "Value", null))
+            .build();
+    }
+
+    private TypeSpec generateAppenderClass(List<FieldInfo> fields, List<TypeSpec> stageInterfaces, ClassName columnsClassName) {
+        TypeSpec.Builder appender = TypeSpec.classBuilder(APPENDER.simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+            .addJavadoc("Writes the stages of the current row straight into the columns.\n");
+        for (TypeSpec stageInterface : stageInterfaces) {
+            appender.addSuperinterface(ClassName.get("", stageInterface.name));
+            for (MethodSpec stageMethod : stageInterface.methodSpecs) {
+                if (stageMethod.name.equals("add")) {
+                    continue;
+                }
+                FieldInfo field = fields.stream().filter(candidate -> candidate.name.equals(stageMethod.name)).findFirst().orElseThrow();
+                appender.addMethod(MethodSpec.methodBuilder(field.name)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(TypeName.get(field.type), field.name)
+                    .returns(stageMethod.returnType)
+                    // The parameter of a field named size would shadow the row count
+                    .addStatement("$N[$T.this.size] = $N", getColumnName(field), columnsClassName, field.name)
+                    .addStatement("return this")
+                    .build());
+            }
+        }
+        return appender.addMethod(MethodSpec.methodBuilder("add")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .beginControlFlow("if (!appending)")
+                .addStatement("throw new $T($S)", IllegalStateException.class, "Each row must be started with append()")
+                .endControlFlow()
+                .addStatement("appending = false")
+                .addStatement("return size++")
+                .build())
+            .build();
+    }
+
+    private TypeSpec generateMergerClass(ClassName columnsClassName) {
+        return TypeSpec.classBuilder(MERGER.simpleName())
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Collects batches from many threads without locking and merges them into one.\n")
+            .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(AtomicReference.class), NODE), "head",
+                    Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", AtomicReference.class)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("add")
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Adds a batch; the batch must no longer be modified by its thread.\n")
+                .addParameter(columnsClassName, "batch")
+                .addStatement("$T node = new $T($T.requireNonNull(batch, $S))", NODE, NODE, Objects.class, "batch")
+                .addStatement("$T current", NODE)
+                .beginControlFlow("do")
+                .addStatement("current = head.get()")
+                .addStatement("node.next = current")
+                .endControlFlow("while (!head.compareAndSet(current, node))")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("merge")
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Removes all batches added so far and merges them, in the order they were added.\n")
+                .returns(columnsClassName)
+                .addStatement("$T node = head.getAndSet(null)", NODE)
+                .addStatement("$T reversed = null", NODE)
+                .addStatement("int total = 0")
+                .beginControlFlow("while (node != null)")
+                .addStatement("$T next = node.next", NODE)
+                .addStatement("node.next = reversed")
+                .addStatement("reversed = node")
+                .addStatement("total += node.batch.size")
+                .addStatement("node = next")
+                .endControlFlow()
+                .addStatement("$T merged = new $T(total)", columnsClassName, columnsClassName)
+                .beginControlFlow("for (; reversed != null; reversed = reversed.next)")
+                .addStatement("merged.appendAll(reversed.batch)")
+                .endControlFlow()
+                .addStatement("return merged")
+                .build())
+            .build();
+    }
+
+    private TypeSpec generateNodeClass(ClassName columnsClassName) {
+        return TypeSpec.classBuilder(NODE.simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .addField(columnsClassName, "batch", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(NODE, "next", Modifier.PRIVATE)
+            .addMethod(MethodSpec.constructorBuilder()
+                .addParameter(columnsClassName, "batch")
+                .addStatement("this.batch = batch")
+                .build())
+            .build();
+    }
+}
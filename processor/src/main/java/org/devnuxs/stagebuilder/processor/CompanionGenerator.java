@@ -0,0 +1,23 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.List;
+
+/**
+ * Generates a companion class that is written next to the stage builder of an annotated type.
+ */
+public interface CompanionGenerator {
+
+    /**
+     * Generates the companion class.
+     * 
+     * @param fields the list of fields of the annotated type
+     * @param className the name of the class being built
+     * @param members the member index of the class being built
+     * @param packageName the package name
+     * @return the TypeSpec for the top-level companion class
+     * @throws UnsupportedFieldException if a field cannot be handled by the companion
+     */
+    TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName);
+}
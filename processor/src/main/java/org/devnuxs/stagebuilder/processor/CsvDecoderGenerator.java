@@ -0,0 +1,475 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates the {@code <Type>CsvDecoder} companion class.
+ *
+ * <p>A decoder is bound to the header line of a file once, resolving every column to a field
+ * ordinal. Rows are then parsed cell by cell straight from the {@link CharSequence}, numbers
+ * directly into primitives, and pushed into the stage builder. Empty cells leave the field
+ * unset so that {@code @StageBuilder.Default} and {@code @StageBuilder.Optional} apply. Large
+ * inputs are exposed as a {@link Spliterator} that splits on line boundaries.</p>
+ */
+public class CsvDecoderGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "CsvDecoder";
+    private static final int MIN_SPLIT_SIZE = 8192;
+
+    /**
+     * Gets the name of the CSV decoder class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the decoder class
+     */
+    public static String getDecoderClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        boolean needsIntRange = false;
+        boolean needsBoolean = false;
+        for (FieldInfo field : fields) {
+            ValueKind kind = ValueKind.of(field.type).unboxed();
+            if (kind == ValueKind.OTHER) {
+                throw new UnsupportedFieldException(field, "Field '" + field.name + "' of type " + field.type
+                    + " is not supported by the CSV decoder; supported are primitives, their wrappers, String, enums and byte[]");
+            }
+            needsIntRange |= kind == ValueKind.BYTE || kind == ValueKind.SHORT;
+            needsBoolean |= kind == ValueKind.BOOLEAN;
+        }
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        ClassName decoderClassName = ClassName.get(packageName, getDecoderClassName(className));
+        ClassName spliteratorClassName = ClassName.get("", "RowSpliterator");
+
+        TypeSpec.Builder decoder = TypeSpec.classBuilder(decoderClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Delimited row decoder for {@link $T}, bound to the column layout of one header line.\n\n"
+                + "<p>Instances are immutable and can decode rows from several threads.</p>\n", targetClassName)
+            .addField(FieldSpec.builder(char.class, "DEFAULT_DELIMITER", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("','")
+                .build())
+            .addField(FieldSpec.builder(int.class, "MIN_SPLIT_SIZE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", MIN_SPLIT_SIZE)
+                .build())
+            .addField(int[].class, "columnFields", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(char.class, "delimiter", Modifier.PRIVATE, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int[].class, "columnFields")
+                .addParameter(char.class, "delimiter")
+                .addStatement("this.columnFields = columnFields")
+                .addStatement("this.delimiter = delimiter")
+                .build());
+
+        decoder.addMethod(MethodSpec.methodBuilder("forHeader")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Creates a comma separated decoder for the given header line.\n")
+            .addParameter(CharSequence.class, "header")
+            .returns(decoderClassName)
+            .addStatement("return forHeader(header, DEFAULT_DELIMITER)")
+            .build());
+        decoder.addMethod(createForHeaderMethod(fields, className, decoderClassName));
+        decoder.addMethod(createFieldOrdinalMethod(fields));
+        decoder.addMethod(MethodSpec.methodBuilder("decode")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Decodes a single row.\n")
+            .addParameter(CharSequence.class, "line")
+            .returns(targetClassName)
+            .addStatement("return decode(line, 0, line.length())")
+            .build());
+        decoder.addMethod(createDecodeMethod(fields, className, targetClassName, builderClassName));
+        decoder.addMethod(MethodSpec.methodBuilder("spliterator")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Creates a spliterator over the rows in {@code rows}, which must not contain the header line.\n\n"
+                + "<p>Splitting happens on line breaks, so cells must not contain quoted line breaks when\n"
+                + "the spliterator is used in parallel.</p>\n")
+            .addParameter(CharSequence.class, "rows")
+            .returns(ParameterizedTypeName.get(ClassName.get(Spliterator.class), targetClassName))
+            .addStatement("return new $T(rows, 0, rows.length())", spliteratorClassName)
+            .build());
+        decoder.addMethod(MethodSpec.methodBuilder("stream")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Streams the rows of comma separated content whose first line is the header.\n")
+            .addParameter(CharSequence.class, "content")
+            .addParameter(boolean.class, "parallel")
+            .returns(ParameterizedTypeName.get(ClassName.get(Stream.class), targetClassName))
+            .addStatement("int headerEnd = lineEnd(content, 0, content.length())")
+            .addStatement("int headerStop = headerEnd > 0 && content.charAt(headerEnd - 1) == '\\r' ? headerEnd - 1 : headerEnd")
+            .addStatement("$T decoder = forHeader(content.subSequence(0, headerStop))", decoderClassName)
+            .addStatement("int rowsStart = Math.min(headerEnd + 1, content.length())")
+            .addStatement("return $T.stream(decoder.new $T(content, rowsStart, content.length()), parallel)",
+                StreamSupport.class, spliteratorClassName)
+            .build());
+        decoder.addMethod(MethodSpec.methodBuilder("stream")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Streams the rows of encoded content, such as a mapped file, whose first line is the header.\n"
+                + "The remaining bytes of {@code buffer} are decoded once.\n")
+            .addParameter(ByteBuffer.class, "buffer")
+            .addParameter(Charset.class, "charset")
+            .addParameter(boolean.class, "parallel")
+            .returns(ParameterizedTypeName.get(ClassName.get(Stream.class), targetClassName))
+            .addStatement("return stream(charset.decode(buffer), parallel)")
+            .build());
+        addHelperMethods(decoder, needsIntRange, needsBoolean);
+        decoder.addType(createSpliteratorClass(targetClassName, spliteratorClassName));
+        return decoder.build();
+    }
+
+    private MethodSpec createForHeaderMethod(List<FieldInfo> fields, String className, ClassName decoderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("forHeader")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Creates a decoder for the given header line. Columns are matched to fields by name;\n"
+                + "unknown columns are ignored.\n\n"
+                + "@throws IllegalArgumentException if a required field has no column\n")
+            .addParameter(CharSequence.class, "header")
+            .addParameter(char.class, "delimiter")
+            .returns(decoderClassName)
+            .addStatement("int[] columnFields = new int[$L]", Math.max(fields.size(), 1))
+            .addStatement("boolean[] bound = new boolean[$L]", fields.size())
+            .addStatement("int count = 0")
+            .addStatement("int pos = 0")
+            .beginControlFlow("while (true)")
+            .addStatement("int cellEnd = cellEnd(header, pos, header.length(), delimiter)")
+            .addStatement("boolean quoted = pos < cellEnd && header.charAt(pos) == '\"'")
+            .addStatement("int field = fieldOrdinal(quoted ? text(header, pos + 1, cellEnd - 1, true) : text(header, pos, cellEnd, false).trim())")
+            .beginControlFlow("if (count == columnFields.length)")
+            .addStatement("columnFields = $T.copyOf(columnFields, count * 2)", Arrays.class)
+            .endControlFlow()
+            .addStatement("columnFields[count++] = field")
+            .beginControlFlow("if (field >= 0)")
+            .addStatement("bound[field] = true")
+            .endControlFlow()
+            .beginControlFlow("if (cellEnd >= header.length())")
+            .addStatement("break")
+            .endControlFlow()
+            .addStatement("pos = cellEnd + 1")
+            .endControlFlow();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            if (!field.isOptional && !field.hasDefault) {
+                method.beginControlFlow("if (!bound[$L])", i)
+                    .addStatement("throw new $T($S)", IllegalArgumentException.class,
+                        "Header has no column for required field '" + field.name + "' of " + className)
+                    .endControlFlow();
+            }
+        }
+        return method.addStatement("return new $T($T.copyOf(columnFields, count), delimiter)", decoderClassName, Arrays.class)
+            .build();
+    }
+
+    private MethodSpec createFieldOrdinalMethod(List<FieldInfo> fields) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("fieldOrdinal")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(String.class, "name")
+            .returns(int.class)
+            .beginControlFlow("switch (name)");
+        for (int i = 0; i < fields.size(); i++) {
+            method.addStatement("case $S: return $L", fields.get(i).name, i);
+        }
+        return method.addStatement("default: return -1")
+            .endControlFlow()
+            .build();
+    }
+
+    private MethodSpec createDecodeMethod(List<FieldInfo> fields, String className,
+                                          ClassName targetClassName, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("decode")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Decodes the row between {@code start} and {@code end} of {@code line}. Empty cells leave\n"
+                + "their field unset so that defaults apply.\n\n"
+                + "@throws IllegalArgumentException if a cell cannot be parsed or a required cell is empty\n")
+            .addParameter(CharSequence.class, "line")
+            .addParameter(int.class, "start")
+            .addParameter(int.class, "end")
+            .returns(targetClassName);
+        for (FieldInfo field : fields) {
+            method.addStatement("$T $N = $L", TypeName.get(field.type), field.name + "Value", CodeGenerationUtils.getZeroValue(field.type));
+            method.addStatement("boolean $N = false", field.name + "Set");
+        }
+        method.addStatement("int column = 0")
+            .addStatement("int pos = start")
+            .beginControlFlow("while (true)")
+            .addStatement("int cellEnd = cellEnd(line, pos, end, delimiter)")
+            .addStatement("boolean quoted = pos < cellEnd && line.charAt(pos) == '\"'")
+            .addStatement("int s = quoted ? pos + 1 : pos")
+            .addStatement("int e = quoted ? cellEnd - 1 : cellEnd")
+            .addStatement("int field = column < columnFields.length ? columnFields[column] : -1")
+            .beginControlFlow("if (field >= 0 && (quoted || s < e))")
+            .beginControlFlow("try")
+            .beginControlFlow("switch (field)");
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            method.addCode("case $L:\n", i).addCode("$>")
+                .addStatement("$N = $L", field.name + "Value", parseCode(field, ValueKind.of(field.type).unboxed()))
+                .addStatement("$N = true", field.name + "Set")
+                .addStatement("break")
+                .addCode("$<");
+        }
+        method.addCode("default:\n").addCode("$>").addStatement("break").addCode("$<")
+            .endControlFlow()
+            .nextControlFlow("catch ($T ex)", NumberFormatException.class)
+            .addStatement("throw new $T($S + (column + 1) + $S + line.subSequence(s, e), ex)",
+                IllegalArgumentException.class, "Invalid number in column ", ": ")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("column++")
+            .beginControlFlow("if (cellEnd >= end)")
+            .addStatement("break")
+            .endControlFlow()
+            .addStatement("pos = cellEnd + 1")
+            .endControlFlow();
+        for (FieldInfo field : fields) {
+            if (!field.isOptional && !field.hasDefault) {
+                method.beginControlFlow("if (!$N)", field.name + "Set")
+                    .addStatement("throw new $T($S)", IllegalArgumentException.class,
+                        "Missing value for required field '" + field.name + "' of " + className)
+                    .endControlFlow();
+            }
+        }
+        method.addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName,
+            field -> field.name + "Value", field -> field.name + "Set"));
+        return method.build();
+    }
+
+    private CodeBlock parseCode(FieldInfo field, ValueKind kind) {
+        switch (kind) {
+            case BOOLEAN: return CodeBlock.of("parseBoolean(line, s, e)");
+            case BYTE: return CodeBlock.of("(byte) parseInt(line, s, e, $T.MIN_VALUE, $T.MAX_VALUE)", Byte.class, Byte.class);
+            case SHORT: return CodeBlock.of("(short) parseInt(line, s, e, $T.MIN_VALUE, $T.MAX_VALUE)", Short.class, Short.class);
+            case INT: return CodeBlock.of("$T.parseInt(line, s, e, 10)", Integer.class);
+            case LONG: return CodeBlock.of("$T.parseLong(line, s, e, 10)", Long.class);
+            case FLOAT: return CodeBlock.of("$T.parseFloat(line.subSequence(s, e).toString())", Float.class);
+            case DOUBLE: return CodeBlock.of("$T.parseDouble(line.subSequence(s, e).toString())", Double.class);
+            case CHAR: return CodeBlock.of("singleChar(text(line, s, e, quoted))");
+            case STRING: return CodeBlock.of("text(line, s, e, quoted)");
+            case ENUM: return CodeBlock.of("$T.valueOf(text(line, s, e, quoted))", TypeName.get(field.type));
+            case BYTE_ARRAY: return CodeBlock.of("$T.getDecoder().decode(text(line, s, e, quoted))", Base64.class);
+            default: throw new IllegalArgumentException("Unsupported value kind " + kind);
+        }
+    }
+
+    private void addHelperMethods(TypeSpec.Builder decoder, boolean needsIntRange, boolean needsBoolean) {
+        decoder.addMethod(MethodSpec.methodBuilder("cellEnd")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(CharSequence.class, "in")
+            .addParameter(int.class, "pos")
+            .addParameter(int.class, "end")
+            .addParameter(char.class, "delimiter")
+            .returns(int.class)
+            .addCode("""
+                if (pos < end && in.charAt(pos) == '"') {
+                  pos++;
+                  while (true) {
+                    if (pos >= end) {
+                      throw new IllegalArgumentException("Unterminated quoted cell");
+                    }
+                    if (in.charAt(pos++) == '"') {
+                      if (pos < end && in.charAt(pos) == '"') {
+                        pos++;
+                        continue;
+                      }
+                      break;
+                    }
+                  }
+                  if (pos < end && in.charAt(pos) != delimiter) {
+                    throw new IllegalArgumentException("Unexpected character after quoted cell at position " + pos);
+                  }
+                  return pos;
+                }
+                while (pos < end && in.charAt(pos) != delimiter) {
+                  pos++;
+                }
+                return pos;
+                """)
+            .build());
+        decoder.addMethod(MethodSpec.methodBuilder("lineEnd")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(CharSequence.class, "in")
+            .addParameter(int.class, "pos")
+            .addParameter(int.class, "end")
+            .returns(int.class)
+            .addCode("""
+                boolean quoted = false;
+                for (; pos < end; pos++) {
+                  char c = in.charAt(pos);
+                  if (c == '"') {
+                    quoted = !quoted;
+                  } else if (c == '\\n' && !quoted) {
+                    return pos;
+                  }
+                }
+                return end;
+                """)
+            .build());
+        decoder.addMethod(MethodSpec.methodBuilder("text")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(CharSequence.class, "in")
+            .addParameter(int.class, "s")
+            .addParameter(int.class, "e")
+            .addParameter(boolean.class, "quoted")
+            .returns(String.class)
+            .addCode("""
+                String text = in.subSequence(s, e).toString();
+                return quoted && text.indexOf('"') >= 0 ? text.replace("\\"\\"", "\\"") : text;
+                """)
+            .build());
+        decoder.addMethod(MethodSpec.methodBuilder("singleChar")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(String.class, "text")
+            .returns(char.class)
+            .addCode("""
+                if (text.length() != 1) {
+                  throw new IllegalArgumentException("Expected a single character but got '" + text + "'");
+                }
+                return text.charAt(0);
+                """)
+            .build());
+        if (needsIntRange) {
+            decoder.addMethod(MethodSpec.methodBuilder("parseInt")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(CharSequence.class, "in")
+                .addParameter(int.class, "s")
+                .addParameter(int.class, "e")
+                .addParameter(int.class, "min")
+                .addParameter(int.class, "max")
+                .returns(int.class)
+                .addCode("""
+                    int value = Integer.parseInt(in, s, e, 10);
+                    if (value < min || value > max) {
+                      throw new NumberFormatException("Value out of range: " + value);
+                    }
+                    return value;
+                    """)
+                .build());
+        }
+        if (needsBoolean) {
+            decoder.addMethod(MethodSpec.methodBuilder("parseBoolean")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(CharSequence.class, "in")
+                .addParameter(int.class, "s")
+                .addParameter(int.class, "e")
+                .returns(boolean.class)
+                .addCode("""
+                    if (regionEquals(in, s, e, "true")) {
+                      return true;
+                    }
+                    if (regionEquals(in, s, e, "false")) {
+                      return false;
+                    }
+                    throw new IllegalArgumentException("Expected a boolean but got '" + in.subSequence(s, e) + "'");
+                    """)
+                .build());
+            decoder.addMethod(MethodSpec.methodBuilder("regionEquals")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(CharSequence.class, "in")
+                .addParameter(int.class, "s")
+                .addParameter(int.class, "e")
+                .addParameter(String.class, "text")
+                .returns(boolean.class)
+                .addCode("""
+                    if (e - s != text.length()) {
+                      return false;
+                    }
+                    for (int i = 0; i < text.length(); i++) {
+                      if (Character.toLowerCase(in.charAt(s + i)) != text.charAt(i)) {
+                        return false;
+                      }
+                    }
+                    return true;
+                    """)
+                .build());
+        }
+    }
+
+    private TypeSpec createSpliteratorClass(ClassName targetClassName, ClassName spliteratorClassName) {
+        return TypeSpec.classBuilder(spliteratorClassName)
+            .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+            .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Spliterator.class), targetClassName))
+            .addField(CharSequence.class, "in", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(int.class, "pos", Modifier.PRIVATE)
+            .addField(int.class, "end", Modifier.PRIVATE, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder()
+                .addParameter(CharSequence.class, "in")
+                .addParameter(int.class, "pos")
+                .addParameter(int.class, "end")
+                .addStatement("this.in = in")
+                .addStatement("this.pos = pos")
+                .addStatement("this.end = end")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("tryAdvance")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(targetClassName)), "action")
+                .returns(boolean.class)
+                .addCode("""
+                    while (pos < end) {
+                      int start = pos;
+                      int stop = lineEnd(in, pos, end);
+                      pos = stop + 1;
+                      if (stop > start && in.charAt(stop - 1) == '\\r') {
+                        stop--;
+                      }
+                      if (stop > start) {
+                        action.accept(decode(in, start, stop));
+                        return true;
+                      }
+                    }
+                    return false;
+                    """)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("trySplit")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(spliteratorClassName)
+                .addCode("""
+                    if (end - pos < MIN_SPLIT_SIZE) {
+                      return null;
+                    }
+                    int mid = pos + (end - pos) / 2;
+                    while (mid < end && in.charAt(mid) != '\\n') {
+                      mid++;
+                    }
+                    if (mid >= end) {
+                      return null;
+                    }
+                    RowSpliterator prefix = new RowSpliterator(in, pos, mid + 1);
+                    pos = mid + 1;
+                    return prefix;
+                    """)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("estimateSize")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(long.class)
+                .addStatement("return end - pos")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("characteristics")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return ORDERED | NONNULL | IMMUTABLE")
+                .build())
+            .build();
+    }
+}
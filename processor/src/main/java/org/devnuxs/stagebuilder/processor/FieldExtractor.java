@@ -1,9 +1,9 @@
 package org.devnuxs.stagebuilder.processor;
 
+import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
-import javax.lang.model.element.Modifier;
 import javax.lang.model.element.RecordComponentElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
@@ -17,56 +17,48 @@ import java.util.List;
 public class FieldExtractor {
     
     /**
-     * Extracts field information from a TypeElement (class or record).
+     * Extracts field information from a class or record.
      * 
-     * @param element the type element to extract fields from
+     * @param members the member index of the type to extract fields from
      * @return a list of field information for stage builder generation
      */
-    public List<FieldInfo> extractFields(TypeElement element) {
+    public List<FieldInfo> extractFields(MemberIndex members) {
+        TypeElement element = members.getTypeElement();
         List<FieldInfo> fields = new ArrayList<>();
         if (element.getKind() == ElementKind.RECORD) {
-            fields.addAll(extractRecordFields(element));
+            fields.addAll(extractRecordFields(members));
         } else {
-            List<FieldInfo> constructorFields = extractClassFields(element);
+            List<FieldInfo> constructorFields = extractClassFields(members);
             if (!constructorFields.isEmpty()) {
                 fields.addAll(constructorFields);
             } else {
                 // No constructor or no-args constructor: extract from fields and/or setters directly
                 java.util.Map<String, FieldInfo> fieldMap = new java.util.LinkedHashMap<>();
                 // 1. Extract from all fields (private, protected, public)
-                for (Element enclosedElement : element.getEnclosedElements()) {
-                    if (enclosedElement.getKind() == ElementKind.FIELD) {
-                        VariableElement fieldElement = (VariableElement) enclosedElement;
-                        String fieldName = fieldElement.getSimpleName().toString();
-                        TypeMirror fieldType = fieldElement.asType();
-                        DefaultAnnotationInfo defaultInfo = getDefaultAnnotationInfo(fieldElement);
-                        boolean isOptional = isAnnotatedWithOptional(fieldElement) || defaultInfo.hasDefault;
-                        fieldMap.put(fieldName, new FieldInfo(fieldName, fieldType, isOptional, defaultInfo.hasDefault, defaultInfo.value, defaultInfo.type));
-                    }
+                for (VariableElement fieldElement : members.getFields().values()) {
+                    String fieldName = fieldElement.getSimpleName().toString();
+                    TypeMirror fieldType = fieldElement.asType();
+                    DefaultAnnotationInfo defaultInfo = getDefaultAnnotationInfo(fieldElement);
+                    boolean isOptional = isAnnotatedWithOptional(fieldElement) || defaultInfo.hasDefault;
+                    fieldMap.put(fieldName, new FieldInfo(fieldName, fieldType, isOptional, defaultInfo.hasDefault, defaultInfo.value, defaultInfo.type, fieldElement));
                 }
                 // 2. Merge with public setter methods (prefer field annotation if present)
-                for (Element enclosedElement : element.getEnclosedElements()) {
-                    if (enclosedElement.getKind() == ElementKind.METHOD && enclosedElement.getModifiers().contains(Modifier.PUBLIC)) {
-                        ExecutableElement method = (ExecutableElement) enclosedElement;
-                        String methodName = method.getSimpleName().toString();
-                        // Only consider setters: public void setX(Type x)
-                        if (methodName.startsWith("set") && method.getParameters().size() == 1 && method.getReturnType().getKind().name().equals("VOID")) {
-                            String fieldName = Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4);
-                            TypeMirror fieldType = method.getParameters().get(0).asType();
-                            DefaultAnnotationInfo defaultInfo = getDefaultAnnotationInfo(method);
-                            boolean isOptional = isAnnotatedWithOptional(method) || defaultInfo.hasDefault;
-                            // If field already exists, merge: prefer field annotation for isOptional/hasDefault
-                            FieldInfo existing = fieldMap.get(fieldName);
-                            if (existing != null) {
-                                boolean mergedOptional = existing.isOptional || isOptional;
-                                boolean mergedHasDefault = existing.hasDefault || defaultInfo.hasDefault;
-                                String mergedDefaultValue = existing.hasDefault ? existing.defaultValue : defaultInfo.value;
-                                String mergedDefaultType = existing.hasDefault ? existing.defaultType : defaultInfo.type;
-                                fieldMap.put(fieldName, new FieldInfo(fieldName, fieldType, mergedOptional, mergedHasDefault, mergedDefaultValue, mergedDefaultType));
-                            } else {
-                                fieldMap.put(fieldName, new FieldInfo(fieldName, fieldType, isOptional, defaultInfo.hasDefault, defaultInfo.value, defaultInfo.type));
-                            }
-                        }
+                for (ExecutableElement method : members.getPublicSetters().values()) {
+                    String methodName = method.getSimpleName().toString();
+                    String fieldName = Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4);
+                    TypeMirror fieldType = method.getParameters().get(0).asType();
+                    DefaultAnnotationInfo defaultInfo = getDefaultAnnotationInfo(method);
+                    boolean isOptional = isAnnotatedWithOptional(method) || defaultInfo.hasDefault;
+                    // If field already exists, merge: prefer field annotation for isOptional/hasDefault
+                    FieldInfo existing = fieldMap.get(fieldName);
+                    if (existing != null) {
+                        boolean mergedOptional = existing.isOptional || isOptional;
+                        boolean mergedHasDefault = existing.hasDefault || defaultInfo.hasDefault;
+                        String mergedDefaultValue = existing.hasDefault ? existing.defaultValue : defaultInfo.value;
+                        String mergedDefaultType = existing.hasDefault ? existing.defaultType : defaultInfo.type;
+                        fieldMap.put(fieldName, new FieldInfo(fieldName, fieldType, mergedOptional, mergedHasDefault, mergedDefaultValue, mergedDefaultType, existing.element));
+                    } else {
+                        fieldMap.put(fieldName, new FieldInfo(fieldName, fieldType, isOptional, defaultInfo.hasDefault, defaultInfo.value, defaultInfo.type, method.getParameters().get(0)));
                     }
                 }
                 fields.addAll(fieldMap.values());
@@ -75,31 +67,28 @@ public class FieldExtractor {
         return fields;
     }
     
-    private List<FieldInfo> extractRecordFields(TypeElement element) {
+    private List<FieldInfo> extractRecordFields(MemberIndex members) {
         List<FieldInfo> fields = new ArrayList<>();
-        for (Element enclosedElement : element.getEnclosedElements()) {
-            if (enclosedElement.getKind() == ElementKind.RECORD_COMPONENT) {
-                RecordComponentElement recordComponent = (RecordComponentElement) enclosedElement;
-                String fieldName = recordComponent.getSimpleName().toString();
-                TypeMirror fieldType = recordComponent.asType();
-                DefaultAnnotationInfo defaultInfo = getDefaultAnnotationInfo(recordComponent);
-                boolean isOptional = isAnnotatedWithOptional(recordComponent) || defaultInfo.hasDefault;
-                fields.add(new FieldInfo(fieldName, fieldType, isOptional, defaultInfo.hasDefault, defaultInfo.value, defaultInfo.type));
-            }
+        for (RecordComponentElement recordComponent : members.getRecordComponents()) {
+            String fieldName = recordComponent.getSimpleName().toString();
+            TypeMirror fieldType = recordComponent.asType();
+            DefaultAnnotationInfo defaultInfo = getDefaultAnnotationInfo(recordComponent);
+            boolean isOptional = isAnnotatedWithOptional(recordComponent) || defaultInfo.hasDefault;
+            fields.add(new FieldInfo(fieldName, fieldType, isOptional, defaultInfo.hasDefault, defaultInfo.value, defaultInfo.type, recordComponent));
         }
         return fields;
     }
     
-    private List<FieldInfo> extractClassFields(TypeElement element) {
+    private List<FieldInfo> extractClassFields(MemberIndex members) {
         List<FieldInfo> fields = new ArrayList<>();
-        ExecutableElement constructor = findConstructor(element);
+        ExecutableElement constructor = findConstructor(members);
         if (constructor != null) {
             for (VariableElement param : constructor.getParameters()) {
                 String fieldName = param.getSimpleName().toString();
                 TypeMirror fieldType = param.asType();
                 DefaultAnnotationInfo defaultInfo = getDefaultAnnotationInfo(param);
                 boolean isOptional = isAnnotatedWithOptional(param) || defaultInfo.hasDefault;
-                fields.add(new FieldInfo(fieldName, fieldType, isOptional, defaultInfo.hasDefault, defaultInfo.value, defaultInfo.type));
+                fields.add(new FieldInfo(fieldName, fieldType, isOptional, defaultInfo.hasDefault, defaultInfo.value, defaultInfo.type, param));
             }
         }
         return fields;
@@ -117,7 +106,7 @@ public class FieldExtractor {
 
     private DefaultAnnotationInfo getDefaultAnnotationInfo(Element element) {
         for (var mirror : element.getAnnotationMirrors()) {
-            if ("org.devnuxs.stagebuilder.api.StageBuilder.Default".equals(mirror.getAnnotationType().toString())) {
+            if (isAnnotationType(mirror, "org.devnuxs.stagebuilder.api.StageBuilder.Default")) {
                 String value = null;
                 String type = null;
                 for (var entry : mirror.getElementValues().entrySet()) {
@@ -134,19 +123,16 @@ public class FieldExtractor {
     
     private boolean isAnnotatedWithOptional(Element element) {
         return element.getAnnotationMirrors().stream()
-            .anyMatch(mirror -> "org.devnuxs.stagebuilder.api.StageBuilder.Optional"
-                .equals(mirror.getAnnotationType().toString()));
+            .anyMatch(mirror -> isAnnotationType(mirror, "org.devnuxs.stagebuilder.api.StageBuilder.Optional"));
     }
     
-    private ExecutableElement findConstructor(TypeElement element) {
-        for (Element enclosedElement : element.getEnclosedElements()) {
-            if (enclosedElement.getKind() == ElementKind.CONSTRUCTOR) {
-                ExecutableElement constructor = (ExecutableElement) enclosedElement;
-                if (constructor.getModifiers().contains(Modifier.PUBLIC)) {
-                    return constructor;
-                }
-            }
-        }
-        return null;
+    private boolean isAnnotationType(AnnotationMirror mirror, String qualifiedName) {
+        // Compares the name in place instead of rendering the annotation type to a string
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(qualifiedName);
+    }
+    
+    private ExecutableElement findConstructor(MemberIndex members) {
+        List<ExecutableElement> constructors = members.getPublicConstructors();
+        return constructors.isEmpty() ? null : constructors.get(0);
     }
 }
\ No newline at end of file
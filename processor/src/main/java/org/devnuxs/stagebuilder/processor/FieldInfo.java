@@ -1,5 +1,6 @@
 package org.devnuxs.stagebuilder.processor;
 
+import javax.lang.model.element.Element;
 import javax.lang.model.type.TypeMirror;
 
 /**
@@ -18,6 +19,8 @@ public class FieldInfo {
     public final String defaultValue;
     /** The type of the default value. */
     public final String defaultType;
+    /** The element the field was extracted from, used to report diagnostics. May be {@code null}. */
+    public final Element element;
 
     /**
      * Creates a FieldInfo without default value information.
@@ -41,11 +44,27 @@ public class FieldInfo {
      * @param defaultType the type of the default value
      */
     public FieldInfo(String name, TypeMirror type, boolean isOptional, boolean hasDefault, String defaultValue, String defaultType) {
+        this(name, type, isOptional, hasDefault, defaultValue, defaultType, null);
+    }
+
+    /**
+     * Creates a FieldInfo with complete information including the source element.
+     * 
+     * @param name the name of the field
+     * @param type the type of the field
+     * @param isOptional whether the field is optional
+     * @param hasDefault whether the field has a default value
+     * @param defaultValue the default value as a string
+     * @param defaultType the type of the default value
+     * @param element the element the field was extracted from
+     */
+    public FieldInfo(String name, TypeMirror type, boolean isOptional, boolean hasDefault, String defaultValue, String defaultType, Element element) {
         this.name = name;
         this.type = type;
         this.isOptional = isOptional;
         this.hasDefault = hasDefault;
         this.defaultValue = defaultValue;
         this.defaultType = defaultType;
+        this.element = element;
     }
 }
\ No newline at end of file
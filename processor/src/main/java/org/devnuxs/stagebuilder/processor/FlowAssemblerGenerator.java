@@ -0,0 +1,391 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates the {@code <Type>FlowAssembler} companion class.
+ *
+ * <p>An assembler is a {@link Flow.Publisher} of the annotated type that subscribes to one
+ * publisher per field and zips the n-th element of each into the n-th instance, built through
+ * the stage builder. Publishers of optional and default fields may be absent, in which case the
+ * field keeps its default. Each source is requested a bounded prefetch up front and replenished
+ * in batches of three quarters of it, so at most {@code prefetch} elements are buffered per
+ * field. A single drain loop emits instances as downstream demand allows and completes once any
+ * source is exhausted.</p>
+ */
+public class FlowAssemblerGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "FlowAssembler";
+    private static final ClassName INNER = ClassName.get("", "Inner");
+    private static final ClassName ZIP = ClassName.get("", "Zip");
+    private static final ClassName SUBSCRIPTION = ClassName.get(Flow.Subscription.class);
+
+    /**
+     * Gets the name of the flow assembler class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the flow assembler class
+     */
+    public static String getFlowAssemblerClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        ClassName assemblerClassName = ClassName.get(packageName, getFlowAssemblerClassName(className));
+
+        TypeSpec.Builder assembler = TypeSpec.classBuilder(assemblerClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Flow.Publisher.class), targetClassName))
+            .addJavadoc("Publishes {@link $T} instances zipped from one {@link $T} per field.\n",
+                targetClassName, Flow.Publisher.class)
+            .addField(FieldSpec.builder(int.class, "DEFAULT_PREFETCH", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addJavadoc("The number of elements requested from each source before any is consumed.\n")
+                .initializer("128")
+                .build())
+            .addField(FieldSpec.builder(SUBSCRIPTION, "CANCELLED", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", TypeSpec.anonymousClassBuilder("")
+                    .addSuperinterface(SUBSCRIPTION)
+                    .addMethod(MethodSpec.methodBuilder("request")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(long.class, "n")
+                        .build())
+                    .addMethod(MethodSpec.methodBuilder("cancel")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .build())
+                    .build())
+                .build());
+
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE);
+        for (FieldInfo field : fields) {
+            assembler.addField(getPublisherType(field), field.name + "Publisher", Modifier.PRIVATE, Modifier.FINAL);
+            constructor.addParameter(getPublisherType(field), field.name)
+                .addStatement("this.$N = $N", field.name + "Publisher", field.name);
+        }
+        assembler.addField(int.class, "prefetch", Modifier.PRIVATE, Modifier.FINAL)
+            .addMethod(constructor.addParameter(int.class, "prefetch")
+                .addStatement("this.prefetch = prefetch")
+                .build());
+
+        assembler.addMethod(generateOfMethod(fields, assemblerClassName, false))
+            .addMethod(generateOfMethod(fields, assemblerClassName, true))
+            .addMethod(MethodSpec.methodBuilder("subscribe")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Flow.Subscriber.class),
+                    WildcardTypeName.supertypeOf(targetClassName)), "subscriber")
+                .addStatement("$T.requireNonNull(subscriber, $S)", Objects.class, "subscriber")
+                .addStatement("$T zip = new $T(subscriber)", ZIP, ZIP)
+                .addStatement("subscriber.onSubscribe(zip)")
+                .addStatement("zip.subscribe()")
+                .build())
+            .addType(generateZipClass(fields, targetClassName, builderClassName))
+            .addType(generateInnerClass());
+        return assembler.build();
+    }
+
+    private static TypeName getElementType(FieldInfo field) {
+        return TypeName.get(field.type).box();
+    }
+
+    private static TypeName getPublisherType(FieldInfo field) {
+        return ParameterizedTypeName.get(ClassName.get(Flow.Publisher.class),
+            WildcardTypeName.subtypeOf(getElementType(field)));
+    }
+
+    private static boolean isRequired(FieldInfo field) {
+        return !field.isOptional && !field.hasDefault;
+    }
+
+    private MethodSpec generateOfMethod(List<FieldInfo> fields, ClassName assemblerClassName, boolean withPrefetch) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("of")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .returns(assemblerClassName);
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        for (FieldInfo field : fields) {
+            method.addParameter(getPublisherType(field), field.name);
+            arguments.add("$N, ", field.name);
+        }
+        if (!withPrefetch) {
+            return method.addJavadoc("Creates an assembler over the given sources with the default prefetch. Sources of\n"
+                    + "optional and default fields may be {@code null}.\n")
+                .addStatement("return of($LDEFAULT_PREFETCH)", arguments.build())
+                .build();
+        }
+        method.addJavadoc("Creates an assembler over the given sources requesting up to {@code prefetch} elements\n"
+                + "from each at a time. Sources of optional and default fields may be {@code null}.\n")
+            .addParameter(int.class, "prefetch");
+        CodeBlock.Builder allAbsent = CodeBlock.builder();
+        for (FieldInfo field : fields) {
+            if (isRequired(field)) {
+                method.addStatement("$T.requireNonNull($N, $S)", Objects.class, field.name, field.name);
+            } else {
+                allAbsent.add(allAbsent.isEmpty() ? "$N == null" : " && $N == null", field.name);
+            }
+        }
+        if (fields.stream().noneMatch(FlowAssemblerGenerator::isRequired)) {
+            method.beginControlFlow("if ($L)", allAbsent.isEmpty() ? CodeBlock.of("true") : allAbsent.build())
+                .addStatement("throw new $T($S)", IllegalArgumentException.class, "At least one source is required")
+                .endControlFlow();
+        }
+        return method.beginControlFlow("if (prefetch <= 0)")
+            .addStatement("throw new $T($S + prefetch)", IllegalArgumentException.class, "Prefetch must be positive: ")
+            .endControlFlow()
+            .addStatement("return new $T($Lprefetch)", assemblerClassName, arguments.build())
+            .build();
+    }
+
+    private TypeSpec generateZipClass(List<FieldInfo> fields, ClassName targetClassName, ClassName builderClassName) {
+        TypeSpec.Builder zip = TypeSpec.classBuilder(ZIP.simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+            .addJavadoc("Subscription handed downstream; zips the sources in a single drain loop.\n")
+            .addSuperinterface(SUBSCRIPTION)
+            .addField(ParameterizedTypeName.get(ClassName.get(Flow.Subscriber.class),
+                WildcardTypeName.supertypeOf(targetClassName)), "downstream", Modifier.PRIVATE, Modifier.FINAL);
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+            .addParameter(ParameterizedTypeName.get(ClassName.get(Flow.Subscriber.class),
+                WildcardTypeName.supertypeOf(targetClassName)), "downstream")
+            .addStatement("this.downstream = downstream");
+        MethodSpec.Builder subscribe = MethodSpec.methodBuilder("subscribe");
+        MethodSpec.Builder cancelSources = MethodSpec.methodBuilder("cancelSources").addModifiers(Modifier.PRIVATE);
+        MethodSpec.Builder clear = MethodSpec.methodBuilder("clear").addModifiers(Modifier.PRIVATE);
+        CodeBlock.Builder exhausted = CodeBlock.builder();
+        CodeBlock.Builder empty = CodeBlock.builder();
+        for (FieldInfo field : fields) {
+            String publisher = field.name + "Publisher";
+            zip.addField(ParameterizedTypeName.get(INNER, getElementType(field)), field.name, Modifier.PRIVATE, Modifier.FINAL);
+            String separator = exhausted.isEmpty() ? "" : " || ";
+            if (isRequired(field)) {
+                constructor.addStatement("this.$N = new $T<>(this, prefetch)", field.name, INNER);
+                subscribe.addStatement("$N.subscribe($N)", publisher, field.name);
+                cancelSources.addStatement("$N.cancel()", field.name);
+                clear.addStatement("$N.queue.clear()", field.name);
+                exhausted.add(separator + "$N.isExhausted()", field.name);
+                empty.add(" || $N.queue.isEmpty()", field.name);
+            } else {
+                constructor.addStatement("this.$N = $N != null ? new $T<>(this, prefetch) : null", field.name, publisher, INNER);
+                subscribe.beginControlFlow("if ($N != null)", field.name)
+                    .addStatement("$N.subscribe($N)", publisher, field.name)
+                    .endControlFlow();
+                cancelSources.beginControlFlow("if ($N != null)", field.name)
+                    .addStatement("$N.cancel()", field.name)
+                    .endControlFlow();
+                clear.beginControlFlow("if ($N != null)", field.name)
+                    .addStatement("$N.queue.clear()", field.name)
+                    .endControlFlow();
+                exhausted.add(separator + "($N != null && $N.isExhausted())", field.name, field.name);
+                empty.add(" || ($N != null && $N.queue.isEmpty())", field.name, field.name);
+            }
+        }
+        zip.addField(FieldSpec.builder(AtomicLong.class, "requested", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T()", AtomicLong.class)
+                .build())
+            .addField(FieldSpec.builder(AtomicInteger.class, "wip", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T()", AtomicInteger.class)
+                .build())
+            .addField(FieldSpec.builder(ParameterizedTypeName.get(AtomicReference.class, Throwable.class), "error",
+                    Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", AtomicReference.class)
+                .build())
+            .addField(boolean.class, "cancelled", Modifier.PRIVATE, Modifier.VOLATILE)
+            .addMethod(constructor.build())
+            .addMethod(subscribe.build())
+            .addMethod(MethodSpec.methodBuilder("request")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(long.class, "n")
+                .beginControlFlow("if (n <= 0)")
+                .addStatement("fail(new $T($S + n))", IllegalArgumentException.class, "Non-positive request: ")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("requested.getAndAccumulate(n, (current, added) -> current + added < 0 ? $T.MAX_VALUE : current + added)", Long.class)
+                .addStatement("drain()")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("cancel")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("cancelled = true")
+                .addStatement("cancelSources()")
+                .addStatement("drain()")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("fail")
+                .addParameter(Throwable.class, "failure")
+                .beginControlFlow("if (error.compareAndSet(null, failure))")
+                .addStatement("drain()")
+                .endControlFlow()
+                .build())
+            .addMethod(MethodSpec.methodBuilder("drain")
+                .beginControlFlow("if (wip.getAndIncrement() != 0)")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("int missed = 1")
+                .beginControlFlow("do")
+                .addStatement("long demand = requested.get()")
+                .addStatement("long emitted = 0")
+                .beginControlFlow("while (true)")
+                .beginControlFlow("if (cancelled)")
+                .addStatement("clear()")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("$T failure = error.get()", Throwable.class)
+                .beginControlFlow("if (failure != null)")
+                .addStatement("terminate()")
+                .addStatement("downstream.onError(failure)")
+                .addStatement("return")
+                .endControlFlow()
+                .beginControlFlow("if ($L)", exhausted.isEmpty() ? CodeBlock.of("true") : exhausted.build())
+                .addStatement("terminate()")
+                .addStatement("downstream.onComplete()")
+                .addStatement("return")
+                .endControlFlow()
+                .beginControlFlow("if (emitted == demand$L)", empty.build())
+                .addStatement("break")
+                .endControlFlow()
+                .addStatement("$T item", targetClassName)
+                .beginControlFlow("try")
+                .addStatement("item = assemble()")
+                .nextControlFlow("catch ($T e)", RuntimeException.class)
+                .addStatement("terminate()")
+                .addStatement("downstream.onError(e)")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("downstream.onNext(item)")
+                .addStatement("emitted++")
+                .endControlFlow()
+                .beginControlFlow("if (emitted != 0 && demand != $T.MAX_VALUE)", Long.class)
+                .addStatement("requested.addAndGet(-emitted)")
+                .endControlFlow()
+                .addStatement("missed = wip.addAndGet(-missed)")
+                .endControlFlow("while (missed != 0)")
+                .build())
+            .addMethod(generateAssembleMethod(fields, targetClassName, builderClassName))
+            .addMethod(MethodSpec.methodBuilder("terminate")
+                .addModifiers(Modifier.PRIVATE)
+                .addStatement("cancelled = true")
+                .addStatement("cancelSources()")
+                .addStatement("clear()")
+                .build())
+            .addMethod(cancelSources.build())
+            .addMethod(clear.build());
+        return zip.build();
+    }
+
+    private MethodSpec generateAssembleMethod(List<FieldInfo> fields, ClassName targetClassName, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("assemble")
+            .addModifiers(Modifier.PRIVATE)
+            .returns(targetClassName);
+        for (FieldInfo field : fields) {
+            if (isRequired(field)) {
+                method.addStatement("$T $N = $N.poll()", TypeName.get(field.type), field.name + "Value", field.name);
+            } else {
+                method.addStatement("$T $N = $N != null ? $N.poll() : $L", TypeName.get(field.type), field.name + "Value",
+                    field.name, field.name, CodeGenerationUtils.getZeroValue(field.type));
+            }
+        }
+        return method.addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName,
+                field -> field.name + "Value", field -> field.name + " != null"))
+            .build();
+    }
+
+    private TypeSpec generateInnerClass() {
+        TypeVariableName e = TypeVariableName.get("E");
+        return TypeSpec.classBuilder(INNER.simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Subscriber to one source, buffering at most {@code prefetch} elements.\n")
+            .addTypeVariable(e)
+            .superclass(ParameterizedTypeName.get(ClassName.get(AtomicReference.class), SUBSCRIPTION))
+            .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Flow.Subscriber.class), e))
+            // AtomicReference is serializable, but subscribers never leave the running zip
+            .addField(FieldSpec.builder(long.class, "serialVersionUID", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("1L")
+                .build())
+            .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(Queue.class), e), "queue", Modifier.TRANSIENT, Modifier.FINAL)
+                .initializer("new $T<>()", ConcurrentLinkedQueue.class)
+                .build())
+            .addField(ZIP, "parent", Modifier.PRIVATE, Modifier.TRANSIENT, Modifier.FINAL)
+            .addField(int.class, "prefetch", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(int.class, "limit", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(int.class, "consumed", Modifier.PRIVATE)
+            .addField(boolean.class, "done", Modifier.PRIVATE, Modifier.VOLATILE)
+            .addMethod(MethodSpec.constructorBuilder()
+                .addParameter(ZIP, "parent")
+                .addParameter(int.class, "prefetch")
+                .addStatement("this.parent = parent")
+                .addStatement("this.prefetch = prefetch")
+                .addStatement("this.limit = $T.max(1, prefetch - (prefetch >> 2))", Math.class)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("onSubscribe")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(SUBSCRIPTION, "subscription")
+                .beginControlFlow("if (!compareAndSet(null, subscription))")
+                .addComment("Already cancelled or subscribed twice")
+                .addStatement("subscription.cancel()")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("subscription.request(prefetch)")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("onNext")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(e, "item")
+                .addStatement("queue.offer(item)")
+                .addStatement("parent.drain()")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("onError")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Throwable.class, "failure")
+                .addStatement("parent.fail(failure)")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("onComplete")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("done = true")
+                .addStatement("parent.drain()")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("poll")
+                .addJavadoc("Takes the next element, replenishing the source once a batch has been consumed.\n")
+                .returns(e)
+                .addStatement("$T item = queue.poll()", e)
+                .beginControlFlow("if (++consumed == limit)")
+                .addStatement("consumed = 0")
+                .addStatement("get().request(limit)")
+                .endControlFlow()
+                .addStatement("return item")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("isExhausted")
+                .returns(boolean.class)
+                .addStatement("return done && queue.isEmpty()")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("cancel")
+                .addStatement("$T subscription = getAndSet(CANCELLED)", SUBSCRIPTION)
+                .beginControlFlow("if (subscription != null && subscription != CANCELLED)")
+                .addStatement("subscription.cancel()")
+                .endControlFlow()
+                .build())
+            .build();
+    }
+}
@@ -0,0 +1,256 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.lang.model.element.Modifier;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Generates the {@code <Type>View} companion class.
+ *
+ * <p>The view is a reusable flyweight over a fixed-size record layout in a {@link ByteBuffer},
+ * for example a slice of a memory-mapped file. Fields are laid out in declaration order without
+ * padding and use the byte order of the buffer. Accessors decode on demand, so scanning a buffer
+ * with a single view instance allocates nothing per record. The nested {@code Writer} appends
+ * records through a staged API that mirrors the stage builder; appending an instance reads its
+ * fields through accessors, public getters or public fields, never reflectively.</p>
+ */
+public class FlyweightViewGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "View";
+    private static final String WRITER = "Writer";
+    private static final String COMMIT_STAGE = "CommitStage";
+
+    /**
+     * Gets the name of the view class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the view class
+     */
+    public static String getViewClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    private final StageInterfaceGenerator stageInterfaceGenerator = new StageInterfaceGenerator();
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        for (FieldInfo field : fields) {
+            if (!ValueKind.of(field.type).isPrimitive()) {
+                throw new UnsupportedFieldException(field, "Field '" + field.name + "' of type " + field.type
+                    + " has no fixed size; flyweight views only support primitive fields");
+            }
+            // Writer.write(obj) would otherwise box each value through the reflective fallback
+            CodeGenerationUtils.requireDirectRead(field, members, "flyweight writer");
+        }
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        ClassName viewClassName = ClassName.get(packageName, getViewClassName(className));
+
+        TypeSpec.Builder view = TypeSpec.classBuilder(viewClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Flyweight view over {@link $T} records stored in a {@link $T}.\n", targetClassName, ByteBuffer.class);
+
+        int offset = 0;
+        for (FieldInfo field : fields) {
+            view.addField(FieldSpec.builder(int.class, getOffsetName(field), Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", offset)
+                .build());
+            offset += ValueKind.of(field.type).fixedSize();
+        }
+        view.addField(FieldSpec.builder(int.class, "SIZE", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Size of one record in bytes.\n")
+            .initializer("$L", offset)
+            .build());
+        view.addField(ByteBuffer.class, "buffer", Modifier.PRIVATE);
+        view.addField(int.class, "offset", Modifier.PRIVATE);
+
+        view.addMethod(MethodSpec.methodBuilder("wrap")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Points this view at the record starting at {@code offset}.\n")
+            .addParameter(ByteBuffer.class, "buffer")
+            .addParameter(int.class, "offset")
+            .returns(viewClassName)
+            .addStatement("this.buffer = buffer")
+            .addStatement("this.offset = offset")
+            .addStatement("return this")
+            .build());
+        view.addMethod(MethodSpec.methodBuilder("wrapRecord")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Points this view at the record with the given index of a buffer holding consecutive records.\n")
+            .addParameter(ByteBuffer.class, "buffer")
+            .addParameter(int.class, "index")
+            .returns(viewClassName)
+            .addStatement("return wrap(buffer, index * SIZE)")
+            .build());
+        view.addMethod(MethodSpec.methodBuilder("recordCount")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Gets the number of complete records between index 0 and the limit of the buffer.\n")
+            .addParameter(ByteBuffer.class, "buffer")
+            .returns(int.class)
+            .addStatement("return buffer.limit() / SIZE")
+            .build());
+        view.addMethod(MethodSpec.methodBuilder("recordOffset")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Gets the offset of the current record.\n")
+            .returns(int.class)
+            .addStatement("return offset")
+            .build());
+        for (FieldInfo field : fields) {
+            view.addMethod(MethodSpec.methodBuilder(field.name)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.get(field.type))
+                .addStatement("return $L", readCode(field))
+                .build());
+        }
+        view.addMethod(MethodSpec.methodBuilder("materialize")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Creates an instance from the current record through the stage builder.\n")
+            .returns(targetClassName)
+            .addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName, field -> field.name + "()", null))
+            .build());
+        MethodSpec commitMethod = MethodSpec.methodBuilder("commit")
+            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+            .returns(int.class)
+            .build();
+        List<TypeSpec> stageInterfaces = stageInterfaceGenerator.generateCustomStageInterfaces(
+            fields, COMMIT_STAGE, List.of(commitMethod), field -> List.of(TypeName.get(field.type)));
+        view.addTypes(stageInterfaces);
+        view.addType(generateWriter(fields, stageInterfaces, targetClassName, members, builderClassName));
+        return view.build();
+    }
+
+    private static String getOffsetName(FieldInfo field) {
+        return CodeGenerationUtils.toConstantName(field.name) + "_OFFSET";
+    }
+
+    private CodeBlock readCode(FieldInfo field) {
+        String offset = "offset + " + getOffsetName(field);
+        switch (ValueKind.of(field.type)) {
+            case BOOLEAN: return CodeBlock.of("buffer.get($L) != 0", offset);
+            case BYTE: return CodeBlock.of("buffer.get($L)", offset);
+            case SHORT: return CodeBlock.of("buffer.getShort($L)", offset);
+            case CHAR: return CodeBlock.of("buffer.getChar($L)", offset);
+            case INT: return CodeBlock.of("buffer.getInt($L)", offset);
+            case LONG: return CodeBlock.of("buffer.getLong($L)", offset);
+            case FLOAT: return CodeBlock.of("buffer.getFloat($L)", offset);
+            default: return CodeBlock.of("buffer.getDouble($L)", offset);
+        }
+    }
+
+    private CodeBlock writeCode(FieldInfo field, String base, CodeBlock value) {
+        String offset = base + " + " + getOffsetName(field);
+        switch (ValueKind.of(field.type)) {
+            case BOOLEAN: return CodeBlock.of("this.buffer.put($L, (byte) ($L ? 1 : 0))", offset, value);
+            case BYTE: return CodeBlock.of("this.buffer.put($L, $L)", offset, value);
+            case SHORT: return CodeBlock.of("this.buffer.putShort($L, $L)", offset, value);
+            case CHAR: return CodeBlock.of("this.buffer.putChar($L, $L)", offset, value);
+            case INT: return CodeBlock.of("this.buffer.putInt($L, $L)", offset, value);
+            case LONG: return CodeBlock.of("this.buffer.putLong($L, $L)", offset, value);
+            case FLOAT: return CodeBlock.of("this.buffer.putFloat($L, $L)", offset, value);
+            default: return CodeBlock.of("this.buffer.putDouble($L, $L)", offset, value);
+        }
+    }
+
+    private TypeSpec generateWriter(List<FieldInfo> fields, List<TypeSpec> stageInterfaces, ClassName targetClassName,
+                                    MemberIndex members, ClassName builderClassName) {
+        TypeSpec.Builder writer = TypeSpec.classBuilder(WRITER)
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Appends records at the position of a buffer through a staged API, without allocating per record.\n");
+        for (TypeSpec stageInterface : stageInterfaces) {
+            writer.addSuperinterface(ClassName.get("", stageInterface.name));
+        }
+        writer.addField(ByteBuffer.class, "buffer", Modifier.PRIVATE, Modifier.FINAL);
+        writer.addField(FieldSpec.builder(int.class, "base", Modifier.PRIVATE).initializer("-1").build());
+        writer.addMethod(MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(ByteBuffer.class, "buffer")
+            .addStatement("this.buffer = buffer")
+            .build());
+
+        MethodSpec.Builder appendMethod = MethodSpec.methodBuilder("append")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Starts a record at the position of the buffer; optional fields start with their defaults.\n")
+            .returns(ClassName.get("", stageInterfaces.get(0).name))
+            .beginControlFlow("if (base >= 0)")
+            .addStatement("throw new $T($S)", IllegalStateException.class, "Previous record was not committed")
+            .endControlFlow()
+            .beginControlFlow("if (buffer.remaining() < SIZE)")
+            .addStatement("throw new $T()", BufferOverflowException.class)
+            .endControlFlow()
+            .addStatement("base = buffer.position()");
+        boolean hasRequired = fields.stream().anyMatch(field -> !field.isOptional && !field.hasDefault);
+        for (FieldInfo field : fields) {
+            if (!hasRequired || field.isOptional || field.hasDefault) {
+                CodeBlock defaultValue = CodeGenerationUtils.getDefaultValueCode(field);
+                ValueKind kind = ValueKind.of(field.type);
+                if (kind == ValueKind.BYTE || kind == ValueKind.SHORT || kind == ValueKind.CHAR) {
+                    // Method arguments are not implicitly narrowed like field initializers
+                    defaultValue = CodeBlock.of("($T) $L", TypeName.get(field.type), defaultValue);
+                }
+                appendMethod.addStatement(writeCode(field, "base", defaultValue));
+            }
+        }
+        writer.addMethod(appendMethod.addStatement("return this").build());
+
+        int requiredIndex = 0;
+        List<FieldInfo> requiredFields = fields.stream().filter(field -> !field.isOptional && !field.hasDefault).toList();
+        for (FieldInfo field : fields) {
+            String returnType = COMMIT_STAGE;
+            if (hasRequired && !field.isOptional && !field.hasDefault) {
+                requiredIndex++;
+                if (requiredIndex < requiredFields.size()) {
+                    returnType = CodeGenerationUtils.capitalizeFirstLetter(requiredFields.get(requiredIndex).name)
+                        + CodeGenerationUtils.getStage();
+                }
+            }
+            writer.addMethod(MethodSpec.methodBuilder(field.name)
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addParameter(TypeName.get(field.type), field.name)
+                .returns(ClassName.get("", returnType))
+                .addStatement(writeCode(field, "this.base", CodeBlock.of("$N", field.name)))
+                .addStatement("return this")
+                .build());
+        }
+
+        writer.addMethod(MethodSpec.methodBuilder("commit")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(int.class)
+            .addStatement("int offset = base")
+            .addStatement("buffer.position(offset + SIZE)")
+            .addStatement("base = -1")
+            .addStatement("return offset")
+            .build());
+
+        MethodSpec.Builder writeMethod = MethodSpec.methodBuilder("write")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Appends all fields of {@code obj} as one record and returns its offset.\n")
+            .addParameter(targetClassName, "obj")
+            .returns(int.class)
+            .beginControlFlow("if (base >= 0)")
+            .addStatement("throw new $T($S)", IllegalStateException.class, "Previous record was not committed")
+            .endControlFlow()
+            .addStatement("int offset = buffer.position()")
+            .beginControlFlow("if (buffer.remaining() < SIZE)")
+            .addStatement("throw new $T()", BufferOverflowException.class)
+            .endControlFlow();
+        for (FieldInfo field : fields) {
+            writeMethod.addStatement(writeCode(field, "offset",
+                CodeBlock.of("$L", CodeGenerationUtils.getFieldReadCode(field, members, "obj", builderClassName))));
+        }
+        writer.addMethod(writeMethod
+            .addStatement("buffer.position(offset + SIZE)")
+            .addStatement("return offset")
+            .build());
+        return writer.build();
+    }
+}
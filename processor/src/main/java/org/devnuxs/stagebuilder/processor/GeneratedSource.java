@@ -0,0 +1,175 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * An analysed source file that is ready to be rendered and written.
+ *
+ * <p>The analysis phase reads the javac element model, which is not thread-safe, and captures the
+ * result in an immutable model whose names and code are plain strings: a JavaPoet type, or a
+ * {@link StageBuilderModel} for the direct source writer. {@link #render()} only reads that data
+ * and may run on any thread, while {@link #write} goes through the {@link Filer} and must stay on
+ * the processing thread.</p>
+ */
+public final class GeneratedSource {
+
+    /**
+     * Writes the source code of a generated file.
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        /**
+         * Writes the source code.
+         *
+         * @param out the destination
+         * @throws IOException if writing fails
+         */
+        void renderTo(Appendable out) throws IOException;
+    }
+
+    private final TypeElement element;
+    private final String qualifiedName;
+    private final Renderer renderer;
+
+    /**
+     * Creates a source file generated for an annotated type with JavaPoet.
+     *
+     * @param element the annotated type, the only originating element of the file
+     * @param packageName the package of the generated class
+     * @param typeSpec the generated class
+     */
+    public GeneratedSource(TypeElement element, String packageName, TypeSpec typeSpec) {
+        this(element, packageName.isEmpty() ? typeSpec.name : packageName + "." + typeSpec.name,
+            JavaFile.builder(packageName, typeSpec).build()::writeTo);
+    }
+
+    /**
+     * Creates a source file generated for an annotated type by a custom renderer.
+     *
+     * @param element the annotated type, the only originating element of the file
+     * @param qualifiedName the qualified name of the generated class
+     * @param renderer the renderer writing the source code
+     */
+    public GeneratedSource(TypeElement element, String qualifiedName, Renderer renderer) {
+        this.element = element;
+        this.qualifiedName = qualifiedName;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Gets the annotated type the file was generated for.
+     *
+     * @return the annotated type
+     */
+    public TypeElement getElement() {
+        return element;
+    }
+
+    /**
+     * Gets the qualified name of the generated class.
+     *
+     * @return the qualified class name
+     */
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    /**
+     * Renders the source code without touching the element model.
+     *
+     * @return the source code
+     */
+    public String render() {
+        StringBuilder source = new StringBuilder();
+        try {
+            renderer.renderTo(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return source.toString();
+    }
+
+    /**
+     * Writes rendered source code through the filer.
+     *
+     * @param filer the filer of the processing environment
+     * @param source the source code returned by {@link #render()}, or {@code null} to stream it
+     *               straight into the file without holding it in memory
+     * @param stats the statistics to add the file to, or {@code null}; the time spent streaming the
+     *              source code counts as generation rather than writing
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Filer filer, String source, ProcessingStats stats) throws IOException {
+        long start = System.nanoTime();
+        long generationNanos = 0;
+        long bytes;
+        JavaFileObject file = filer.createSourceFile(qualifiedName, element);
+        try (CountingWriter writer = new CountingWriter(file.openWriter())) {
+            if (source != null) {
+                writer.write(source);
+            } else {
+                long generationStart = System.nanoTime();
+                renderer.renderTo(writer);
+                generationNanos = System.nanoTime() - generationStart;
+            }
+            bytes = writer.bytes;
+        } catch (IOException e) {
+            // Do not leave a truncated file behind for later rounds
+            file.delete();
+            throw e;
+        }
+        if (stats != null) {
+            if (source == null) {
+                stats.addGenerationTime(element, generationNanos);
+            }
+            stats.addWrittenFile(element, System.nanoTime() - start - generationNanos, bytes);
+        }
+    }
+
+    /**
+     * Counts the UTF-8 encoded length of the characters passing through.
+     */
+    private static final class CountingWriter extends FilterWriter {
+        private long bytes;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            count((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) throws IOException {
+            out.write(chars, off, len);
+            for (int i = off; i < off + len; i++) {
+                count(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            for (int i = off; i < off + len; i++) {
+                count(str.charAt(i));
+            }
+        }
+
+        private void count(char c) {
+            // A surrogate pair takes four bytes, two per surrogate
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+    }
+}
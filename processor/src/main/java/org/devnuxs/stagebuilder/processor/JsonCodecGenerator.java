@@ -0,0 +1,607 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the {@code <Type>Json} companion class.
+ *
+ * <p>The writer emits a JSON object straight to an {@link Appendable} using the compile-time
+ * field accessors; fields readable only through reflection are rejected. The reader is a single-pass parser over a {@link CharSequence}: keys are
+ * matched by a switch over the precomputed hash codes of the field names without allocating
+ * key strings, numbers are parsed directly into primitives and values are pushed into the
+ * stage builder. Absent keys keep their builder defaults, missing required fields are rejected
+ * and unknown keys are skipped.</p>
+ */
+public class JsonCodecGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "Json";
+    private static final ClassName CURSOR = ClassName.get("", "Cursor");
+
+    /**
+     * Gets the name of the JSON class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the JSON class
+     */
+    public static String getJsonClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        Set<ValueKind> kinds = EnumSet.noneOf(ValueKind.class);
+        for (FieldInfo field : fields) {
+            ValueKind kind = ValueKind.of(field.type);
+            if (kind == ValueKind.OTHER) {
+                throw new UnsupportedFieldException(field, "Field '" + field.name + "' of type " + field.type
+                    + " is not supported by the JSON codec; supported are primitives, their wrappers, String, enums and byte[]");
+            }
+            CodeGenerationUtils.requireDirectRead(field, members, "JSON codec");
+            kinds.add(kind.unboxed());
+        }
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+
+        TypeSpec.Builder json = TypeSpec.classBuilder(getJsonClassName(className))
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Streaming JSON writer and reader for {@link $T}.\n", targetClassName);
+        for (FieldInfo field : fields) {
+            json.addField(FieldSpec.builder(String.class, getKeyConstantName(field), Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$S", "\"" + field.name + "\":")
+                .build());
+        }
+        json.addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+        json.addMethod(createWriteMethod(fields, targetClassName, members, builderClassName));
+        json.addMethod(MethodSpec.methodBuilder("toJson")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Writes {@code obj} into a new string.\n")
+            .addParameter(targetClassName, "obj")
+            .returns(String.class)
+            .addStatement("$T out = new $T()", StringBuilder.class, StringBuilder.class)
+            .beginControlFlow("try")
+            .addStatement("write(obj, out)")
+            .nextControlFlow("catch ($T e)", IOException.class)
+            .addStatement("throw new $T(e)", IllegalStateException.class)
+            .endControlFlow()
+            .addStatement("return out.toString()")
+            .build());
+        json.addMethod(MethodSpec.methodBuilder("read")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Reads a JSON object.\n\n"
+                + "@throws IllegalArgumentException if the input is malformed or a required field is missing\n")
+            .addParameter(CharSequence.class, "json")
+            .returns(targetClassName)
+            .addStatement("$T cursor = new $T(json)", CURSOR, CURSOR)
+            .addStatement("$T value = readObject(cursor)", targetClassName)
+            .addStatement("cursor.skipWhitespace()")
+            .beginControlFlow("if (cursor.pos != json.length())")
+            .addStatement("throw cursor.error($S)", "Unexpected trailing characters")
+            .endControlFlow()
+            .addStatement("return value")
+            .build());
+        json.addMethod(createReadObjectMethod(fields, className, targetClassName, builderClassName));
+        addWriteHelperMethods(json, kinds);
+        json.addType(createCursorClass());
+        return json.build();
+    }
+
+    private static String getKeyConstantName(FieldInfo field) {
+        return CodeGenerationUtils.toConstantName(field.name) + "_KEY";
+    }
+
+    private MethodSpec createWriteMethod(List<FieldInfo> fields, ClassName targetClassName,
+                                         MemberIndex members, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("write")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Writes {@code obj} as a JSON object to {@code out}.\n")
+            .addParameter(targetClassName, "obj")
+            .addParameter(Appendable.class, "out")
+            .addException(IOException.class)
+            .addStatement("out.append('{')");
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            String local = field.name + "Value";
+            ValueKind kind = ValueKind.of(field.type);
+            if (i > 0) {
+                method.addStatement("out.append(',')");
+            }
+            method.addStatement("out.append($N)", getKeyConstantName(field));
+            method.addStatement("$T $N = $L", TypeName.get(field.type), local,
+                CodeGenerationUtils.getFieldReadCode(field, members, "obj", builderClassName));
+            if (kind.isBoxed() || kind == ValueKind.ENUM || kind == ValueKind.BYTE_ARRAY) {
+                method.beginControlFlow("if ($N == null)", local)
+                    .addStatement("out.append($S)", "null")
+                    .nextControlFlow("else")
+                    .addStatement(writeCode(kind.unboxed(), local))
+                    .endControlFlow();
+            } else {
+                method.addStatement(writeCode(kind, local));
+            }
+        }
+        return method.addStatement("out.append('}')").build();
+    }
+
+    private CodeBlock writeCode(ValueKind kind, String value) {
+        switch (kind) {
+            case BOOLEAN: return CodeBlock.of("out.append($N ? $S : $S)", value, "true", "false");
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG: return CodeBlock.of("writeLong(out, $N)", value);
+            case FLOAT: return CodeBlock.of("writeFloat(out, $N)", value);
+            case DOUBLE: return CodeBlock.of("writeDouble(out, $N)", value);
+            case CHAR: return CodeBlock.of("writeString(out, $T.valueOf($N))", String.class, value);
+            case STRING: return CodeBlock.of("writeString(out, $N)", value);
+            case ENUM: return CodeBlock.of("writeString(out, $N.name())", value);
+            case BYTE_ARRAY: return CodeBlock.of("writeString(out, $T.getEncoder().encodeToString($N))", Base64.class, value);
+            default: throw new IllegalArgumentException("Unsupported value kind " + kind);
+        }
+    }
+
+    private CodeBlock readCode(FieldInfo field, ValueKind kind) {
+        switch (kind) {
+            case BOOLEAN: return CodeBlock.of("cursor.readBoolean()");
+            case BYTE: return CodeBlock.of("(byte) cursor.readInt($T.MIN_VALUE, $T.MAX_VALUE)", Byte.class, Byte.class);
+            case SHORT: return CodeBlock.of("(short) cursor.readInt($T.MIN_VALUE, $T.MAX_VALUE)", Short.class, Short.class);
+            case CHAR: return CodeBlock.of("cursor.readChar()");
+            case INT: return CodeBlock.of("cursor.readInt($T.MIN_VALUE, $T.MAX_VALUE)", Integer.class, Integer.class);
+            case LONG: return CodeBlock.of("cursor.readLong()");
+            case FLOAT: return CodeBlock.of("(float) cursor.readDouble()");
+            case DOUBLE: return CodeBlock.of("cursor.readDouble()");
+            case STRING: return CodeBlock.of("cursor.readNull() ? null : cursor.readString()");
+            case ENUM: return CodeBlock.of("cursor.readNull() ? null : $T.valueOf(cursor.readString())", TypeName.get(field.type));
+            case BYTE_ARRAY: return CodeBlock.of("cursor.readNull() ? null : $T.getDecoder().decode(cursor.readString())", Base64.class);
+            default:
+                if (kind.isBoxed()) {
+                    return CodeBlock.of("cursor.readNull() ? null : $L", readCode(field, kind.unboxed()));
+                }
+                throw new IllegalArgumentException("Unsupported value kind " + kind);
+        }
+    }
+
+    private MethodSpec createReadObjectMethod(List<FieldInfo> fields, String className,
+                                              ClassName targetClassName, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("readObject")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(CURSOR, "cursor")
+            .returns(targetClassName);
+        for (FieldInfo field : fields) {
+            method.addStatement("$T $N = $L", TypeName.get(field.type), field.name + "Value", CodeGenerationUtils.getZeroValue(field.type));
+            method.addStatement("boolean $N = false", field.name + "Set");
+        }
+
+        // Group fields by hash code so that colliding names share a case label
+        Map<Integer, List<FieldInfo>> fieldsByHash = new LinkedHashMap<>();
+        for (FieldInfo field : fields) {
+            fieldsByHash.computeIfAbsent(field.name.hashCode(), hash -> new ArrayList<>()).add(field);
+        }
+        method.addStatement("cursor.expect('{')")
+            .beginControlFlow("if (!cursor.consume('}'))")
+            .beginControlFlow("do")
+            .addStatement("int hash = cursor.readKey()")
+            .addStatement("cursor.expect(':')")
+            .beginControlFlow("switch (hash)");
+        for (Map.Entry<Integer, List<FieldInfo>> entry : fieldsByHash.entrySet()) {
+            method.addCode("case $L:\n", entry.getKey()).addCode("$>");
+            for (FieldInfo field : entry.getValue()) {
+                method.beginControlFlow("if (cursor.keyEquals($S))", field.name)
+                    .addStatement("$N = $L", field.name + "Value", readCode(field, ValueKind.of(field.type)))
+                    .addStatement("$N = true", field.name + "Set")
+                    .addStatement("continue")
+                    .endControlFlow();
+            }
+            method.addStatement("break").addCode("$<");
+        }
+        method.addCode("default:\n").addCode("$>").addStatement("break").addCode("$<")
+            .endControlFlow()
+            .addStatement("cursor.skipValue()")
+            .endControlFlow("while (cursor.consume(','))")
+            .addStatement("cursor.expect('}')")
+            .endControlFlow();
+
+        boolean hasRequired = fields.stream().anyMatch(field -> !field.isOptional && !field.hasDefault);
+        for (FieldInfo field : fields) {
+            if (hasRequired && !field.isOptional && !field.hasDefault) {
+                method.beginControlFlow("if (!$N)", field.name + "Set")
+                    .addStatement("throw new $T($S)", IllegalArgumentException.class,
+                        "Missing required field '" + field.name + "' for " + className)
+                    .endControlFlow();
+            }
+        }
+        method.addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName,
+            field -> field.name + "Value", field -> field.name + "Set"));
+        return method.build();
+    }
+
+    private void addWriteHelperMethods(TypeSpec.Builder json, Set<ValueKind> kinds) {
+        if (kinds.contains(ValueKind.BYTE) || kinds.contains(ValueKind.SHORT)
+            || kinds.contains(ValueKind.INT) || kinds.contains(ValueKind.LONG)) {
+            json.addMethod(MethodSpec.methodBuilder("writeLong")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(Appendable.class, "out")
+                .addParameter(long.class, "value")
+                .addException(IOException.class)
+                .beginControlFlow("if (out instanceof $T)", StringBuilder.class)
+                .addStatement("(($T) out).append(value)", StringBuilder.class)
+                .nextControlFlow("else")
+                .addStatement("out.append($T.toString(value))", Long.class)
+                .endControlFlow()
+                .build());
+        }
+        if (kinds.contains(ValueKind.FLOAT)) {
+            json.addMethod(MethodSpec.methodBuilder("writeFloat")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(Appendable.class, "out")
+                .addParameter(float.class, "value")
+                .addException(IOException.class)
+                .beginControlFlow("if (!$T.isFinite(value))", Float.class)
+                .addStatement("throw new $T($S + value)", IllegalArgumentException.class, "JSON cannot represent ")
+                .endControlFlow()
+                .addStatement("out.append($T.toString(value))", Float.class)
+                .build());
+        }
+        if (kinds.contains(ValueKind.DOUBLE)) {
+            json.addMethod(MethodSpec.methodBuilder("writeDouble")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(Appendable.class, "out")
+                .addParameter(double.class, "value")
+                .addException(IOException.class)
+                .beginControlFlow("if (!$T.isFinite(value))", Double.class)
+                .addStatement("throw new $T($S + value)", IllegalArgumentException.class, "JSON cannot represent ")
+                .endControlFlow()
+                .addStatement("out.append($T.toString(value))", Double.class)
+                .build());
+        }
+        if (kinds.contains(ValueKind.STRING) || kinds.contains(ValueKind.CHAR)
+            || kinds.contains(ValueKind.ENUM) || kinds.contains(ValueKind.BYTE_ARRAY)) {
+            json.addMethod(MethodSpec.methodBuilder("writeString")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(Appendable.class, "out")
+                .addParameter(String.class, "value")
+                .addException(IOException.class)
+                .addCode("""
+                    if (value == null) {
+                      out.append("null");
+                      return;
+                    }
+                    out.append('"');
+                    int start = 0;
+                    for (int i = 0; i < value.length(); i++) {
+                      char c = value.charAt(i);
+                      if (c >= 0x20 && c != '"' && c != '\\\\') {
+                        continue;
+                      }
+                      out.append(value, start, i);
+                      switch (c) {
+                        case '"': out.append("\\\\\\""); break;
+                        case '\\\\': out.append("\\\\\\\\"); break;
+                        case '\\n': out.append("\\\\n"); break;
+                        case '\\r': out.append("\\\\r"); break;
+                        case '\\t': out.append("\\\\t"); break;
+                        default:
+                          out.append("\\\\u00");
+                          out.append(Character.forDigit(c >> 4, 16));
+                          out.append(Character.forDigit(c & 0xF, 16));
+                          break;
+                      }
+                      start = i + 1;
+                    }
+                    out.append(value, start, value.length());
+                    out.append('"');
+                    """)
+                .build());
+        }
+    }
+
+    private TypeSpec createCursorClass() {
+        TypeSpec.Builder cursor = TypeSpec.classBuilder(CURSOR.simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .addJavadoc("Single-pass cursor over the JSON input.\n")
+            .addField(CharSequence.class, "in", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(int.class, "pos", Modifier.PRIVATE)
+            .addField(int.class, "keyStart", Modifier.PRIVATE)
+            .addField(int.class, "keyEnd", Modifier.PRIVATE)
+            .addField(String.class, "key", Modifier.PRIVATE)
+            .addMethod(MethodSpec.constructorBuilder()
+                .addParameter(CharSequence.class, "in")
+                .addStatement("this.in = in")
+                .build());
+        cursor.addMethod(MethodSpec.methodBuilder("skipWhitespace")
+            .addCode("""
+                while (pos < in.length()) {
+                  char c = in.charAt(pos);
+                  if (c != ' ' && c != '\\t' && c != '\\n' && c != '\\r') {
+                    return;
+                  }
+                  pos++;
+                }
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("peek")
+            .returns(char.class)
+            .addCode("""
+                skipWhitespace();
+                if (pos >= in.length()) {
+                  throw error("Unexpected end of input");
+                }
+                return in.charAt(pos);
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("expect")
+            .addParameter(char.class, "expected")
+            .addCode("""
+                if (peek() != expected) {
+                  throw error("Expected '" + expected + "'");
+                }
+                pos++;
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("consume")
+            .addParameter(char.class, "expected")
+            .returns(boolean.class)
+            .addCode("""
+                if (peek() != expected) {
+                  return false;
+                }
+                pos++;
+                return true;
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("literal")
+            .addParameter(String.class, "text")
+            .addCode("""
+                for (int i = 0; i < text.length(); i++, pos++) {
+                  if (pos >= in.length() || in.charAt(pos) != text.charAt(i)) {
+                    throw error("Expected " + text);
+                  }
+                }
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("readKey")
+            .addJavadoc("Reads an object key and returns its hash code without allocating it.\n")
+            .returns(int.class)
+            .addCode("""
+                expect('"');
+                keyStart = pos;
+                key = null;
+                int hash = 0;
+                while (true) {
+                  if (pos >= in.length()) {
+                    throw error("Unterminated string");
+                  }
+                  char c = in.charAt(pos);
+                  if (c == '"') {
+                    keyEnd = pos++;
+                    return hash;
+                  }
+                  if (c == '\\\\') {
+                    pos = keyStart - 1;
+                    key = readString();
+                    return key.hashCode();
+                  }
+                  hash = 31 * hash + c;
+                  pos++;
+                }
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("keyEquals")
+            .addParameter(String.class, "name")
+            .returns(boolean.class)
+            .addCode("""
+                if (key != null) {
+                  return key.equals(name);
+                }
+                int length = keyEnd - keyStart;
+                if (length != name.length()) {
+                  return false;
+                }
+                for (int i = 0; i < length; i++) {
+                  if (in.charAt(keyStart + i) != name.charAt(i)) {
+                    return false;
+                  }
+                }
+                return true;
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("readNull")
+            .returns(boolean.class)
+            .addCode("""
+                if (peek() != 'n') {
+                  return false;
+                }
+                literal("null");
+                return true;
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("readBoolean")
+            .returns(boolean.class)
+            .addCode("""
+                if (peek() == 't') {
+                  literal("true");
+                  return true;
+                }
+                literal("false");
+                return false;
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("readString")
+            .returns(String.class)
+            .addCode("""
+                expect('"');
+                int start = pos;
+                StringBuilder decoded = null;
+                while (true) {
+                  if (pos >= in.length()) {
+                    throw error("Unterminated string");
+                  }
+                  char c = in.charAt(pos);
+                  if (c == '"') {
+                    String value = decoded == null ? in.subSequence(start, pos).toString() : decoded.append(in, start, pos).toString();
+                    pos++;
+                    return value;
+                  }
+                  if (c != '\\\\') {
+                    pos++;
+                    continue;
+                  }
+                  if (decoded == null) {
+                    decoded = new StringBuilder();
+                  }
+                  decoded.append(in, start, pos);
+                  if (pos + 1 >= in.length()) {
+                    throw error("Unterminated string");
+                  }
+                  char escaped = in.charAt(pos + 1);
+                  pos += 2;
+                  switch (escaped) {
+                    case '"': decoded.append('"'); break;
+                    case '\\\\': decoded.append('\\\\'); break;
+                    case '/': decoded.append('/'); break;
+                    case 'b': decoded.append('\\b'); break;
+                    case 'f': decoded.append('\\f'); break;
+                    case 'n': decoded.append('\\n'); break;
+                    case 'r': decoded.append('\\r'); break;
+                    case 't': decoded.append('\\t'); break;
+                    case 'u':
+                      if (pos + 4 > in.length()) {
+                        throw error("Invalid unicode escape");
+                      }
+                      try {
+                        decoded.append((char) Integer.parseInt(in, pos, pos + 4, 16));
+                      } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                      }
+                      pos += 4;
+                      break;
+                    default:
+                      throw error("Invalid escape");
+                  }
+                  start = pos;
+                }
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("readChar")
+            .returns(char.class)
+            .addCode("""
+                String value = readString();
+                if (value.length() != 1) {
+                  throw error("Expected a single character");
+                }
+                return value.charAt(0);
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("scanNumber")
+            .addJavadoc("Scans a number and returns whether it is an integer.\n")
+            .returns(boolean.class)
+            .addCode("""
+                peek();
+                boolean integral = true;
+                if (in.charAt(pos) == '-') {
+                  pos++;
+                }
+                while (pos < in.length()) {
+                  char c = in.charAt(pos);
+                  if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    integral = false;
+                  } else if (c < '0' || c > '9') {
+                    break;
+                  }
+                  pos++;
+                }
+                return integral;
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("readLong")
+            .returns(long.class)
+            .addCode("""
+                skipWhitespace();
+                int start = pos;
+                if (!scanNumber()) {
+                  throw error("Expected an integer");
+                }
+                try {
+                  return Long.parseLong(in, start, pos, 10);
+                } catch (NumberFormatException e) {
+                  throw error("Invalid integer");
+                }
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("readInt")
+            .addParameter(int.class, "min")
+            .addParameter(int.class, "max")
+            .returns(int.class)
+            .addCode("""
+                long value = readLong();
+                if (value < min || value > max) {
+                  throw error("Integer out of range");
+                }
+                return (int) value;
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("readDouble")
+            .returns(double.class)
+            .addCode("""
+                skipWhitespace();
+                int start = pos;
+                boolean integral = scanNumber();
+                try {
+                  if (integral && pos - start <= 18) {
+                    return Long.parseLong(in, start, pos, 10);
+                  }
+                  return Double.parseDouble(in.subSequence(start, pos).toString());
+                } catch (NumberFormatException e) {
+                  throw error("Invalid number");
+                }
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("skipValue")
+            .addCode("""
+                char c = peek();
+                if (c == '"') {
+                  readString();
+                } else if (c == '{' || c == '[') {
+                  char close = c == '{' ? '}' : ']';
+                  pos++;
+                  if (consume(close)) {
+                    return;
+                  }
+                  do {
+                    if (c == '{') {
+                      readKey();
+                      expect(':');
+                    }
+                    skipValue();
+                  } while (consume(','));
+                  expect(close);
+                } else if (c == 't' || c == 'f') {
+                  readBoolean();
+                } else if (c == 'n') {
+                  literal("null");
+                } else {
+                  readDouble();
+                }
+                """)
+            .build());
+        cursor.addMethod(MethodSpec.methodBuilder("error")
+            .addParameter(String.class, "message")
+            .returns(IllegalArgumentException.class)
+            .addStatement("return new $T(message + $S + pos)", IllegalArgumentException.class, " at position ")
+            .build());
+        return cursor.build();
+    }
+}
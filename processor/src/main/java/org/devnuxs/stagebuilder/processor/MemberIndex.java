@@ -0,0 +1,194 @@
+package org.devnuxs.stagebuilder.processor;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Indexes the members of an annotated type in a single pass over its enclosed elements.
+ *
+ * <p>The processor indexes each annotated type once and passes the index to the field extractor
+ * and all generators, which look members up by name here instead of rescanning the type for
+ * every field. The index is not cached anywhere, so no state outlives the processing of a type.</p>
+ */
+public final class MemberIndex {
+
+    private final TypeElement typeElement;
+    private final Types types;
+    private final List<RecordComponentElement> recordComponents = new ArrayList<>();
+    private final List<ExecutableElement> publicConstructors = new ArrayList<>();
+    private final Map<String, VariableElement> fields = new LinkedHashMap<>();
+    private final Map<String, ExecutableElement> publicGetters = new HashMap<>();
+    private final Map<String, ExecutableElement> publicSetters = new LinkedHashMap<>();
+    private volatile AllArgsCheck allArgsCheck;
+
+    private MemberIndex(TypeElement typeElement, Types types) {
+        this.typeElement = typeElement;
+        this.types = types;
+        for (Element enclosed : typeElement.getEnclosedElements()) {
+            switch (enclosed.getKind()) {
+                case RECORD_COMPONENT -> recordComponents.add((RecordComponentElement) enclosed);
+                case FIELD -> fields.put(enclosed.getSimpleName().toString(), (VariableElement) enclosed);
+                case CONSTRUCTOR -> {
+                    if (enclosed.getModifiers().contains(Modifier.PUBLIC)) {
+                        publicConstructors.add((ExecutableElement) enclosed);
+                    }
+                }
+                case METHOD -> {
+                    if (enclosed.getModifiers().contains(Modifier.PUBLIC)) {
+                        indexMethod((ExecutableElement) enclosed);
+                    }
+                }
+                default -> { }
+            }
+        }
+    }
+
+    private void indexMethod(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        if (method.getParameters().isEmpty()) {
+            publicGetters.putIfAbsent(name, method);
+        } else if (name.startsWith("set") && name.length() > 3 && method.getParameters().size() == 1
+            && method.getReturnType().getKind() == TypeKind.VOID) {
+            publicSetters.putIfAbsent(name, method);
+        }
+    }
+
+    /**
+     * Indexes the members of a type.
+     *
+     * @param typeElement the annotated type
+     * @param types the type utilities used to compare member types
+     * @return the index of the type
+     */
+    public static MemberIndex of(TypeElement typeElement, Types types) {
+        return new MemberIndex(typeElement, Objects.requireNonNull(types, "types"));
+    }
+
+    /**
+     * Gets the indexed type.
+     *
+     * @return the annotated type
+     */
+    public TypeElement getTypeElement() {
+        return typeElement;
+    }
+
+    /**
+     * Gets the record components in declaration order.
+     *
+     * @return the record components, empty for classes
+     */
+    public List<RecordComponentElement> getRecordComponents() {
+        return Collections.unmodifiableList(recordComponents);
+    }
+
+    /**
+     * Gets the public constructors in declaration order.
+     *
+     * @return the public constructors
+     */
+    public List<ExecutableElement> getPublicConstructors() {
+        return Collections.unmodifiableList(publicConstructors);
+    }
+
+    /**
+     * Gets the declared fields by name, in declaration order.
+     *
+     * @return the fields by name
+     */
+    public Map<String, VariableElement> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * Gets a declared field.
+     *
+     * @param name the field name
+     * @return the field, or {@code null} if the type declares no field of that name
+     */
+    public VariableElement getField(String name) {
+        return fields.get(name);
+    }
+
+    /**
+     * Gets the public {@code void setX(value)} methods by name, in declaration order.
+     *
+     * @return the setters by method name
+     */
+    public Map<String, ExecutableElement> getPublicSetters() {
+        return Collections.unmodifiableMap(publicSetters);
+    }
+
+    /**
+     * Gets a public {@code void setX(value)} method taking a value of the given type.
+     *
+     * @param name the method name
+     * @param type the parameter type
+     * @return the setter, or {@code null} if the type declares no such setter
+     */
+    public ExecutableElement getPublicSetter(String name, TypeMirror type) {
+        ExecutableElement setter = publicSetters.get(name);
+        return setter != null && isSameType(setter.getParameters().get(0).asType(), type) ? setter : null;
+    }
+
+    /**
+     * Gets a public method without parameters.
+     *
+     * @param name the method name
+     * @return the method, or {@code null} if the type declares no such method
+     */
+    public ExecutableElement getPublicGetter(String name) {
+        return publicGetters.get(name);
+    }
+
+    /**
+     * Checks whether a public constructor takes exactly the fields, in type and order.
+     *
+     * <p>The result is memoized for the field list of the type, which all generators share.</p>
+     *
+     * @param fieldInfos the fields of the annotated type
+     * @return true if such a constructor exists
+     */
+    public boolean hasAllArgsConstructor(List<FieldInfo> fieldInfos) {
+        AllArgsCheck check = allArgsCheck;
+        if (check == null || check.fields() != fieldInfos) {
+            check = new AllArgsCheck(fieldInfos, publicConstructors.stream()
+                .anyMatch(constructor -> parametersMatch(constructor.getParameters(), fieldInfos)));
+            allArgsCheck = check;
+        }
+        return check.result();
+    }
+
+    private boolean parametersMatch(List<? extends VariableElement> parameters, List<FieldInfo> fieldInfos) {
+        if (parameters.size() != fieldInfos.size()) {
+            return false;
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            if (!isSameType(parameters.get(i).asType(), fieldInfos.get(i).type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isSameType(TypeMirror a, TypeMirror b) {
+        return types.isSameType(a, b);
+    }
+
+    private record AllArgsCheck(List<FieldInfo> fields, boolean result) {
+    }
+}
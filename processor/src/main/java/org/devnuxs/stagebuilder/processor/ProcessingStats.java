@@ -0,0 +1,244 @@
+package org.devnuxs.stagebuilder.processor;
+
+import javax.lang.model.element.TypeElement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects the cost of processing each annotated type, enabled with {@code -Astagebuilder.stats}.
+ *
+ * <p>Per type it records the analysis time, the time spent generating source code, the time spent
+ * writing its files through the filer, the bytes written and how the stage builder reads and
+ * creates instances: {@code direct} access through record accessors, getters, setters or public
+ * fields, {@code constructor} creation through the all-args constructor, and {@code reflection}
+ * for the fallbacks. Writes are reported as the generated {@code build()} performs them, so strict
+ * builders report {@code direct} writes and lenient builders report the reflective re-set of
+ * optional fields. The statistics are reported as a summary note and as one JSON report per
+ * type.</p>
+ *
+ * <p>Analysis and writing are recorded on the processing thread, generation may be recorded from
+ * the threads rendering the sources.</p>
+ */
+public final class ProcessingStats {
+
+    /** The access strategy of the stage builder going through accessors, setters and fields. */
+    public static final String DIRECT = "direct";
+    /** The access strategy of the stage builder creating instances through the all-args constructor. */
+    public static final String CONSTRUCTOR = "constructor";
+    /** The access strategy of the stage builder falling back to reflection. */
+    public static final String REFLECTION = "reflection";
+
+    private final Map<TypeElement, TypeStats> types = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Records the analysis of an annotated type. Must be called on the processing thread.
+     *
+     * @param members the member index of the annotated type
+     * @param fields the fields of the annotated type
+     * @param strict whether the stage builder is generated in strict mode
+     * @param nanos the time spent analysing the type
+     */
+    public void recordAnalysis(MemberIndex members, List<FieldInfo> fields, boolean strict, long nanos) {
+        TypeElement element = members.getTypeElement();
+        boolean allArgsConstructor = CodeGenerationUtils.hasAllArgsConstructor(fields, members);
+        String construction = allArgsConstructor ? CONSTRUCTOR : strict ? DIRECT : REFLECTION;
+        List<FieldAccess> accesses = new ArrayList<>();
+        for (FieldInfo field : fields) {
+            accesses.add(new FieldAccess(field.name,
+                CodeGenerationUtils.isReflectiveRead(field, members) ? REFLECTION : DIRECT,
+                getWriteStrategy(field, allArgsConstructor, strict)));
+        }
+        types.put(element, new TypeStats(element.getQualifiedName().toString(), nanos, construction, List.copyOf(accesses)));
+    }
+
+    private static String getWriteStrategy(FieldInfo field, boolean allArgsConstructor, boolean strict) {
+        if (strict) {
+            return allArgsConstructor ? CONSTRUCTOR : DIRECT;
+        }
+        // Lenient builders set optional fields again through reflection after the all-args constructor
+        return allArgsConstructor && !field.isOptional && !field.hasDefault ? CONSTRUCTOR : REFLECTION;
+    }
+
+    /**
+     * Adds time spent generating the source code of a file of an annotated type, whether rendered
+     * up front or streamed into the file.
+     *
+     * @param element the annotated type
+     * @param nanos the generation time
+     */
+    public void addGenerationTime(TypeElement element, long nanos) {
+        TypeStats stats = types.get(element);
+        if (stats != null) {
+            stats.addGeneration(nanos);
+        }
+    }
+
+    /**
+     * Adds a file written for an annotated type.
+     *
+     * @param element the annotated type
+     * @param nanos the time spent in the filer, excluding generation
+     * @param bytes the number of bytes written
+     */
+    public void addWrittenFile(TypeElement element, long nanos, long bytes) {
+        TypeStats stats = types.get(element);
+        if (stats != null) {
+            stats.addFile(nanos, bytes);
+        }
+    }
+
+    /**
+     * Whether any type has been recorded.
+     *
+     * @return true if no type has been analysed
+     */
+    public boolean isEmpty() {
+        return types.isEmpty();
+    }
+
+    /**
+     * Creates the one-line summary reported as a note.
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        List<TypeStats> all = snapshot();
+        long analysis = 0;
+        long generation = 0;
+        long writing = 0;
+        long bytes = 0;
+        int files = 0;
+        int reflectiveConstruction = 0;
+        int reflectiveReads = 0;
+        TypeStats slowest = null;
+        for (TypeStats stats : all) {
+            analysis += stats.analysisNanos;
+            generation += stats.getGenerationNanos();
+            writing += stats.getWriteNanos();
+            bytes += stats.getBytesWritten();
+            files += stats.getFiles();
+            reflectiveConstruction += stats.construction.equals(REFLECTION) ? 1 : 0;
+            reflectiveReads += stats.getReflectiveReads();
+            if (slowest == null || stats.getTotalNanos() > slowest.getTotalNanos()) {
+                slowest = stats;
+            }
+        }
+        return String.format(Locale.ROOT,
+            "StageBuilder stats: %d types, %d files, %d bytes; analysis %.1f ms, generation %.1f ms, writing %.1f ms; "
+                + "%d types created reflectively, %d fields read reflectively; slowest %s (%.1f ms)",
+            all.size(), files, bytes, millis(analysis), millis(generation), millis(writing),
+            reflectiveConstruction, reflectiveReads, slowest.name, millis(slowest.getTotalNanos()));
+    }
+
+    /**
+     * Creates the machine-readable report of a recorded type.
+     *
+     * @param element the annotated type
+     * @return the report as JSON
+     */
+    public String toJson(TypeElement element) {
+        TypeStats stats = types.get(element);
+        StringBuilder json = new StringBuilder("{\n")
+            .append("  \"type\": ").append(quote(stats.name)).append(",\n")
+            .append("  \"fields\": ").append(stats.accesses.size()).append(",\n")
+            .append("  \"analysisNanos\": ").append(stats.analysisNanos).append(",\n")
+            .append("  \"generationNanos\": ").append(stats.getGenerationNanos()).append(",\n")
+            .append("  \"writeNanos\": ").append(stats.getWriteNanos()).append(",\n")
+            .append("  \"files\": ").append(stats.getFiles()).append(",\n")
+            .append("  \"bytesWritten\": ").append(stats.getBytesWritten()).append(",\n")
+            .append("  \"construction\": ").append(quote(stats.construction)).append(",\n")
+            .append("  \"access\": [");
+        for (int i = 0; i < stats.accesses.size(); i++) {
+            FieldAccess access = stats.accesses.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                .append("    {\"field\": ").append(quote(access.field()))
+                .append(", \"read\": ").append(quote(access.read()))
+                .append(", \"write\": ").append(quote(access.write())).append("}");
+        }
+        return json.append(stats.accesses.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+
+    private List<TypeStats> snapshot() {
+        synchronized (types) {
+            return new ArrayList<>(types.values());
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private record FieldAccess(String field, String read, String write) {
+    }
+
+    private static final class TypeStats {
+        private final String name;
+        private final long analysisNanos;
+        private final String construction;
+        private final List<FieldAccess> accesses;
+        private long generationNanos;
+        private long writeNanos;
+        private int files;
+        private long bytesWritten;
+
+        TypeStats(String name, long analysisNanos, String construction, List<FieldAccess> accesses) {
+            this.name = name;
+            this.analysisNanos = analysisNanos;
+            this.construction = construction;
+            this.accesses = accesses;
+        }
+
+        synchronized void addGeneration(long nanos) {
+            this.generationNanos += nanos;
+        }
+
+        synchronized void addFile(long nanos, long bytes) {
+            this.writeNanos += nanos;
+            this.files++;
+            this.bytesWritten += bytes;
+        }
+
+        synchronized long getGenerationNanos() {
+            return generationNanos;
+        }
+
+        synchronized long getWriteNanos() {
+            return writeNanos;
+        }
+
+        synchronized int getFiles() {
+            return files;
+        }
+
+        synchronized long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        long getTotalNanos() {
+            return analysisNanos + getGenerationNanos() + getWriteNanos();
+        }
+
+        int getReflectiveReads() {
+            return (int) accesses.stream().filter(access -> access.read().equals(REFLECTION)).count();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Generates the {@code <Type>RecordLog} companion class.
+ *
+ * <p>The log is a directory of append-only segment files. Each segment starts with a header
+ * holding the schema fingerprint, the field count and the name and type of every field,
+ * followed by records framed as length, CRC32C and the fields encoded by the binary codec.
+ * Writes go through a reusable direct buffer into a {@link FileChannel} and are forced to disk
+ * periodically. Replay maps the segments into memory and rebuilds instances through the binary
+ * codec, so fields appended after a segment was written take their builder defaults. Replay
+ * stops at the first torn or corrupt record of a segment.</p>
+ */
+public class RecordLogGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "RecordLog";
+    private static final int MAGIC = 0x53424C47;
+
+    /**
+     * Gets the name of the record log class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the record log class
+     */
+    public static String getRecordLogClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName codecClassName = ClassName.get(packageName, BinaryCodecGenerator.getCodecClassName(className));
+        ClassName logClassName = ClassName.get(packageName, getRecordLogClassName(className));
+        TypeName consumer = ParameterizedTypeName.get(ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(targetClassName));
+
+        CodeBlock.Builder schema = CodeBlock.builder().add("{");
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            schema.add(i == 0 ? "$S" : ", $S", field.name + ":" + field.type);
+        }
+        schema.add("}");
+
+        TypeSpec.Builder log = TypeSpec.classBuilder(logClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(Closeable.class)
+            .addJavadoc("Append-only log of {@link $T} records, stored as segment files in a directory.\n\n"
+                + "<p>A log instance writes a new segment each time it is opened and is not thread-safe.</p>\n",
+                targetClassName)
+            .addField(FieldSpec.builder(String.class, "SEGMENT_SUFFIX", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$S", ".log")
+                .build())
+            .addField(FieldSpec.builder(String.class, "SEGMENT_PREFIX", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$S", "segment-")
+                .build())
+            .addField(FieldSpec.builder(int.class, "MAGIC", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("0x$L", Integer.toHexString(MAGIC))
+                .build())
+            .addField(FieldSpec.builder(short.class, "VERSION", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("1")
+                .build())
+            .addField(FieldSpec.builder(int.class, "FRAME_HEADER_SIZE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("8")
+                .build())
+            .addField(FieldSpec.builder(String[].class, "FIELD_SCHEMA", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(schema.build())
+                .build())
+            .addField(Path.class, "directory", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(ByteBuffer.class, "buffer", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(long.class, "segmentSize", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(int.class, "forceInterval", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(FieldSpec.builder(CRC32C.class, "crc", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T()", CRC32C.class)
+                .build())
+            .addField(FileChannel.class, "channel", Modifier.PRIVATE)
+            .addField(long.class, "segmentIndex", Modifier.PRIVATE)
+            .addField(long.class, "segmentBytes", Modifier.PRIVATE)
+            .addField(int.class, "unforced", Modifier.PRIVATE);
+
+        log.addMethod(MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(Path.class, "directory")
+            .addParameter(int.class, "bufferSize")
+            .addParameter(long.class, "segmentSize")
+            .addParameter(int.class, "forceInterval")
+            .addParameter(long.class, "segmentIndex")
+            .addStatement("this.directory = directory")
+            .addStatement("this.buffer = $T.allocateDirect(bufferSize)", ByteBuffer.class)
+            .addStatement("this.segmentSize = segmentSize")
+            .addStatement("this.forceInterval = forceInterval")
+            .addStatement("this.segmentIndex = segmentIndex")
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("open")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Opens the log in {@code directory} with a 64 KiB buffer, 64 MiB segments and a force\n"
+                + "every 1024 records.\n")
+            .addParameter(Path.class, "directory")
+            .returns(logClassName)
+            .addException(IOException.class)
+            .addStatement("return open(directory, 1 << 16, 64L << 20, 1024)")
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("open")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Opens the log in {@code directory} and starts a new segment.\n\n"
+                + "@param directory the directory holding the segments, created if missing\n"
+                + "@param bufferSize the size of the write buffer, which bounds the size of a record\n"
+                + "@param segmentSize the size after which a new segment is started\n"
+                + "@param forceInterval the number of appended records after which the segment is forced to disk\n"
+                + "@return the opened log\n"
+                + "@throws IOException if the segment cannot be created\n")
+            .addParameter(Path.class, "directory")
+            .addParameter(int.class, "bufferSize")
+            .addParameter(long.class, "segmentSize")
+            .addParameter(int.class, "forceInterval")
+            .returns(logClassName)
+            .addException(IOException.class)
+            .beginControlFlow("if (segmentSize > $T.MAX_VALUE || forceInterval < 1)", Integer.class)
+            .addStatement("throw new $T($S)", IllegalArgumentException.class,
+                "Segments must be mappable and forceInterval positive")
+            .endControlFlow()
+            .addStatement("$T.createDirectories(directory)", Files.class)
+            .addStatement("$T<$T> existing = segments(directory)", List.class, Path.class)
+            .addStatement("long last = existing.isEmpty() ? 0 : segmentIndexOf(existing.get(existing.size() - 1))")
+            .addStatement("$T log = new $T(directory, bufferSize, segmentSize, forceInterval, last)", logClassName, logClassName)
+            .addStatement("log.startSegment()")
+            .addStatement("return log")
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("append")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Appends a record. Records are buffered until the buffer is full, {@link #flush} is called\n"
+                + "or the force interval is reached.\n\n"
+                + "@throws IOException if the record does not fit into the write buffer or cannot be written\n")
+            .addParameter(targetClassName, "obj")
+            .addException(IOException.class)
+            .beginControlFlow("if (segmentBytes + buffer.position() >= segmentSize)")
+            .addStatement("sync()")
+            .addStatement("channel.close()")
+            .addStatement("startSegment()")
+            .endControlFlow()
+            .beginControlFlow("if (!tryEncode(obj))")
+            .addStatement("flush()")
+            .beginControlFlow("if (!tryEncode(obj))")
+            .addStatement("throw new $T($S + buffer.capacity() + $S)", IOException.class,
+                "Record exceeds the write buffer of ", " bytes")
+            .endControlFlow()
+            .endControlFlow()
+            .beginControlFlow("if (++unforced >= forceInterval)")
+            .addStatement("sync()")
+            .endControlFlow()
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("tryEncode")
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(targetClassName, "obj")
+            .returns(boolean.class)
+            .addStatement("int start = buffer.position()")
+            .beginControlFlow("if (buffer.remaining() < FRAME_HEADER_SIZE)")
+            .addStatement("return false")
+            .endControlFlow()
+            .beginControlFlow("try")
+            .addStatement("buffer.position(start + FRAME_HEADER_SIZE)")
+            .addStatement("$T.writeFields(obj, buffer)", codecClassName)
+            .nextControlFlow("catch ($T e)", BufferOverflowException.class)
+            .addStatement("buffer.position(start)")
+            .addStatement("return false")
+            .endControlFlow()
+            .addStatement("int length = buffer.position() - start - FRAME_HEADER_SIZE")
+            .addStatement("crc.reset()")
+            .addStatement("crc.update(buffer.slice(start + FRAME_HEADER_SIZE, length))")
+            .addStatement("buffer.putInt(start, length)")
+            .addStatement("buffer.putInt(start + 4, (int) crc.getValue())")
+            .addStatement("return true")
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("flush")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Writes the buffered records to the current segment without forcing it to disk.\n")
+            .addException(IOException.class)
+            .addStatement("buffer.flip()")
+            .beginControlFlow("while (buffer.hasRemaining())")
+            .addStatement("segmentBytes += channel.write(buffer)")
+            .endControlFlow()
+            .addStatement("buffer.clear()")
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("sync")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Writes the buffered records and forces the current segment to disk.\n")
+            .addException(IOException.class)
+            .addStatement("flush()")
+            .addStatement("channel.force(false)")
+            .addStatement("unforced = 0")
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("close")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addException(IOException.class)
+            .beginControlFlow("try")
+            .addStatement("sync()")
+            .nextControlFlow("finally")
+            .addStatement("channel.close()")
+            .endControlFlow()
+            .build());
+        log.addMethod(createStartSegmentMethod(codecClassName));
+        log.addMethod(MethodSpec.methodBuilder("segments")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Lists the segments of the log in {@code directory} in write order.\n")
+            .addParameter(Path.class, "directory")
+            .returns(ParameterizedTypeName.get(List.class, Path.class))
+            .addException(IOException.class)
+            .addStatement("$T<$T> segments = new $T<>()", List.class, Path.class, ArrayList.class)
+            .beginControlFlow("if (!$T.isDirectory(directory))", Files.class)
+            .addStatement("return segments")
+            .endControlFlow()
+            .beginControlFlow("try ($T<$T> stream = $T.newDirectoryStream(directory, SEGMENT_PREFIX + $S + SEGMENT_SUFFIX))",
+                DirectoryStream.class, Path.class, Files.class, "*")
+            .addStatement("stream.forEach(segments::add)")
+            .endControlFlow()
+            .addComment("Segment indices are zero padded, so the names sort in write order")
+            .addStatement("segments.sort(null)")
+            .addStatement("return segments")
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("segmentIndexOf")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(Path.class, "segment")
+            .returns(long.class)
+            .addStatement("String name = segment.getFileName().toString()")
+            .addStatement("return $T.parseLong(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length(), 10)", Long.class)
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("replay")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Replays all segments of the log in {@code directory} in write order.\n")
+            .addParameter(Path.class, "directory")
+            .addParameter(consumer, "consumer")
+            .addException(IOException.class)
+            .beginControlFlow("for ($T segment : segments(directory))", Path.class)
+            .addStatement("replaySegment(segment, consumer)")
+            .endControlFlow()
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("replayParallel")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Replays the segments of the log in {@code directory} in parallel. Records of a segment\n"
+                + "are passed in order, but segments are replayed concurrently, so {@code consumer} must be\n"
+                + "thread-safe.\n")
+            .addParameter(Path.class, "directory")
+            .addParameter(consumer, "consumer")
+            .addException(IOException.class)
+            .beginControlFlow("try")
+            .addStatement("segments(directory).parallelStream().forEach(segment -> replaySegmentUnchecked(segment, consumer))")
+            .nextControlFlow("catch ($T e)", UncheckedIOException.class)
+            .addStatement("throw e.getCause()")
+            .endControlFlow()
+            .build());
+        log.addMethod(MethodSpec.methodBuilder("replaySegmentUnchecked")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(Path.class, "segment")
+            .addParameter(consumer, "consumer")
+            .beginControlFlow("try")
+            .addStatement("replaySegment(segment, consumer)")
+            .nextControlFlow("catch ($T e)", IOException.class)
+            .addStatement("throw new $T(e)", UncheckedIOException.class)
+            .endControlFlow()
+            .build());
+        log.addMethod(createReplaySegmentMethod(consumer, codecClassName));
+        log.addMethod(createReadHeaderMethod(codecClassName));
+        log.addMethod(MethodSpec.methodBuilder("readAll")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Reads all records of the log in {@code directory} in write order.\n")
+            .addParameter(Path.class, "directory")
+            .returns(ParameterizedTypeName.get(ClassName.get(List.class), targetClassName))
+            .addException(IOException.class)
+            .addStatement("$T<$T> records = new $T<>()", List.class, targetClassName, ArrayList.class)
+            .addStatement("replay(directory, records::add)")
+            .addStatement("return records")
+            .build());
+        return log.build();
+    }
+
+    private MethodSpec createStartSegmentMethod(ClassName codecClassName) {
+        return MethodSpec.methodBuilder("startSegment")
+            .addModifiers(Modifier.PRIVATE)
+            .addException(IOException.class)
+            .addStatement("segmentIndex++")
+            .addStatement("$T segment = directory.resolve(SEGMENT_PREFIX + $T.format($S, segmentIndex) + SEGMENT_SUFFIX)",
+                Path.class, String.class, "%016d")
+            .addStatement("channel = $T.open(segment, $T.CREATE_NEW, $T.WRITE)",
+                FileChannel.class, StandardOpenOption.class, StandardOpenOption.class)
+            .addStatement("segmentBytes = 0")
+            .addStatement("buffer.putInt(MAGIC)")
+            .addStatement("buffer.putShort(VERSION)")
+            .addStatement("buffer.putLong($T.SCHEMA_FINGERPRINT)", codecClassName)
+            .addStatement("buffer.putShort((short) FIELD_SCHEMA.length)")
+            .beginControlFlow("for (String field : FIELD_SCHEMA)")
+            .addStatement("byte[] bytes = field.getBytes($T.UTF_8)", StandardCharsets.class)
+            .addStatement("buffer.putShort((short) bytes.length)")
+            .addStatement("buffer.put(bytes)")
+            .endControlFlow()
+            .addStatement("flush()")
+            .build();
+    }
+
+    private MethodSpec createReadHeaderMethod(ClassName codecClassName) {
+        return MethodSpec.methodBuilder("readHeader")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(ByteBuffer.class, "buf")
+            .addParameter(Path.class, "segment")
+            .returns(int.class)
+            .addException(IOException.class)
+            .beginControlFlow("if (buf.remaining() < 16 || buf.getInt() != MAGIC)")
+            .addStatement("throw new $T($S + segment)", IOException.class, "Not a record log segment: ")
+            .endControlFlow()
+            .addStatement("short version = buf.getShort()")
+            .beginControlFlow("if (version != VERSION)")
+            .addStatement("throw new $T($S + version + $S + segment)", IOException.class, "Unsupported segment version ", ": ")
+            .endControlFlow()
+            .addStatement("long fingerprint = buf.getLong()")
+            .addStatement("int fieldCount = buf.getShort() & 0xFFFF")
+            .addComment("The field names and types document the schema; compatibility is checked through the fingerprint")
+            .beginControlFlow("for (int i = 0; i < fieldCount; i++)")
+            .addStatement("int length = buf.getShort() & 0xFFFF")
+            .addStatement("buf.position(buf.position() + length)")
+            .endControlFlow()
+            .beginControlFlow("try")
+            .addStatement("$T.checkSchema(fingerprint, fieldCount)", codecClassName)
+            .nextControlFlow("catch ($T e)", IllegalArgumentException.class)
+            .addStatement("throw new $T(e.getMessage() + $S + segment, e)", IOException.class, ": ")
+            .endControlFlow()
+            .addStatement("return fieldCount")
+            .build();
+    }
+
+    private MethodSpec createReplaySegmentMethod(TypeName consumer, ClassName codecClassName) {
+        return MethodSpec.methodBuilder("replaySegment")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Replays the records of a single segment in write order.\n\n"
+                + "@throws IOException if the segment header is invalid or its schema is incompatible\n")
+            .addParameter(Path.class, "segment")
+            .addParameter(consumer, "consumer")
+            .addException(IOException.class)
+            .addStatement("$T buf", MappedByteBuffer.class)
+            .beginControlFlow("try ($T channel = $T.open(segment, $T.READ))",
+                FileChannel.class, FileChannel.class, StandardOpenOption.class)
+            .addStatement("buf = channel.map($T.MapMode.READ_ONLY, 0, channel.size())", FileChannel.class)
+            .endControlFlow()
+            .addStatement("int fieldCount = readHeader(buf, segment)")
+            .addStatement("$T crc = new $T()", CRC32C.class, CRC32C.class)
+            .beginControlFlow("while (buf.remaining() >= FRAME_HEADER_SIZE)")
+            .addStatement("int length = buf.getInt()")
+            .addStatement("int checksum = buf.getInt()")
+            .beginControlFlow("if (length <= 0 || length > buf.remaining())")
+            .addComment("Torn write at the tail of the segment")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("int start = buf.position()")
+            .addStatement("crc.reset()")
+            .addStatement("crc.update(buf.slice(start, length))")
+            .beginControlFlow("if ((int) crc.getValue() != checksum)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("consumer.accept($T.readFields(buf, fieldCount))", codecClassName)
+            .addStatement("buf.position(start + length)")
+            .endControlFlow()
+            .build();
+    }
+}
@@ -0,0 +1,261 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.lang.model.element.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Generates the {@code <Type>RowMapper} companion class.
+ *
+ * <p>A mapper resolves the column index of every field from the {@link ResultSetMetaData} once
+ * per query. Rows are then read with the typed getters matching each field type, so numbers are
+ * never boxed through {@code getObject}. Optional and default fields keep their default when the
+ * column is missing or SQL {@code NULL}. Types with a public all-args constructor are created
+ * directly, others through the stage builder.</p>
+ */
+public class RowMapperGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "RowMapper";
+
+    /**
+     * Gets the name of the row mapper class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the row mapper class
+     */
+    public static String getRowMapperClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        for (FieldInfo field : fields) {
+            if (ValueKind.of(field.type) == ValueKind.OTHER) {
+                throw new UnsupportedFieldException(field, "Field '" + field.name + "' of type " + field.type
+                    + " is not supported by the row mapper; supported are primitives, their wrappers, String, enums and byte[]");
+            }
+        }
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        ClassName mapperClassName = ClassName.get(packageName, getRowMapperClassName(className));
+        boolean direct = !fields.isEmpty() && CodeGenerationUtils.hasAllArgsConstructor(fields, members);
+
+        TypeSpec.Builder mapper = TypeSpec.classBuilder(mapperClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addJavadoc("Maps {@link $T} rows to {@link $T} using column indices resolved once per query.\n", ResultSet.class, targetClassName);
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(int[].class, "columns");
+        for (int i = 0; i < fields.size(); i++) {
+            String columnField = getColumnFieldName(fields.get(i));
+            mapper.addField(int.class, columnField, Modifier.PRIVATE, Modifier.FINAL);
+            constructor.addStatement("this.$N = columns[$L]", columnField, i);
+        }
+        mapper.addMethod(constructor.build());
+        mapper.addMethod(MethodSpec.methodBuilder("of")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Creates a mapper for the columns of {@code resultSet}.\n")
+            .addParameter(ResultSet.class, "resultSet")
+            .returns(mapperClassName)
+            .addException(SQLException.class)
+            .addStatement("return of(resultSet.getMetaData())")
+            .build());
+        mapper.addMethod(createOfMethod(fields, className, mapperClassName));
+        mapper.addMethod(createFieldOrdinalMethod(fields));
+        mapper.addMethod(createMapMethod(fields, targetClassName, builderClassName, direct));
+        mapper.addMethod(MethodSpec.methodBuilder("mapAll")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Maps all remaining rows of {@code resultSet}.\n")
+            .addParameter(ResultSet.class, "resultSet")
+            .returns(ParameterizedTypeName.get(ClassName.get(List.class), targetClassName))
+            .addException(SQLException.class)
+            .addStatement("$T<$T> rows = new $T<>()", List.class, targetClassName, ArrayList.class)
+            .beginControlFlow("while (resultSet.next())")
+            .addStatement("rows.add(map(resultSet))")
+            .endControlFlow()
+            .addStatement("return rows")
+            .build());
+        mapper.addMethod(MethodSpec.methodBuilder("readAll")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Creates a mapper for {@code resultSet} and maps all remaining rows.\n")
+            .addParameter(ResultSet.class, "resultSet")
+            .returns(ParameterizedTypeName.get(ClassName.get(List.class), targetClassName))
+            .addException(SQLException.class)
+            .addStatement("return of(resultSet).mapAll(resultSet)")
+            .build());
+        return mapper.build();
+    }
+
+    private static String getColumnFieldName(FieldInfo field) {
+        return field.name + "Column";
+    }
+
+    private MethodSpec createOfMethod(List<FieldInfo> fields, String className, ClassName mapperClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("of")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Creates a mapper for the given result set columns. Column labels are matched to fields\n"
+                + "ignoring case, either by field name or by its snake case form.\n\n"
+                + "@throws SQLException if a required field has no column\n")
+            .addParameter(ResultSetMetaData.class, "metaData")
+            .returns(mapperClassName)
+            .addException(SQLException.class)
+            .addStatement("int[] columns = new int[$L]", fields.size())
+            .beginControlFlow("for (int column = metaData.getColumnCount(); column >= 1; column--)")
+            .addComment("Iterate backwards so that the first column with a matching label wins")
+            .addStatement("int field = fieldOrdinal(metaData.getColumnLabel(column))")
+            .beginControlFlow("if (field >= 0)")
+            .addStatement("columns[field] = column")
+            .endControlFlow()
+            .endControlFlow();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            if (!field.isOptional && !field.hasDefault) {
+                method.beginControlFlow("if (columns[$L] == 0)", i)
+                    .addStatement("throw new $T($S)", SQLException.class,
+                        "Result set has no column for required field '" + field.name + "' of " + className)
+                    .endControlFlow();
+            }
+        }
+        return method.addStatement("return new $T(columns)", mapperClassName).build();
+    }
+
+    private MethodSpec createFieldOrdinalMethod(List<FieldInfo> fields) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("fieldOrdinal")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(String.class, "label")
+            .returns(int.class)
+            .beginControlFlow("switch (label.toLowerCase($T.ROOT))", Locale.class);
+        Set<String> labels = new HashSet<>();
+        for (int i = 0; i < fields.size(); i++) {
+            String name = fields.get(i).name;
+            String camel = name.toLowerCase(Locale.ROOT);
+            String snake = CodeGenerationUtils.toConstantName(name).toLowerCase(Locale.ROOT);
+            boolean hasCamel = labels.add(camel);
+            boolean hasSnake = !snake.equals(camel) && labels.add(snake);
+            if (hasCamel) {
+                method.addCode("case $S:\n", camel);
+            }
+            if (hasSnake) {
+                method.addCode("case $S:\n", snake);
+            }
+            if (hasCamel || hasSnake) {
+                method.addCode("$>").addStatement("return $L", i).addCode("$<");
+            }
+        }
+        return method.addStatement("default: return -1")
+            .endControlFlow()
+            .build();
+    }
+
+    private MethodSpec createMapMethod(List<FieldInfo> fields, ClassName targetClassName,
+                                       ClassName builderClassName, boolean direct) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("map")
+            .addModifiers(Modifier.PUBLIC)
+            .addJavadoc("Maps the current row of {@code resultSet}.\n")
+            .addParameter(ResultSet.class, "resultSet")
+            .returns(targetClassName)
+            .addException(SQLException.class);
+        for (FieldInfo field : fields) {
+            ValueKind kind = ValueKind.of(field.type);
+            String value = field.name + "Value";
+            String raw = field.name + "Raw";
+            String column = "this." + getColumnFieldName(field);
+            if (!field.isOptional && !field.hasDefault) {
+                if (kind.isPrimitive() && kind != ValueKind.CHAR) {
+                    method.addStatement("$T $N = resultSet.$L($L)", TypeName.get(field.type), value, getterName(kind), column);
+                } else {
+                    method.addStatement("$T $N = resultSet.$L($L)", rawType(kind), raw, getterName(kind), column)
+                        .addStatement("$T $N = $L ? $L : $L", TypeName.get(field.type), value, presentCheck(kind, raw),
+                            convert(field, kind, raw), CodeGenerationUtils.getZeroValue(field.type));
+                }
+                continue;
+            }
+            if (direct) {
+                method.addStatement("$T $N = $L", TypeName.get(field.type), value, CodeGenerationUtils.getDefaultValueCode(field));
+            } else {
+                method.addStatement("$T $N = $L", TypeName.get(field.type), value, CodeGenerationUtils.getZeroValue(field.type))
+                    .addStatement("boolean $N = false", field.name + "Set");
+            }
+            method.beginControlFlow("if ($L != 0)", column)
+                .addStatement("$T $N = resultSet.$L($L)", rawType(kind), raw, getterName(kind), column)
+                .beginControlFlow("if ($L)", presentCheck(kind, raw))
+                .addStatement("$N = $L", value, convert(field, kind, raw));
+            if (!direct) {
+                method.addStatement("$N = true", field.name + "Set");
+            }
+            method.endControlFlow().endControlFlow();
+        }
+        if (direct) {
+            CodeBlock.Builder args = CodeBlock.builder();
+            for (int i = 0; i < fields.size(); i++) {
+                args.add(i == 0 ? "$N" : ", $N", fields.get(i).name + "Value");
+            }
+            method.addStatement("return new $T($L)", targetClassName, args.build());
+        } else {
+            method.addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName,
+                field -> field.name + "Value", field -> field.name + "Set"));
+        }
+        return method.build();
+    }
+
+    private static String getterName(ValueKind kind) {
+        switch (kind.unboxed()) {
+            case BOOLEAN: return "getBoolean";
+            case BYTE: return "getByte";
+            case SHORT: return "getShort";
+            case INT: return "getInt";
+            case LONG: return "getLong";
+            case FLOAT: return "getFloat";
+            case DOUBLE: return "getDouble";
+            case BYTE_ARRAY: return "getBytes";
+            default: return "getString";
+        }
+    }
+
+    private static TypeName rawType(ValueKind kind) {
+        switch (kind.unboxed()) {
+            case BOOLEAN: return TypeName.BOOLEAN;
+            case BYTE: return TypeName.BYTE;
+            case SHORT: return TypeName.SHORT;
+            case INT: return TypeName.INT;
+            case LONG: return TypeName.LONG;
+            case FLOAT: return TypeName.FLOAT;
+            case DOUBLE: return TypeName.DOUBLE;
+            case BYTE_ARRAY: return ArrayTypeName.of(TypeName.BYTE);
+            default: return ClassName.get(String.class);
+        }
+    }
+
+    private static CodeBlock presentCheck(ValueKind kind, String raw) {
+        // A condition that is true when the column holds a value, emitted without negating a comparison
+        switch (kind.unboxed()) {
+            case CHAR: return CodeBlock.of("$N != null && !$N.isEmpty()", raw, raw);
+            case STRING:
+            case ENUM:
+            case BYTE_ARRAY: return CodeBlock.of("$N != null", raw);
+            default: return CodeBlock.of("!resultSet.wasNull()");
+        }
+    }
+
+    private static CodeBlock convert(FieldInfo field, ValueKind kind, String raw) {
+        switch (kind.unboxed()) {
+            case CHAR: return CodeBlock.of("$N.charAt(0)", raw);
+            case ENUM: return CodeBlock.of("$T.valueOf($N)", TypeName.get(field.type), raw);
+            default: return CodeBlock.of("$N", raw);
+        }
+    }
+}
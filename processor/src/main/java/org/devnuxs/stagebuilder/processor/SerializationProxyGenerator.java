@@ -0,0 +1,295 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+
+import javax.lang.model.element.Modifier;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the {@code <Type>SerializationProxy} companion class.
+ *
+ * <p>The proxy is an {@link Externalizable} that writes the field count followed by the fields
+ * in declaration order with the primitive-specific {@link ObjectOutput} calls, so the stream
+ * carries no field descriptors. On deserialization it rebuilds the instance through the stage
+ * builder and substitutes it via {@code readResolve}. Like the binary codec, a stream written
+ * before fields were appended can still be read; the missing fields take their defaults.</p>
+ *
+ * <p>Fields of other types are delegated to {@link ObjectOutput#writeObject}. Fields are read
+ * through accessors, public getters or public fields; fields that could only be read through
+ * reflection are rejected.</p>
+ */
+public class SerializationProxyGenerator implements CompanionGenerator {
+
+    private static final String SUFFIX = "SerializationProxy";
+
+    /**
+     * Gets the name of the serialization proxy class generated for a type.
+     *
+     * @param className the simple name of the annotated type
+     * @return the simple name of the proxy class
+     */
+    public static String getProxyClassName(String className) {
+        return className + SUFFIX;
+    }
+
+    @Override
+    public TypeSpec generate(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
+        ClassName builderClassName = ClassName.get(packageName, CodeGenerationUtils.getBuilderClassName(className));
+        ClassName proxyClassName = ClassName.get(packageName, getProxyClassName(className));
+        Set<ValueKind> kinds = EnumSet.noneOf(ValueKind.class);
+        int minFieldCount = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            CodeGenerationUtils.requireDirectRead(field, members, "serialization proxy");
+            kinds.add(ValueKind.of(field.type).unboxed());
+            if (!field.isOptional && !field.hasDefault) {
+                minFieldCount = i + 1;
+            }
+        }
+
+        TypeSpec.Builder proxy = TypeSpec.classBuilder(proxyClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(Externalizable.class)
+            .addJavadoc("Compact serialized form of {@link $T}.\n\n"
+                + "<p>Write {@code new $T(value)} to an {@link java.io.ObjectOutputStream}, or return it from a\n"
+                + "{@code writeReplace} method of the type; reading it back yields the original type.</p>\n",
+                targetClassName, proxyClassName)
+            .addField(FieldSpec.builder(long.class, "serialVersionUID", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("1L")
+                .build())
+            .addField(FieldSpec.builder(int.class, "FIELD_COUNT", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", fields.size())
+                .build())
+            .addField(FieldSpec.builder(int.class, "MIN_FIELD_COUNT", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", minFieldCount)
+                .build())
+            // Externalizable writes the value itself, so default serialization must skip it
+            .addField(targetClassName, "value", Modifier.PRIVATE, Modifier.TRANSIENT)
+            .addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Creates an empty proxy. Required by {@link $T}.\n", Externalizable.class)
+                .build())
+            .addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Creates a proxy serializing {@code value}.\n")
+                .addParameter(targetClassName, "value")
+                .addStatement("this.value = value")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("get")
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("Gets the proxied value.\n")
+                .returns(targetClassName)
+                .addStatement("return value")
+                .build())
+            .addMethod(createWriteExternalMethod(fields, targetClassName, members, builderClassName))
+            .addMethod(MethodSpec.methodBuilder("readExternal")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(ObjectInput.class, "in")
+                .addException(IOException.class)
+                .addException(ClassNotFoundException.class)
+                .addStatement("this.value = read(in)")
+                .build())
+            .addMethod(createReadMethod(fields, className, targetClassName, builderClassName))
+            .addMethod(MethodSpec.methodBuilder("readResolve")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(Object.class)
+                .addException(ObjectStreamException.class)
+                .addStatement("return value")
+                .build());
+        addHelperMethods(proxy, kinds);
+        return proxy.build();
+    }
+
+    private MethodSpec createWriteExternalMethod(List<FieldInfo> fields, ClassName targetClassName,
+                                                MemberIndex members, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("writeExternal")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(ObjectOutput.class, "out")
+            .addException(IOException.class)
+            .addStatement("out.writeShort(FIELD_COUNT)");
+        if (!fields.isEmpty()) {
+            method.addStatement("$T obj = this.value", targetClassName);
+        }
+        for (FieldInfo field : fields) {
+            String local = field.name + "Value";
+            ValueKind kind = ValueKind.of(field.type);
+            method.addStatement("$T $N = $L", TypeName.get(field.type), local,
+                CodeGenerationUtils.getFieldReadCode(field, members, "obj", builderClassName));
+            if (kind.isBoxed()) {
+                method.addStatement("out.writeBoolean($N != null)", local)
+                    .beginControlFlow("if ($N != null)", local)
+                    .addStatement(writeCode(kind.unboxed(), local))
+                    .endControlFlow();
+            } else {
+                method.addStatement(writeCode(kind, local));
+            }
+        }
+        return method.build();
+    }
+
+    private CodeBlock writeCode(ValueKind kind, String value) {
+        switch (kind) {
+            case BOOLEAN: return CodeBlock.of("out.writeBoolean($N)", value);
+            case BYTE: return CodeBlock.of("out.writeByte($N)", value);
+            case SHORT: return CodeBlock.of("out.writeShort($N)", value);
+            case CHAR: return CodeBlock.of("out.writeChar($N)", value);
+            case INT: return CodeBlock.of("out.writeInt($N)", value);
+            case LONG: return CodeBlock.of("out.writeLong($N)", value);
+            case FLOAT: return CodeBlock.of("out.writeFloat($N)", value);
+            case DOUBLE: return CodeBlock.of("out.writeDouble($N)", value);
+            case STRING: return CodeBlock.of("writeString(out, $N)", value);
+            case ENUM: return CodeBlock.of("writeString(out, $N == null ? null : $N.name())", value, value);
+            case BYTE_ARRAY: return CodeBlock.of("writeBytes(out, $N)", value);
+            default: return CodeBlock.of("out.writeObject($N)", value);
+        }
+    }
+
+    private CodeBlock readCode(FieldInfo field, ValueKind kind) {
+        switch (kind) {
+            case BOOLEAN: return CodeBlock.of("in.readBoolean()");
+            case BYTE: return CodeBlock.of("in.readByte()");
+            case SHORT: return CodeBlock.of("in.readShort()");
+            case CHAR: return CodeBlock.of("in.readChar()");
+            case INT: return CodeBlock.of("in.readInt()");
+            case LONG: return CodeBlock.of("in.readLong()");
+            case FLOAT: return CodeBlock.of("in.readFloat()");
+            case DOUBLE: return CodeBlock.of("in.readDouble()");
+            case STRING: return CodeBlock.of("readString(in)");
+            case ENUM: return CodeBlock.of("readEnum(in, $T.class)", TypeName.get(field.type));
+            case BYTE_ARRAY: return CodeBlock.of("readBytes(in)");
+            case OTHER: return CodeBlock.of("($T) in.readObject()", TypeName.get(field.type));
+            default: return CodeBlock.of("in.readBoolean() ? $L : null", readCode(field, kind.unboxed()));
+        }
+    }
+
+    private MethodSpec createReadMethod(List<FieldInfo> fields, String className,
+                                        ClassName targetClassName, ClassName builderClassName) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("read")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(ObjectInput.class, "in")
+            .returns(targetClassName)
+            .addException(IOException.class)
+            .addException(ClassNotFoundException.class);
+        boolean hasGenericObjectFields = fields.stream()
+            .filter(field -> ValueKind.of(field.type) == ValueKind.OTHER)
+            .map(field -> TypeName.get(field.type))
+            .anyMatch(type -> type instanceof ParameterizedTypeName || type instanceof TypeVariableName);
+        if (hasGenericObjectFields) {
+            method.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+        }
+        method.addStatement("int fieldCount = in.readUnsignedShort()")
+            .beginControlFlow("if (fieldCount < MIN_FIELD_COUNT || fieldCount > FIELD_COUNT)")
+            .addStatement("throw new $T($S + fieldCount + $S)", InvalidObjectException.class,
+                "Incompatible stream with ", " fields for " + className)
+            .endControlFlow();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            String local = field.name + "Value";
+            CodeBlock read = readCode(field, ValueKind.of(field.type));
+            if (!field.isOptional && !field.hasDefault) {
+                method.addStatement("$T $N = $L", TypeName.get(field.type), local, read);
+            } else {
+                method.addStatement("$T $N = $L", TypeName.get(field.type), local, CodeGenerationUtils.getZeroValue(field.type));
+                method.beginControlFlow("if (fieldCount > $L)", i)
+                    .addStatement("$N = $L", local, read)
+                    .endControlFlow();
+            }
+        }
+        method.addCode(CodeGenerationUtils.buildThroughStages(fields, builderClassName,
+            field -> field.name + "Value",
+            field -> "fieldCount > " + fields.indexOf(field)));
+        return method.build();
+    }
+
+    private void addHelperMethods(TypeSpec.Builder proxy, Set<ValueKind> kinds) {
+        if (kinds.contains(ValueKind.STRING) || kinds.contains(ValueKind.ENUM)) {
+            // writeUTF is limited to 64 KiB, so strings are written as length-prefixed UTF-8
+            proxy.addMethod(MethodSpec.methodBuilder("writeString")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ObjectOutput.class, "out")
+                .addParameter(String.class, "value")
+                .addException(IOException.class)
+                .beginControlFlow("if (value == null)")
+                .addStatement("out.writeInt(-1)")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("byte[] bytes = value.getBytes($T.UTF_8)", StandardCharsets.class)
+                .addStatement("out.writeInt(bytes.length)")
+                .addStatement("out.write(bytes)")
+                .build());
+            proxy.addMethod(MethodSpec.methodBuilder("readString")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ObjectInput.class, "in")
+                .returns(String.class)
+                .addException(IOException.class)
+                .addStatement("int length = in.readInt()")
+                .beginControlFlow("if (length < 0)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("byte[] bytes = new byte[length]")
+                .addStatement("in.readFully(bytes)")
+                .addStatement("return new String(bytes, $T.UTF_8)", StandardCharsets.class)
+                .build());
+        }
+        if (kinds.contains(ValueKind.ENUM)) {
+            TypeVariableName e = TypeVariableName.get("E", ParameterizedTypeName.get(ClassName.get(Enum.class), TypeVariableName.get("E")));
+            proxy.addMethod(MethodSpec.methodBuilder("readEnum")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addTypeVariable(e)
+                .addParameter(ObjectInput.class, "in")
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), e), "type")
+                .returns(e)
+                .addException(IOException.class)
+                .addStatement("String name = readString(in)")
+                .addStatement("return name == null ? null : $T.valueOf(type, name)", Enum.class)
+                .build());
+        }
+        if (kinds.contains(ValueKind.BYTE_ARRAY)) {
+            proxy.addMethod(MethodSpec.methodBuilder("writeBytes")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ObjectOutput.class, "out")
+                .addParameter(byte[].class, "value")
+                .addException(IOException.class)
+                .beginControlFlow("if (value == null)")
+                .addStatement("out.writeInt(-1)")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("out.writeInt(value.length)")
+                .addStatement("out.write(value)")
+                .build());
+            proxy.addMethod(MethodSpec.methodBuilder("readBytes")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(ObjectInput.class, "in")
+                .returns(byte[].class)
+                .addException(IOException.class)
+                .addStatement("int length = in.readInt()")
+                .beginControlFlow("if (length < 0)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("byte[] value = new byte[length]")
+                .addStatement("in.readFully(value)")
+                .addStatement("return value")
+                .build());
+        }
+    }
+}
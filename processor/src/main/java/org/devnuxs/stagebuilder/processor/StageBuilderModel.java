@@ -0,0 +1,153 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The immutable analysis result a stage builder is written from by the {@link StageBuilderSourceWriter}.
+ *
+ * <p>All names, types and code snippets are resolved from the element model while analysing, so
+ * writing the stage builder never touches javac state.</p>
+ */
+public final class StageBuilderModel {
+
+    /**
+     * A field of the annotated type.
+     *
+     * @param name the field name
+     * @param type the field type
+     * @param rawType the field type without type arguments, used in class literals
+     * @param required whether the field has its own stage, i.e. is neither optional nor defaulted
+     * @param initializer the initializer of the builder field, or {@code null} if it has none
+     * @param readCode the expression reading the field from an instance named {@code obj}
+     * @param writeCode the statement setting the field of an instance named {@code obj} without
+     *                  reflection, or {@code null} if reflection is needed
+     * @param collectionKind the kind of an accumulated collection field, or {@code null}
+     * @param typeArguments the element type or key and value types of a collection field
+     */
+    public record Field(String name, TypeName type, TypeName rawType, boolean required, String initializer,
+                        String readCode, String writeCode, CollectionKind collectionKind, List<TypeName> typeArguments) {
+    }
+
+    private final String packageName;
+    private final String builderClassName;
+    private final ClassName targetClassName;
+    private final boolean allArgsConstructor;
+    private final boolean strict;
+    private final List<Field> fields;
+
+    private StageBuilderModel(String packageName, String builderClassName, ClassName targetClassName,
+                              boolean allArgsConstructor, boolean strict, List<Field> fields) {
+        this.packageName = packageName;
+        this.builderClassName = builderClassName;
+        this.targetClassName = targetClassName;
+        this.allArgsConstructor = allArgsConstructor;
+        this.strict = strict;
+        this.fields = fields;
+    }
+
+    /**
+     * Analyses the fields of an annotated type.
+     *
+     * @param fieldInfos the fields of the annotated type, not empty
+     * @param members the member index of the annotated type
+     * @param packageName the package name
+     * @param strict whether the stage builder must not access fields through reflection
+     * @return the model of the stage builder
+     */
+    public static StageBuilderModel of(List<FieldInfo> fieldInfos, MemberIndex members, String packageName,
+                                       boolean strict) {
+        List<Field> fields = new ArrayList<>();
+        for (FieldInfo field : fieldInfos) {
+            TypeName type = TypeName.get(field.type);
+            CollectionKind kind = CollectionKind.of(field.type);
+            fields.add(new Field(
+                field.name,
+                type,
+                type instanceof ParameterizedTypeName parameterized ? parameterized.rawType : type,
+                !field.isOptional && !field.hasDefault,
+                getInitializer(field),
+                CodeGenerationUtils.getFieldReadCode(field, members, "obj", null),
+                CodeGenerationUtils.getFieldWriteCode(field, members, "obj", "this." + field.name),
+                kind,
+                kind != null ? kind.getTypeArguments(field.type) : List.of()));
+        }
+        return new StageBuilderModel(
+            packageName,
+            CodeGenerationUtils.getBuilderClassName(members.getTypeElement().getSimpleName().toString()),
+            CodeGenerationUtils.getClassName(members.getTypeElement(), packageName),
+            CodeGenerationUtils.hasAllArgsConstructor(fieldInfos, members),
+            strict,
+            List.copyOf(fields));
+    }
+
+    private static String getInitializer(FieldInfo field) {
+        // Same formatting as the builder fields of the JavaPoet path
+        if (!field.hasDefault || field.defaultValue == null || field.defaultValue.isEmpty()) {
+            return null;
+        }
+        if (field.type.toString().equals("java.lang.String")) {
+            return CodeBlock.of("$S", field.defaultValue).toString();
+        }
+        return CodeBlock.of(field.defaultValue).toString();
+    }
+
+    /**
+     * Gets the package of the annotated type and the stage builder.
+     *
+     * @return the package name
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Gets the simple name of the stage builder class.
+     *
+     * @return the builder class name
+     */
+    public String getBuilderClassName() {
+        return builderClassName;
+    }
+
+    /**
+     * Gets the class name of the annotated type.
+     *
+     * @return the target class name
+     */
+    public ClassName getTargetClassName() {
+        return targetClassName;
+    }
+
+    /**
+     * Whether instances are created through a constructor taking all fields.
+     *
+     * @return true if the all-args constructor is used
+     */
+    public boolean hasAllArgsConstructor() {
+        return allArgsConstructor;
+    }
+
+    /**
+     * Whether the stage builder only accesses fields directly, without the reflective fallbacks.
+     *
+     * @return true in strict mode
+     */
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /**
+     * Gets the fields in declaration order.
+     *
+     * @return the fields
+     */
+    public List<Field> getFields() {
+        return fields;
+    }
+}
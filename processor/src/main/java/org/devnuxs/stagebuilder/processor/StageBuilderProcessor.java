@@ -2,15 +2,16 @@ package org.devnuxs.stagebuilder.processor;
 
 import com.google.auto.service.AutoService;
 import com.squareup.javapoet.ClassName;
-import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeSpec;
 import org.devnuxs.stagebuilder.api.StageBuilder;
 
 import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -20,8 +21,15 @@ import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -29,44 +37,222 @@ import java.util.Set;
  * 
  * <p>This processor recognizes classes and records annotated with {@code @StageBuilder}
  * and will generate fluent builder classes for them.</p>
+ * 
+ * <p>The processor is isolating: each annotated type is processed on its own and is the only
+ * originating element of the files generated for it, so no state is kept across types.</p>
+ * 
+ * <p>Each round first analyses all annotated types on the processing thread into immutable
+ * {@link GeneratedSource}s, then renders their source code in parallel and finally writes the
+ * files through the {@link javax.annotation.processing.Filer} one by one. With
+ * {@code -Astagebuilder.emitter=direct}, stage builders are streamed by the
+ * {@link StageBuilderSourceWriter} instead of being built as JavaPoet trees, and all files are
+ * written straight into the filer without rendering them to strings first.</p>
+ * 
+ * <p>With {@code -Astagebuilder.stats}, the processor measures each annotated type, writes its JSON
+ * report to {@value #STATS_DIRECTORY} of the class output with the type as originating element,
+ * which keeps the processor isolating, and reports a summary note of the compilation when
+ * processing is over.</p>
+ * 
+ * <p>In strict mode, enabled per type with {@link StageBuilder#strict()} or for all types with
+ * {@code -Astagebuilder.strict}, fields that could only be read or set through reflection are
+ * compile errors, and the generated builders contain no reflective access at all.</p>
+ * 
+ * <p>The processor warns when the estimated bytecode of a generated {@code build()} or
+ * {@code from()} method exceeds {@code -Astagebuilder.budget.methodBytes} (HotSpot's
+ * {@code HugeMethodLimit} of 8000 bytes by default), or when a type gets more classes than
+ * {@code -Astagebuilder.budget.classes} (unlimited by default).</p>
  */
 @AutoService(Processor.class)
 @SupportedAnnotationTypes({"org.devnuxs.stagebuilder.api.StageBuilder", "org.devnuxs.stagebuilder.api.StageBuilder.Optional"})
 @SupportedSourceVersion(SourceVersion.RELEASE_21)
+@SupportedOptions({StageBuilderProcessor.EMITTER_OPTION, StageBuilderProcessor.STATS_OPTION, StageBuilderProcessor.STRICT_OPTION,
+    StageBuilderProcessor.METHOD_BYTES_OPTION, StageBuilderProcessor.CLASSES_OPTION})
 public class StageBuilderProcessor extends AbstractProcessor {
     
+    /** The option selecting how stage builders are emitted: {@code javapoet} (default) or {@code direct}. */
+    public static final String EMITTER_OPTION = "stagebuilder.emitter";
+    
+    /** The option enabling processing statistics, set without a value or to {@code true}. */
+    public static final String STATS_OPTION = "stagebuilder.stats";
+    
+    /** The class output directory the processing statistics of each type are written to, as {@code <qualified name>.json}. */
+    public static final String STATS_DIRECTORY = "META-INF/stagebuilder/stats/";
+    
+    /** The option enabling strict mode for all types, set without a value or to {@code true}. */
+    public static final String STRICT_OPTION = "stagebuilder.strict";
+    
+    /** The option setting the bytecode budget of generated {@code build()} and {@code from()} methods in bytes. */
+    public static final String METHOD_BYTES_OPTION = "stagebuilder.budget.methodBytes";
+    
+    /** The option setting the budget of classes generated per type, including companions. */
+    public static final String CLASSES_OPTION = "stagebuilder.budget.classes";
+    
     private final FieldExtractor fieldExtractor = new FieldExtractor();
     private final StageInterfaceGenerator stageInterfaceGenerator = new StageInterfaceGenerator();
     private final BuilderClassGenerator builderClassGenerator = new BuilderClassGenerator();
+    private final Map<StageBuilder.Feature, CompanionGenerator> companionGenerators = createCompanionGenerators();
+    private boolean directEmitter;
+    private ProcessingStats stats;
+    private boolean strictByDefault;
+    private int methodBytesBudget;
+    private int classesBudget;
+    
+    private static Map<StageBuilder.Feature, CompanionGenerator> createCompanionGenerators() {
+        Map<StageBuilder.Feature, CompanionGenerator> generators = new EnumMap<>(StageBuilder.Feature.class);
+        generators.put(StageBuilder.Feature.BINARY_CODEC, new BinaryCodecGenerator());
+        generators.put(StageBuilder.Feature.FLYWEIGHT_VIEW, new FlyweightViewGenerator());
+        generators.put(StageBuilder.Feature.JSON, new JsonCodecGenerator());
+        generators.put(StageBuilder.Feature.CSV, new CsvDecoderGenerator());
+        generators.put(StageBuilder.Feature.ROW_MAPPER, new RowMapperGenerator());
+        generators.put(StageBuilder.Feature.SERIALIZATION_PROXY, new SerializationProxyGenerator());
+        generators.put(StageBuilder.Feature.RECORD_LOG, new RecordLogGenerator());
+        generators.put(StageBuilder.Feature.ASYNC_BUILDER, new AsyncStageBuilderGenerator());
+        generators.put(StageBuilder.Feature.FLOW_ASSEMBLER, new FlowAssemblerGenerator());
+        generators.put(StageBuilder.Feature.ATOMIC, new AtomicUpdaterGenerator());
+        generators.put(StageBuilder.Feature.BULK, new BulkUpdateGenerator());
+        generators.put(StageBuilder.Feature.COLUMNS, new ColumnarBatchGenerator());
+        generators.put(StageBuilder.Feature.COLLECTORS, new CollectorsGenerator());
+        return generators;
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        String emitter = processingEnv.getOptions().getOrDefault(EMITTER_OPTION, "javapoet");
+        directEmitter = emitter.equals("direct");
+        if (!directEmitter && !emitter.equals("javapoet")) {
+            processingEnv.getMessager().printMessage(
+                Diagnostic.Kind.WARNING,
+                "Unknown " + EMITTER_OPTION + " '" + emitter + "', expected 'javapoet' or 'direct'; using 'javapoet'"
+            );
+        }
+        if (isEnabled(STATS_OPTION)) {
+            stats = new ProcessingStats();
+        }
+        strictByDefault = isEnabled(STRICT_OPTION);
+        methodBytesBudget = getBudget(METHOD_BYTES_OPTION, BytecodeBudget.HUGE_METHOD_LIMIT);
+        classesBudget = getBudget(CLASSES_OPTION, 0);
+    }
+    
+    private int getBudget(String option, int defaultValue) {
+        String value = processingEnv.getOptions().get(option);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            processingEnv.getMessager().printMessage(
+                Diagnostic.Kind.WARNING,
+                "Invalid " + option + " '" + value + "', expected a number; using the default"
+            );
+            return defaultValue;
+        }
+    }
+    
+    private boolean isEnabled(String option) {
+        Map<String, String> options = processingEnv.getOptions();
+        return options.containsKey(option) && !"false".equals(options.get(option));
+    }
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         // Get all elements annotated with @StageBuilder
         var annotatedElements = roundEnv.getElementsAnnotatedWith(StageBuilder.class);
         
+        // Analysis reads the element model and must stay on the processing thread
+        List<GeneratedSource> sources = new ArrayList<>();
         for (var element : annotatedElements) {
             if (element.getKind() == ElementKind.CLASS || element.getKind() == ElementKind.RECORD) {
+                // Each type is indexed once and the index is passed to everything that looks up its members
+                MemberIndex members = MemberIndex.of((TypeElement) element, processingEnv.getTypeUtils());
                 try {
-                    generateStageBuilder((TypeElement) element);
-                } catch (IOException e) {
+                    sources.addAll(analyzeStageBuilder(members));
+                } catch (UnsupportedFieldException e) {
                     processingEnv.getMessager().printMessage(
                         Diagnostic.Kind.ERROR,
-                        "Failed to generate stage builder for " + element.getSimpleName() + ": " + e.getMessage(),
-                        element
+                        e.getMessage(),
+                        e.element != null ? e.element : element
                     );
                 }
             }
         }
         
+        // The direct emitter streams every file into the filer instead of holding rendered sources
+        List<String> renderedSources = directEmitter ? null : renderSources(sources);
+        
+        // Filer writes are not thread-safe and happen in order
+        for (int i = 0; i < sources.size(); i++) {
+            GeneratedSource source = sources.get(i);
+            try {
+                source.write(processingEnv.getFiler(), renderedSources != null ? renderedSources.get(i) : null, stats);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "Failed to generate stage builder for " + source.getElement().getSimpleName() + ": " + e.getMessage(),
+                    source.getElement()
+                );
+            }
+        }
+        
+        if (stats != null) {
+            sources.stream().map(GeneratedSource::getElement).distinct().forEach(this::writeStatsReport);
+            if (roundEnv.processingOver() && !stats.isEmpty()) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, stats.getSummary());
+            }
+        }
+        
         return true;
     }
     
-    private void generateStageBuilder(TypeElement element) throws IOException {
+    /**
+     * Writes the statistics of a type processed in this round, originating from the type like its
+     * generated sources.
+     */
+    private void writeStatsReport(TypeElement element) {
+        String name = STATS_DIRECTORY + element.getQualifiedName() + ".json";
+        try {
+            FileObject report = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", name, element);
+            try (Writer writer = report.openWriter()) {
+                writer.write(stats.toJson(element));
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(
+                Diagnostic.Kind.WARNING,
+                "Failed to write " + name + ": " + e.getMessage(),
+                element
+            );
+        }
+    }
+    
+    /**
+     * Renders the analysed sources, in parallel on the common fork/join pool if there are several.
+     */
+    private List<String> renderSources(List<GeneratedSource> sources) {
+        if (sources.size() < 2) {
+            return sources.stream().map(this::render).toList();
+        }
+        return sources.parallelStream().map(this::render).toList();
+    }
+    
+    private String render(GeneratedSource source) {
+        if (stats == null) {
+            return source.render();
+        }
+        long start = System.nanoTime();
+        String rendered = source.render();
+        stats.addGenerationTime(source.getElement(), System.nanoTime() - start);
+        return rendered;
+    }
+    
+    private List<GeneratedSource> analyzeStageBuilder(MemberIndex members) {
+        TypeElement element = members.getTypeElement();
+        long start = System.nanoTime();
         String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
         String className = element.getSimpleName().toString();
-        String builderClassName = className + "StageBuilder";
+        String builderClassName = CodeGenerationUtils.getBuilderClassName(className);
         
-        List<FieldInfo> fields = fieldExtractor.extractFields(element);
+        List<FieldInfo> fields = fieldExtractor.extractFields(members);
         
         if (fields.isEmpty()) {
             processingEnv.getMessager().printMessage(
@@ -74,37 +260,151 @@ public class StageBuilderProcessor extends AbstractProcessor {
                 "No fields found for stage builder generation in " + className,
                 element
             );
-            return;
+            return List.of();
         }
         
-        TypeSpec builderClass = createBuilderClass(builderClassName, fields, className, packageName, element);
+        boolean strict = strictByDefault || element.getAnnotation(StageBuilder.class).strict();
+        if (strict && !checkDirectAccess(fields, members)) {
+            return List.of();
+        }
+        
+        // Every file has the annotated type as its only originating element, which keeps the processor isolating
+        List<GeneratedSource> sources = new ArrayList<>();
+        if (directEmitter) {
+            StageBuilderSourceWriter writer = new StageBuilderSourceWriter(StageBuilderModel.of(fields, members, packageName, strict));
+            sources.add(new GeneratedSource(element, writer.getQualifiedName(), writer::writeTo));
+        } else {
+            TypeSpec builderClass = createBuilderClass(builderClassName, fields, className, packageName, members, strict);
+            sources.add(new GeneratedSource(element, packageName, builderClass));
+        }
         
-        JavaFile javaFile = JavaFile.builder(packageName, builderClass).build();
-        javaFile.writeTo(processingEnv.getFiler());
+        for (StageBuilder.Feature feature : getFeatures(element)) {
+            TypeSpec companionClass = companionGenerators.get(feature).generate(fields, className, members, packageName);
+            sources.add(new GeneratedSource(element, packageName, companionClass));
+        }
+        checkBudgets(members, builderClassName, fields, strict, sources.size());
+        if (stats != null) {
+            stats.recordAnalysis(members, fields, strict, System.nanoTime() - start);
+        }
+        return sources;
+    }
+    
+    /**
+     * Reports an error on every field that strict mode would have to read or set through reflection.
+     * 
+     * @return true if all fields are directly accessible
+     */
+    private boolean checkDirectAccess(List<FieldInfo> fields, MemberIndex members) {
+        TypeElement element = members.getTypeElement();
+        boolean allArgsConstructor = CodeGenerationUtils.hasAllArgsConstructor(fields, members);
+        String className = element.getSimpleName().toString();
+        boolean direct = true;
+        for (FieldInfo field : fields) {
+            Element target = members.getField(field.name) != null ? members.getField(field.name)
+                : field.element != null ? field.element : element;
+            String capitalized = CodeGenerationUtils.capitalizeFirstLetter(field.name);
+            if (CodeGenerationUtils.isReflectiveRead(field, members)) {
+                direct = false;
+                processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "Field '" + field.name + "' of " + className + " can only be read through reflection, which strict mode forbids; "
+                        + "add a public getter get" + capitalized + "() or make the field public",
+                    target
+                );
+            }
+            if (!allArgsConstructor && CodeGenerationUtils.getFieldWriteCode(field, members, "obj", field.name) == null) {
+                direct = false;
+                processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "Field '" + field.name + "' of " + className + " can only be set through reflection, which strict mode forbids; "
+                        + "add a public constructor taking all fields in declaration order, a public setter set" + capitalized
+                        + "(" + field.type + ") or make the field public and non-final",
+                    target
+                );
+            }
+        }
+        return direct;
+    }
+    
+    /**
+     * Warns if the generated code of a type is likely to hurt the JIT or exceeds the class budget.
+     */
+    private void checkBudgets(MemberIndex members, String builderClassName, List<FieldInfo> fields, boolean strict,
+                              int generatedFiles) {
+        TypeElement element = members.getTypeElement();
+        checkMethodBudget(element, builderClassName + ".build()", BytecodeBudget.estimateBuildMethod(fields, members, strict));
+        checkMethodBudget(element, builderClassName + ".from()", BytecodeBudget.estimateFromMethod(fields, members));
+        
+        // Companions contribute at least their top-level class
+        int classes = BytecodeBudget.countStageBuilderClasses(fields) + generatedFiles - 1;
+        if (classesBudget > 0 && classes > classesBudget) {
+            processingEnv.getMessager().printMessage(
+                Diagnostic.Kind.WARNING,
+                "Generated code of " + element.getSimpleName() + " has at least " + classes + " classes, above the budget of "
+                    + classesBudget + " set by " + CLASSES_OPTION + "; required fields each add a stage interface",
+                element
+            );
+        }
+    }
+    
+    private void checkMethodBudget(TypeElement element, String method, int estimatedBytes) {
+        if (estimatedBytes > BytecodeBudget.MAX_CODE_LENGTH) {
+            processingEnv.getMessager().printMessage(
+                Diagnostic.Kind.WARNING,
+                "Generated " + method + " has an estimated " + estimatedBytes + " bytes of bytecode, above the limit of "
+                    + BytecodeBudget.MAX_CODE_LENGTH + " bytes per method, so it will not compile; split the type or "
+                    + "add a public constructor, setters and getters to avoid reflection",
+                element
+            );
+        } else if (estimatedBytes > methodBytesBudget) {
+            processingEnv.getMessager().printMessage(
+                Diagnostic.Kind.WARNING,
+                "Generated " + method + " has an estimated " + estimatedBytes + " bytes of bytecode, above the budget of "
+                    + methodBytesBudget + " set by " + METHOD_BYTES_OPTION + (methodBytesBudget == BytecodeBudget.HUGE_METHOD_LIMIT
+                        ? "; HotSpot does not JIT-compile methods above " + BytecodeBudget.HUGE_METHOD_LIMIT + " bytes" : "")
+                    + "; split the type or add a public constructor, setters and getters to avoid reflection",
+                element
+            );
+        }
+    }
+    
+    private Set<StageBuilder.Feature> getFeatures(TypeElement element) {
+        Set<StageBuilder.Feature> features = EnumSet.noneOf(StageBuilder.Feature.class);
+        StageBuilder annotation = element.getAnnotation(StageBuilder.class);
+        if (annotation != null) {
+            features.addAll(List.of(annotation.features()));
+        }
+        // The record log encodes its records with the binary codec
+        if (features.contains(StageBuilder.Feature.RECORD_LOG)) {
+            features.add(StageBuilder.Feature.BINARY_CODEC);
+        }
+        return features;
     }
     
     private TypeSpec createBuilderClass(String builderClassName, List<FieldInfo> fields, 
-                                       String className, String packageName, TypeElement element) {
+                                       String className, String packageName, MemberIndex members, boolean strict) {
         TypeSpec.Builder builderClass = TypeSpec.classBuilder(builderClassName)
             .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
         
-        List<TypeSpec> stageInterfaces = stageInterfaceGenerator.generateStageInterfaces(fields, className, element, packageName);
+        List<TypeSpec> stageInterfaces = stageInterfaceGenerator.generateStageInterfaces(fields, className, members, packageName);
         builderClass.addTypes(stageInterfaces);
         
         MethodSpec builderMethod = createBuilderMethod(fields, packageName, builderClassName);
         builderClass.addMethod(builderMethod);
         
-        MethodSpec fromMethod = createFromMethod(fields, className, packageName, builderClassName, element);
+        MethodSpec fromMethod = createFromMethod(fields, className, packageName, builderClassName, members);
         builderClass.addMethod(fromMethod);
         
-        // Add helper method for reflection-based field access
-        MethodSpec getFieldValueMethod = createGetFieldValueMethod();
-        builderClass.addMethod(getFieldValueMethod);
+        // Add helper method for reflection-based field access, which strict mode never uses
+        if (!strict) {
+            MethodSpec getFieldValueMethod = createGetFieldValueMethod();
+            builderClass.addMethod(getFieldValueMethod);
+        }
         
-        TypeSpec builderInnerClass = builderClassGenerator.generateBuilderInnerClass(fields, className, element, packageName);
+        TypeSpec builderInnerClass = builderClassGenerator.generateBuilderInnerClass(fields, className, members, packageName, strict);
         builderClass.addType(builderInnerClass);
         
-        TypeSpec fromBuilderInnerClass = builderClassGenerator.generateFromBuilderInnerClass(fields, className, element, packageName);
+        TypeSpec fromBuilderInnerClass = builderClassGenerator.generateFromBuilderInnerClass(fields, className, members, packageName, strict);
         builderClass.addType(fromBuilderInnerClass);
         
         return builderClass.build();
@@ -120,8 +420,8 @@ public class StageBuilderProcessor extends AbstractProcessor {
     }
     
     private MethodSpec createFromMethod(List<FieldInfo> fields, String className, String packageName, 
-                                      String builderClassName, TypeElement element) {
-        ClassName targetClassName = CodeGenerationUtils.getClassName(element, packageName);
+                                      String builderClassName, MemberIndex members) {
+        ClassName targetClassName = CodeGenerationUtils.getClassName(members.getTypeElement(), packageName);
         ClassName fromStageClassName = ClassName.get(packageName, builderClassName, "FromStage");
         
         MethodSpec.Builder fromMethod = MethodSpec.methodBuilder("from")
@@ -130,58 +430,20 @@ public class StageBuilderProcessor extends AbstractProcessor {
             .returns(fromStageClassName)
             .addStatement("FromBuilder builder = new FromBuilder()");
         
-        // Add field extraction logic based on whether it's a record or class
-        if (element.getKind() == ElementKind.RECORD) {
-            // For records, use accessor methods: obj.fieldName()
-            for (FieldInfo field : fields) {
-                fromMethod.addStatement("builder.$N = obj.$N()", field.name, field.name);
-            }
-        } else {
-            // For classes, determine the best access method for each field
-            for (FieldInfo field : fields) {
-                String accessCode = determineFieldAccessCode(field, element);
-                fromMethod.addStatement("builder.$N = $L", field.name, accessCode);
-            }
+        // Records use accessor methods, classes the best available access path per field
+        for (FieldInfo field : fields) {
+            String accessCode = CodeGenerationUtils.getFieldReadCode(field, members, "obj", null);
+            fromMethod.addStatement("builder.$N = $L", field.name, accessCode);
         }
         
         fromMethod.addStatement("return builder");
         return fromMethod.build();
     }
     
-    private String determineFieldAccessCode(FieldInfo fieldInfo, TypeElement typeElement) {
-        String fieldName = fieldInfo.name;
-        
-        // Check if there's a public getter method
-        String getterName = "get" + CodeGenerationUtils.capitalizeFirstLetter(fieldName);
-        for (Element enclosed : typeElement.getEnclosedElements()) {
-            if (enclosed.getKind() == ElementKind.METHOD) {
-                ExecutableElement method = (ExecutableElement) enclosed;
-                if (method.getSimpleName().toString().equals(getterName) && 
-                    method.getModifiers().contains(Modifier.PUBLIC) &&
-                    method.getParameters().isEmpty()) {
-                    return "obj." + getterName + "()";
-                }
-            }
-        }
-        
-        // Check if there's a public field
-        for (Element enclosed : typeElement.getEnclosedElements()) {
-            if (enclosed.getKind() == ElementKind.FIELD) {
-                VariableElement field = (VariableElement) enclosed;
-                if (field.getSimpleName().toString().equals(fieldName) && 
-                    field.getModifiers().contains(Modifier.PUBLIC)) {
-                    return "obj." + fieldName;
-                }
-            }
-        }
-        
-        // Fallback to reflection for private fields
-        return String.format("(%s) getFieldValue(obj, \"%s\")", fieldInfo.type.toString(), fieldName);
-    }
-    
     private MethodSpec createGetFieldValueMethod() {
+        // Package-private so that generated companion classes can share the helper
         return MethodSpec.methodBuilder("getFieldValue")
-            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addModifiers(Modifier.STATIC)
             .addParameter(Object.class, "obj")
             .addParameter(String.class, "fieldName")
             .returns(Object.class)
@@ -0,0 +1,752 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Streams the source of a stage builder straight from its {@link StageBuilderModel}.
+ *
+ * <p>This is the low-overhead alternative to materialising the stage builder as a JavaPoet tree.
+ * The output is byte-identical to the JavaPoet path: imports are resolved in a first pass over
+ * the same type references JavaPoet sees, and names, indentation and wrapping follow its rules.</p>
+ */
+public final class StageBuilderSourceWriter {
+
+    private static final String FROM_STAGE = "FromStage";
+    private static final String BUILDER = "Builder";
+    private static final String FROM_BUILDER = "FromBuilder";
+
+    private final StageBuilderModel model;
+    private final List<StageBuilderModel.Field> requiredFields;
+    private final List<StageBuilderModel.Field> optionalFields;
+    private final Set<String> nestedTypeNames = new LinkedHashSet<>();
+
+    /**
+     * Creates a writer for a stage builder.
+     *
+     * @param model the analysed stage builder
+     */
+    public StageBuilderSourceWriter(StageBuilderModel model) {
+        this.model = model;
+        this.requiredFields = model.getFields().stream().filter(StageBuilderModel.Field::required).toList();
+        this.optionalFields = model.getFields().stream().filter(field -> !field.required()).toList();
+        for (StageBuilderModel.Field field : requiredFields) {
+            nestedTypeNames.add(stageName(field));
+        }
+        nestedTypeNames.add(CodeGenerationUtils.getBuildStage());
+        nestedTypeNames.add(FROM_STAGE);
+        nestedTypeNames.add(BUILDER);
+        nestedTypeNames.add(FROM_BUILDER);
+    }
+
+    /**
+     * Gets the qualified name of the stage builder class.
+     *
+     * @return the qualified class name
+     */
+    public String getQualifiedName() {
+        String packageName = model.getPackageName();
+        return packageName.isEmpty() ? model.getBuilderClassName() : packageName + "." + model.getBuilderClassName();
+    }
+
+    /**
+     * Writes the stage builder source.
+     *
+     * @param out the destination, typically the writer of a filer source file
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Appendable out) throws IOException {
+        // The first pass only collects the types to import, like JavaPoet does
+        Emitter importsCollector = new Emitter(NullAppendable.INSTANCE, null);
+        emitFile(importsCollector);
+        Emitter emitter = new Emitter(out, importsCollector.suggestedImports());
+        emitFile(emitter);
+        emitter.flush();
+    }
+
+    private void emitFile(Emitter out) throws IOException {
+        if (!model.getPackageName().isEmpty()) {
+            out.emit("package " + model.getPackageName() + ";\n");
+            out.emit("\n");
+        }
+        int importCount = 0;
+        for (ClassName className : new TreeSet<>(out.importedTypes.values())) {
+            out.emit("import " + className.canonicalName() + ";\n");
+            importCount++;
+        }
+        if (importCount > 0) {
+            out.emit("\n");
+        }
+
+        out.emit("public final class " + model.getBuilderClassName() + " {\n");
+        out.pushType(model.getBuilderClassName(), nestedTypeNames);
+        out.indent();
+        emitBuilderMethod(out);
+        out.emit("\n");
+        emitFromMethod(out);
+        if (!model.isStrict()) {
+            out.emit("\n");
+            emitGetFieldValueMethod(out);
+        }
+        emitStageInterfaces(out);
+        out.emit("\n");
+        emitBuilderClass(out, BUILDER);
+        out.emit("\n");
+        emitBuilderClass(out, FROM_BUILDER);
+        out.unindent();
+        out.popType();
+        out.emit("}\n");
+    }
+
+    private void emitBuilderMethod(Emitter out) throws IOException {
+        out.emit("public static ");
+        out.emitType(ClassName.get(model.getPackageName(), model.getBuilderClassName(), firstStageName()));
+        out.emit(" builder(");
+        out.zeroWidthSpace();
+        out.emit(") {\n");
+        out.indent();
+        out.emit("return new " + BUILDER + "();\n");
+        out.unindent();
+        out.emit("}\n");
+    }
+
+    private void emitFromMethod(Emitter out) throws IOException {
+        out.emit("public static ");
+        out.emitType(ClassName.get(model.getPackageName(), model.getBuilderClassName(), FROM_STAGE));
+        out.emit(" from(");
+        out.zeroWidthSpace();
+        out.emitType(model.getTargetClassName());
+        out.emit(" obj) {\n");
+        out.indent();
+        out.emit(FROM_BUILDER + " builder = new " + FROM_BUILDER + "();\n");
+        for (StageBuilderModel.Field field : model.getFields()) {
+            out.emit("builder." + field.name() + " = " + field.readCode() + ";\n");
+        }
+        out.emit("return builder;\n");
+        out.unindent();
+        out.emit("}\n");
+    }
+
+    private void emitGetFieldValueMethod(Emitter out) throws IOException {
+        out.emit("static ");
+        out.emitType(ClassName.OBJECT);
+        out.emit(" getFieldValue(");
+        out.zeroWidthSpace();
+        out.emitType(ClassName.OBJECT);
+        out.emit(" obj,");
+        out.wrappingSpace();
+        out.emitType(ClassName.get(String.class));
+        out.emit(" fieldName) {\n");
+        out.indent();
+        out.emit("try {\n");
+        out.indent();
+        out.emit("java.lang.reflect.Field f = obj.getClass().getDeclaredField(fieldName);\n");
+        out.emit("f.setAccessible(true);\n");
+        out.emit("return f.get(obj);\n");
+        out.unindent();
+        out.emit("} catch (Exception e) {\n");
+        out.indent();
+        out.emit("throw new RuntimeException(\"Unable to access field '\" + fieldName + \"' from object\", e);\n");
+        out.unindent();
+        out.emit("}\n");
+        out.unindent();
+        out.emit("}\n");
+    }
+
+    private void emitStageInterfaces(Emitter out) throws IOException {
+        String buildStage = CodeGenerationUtils.getBuildStage();
+        if (requiredFields.isEmpty()) {
+            emitBuildStage(out, model.getFields());
+        } else {
+            for (int i = 0; i < requiredFields.size(); i++) {
+                StageBuilderModel.Field field = requiredFields.get(i);
+                String returnType = i == requiredFields.size() - 1 ? buildStage : stageName(requiredFields.get(i + 1));
+                out.emit("\n");
+                out.emitType(ClassName.get(FunctionalInterface.class), "@");
+                out.emit("\n");
+                out.emit("public interface " + stageName(field) + " {\n");
+                out.pushType(stageName(field), Set.of());
+                out.indent();
+                emitAbstractMethod(out, returnType, field.name(), List.of(field.type()), List.of(field.name()));
+                out.unindent();
+                out.popType();
+                out.emit("}\n");
+            }
+            emitBuildStage(out, optionalFields);
+        }
+
+        out.emit("\n");
+        out.emit("public interface " + FROM_STAGE + " {\n");
+        out.pushType(FROM_STAGE, Set.of());
+        out.indent();
+        emitBuildSignature(out);
+        for (StageBuilderModel.Field field : model.getFields()) {
+            out.emit("\n");
+            emitAbstractMethod(out, FROM_STAGE, field.name(), List.of(field.type()), List.of(field.name()));
+            emitAbstractAccumulatorMethods(out, field, FROM_STAGE);
+        }
+        out.unindent();
+        out.popType();
+        out.emit("}\n");
+    }
+
+    private void emitBuildStage(Emitter out, List<StageBuilderModel.Field> stageFields) throws IOException {
+        String buildStage = CodeGenerationUtils.getBuildStage();
+        out.emit("\n");
+        if (stageFields.isEmpty()) {
+            out.emitType(ClassName.get(FunctionalInterface.class), "@");
+            out.emit("\n");
+        }
+        out.emit("public interface " + buildStage + " {\n");
+        out.pushType(buildStage, Set.of());
+        out.indent();
+        emitBuildSignature(out);
+        for (StageBuilderModel.Field field : stageFields) {
+            out.emit("\n");
+            emitAbstractMethod(out, buildStage, field.name(), List.of(field.type()), List.of(field.name()));
+            emitAbstractAccumulatorMethods(out, field, buildStage);
+        }
+        out.unindent();
+        out.popType();
+        out.emit("}\n");
+    }
+
+    private void emitBuildSignature(Emitter out) throws IOException {
+        out.emitType(model.getTargetClassName());
+        out.emit(" build(");
+        out.zeroWidthSpace();
+        out.emit(");\n");
+    }
+
+    private void emitAbstractAccumulatorMethods(Emitter out, StageBuilderModel.Field field, String returnType) throws IOException {
+        for (AccumulatorMethod method : accumulatorMethods(field)) {
+            out.emit("\n");
+            emitAbstractMethod(out, returnType, method.name(), method.parameterTypes(), method.parameterNames());
+        }
+    }
+
+    private void emitAbstractMethod(Emitter out, String returnType, String name, List<TypeName> parameterTypes,
+                                    List<String> parameterNames) throws IOException {
+        out.emit(returnType + " " + name + "(");
+        out.zeroWidthSpace();
+        emitParameters(out, parameterTypes, parameterNames);
+        out.emit(");\n");
+    }
+
+    private void emitParameters(Emitter out, List<TypeName> parameterTypes, List<String> parameterNames) throws IOException {
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                out.emit(",");
+                out.wrappingSpace();
+            }
+            out.emitType(parameterTypes.get(i));
+            out.emit(" " + parameterNames.get(i));
+        }
+    }
+
+    private void emitBuilderClass(Emitter out, String className) throws IOException {
+        boolean fromBuilder = className.equals(FROM_BUILDER);
+        out.emit("private static final class " + className + " implements ");
+        if (fromBuilder) {
+            out.emit(FROM_STAGE);
+        } else {
+            for (StageBuilderModel.Field field : requiredFields) {
+                out.emit(stageName(field) + ", ");
+            }
+            out.emit(CodeGenerationUtils.getBuildStage());
+        }
+        out.emit(" {\n");
+        out.pushType(className, Set.of());
+        out.indent();
+
+        // Required fields are set once by their stage, only BuildStage fields accumulate
+        List<StageBuilderModel.Field> accumulatedFields = fromBuilder ? model.getFields() : optionalFields;
+        boolean firstMember = true;
+        for (StageBuilderModel.Field field : model.getFields()) {
+            firstMember = emitField(out, field.type(), field.name(), field.initializer(), firstMember);
+            if (field.collectionKind() != null && accumulatedFields.contains(field)) {
+                emitField(out, accumulatorType(field), field.name() + "Accumulator", null, false);
+                emitField(out, TypeName.INT, field.name() + "Capacity", null, false);
+            }
+        }
+
+        if (fromBuilder) {
+            for (StageBuilderModel.Field field : model.getFields()) {
+                emitSetter(out, field, FROM_STAGE, true);
+                emitAccumulatorMethods(out, field, FROM_STAGE);
+            }
+        } else {
+            for (int i = 0; i < requiredFields.size(); i++) {
+                String returnType = i == requiredFields.size() - 1
+                    ? CodeGenerationUtils.getBuildStage() : stageName(requiredFields.get(i + 1));
+                emitSetter(out, requiredFields.get(i), returnType, false);
+            }
+            for (StageBuilderModel.Field field : optionalFields) {
+                emitSetter(out, field, CodeGenerationUtils.getBuildStage(), true);
+                emitAccumulatorMethods(out, field, CodeGenerationUtils.getBuildStage());
+            }
+        }
+        emitBuildMethod(out, accumulatedFields);
+
+        out.unindent();
+        out.popType();
+        out.emit("}\n");
+    }
+
+    private boolean emitField(Emitter out, TypeName type, String name, String initializer, boolean firstMember) throws IOException {
+        if (!firstMember) {
+            out.emit("\n");
+        }
+        out.emit("private ");
+        out.emitType(type);
+        out.emit(" " + name);
+        if (initializer != null) {
+            out.emit(" = " + initializer);
+        }
+        out.emit(";\n");
+        return false;
+    }
+
+    private void emitMethodStart(Emitter out, String returnType, String name, List<TypeName> parameterTypes,
+                                 List<String> parameterNames) throws IOException {
+        out.emit("\n");
+        out.emitType(ClassName.get(Override.class), "@");
+        out.emit("\n");
+        out.emit("public " + returnType + " " + name + "(");
+        out.zeroWidthSpace();
+        emitParameters(out, parameterTypes, parameterNames);
+        out.emit(") {\n");
+        out.indent();
+    }
+
+    private void emitMethodEnd(Emitter out) throws IOException {
+        out.emit("return this;\n");
+        out.unindent();
+        out.emit("}\n");
+    }
+
+    private void emitSetter(Emitter out, StageBuilderModel.Field field, String returnType, boolean accumulated) throws IOException {
+        emitMethodStart(out, returnType, field.name(), List.of(field.type()), List.of(field.name()));
+        out.emit("this." + field.name() + " = " + field.name() + ";\n");
+        if (field.collectionKind() != null && accumulated) {
+            out.emit("this." + field.name() + "Accumulator = null;\n");
+        }
+        emitMethodEnd(out);
+    }
+
+    private void emitAccumulatorMethods(Emitter out, StageBuilderModel.Field field, String returnType) throws IOException {
+        CollectionKind kind = field.collectionKind();
+        if (kind == null) {
+            return;
+        }
+        String name = field.name();
+        String accumulator = name + "Accumulator";
+        String capacity = name + "Capacity";
+
+        out.emit("\n");
+        out.emit("private ");
+        out.emitType(accumulatorType(field));
+        out.emit(" " + accumulator + "(");
+        out.zeroWidthSpace();
+        out.emit(") {\n");
+        out.indent();
+        out.emit("if (this." + accumulator + " == null) {\n");
+        out.indent();
+        out.emit("int size = Math.max(this." + capacity + ", this." + name + " != null ? this." + name + ".size() : 0);\n");
+        out.emit("this." + accumulator + " = new ");
+        out.emitType(kind.getAccumulatorClassName());
+        out.emit(kind == CollectionKind.LIST ? "<>(size);\n" : "<>(size + (size / 3) + 1);\n");
+        out.emit("if (this." + name + " != null) {\n");
+        out.indent();
+        out.emit("this." + accumulator + "." + kind.getAddAllMethod() + "(this." + name + ");\n");
+        out.unindent();
+        out.emit("}\n");
+        out.unindent();
+        out.emit("}\n");
+        out.emit("return this." + accumulator + ";\n");
+        out.unindent();
+        out.emit("}\n");
+
+        for (AccumulatorMethod method : accumulatorMethods(field)) {
+            emitMethodStart(out, returnType, method.name(), method.parameterTypes(), method.parameterNames());
+            switch (method.accumulation()) {
+                case ADD -> out.emit(accumulator + "()." + kind.getAddMethod() + "(" + String.join(", ", method.parameterNames()) + ");\n");
+                case ADD_ALL -> out.emit(accumulator + "()." + kind.getAddAllMethod() + "(" + method.parameterNames().get(0) + ");\n");
+                case CAPACITY -> {
+                    out.emit("this." + capacity + " = expectedSize;\n");
+                    CodeBlock ensureCapacity = kind.ensureCapacity(accumulator, "expectedSize");
+                    if (ensureCapacity != null) {
+                        out.emit("if (this." + accumulator + " != null) {\n");
+                        out.indent();
+                        out.emit(ensureCapacity + ";\n");
+                        out.unindent();
+                        out.emit("}\n");
+                    }
+                }
+            }
+            emitMethodEnd(out);
+        }
+    }
+
+    private void emitBuildMethod(Emitter out, List<StageBuilderModel.Field> accumulatedFields) throws IOException {
+        ClassName target = model.getTargetClassName();
+        out.emit("\n");
+        out.emitType(ClassName.get(Override.class), "@");
+        out.emit("\n");
+        out.emit("public ");
+        out.emitType(target);
+        out.emit(" build(");
+        out.zeroWidthSpace();
+        out.emit(") {\n");
+        out.indent();
+        for (StageBuilderModel.Field field : accumulatedFields) {
+            if (field.collectionKind() == null) {
+                continue;
+            }
+            String accumulator = field.name() + "Accumulator";
+            out.emit("if (this." + accumulator + " != null) {\n");
+            out.indent();
+            out.emit("this." + field.name() + " = ");
+            out.emitType(ClassName.get(Collections.class));
+            out.emit("." + field.collectionKind().getUnmodifiableMethod() + "(this." + accumulator + ");\n");
+            out.emit("this." + accumulator + " = null;\n");
+            out.unindent();
+            out.emit("}\n");
+        }
+
+        out.emitType(target);
+        out.emit(" obj = new ");
+        out.emitType(target);
+        if (model.hasAllArgsConstructor()) {
+            List<String> arguments = new ArrayList<>();
+            for (StageBuilderModel.Field field : model.getFields()) {
+                arguments.add("this." + field.name());
+            }
+            out.emit("(" + String.join(", ", arguments) + ");\n");
+            if (!model.isStrict()) {
+                for (StageBuilderModel.Field field : optionalFields) {
+                    emitReflectiveSet(out, field);
+                }
+            }
+        } else {
+            out.emit("();\n");
+            for (StageBuilderModel.Field field : model.getFields()) {
+                if (model.isStrict()) {
+                    out.emit(field.writeCode() + ";\n");
+                } else {
+                    emitReflectiveSet(out, field);
+                }
+            }
+        }
+        out.emit("return obj;\n");
+        out.unindent();
+        out.emit("}\n");
+    }
+
+    private void emitReflectiveSet(Emitter out, StageBuilderModel.Field field) throws IOException {
+        String name = field.name();
+        out.emit("try {\n");
+        out.indent();
+        out.emit("obj.getClass().getMethod(\"set" + Character.toUpperCase(name.charAt(0)) + name.substring(1) + "\", ");
+        out.emitType(field.rawType());
+        out.emit(".class).invoke(obj, this." + name + ");\n");
+        out.unindent();
+        out.emit("} catch (Exception e) {\n");
+        out.indent();
+        out.emit(" {\n");
+        out.indent();
+        out.emit("try { java.lang.reflect.Field f = obj.getClass().getDeclaredField(\"" + name + "\"); f.setAccessible(true); f.set(obj, this."
+            + name + "); } catch (Exception ignore) {};\n");
+        out.unindent();
+        out.emit("}\n");
+        out.unindent();
+        out.emit("}\n");
+    }
+
+    private String firstStageName() {
+        return requiredFields.isEmpty() ? CodeGenerationUtils.getBuildStage() : stageName(requiredFields.get(0));
+    }
+
+    private static String stageName(StageBuilderModel.Field field) {
+        return CodeGenerationUtils.capitalizeFirstLetter(field.name()) + CodeGenerationUtils.getStage();
+    }
+
+    private static TypeName accumulatorType(StageBuilderModel.Field field) {
+        return ParameterizedTypeName.get(field.collectionKind().getAccumulatorClassName(),
+            field.typeArguments().toArray(new TypeName[0]));
+    }
+
+    private record AccumulatorMethod(String name, CollectionKind.Accumulation accumulation, List<TypeName> parameterTypes,
+                                     List<String> parameterNames) {
+    }
+
+    private static List<AccumulatorMethod> accumulatorMethods(StageBuilderModel.Field field) {
+        if (field.collectionKind() == null) {
+            return List.of();
+        }
+        String capitalized = CodeGenerationUtils.capitalizeFirstLetter(field.name());
+        List<TypeName> typeArguments = field.typeArguments();
+        List<AccumulatorMethod> methods = new ArrayList<>();
+        CollectionKind kind = field.collectionKind();
+        String add = kind.getAddMethod() + capitalized;
+        String addAll = kind.getAddAllMethod() + capitalized;
+        if (kind.isMap()) {
+            methods.add(new AccumulatorMethod(add, CollectionKind.Accumulation.ADD, typeArguments, List.of("key", "value")));
+            methods.add(new AccumulatorMethod(addAll, CollectionKind.Accumulation.ADD_ALL, List.of(ParameterizedTypeName.get(ClassName.get(Map.class),
+                WildcardTypeName.subtypeOf(typeArguments.get(0)), WildcardTypeName.subtypeOf(typeArguments.get(1)))), List.of("entries")));
+        } else {
+            methods.add(new AccumulatorMethod(add, CollectionKind.Accumulation.ADD, typeArguments, List.of("element")));
+            methods.add(new AccumulatorMethod(addAll, CollectionKind.Accumulation.ADD_ALL, List.of(ParameterizedTypeName.get(ClassName.get(Collection.class),
+                WildcardTypeName.subtypeOf(typeArguments.get(0)))), List.of("elements")));
+        }
+        methods.add(new AccumulatorMethod(field.name() + "Capacity", CollectionKind.Accumulation.CAPACITY, List.of(TypeName.INT),
+            List.of("expectedSize")));
+        return methods;
+    }
+
+    /**
+     * Writes code with JavaPoet's indentation, name resolution and line wrapping.
+     */
+    private final class Emitter {
+        private static final String INDENT = "  ";
+        private static final int COLUMN_LIMIT = 100;
+
+        private final Appendable out;
+        private final Map<String, ClassName> importedTypes;
+        private final Map<String, ClassName> importableTypes = new LinkedHashMap<>();
+        private final Set<String> referencedNames = new HashSet<>();
+        private final List<String> typeNames = new ArrayList<>();
+        private final List<Set<String>> typeNestedNames = new ArrayList<>();
+        private final StringBuilder buffer = new StringBuilder();
+        private int indentLevel;
+        private boolean trailingNewline;
+        private int column;
+        private String pendingSpace;
+        private int wrapIndentLevel;
+
+        Emitter(Appendable out, Map<String, ClassName> importedTypes) {
+            this.out = out;
+            this.importedTypes = importedTypes != null ? importedTypes : Map.of();
+        }
+
+        void indent() {
+            indentLevel++;
+        }
+
+        void unindent() {
+            indentLevel--;
+        }
+
+        void pushType(String name, Set<String> nestedNames) {
+            typeNames.add(name);
+            typeNestedNames.add(nestedNames);
+        }
+
+        void popType() {
+            typeNames.remove(typeNames.size() - 1);
+            typeNestedNames.remove(typeNestedNames.size() - 1);
+        }
+
+        void emit(String text) throws IOException {
+            boolean first = true;
+            for (String line : text.split("\\R", -1)) {
+                if (!first) {
+                    append("\n");
+                    trailingNewline = true;
+                }
+                first = false;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (trailingNewline) {
+                    for (int i = 0; i < indentLevel; i++) {
+                        append(INDENT);
+                    }
+                }
+                append(line);
+                trailingNewline = false;
+            }
+        }
+
+        void emitType(TypeName type) throws IOException {
+            emitType(type, "");
+        }
+
+        void emitType(TypeName type, String prefix) throws IOException {
+            if (type instanceof ClassName className) {
+                emit(prefix + lookupName(className));
+            } else if (type instanceof ParameterizedTypeName parameterized) {
+                emitType(parameterized.rawType, prefix);
+                emit("<");
+                for (int i = 0; i < parameterized.typeArguments.size(); i++) {
+                    if (i > 0) {
+                        emit(", ");
+                    }
+                    emitType(parameterized.typeArguments.get(i));
+                }
+                emit(">");
+            } else if (type instanceof WildcardTypeName wildcard) {
+                if (wildcard.lowerBounds.size() == 1) {
+                    emit(prefix + "? super ");
+                    emitType(wildcard.lowerBounds.get(0));
+                } else if (wildcard.upperBounds.get(0).equals(TypeName.OBJECT)) {
+                    emit(prefix + "?");
+                } else {
+                    emit(prefix + "? extends ");
+                    emitType(wildcard.upperBounds.get(0));
+                }
+            } else if (type instanceof ArrayTypeName array) {
+                emitType(array.componentType, prefix);
+                emit("[]");
+            } else if (type instanceof TypeVariableName variable) {
+                emit(prefix + variable.name);
+            } else {
+                emit(prefix + type);
+            }
+        }
+
+        /**
+         * Gets the shortest name that resolves to the class in the current scope, like JavaPoet's CodeWriter.
+         */
+        private String lookupName(ClassName className) {
+            boolean nameResolved = false;
+            for (ClassName c = className; c != null; c = c.enclosingClassName()) {
+                ClassName resolved = resolve(c.simpleName());
+                nameResolved = resolved != null;
+                if (resolved != null && Objects.equals(resolved.canonicalName(), c.canonicalName())) {
+                    int suffixOffset = c.simpleNames().size() - 1;
+                    return String.join(".", className.simpleNames().subList(suffixOffset, className.simpleNames().size()));
+                }
+            }
+            if (nameResolved) {
+                return className.canonicalName();
+            }
+            if (Objects.equals(model.getPackageName(), className.packageName())) {
+                referencedNames.add(className.topLevelClassName().simpleName());
+                return String.join(".", className.simpleNames());
+            }
+            if (!className.packageName().isEmpty()) {
+                ClassName topLevelClassName = className.topLevelClassName();
+                importableTypes.putIfAbsent(topLevelClassName.simpleName(), topLevelClassName);
+            }
+            return className.canonicalName();
+        }
+
+        private ClassName resolve(String simpleName) {
+            for (int i = typeNames.size() - 1; i >= 0; i--) {
+                if (typeNestedNames.get(i).contains(simpleName)) {
+                    ClassName stackClassName = ClassName.get(model.getPackageName(), typeNames.get(0));
+                    for (int j = 1; j <= i; j++) {
+                        stackClassName = stackClassName.nestedClass(typeNames.get(j));
+                    }
+                    return stackClassName.nestedClass(simpleName);
+                }
+            }
+            if (!typeNames.isEmpty() && typeNames.get(0).equals(simpleName)) {
+                return ClassName.get(model.getPackageName(), simpleName);
+            }
+            return importedTypes.get(simpleName);
+        }
+
+        Map<String, ClassName> suggestedImports() {
+            Map<String, ClassName> imports = new LinkedHashMap<>(importableTypes);
+            imports.keySet().removeAll(referencedNames);
+            return imports;
+        }
+
+        /**
+         * Emits a space at which the line is wrapped if the text up to the next line break exceeds the column limit.
+         */
+        void wrappingSpace() throws IOException {
+            flush();
+            column++;
+            pendingSpace = " ";
+            wrapIndentLevel = indentLevel + 2;
+        }
+
+        /**
+         * Emits nothing, but allows the line to be wrapped here like a {@link #wrappingSpace()}.
+         */
+        void zeroWidthSpace() throws IOException {
+            if (column == 0) {
+                return;
+            }
+            flush();
+            pendingSpace = "";
+            wrapIndentLevel = indentLevel + 2;
+        }
+
+        void flush() throws IOException {
+            if (pendingSpace != null) {
+                flushSpace(false);
+            }
+        }
+
+        private void append(String text) throws IOException {
+            if (pendingSpace != null) {
+                int newline = text.indexOf('\n');
+                if (newline == -1 && column + text.length() <= COLUMN_LIMIT) {
+                    buffer.append(text);
+                    column += text.length();
+                    return;
+                }
+                flushSpace(newline == -1 || column + newline > COLUMN_LIMIT);
+            }
+            out.append(text);
+            int lastNewline = text.lastIndexOf('\n');
+            column = lastNewline != -1 ? text.length() - lastNewline - 1 : column + text.length();
+        }
+
+        private void flushSpace(boolean wrap) throws IOException {
+            if (wrap) {
+                out.append('\n');
+                for (int i = 0; i < wrapIndentLevel; i++) {
+                    out.append(INDENT);
+                }
+                column = wrapIndentLevel * INDENT.length() + buffer.length();
+            } else {
+                out.append(pendingSpace);
+            }
+            out.append(buffer);
+            buffer.setLength(0);
+            pendingSpace = null;
+        }
+    }
+
+    private static final class NullAppendable implements Appendable {
+        static final NullAppendable INSTANCE = new NullAppendable();
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            return this;
+        }
+    }
+}
@@ -2,13 +2,18 @@ package org.devnuxs.stagebuilder.processor;
 
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
 
 import javax.lang.model.element.Modifier;
-import javax.lang.model.element.TypeElement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Generates stage interfaces for the stage builder pattern.
@@ -20,11 +25,11 @@ public class StageInterfaceGenerator {
      * 
      * @param fields the list of fields to create stage interfaces for
      * @param className the name of the class being built
-     * @param typeElement the type element of the class being built
+     * @param members the member index of the class being built
      * @param packageName the package name
      * @return a list of TypeSpec for all stage interfaces
      */
-    public List<TypeSpec> generateStageInterfaces(List<FieldInfo> fields, String className, TypeElement typeElement, String packageName) {
+    public List<TypeSpec> generateStageInterfaces(List<FieldInfo> fields, String className, MemberIndex members, String packageName) {
         List<TypeSpec> interfaces = new ArrayList<>();
 
         // Required: not optional and no default
@@ -38,18 +43,80 @@ public class StageInterfaceGenerator {
 
         // If there are no required fields, allow all fields in BuildStage (any order)
         if (requiredFields.isEmpty()) {
-            interfaces.add(generateBuildStageInterface(fields, className, typeElement, packageName));
+            interfaces.add(generateBuildStageInterface(fields, className, members, packageName));
         } else {
             interfaces.addAll(generateRequiredStageInterfaces(requiredFields));
-            interfaces.add(generateBuildStageInterface(optionalFields, className, typeElement, packageName));
+            interfaces.add(generateBuildStageInterface(optionalFields, className, members, packageName));
         }
 
         // Always add FromStage interface that allows setting any field
-        interfaces.add(generateFromStageInterface(fields, className, typeElement, packageName));
+        interfaces.add(generateFromStageInterface(fields, className, members, packageName));
 
         return interfaces;
     }
     
+    /**
+     * Generates stage interfaces for a companion staged API that ends in custom terminal methods.
+     * 
+     * <p>Required fields get one stage interface each, in declaration order, and the final stage
+     * offers the optional fields together with the terminal methods. Each field gets one stage
+     * method per parameter type, so companions can accept alternative representations of a value.</p>
+     * 
+     * @param fields the list of fields to create stage interfaces for
+     * @param finalStageName the name of the final stage interface
+     * @param terminalMethods the abstract terminal methods of the final stage
+     * @param parameterTypes the parameter types of the stage methods of a field
+     * @return a list of TypeSpec for all stage interfaces, starting with the first stage
+     */
+    public List<TypeSpec> generateCustomStageInterfaces(List<FieldInfo> fields, String finalStageName, List<MethodSpec> terminalMethods,
+                                                        Function<FieldInfo, List<TypeName>> parameterTypes) {
+        List<TypeSpec> interfaces = new ArrayList<>();
+        List<FieldInfo> requiredFields = fields.stream()
+            .filter(field -> !field.isOptional && !field.hasDefault)
+            .toList();
+        List<FieldInfo> optionalFields = requiredFields.isEmpty() ? fields : fields.stream()
+            .filter(field -> field.isOptional || field.hasDefault)
+            .toList();
+        
+        for (int i = 0; i < requiredFields.size(); i++) {
+            FieldInfo field = requiredFields.get(i);
+            String returnType = i == requiredFields.size() - 1 ? finalStageName :
+                CodeGenerationUtils.capitalizeFirstLetter(requiredFields.get(i + 1).name) + CodeGenerationUtils.getStage();
+            TypeSpec.Builder stageInterface = TypeSpec.interfaceBuilder(
+                    CodeGenerationUtils.capitalizeFirstLetter(field.name) + CodeGenerationUtils.getStage())
+                .addModifiers(Modifier.PUBLIC);
+            List<TypeName> types = parameterTypes.apply(field);
+            if (types.size() == 1) {
+                stageInterface.addAnnotation(FunctionalInterface.class);
+            }
+            for (TypeName type : types) {
+                stageInterface.addMethod(generateCustomStageMethod(field, type, returnType));
+            }
+            interfaces.add(stageInterface.build());
+        }
+        
+        TypeSpec.Builder finalStage = TypeSpec.interfaceBuilder(finalStageName)
+            .addModifiers(Modifier.PUBLIC)
+            .addMethods(terminalMethods);
+        if (optionalFields.isEmpty() && terminalMethods.size() == 1) {
+            finalStage.addAnnotation(FunctionalInterface.class);
+        }
+        for (FieldInfo field : optionalFields) {
+            for (TypeName type : parameterTypes.apply(field)) {
+                finalStage.addMethod(generateCustomStageMethod(field, type, finalStageName));
+            }
+        }
+        interfaces.add(finalStage.build());
+        return interfaces;
+    }
+    
+    private MethodSpec generateCustomStageMethod(FieldInfo field, TypeName parameterType, String returnType) {
+        return MethodSpec.methodBuilder(field.name)
+            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+            .addParameter(parameterType, field.name)
+            .returns(ClassName.get("", returnType))
+            .build();
+    }
     
     private List<TypeSpec> generateRequiredStageInterfaces(List<FieldInfo> requiredFields) {
         List<TypeSpec> interfaces = new ArrayList<>();
@@ -84,7 +151,7 @@ public class StageInterfaceGenerator {
             CodeGenerationUtils.getStage();
     }
     
-    private TypeSpec generateBuildStageInterface(List<FieldInfo> optionalFields, String className, TypeElement typeElement, String packageName) {
+    private TypeSpec generateBuildStageInterface(List<FieldInfo> optionalFields, String className, MemberIndex members, String packageName) {
         TypeSpec.Builder buildStageBuilder = TypeSpec.interfaceBuilder(CodeGenerationUtils.getBuildStage())
             .addModifiers(Modifier.PUBLIC);
         
@@ -92,19 +159,20 @@ public class StageInterfaceGenerator {
             buildStageBuilder.addAnnotation(FunctionalInterface.class);
         }
         
-        buildStageBuilder.addMethod(generateBuildMethod(className, typeElement, packageName));
+        buildStageBuilder.addMethod(generateBuildMethod(className, members, packageName));
         
         for (FieldInfo optionalField : optionalFields) {
             buildStageBuilder.addMethod(generateOptionalFieldMethod(optionalField));
+            buildStageBuilder.addMethods(generateAccumulatorMethods(optionalField, CodeGenerationUtils.getBuildStage()).values());
         }
         
         return buildStageBuilder.build();
     }
     
-    private MethodSpec generateBuildMethod(String className, TypeElement typeElement, String packageName) {
+    private MethodSpec generateBuildMethod(String className, MemberIndex members, String packageName) {
         return MethodSpec.methodBuilder("build")
             .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-            .returns(CodeGenerationUtils.getClassName(typeElement, packageName))
+            .returns(CodeGenerationUtils.getClassName(members.getTypeElement(), packageName))
             .build();
     }
     
@@ -116,16 +184,17 @@ public class StageInterfaceGenerator {
             .build();
     }
     
-    private TypeSpec generateFromStageInterface(List<FieldInfo> allFields, String className, TypeElement typeElement, String packageName) {
+    private TypeSpec generateFromStageInterface(List<FieldInfo> allFields, String className, MemberIndex members, String packageName) {
         TypeSpec.Builder fromStageBuilder = TypeSpec.interfaceBuilder("FromStage")
             .addModifiers(Modifier.PUBLIC);
         
         // Add build method
-        fromStageBuilder.addMethod(generateBuildMethod(className, typeElement, packageName));
+        fromStageBuilder.addMethod(generateBuildMethod(className, members, packageName));
         
         // Add setter methods for ALL fields (required and optional)
         for (FieldInfo field : allFields) {
             fromStageBuilder.addMethod(generateFromStageFieldMethod(field));
+            fromStageBuilder.addMethods(generateAccumulatorMethods(field, "FromStage").values());
         }
         
         return fromStageBuilder.build();
@@ -138,4 +207,50 @@ public class StageInterfaceGenerator {
             .returns(ClassName.get("", "FromStage"))
             .build();
     }
-}
\ No newline at end of file
+    
+    /**
+     * Generates the element-wise accumulator methods of a collection field.
+     * 
+     * <p>Lists and sets get {@code addX} and {@code addAllX}, maps get {@code putX} and
+     * {@code putAllX}, and all of them get an {@code xCapacity} hint for presizing. For lists the
+     * hint also grows values that are already accumulated, hash based collections are only
+     * presized when their accumulator is created.</p>
+     * 
+     * @param field the field to create accumulator methods for
+     * @param returnType the name of the stage interface the methods return
+     * @return the accumulator methods by what they do, or an empty map if the field is not a collection
+     */
+    Map<CollectionKind.Accumulation, MethodSpec> generateAccumulatorMethods(FieldInfo field, String returnType) {
+        CollectionKind kind = CollectionKind.of(field.type);
+        if (kind == null) {
+            return Map.of();
+        }
+        List<TypeName> typeArguments = kind.getTypeArguments(field.type);
+        String capitalized = CodeGenerationUtils.capitalizeFirstLetter(field.name);
+        Map<CollectionKind.Accumulation, MethodSpec> methods = new EnumMap<>(CollectionKind.Accumulation.class);
+        MethodSpec.Builder add = accumulatorMethod(kind.getAddMethod() + capitalized, returnType);
+        MethodSpec.Builder addAll = accumulatorMethod(kind.getAddAllMethod() + capitalized, returnType);
+        if (kind.isMap()) {
+            add.addParameter(typeArguments.get(0), "key")
+                .addParameter(typeArguments.get(1), "value");
+            addAll.addParameter(ParameterizedTypeName.get(ClassName.get(Map.class),
+                WildcardTypeName.subtypeOf(typeArguments.get(0)), WildcardTypeName.subtypeOf(typeArguments.get(1))), "entries");
+        } else {
+            add.addParameter(typeArguments.get(0), "element");
+            addAll.addParameter(ParameterizedTypeName.get(ClassName.get(Collection.class),
+                WildcardTypeName.subtypeOf(typeArguments.get(0))), "elements");
+        }
+        methods.put(CollectionKind.Accumulation.ADD, add.build());
+        methods.put(CollectionKind.Accumulation.ADD_ALL, addAll.build());
+        methods.put(CollectionKind.Accumulation.CAPACITY, accumulatorMethod(field.name + "Capacity", returnType)
+            .addParameter(TypeName.INT, "expectedSize")
+            .build());
+        return methods;
+    }
+    
+    private MethodSpec.Builder accumulatorMethod(String name, String returnType) {
+        return MethodSpec.methodBuilder(name)
+            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+            .returns(ClassName.get("", returnType));
+    }
+}
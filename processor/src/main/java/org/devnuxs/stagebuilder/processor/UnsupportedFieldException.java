@@ -0,0 +1,27 @@
+package org.devnuxs.stagebuilder.processor;
+
+import javax.lang.model.element.Element;
+
+/**
+ * Signals that a generator cannot handle a field of the annotated type.
+ * 
+ * <p>The processor reports the message as a compile error on the offending element.</p>
+ */
+public class UnsupportedFieldException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The element of the unsupported field. May be {@code null}. */
+    public final transient Element element;
+
+    /**
+     * Creates an exception for the given field.
+     * 
+     * @param field the unsupported field
+     * @param message the description of the problem
+     */
+    public UnsupportedFieldException(FieldInfo field, String message) {
+        super(message);
+        this.element = field.element;
+    }
+}
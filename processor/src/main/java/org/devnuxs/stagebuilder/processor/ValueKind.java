@@ -0,0 +1,138 @@
+package org.devnuxs.stagebuilder.processor;
+
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Classifies field types into the value kinds understood by the generated companion classes.
+ */
+public enum ValueKind {
+    /** A {@code boolean} primitive. */
+    BOOLEAN(1),
+    /** A {@code byte} primitive. */
+    BYTE(1),
+    /** A {@code short} primitive. */
+    SHORT(2),
+    /** A {@code char} primitive. */
+    CHAR(2),
+    /** An {@code int} primitive. */
+    INT(4),
+    /** A {@code long} primitive. */
+    LONG(8),
+    /** A {@code float} primitive. */
+    FLOAT(4),
+    /** A {@code double} primitive. */
+    DOUBLE(8),
+    /** A {@link Boolean} wrapper. */
+    BOXED_BOOLEAN(-1),
+    /** A {@link Byte} wrapper. */
+    BOXED_BYTE(-1),
+    /** A {@link Short} wrapper. */
+    BOXED_SHORT(-1),
+    /** A {@link Character} wrapper. */
+    BOXED_CHAR(-1),
+    /** An {@link Integer} wrapper. */
+    BOXED_INT(-1),
+    /** A {@link Long} wrapper. */
+    BOXED_LONG(-1),
+    /** A {@link Float} wrapper. */
+    BOXED_FLOAT(-1),
+    /** A {@link Double} wrapper. */
+    BOXED_DOUBLE(-1),
+    /** A {@link String}. */
+    STRING(-1),
+    /** An enum constant. */
+    ENUM(-1),
+    /** A {@code byte[]} array. */
+    BYTE_ARRAY(-1),
+    /** Any other type. */
+    OTHER(-1);
+
+    private final int fixedSize;
+
+    ValueKind(int fixedSize) {
+        this.fixedSize = fixedSize;
+    }
+
+    /**
+     * Classifies the given type.
+     *
+     * @param type the type to classify
+     * @return the value kind of the type, or {@link #OTHER} if it is not specially supported
+     */
+    public static ValueKind of(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return BOOLEAN;
+            case BYTE: return BYTE;
+            case SHORT: return SHORT;
+            case CHAR: return CHAR;
+            case INT: return INT;
+            case LONG: return LONG;
+            case FLOAT: return FLOAT;
+            case DOUBLE: return DOUBLE;
+            case ARRAY:
+                return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? BYTE_ARRAY : OTHER;
+            case DECLARED:
+                if (((DeclaredType) type).asElement().getKind() == ElementKind.ENUM) {
+                    return ENUM;
+                }
+                return ofDeclaredName(type.toString());
+            default:
+                return OTHER;
+        }
+    }
+
+    private static ValueKind ofDeclaredName(String typeName) {
+        switch (typeName) {
+            case "java.lang.String": return STRING;
+            case "java.lang.Boolean": return BOXED_BOOLEAN;
+            case "java.lang.Byte": return BOXED_BYTE;
+            case "java.lang.Short": return BOXED_SHORT;
+            case "java.lang.Character": return BOXED_CHAR;
+            case "java.lang.Integer": return BOXED_INT;
+            case "java.lang.Long": return BOXED_LONG;
+            case "java.lang.Float": return BOXED_FLOAT;
+            case "java.lang.Double": return BOXED_DOUBLE;
+            default: return OTHER;
+        }
+    }
+
+    /**
+     * Whether this kind is a Java primitive.
+     *
+     * @return true for primitive kinds
+     */
+    public boolean isPrimitive() {
+        return fixedSize > 0;
+    }
+
+    /**
+     * Whether this kind is a primitive wrapper type.
+     *
+     * @return true for boxed kinds
+     */
+    public boolean isBoxed() {
+        return ordinal() >= BOXED_BOOLEAN.ordinal() && ordinal() <= BOXED_DOUBLE.ordinal();
+    }
+
+    /**
+     * Gets the primitive kind for a primitive or boxed kind.
+     *
+     * @return the primitive kind, or {@code this} for non-numeric kinds
+     */
+    public ValueKind unboxed() {
+        return isBoxed() ? values()[ordinal() - BOXED_BOOLEAN.ordinal()] : this;
+    }
+
+    /**
+     * Gets the number of bytes a primitive kind occupies in a fixed-size layout.
+     *
+     * @return the size in bytes, or -1 for kinds without a fixed size
+     */
+    public int fixedSize() {
+        return fixedSize;
+    }
+}
@@ -0,0 +1,292 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the generated async stage builder.
+ */
+public class AsyncStageBuilderGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testAsyncStagesAcceptValuesAndFutures() {
+        // Test that values and futures can be mixed in the staged chain
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Profile", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ASYNC_BUILDER)
+                    public record Profile(String name, int score, @StageBuilder.Optional String avatar) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.ProfileService", """
+                    package test;
+
+                    import java.util.concurrent.CompletableFuture;
+
+                    public class ProfileService {
+                        public static CompletableFuture<Profile> load(CompletableFuture<String> name,
+                                                                      CompletableFuture<Integer> score) {
+                            return ProfileAsyncStageBuilder.builder()
+                                .name(name)
+                                .score(score)
+                                .avatar("default.png")
+                                .build();
+                        }
+
+                        public static CompletableFuture<Profile> plain() {
+                            return ProfileAsyncStageBuilder.builder().name("Ann").score(1).build();
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify pending inputs are combined once
+        assertThat(compilation)
+            .generatedSourceFile("test.ProfileAsyncStageBuilder")
+            .contentsAsUtf8String()
+            .contains("CompletableFuture<?> all = pending == 1 ? futures[0] : CompletableFuture.allOf(futures);");
+    }
+
+    @Test
+    public void testBuildCompletesWithItsInputs() throws Throwable {
+        // Test that the result completes once every pending input does, and fails with the first failed input
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Profile", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ASYNC_BUILDER)
+                    public record Profile(String name, int score, @StageBuilder.Default("none") String avatar) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.ProfileService", """
+                    package test;
+
+                    import java.util.concurrent.CompletableFuture;
+
+                    public class ProfileService {
+                        public static CompletableFuture<Profile> load(CompletableFuture<String> name,
+                                                                      CompletableFuture<Integer> score) {
+                            return ProfileAsyncStageBuilder.builder().name(name).score(score).build();
+                        }
+
+                        public static CompletableFuture<Profile> plain() {
+                            return ProfileAsyncStageBuilder.builder().name("Ann").score(1).avatar("a.png").build();
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+
+        // Verify plain values complete the result immediately
+        CompletableFuture<?> plain = (CompletableFuture<?>) loader.invokeStatic("test.ProfileService", "plain");
+        assertTrue(plain.isDone());
+        assertEquals("Profile[name=Ann, score=1, avatar=a.png]", plain.join().toString());
+
+        // Verify the result waits for the last pending input and applies defaults
+        CompletableFuture<String> name = new CompletableFuture<>();
+        CompletableFuture<Integer> score = new CompletableFuture<>();
+        CompletableFuture<?> profile = (CompletableFuture<?>) loader.invokeStatic("test.ProfileService", "load", name, score);
+        name.complete("Bob");
+        assertFalse(profile.isDone());
+        score.complete(7);
+        assertEquals("Profile[name=Bob, score=7, avatar=none]", profile.get(10, TimeUnit.SECONDS).toString());
+
+        // Verify a failed input fails the result with its cause
+        CompletableFuture<String> failedName = new CompletableFuture<>();
+        CompletableFuture<?> failed = (CompletableFuture<?>) loader.invokeStatic("test.ProfileService", "load",
+            failedName, CompletableFuture.completedFuture(3));
+        failedName.completeExceptionally(new IllegalStateException("lookup failed"));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertEquals("lookup failed", failure.getCause().getMessage());
+    }
+
+    @Test
+    public void testCallablesResolveConcurrently() {
+        // Test that callables can be mixed with values and run on a given executor
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Profile", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ASYNC_BUILDER)
+                    public record Profile(String name, int score, @StageBuilder.Optional String avatar) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.ProfileService", """
+                    package test;
+
+                    import java.util.concurrent.CompletableFuture;
+                    import java.util.concurrent.ExecutorService;
+
+                    public class ProfileService {
+                        public static CompletableFuture<Profile> load() {
+                            return ProfileAsyncStageBuilder.builder()
+                                .name(() -> "Ann")
+                                .score(() -> 42)
+                                .build();
+                        }
+
+                        public static CompletableFuture<Profile> load(ExecutorService executor) {
+                            return ProfileAsyncStageBuilder.builder()
+                                .name("Ann")
+                                .score(() -> 42)
+                                .avatar(() -> "default.png")
+                                .buildConcurrently(executor);
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify callables default to virtual threads and failures cancel the remaining tasks
+        assertThat(compilation)
+            .generatedSourceFile("test.ProfileAsyncStageBuilder")
+            .contentsAsUtf8String()
+            .contains("private static final Executor VIRTUAL_THREADS = Thread::startVirtualThread;");
+        assertThat(compilation)
+            .generatedSourceFile("test.ProfileAsyncStageBuilder")
+            .contentsAsUtf8String()
+            .contains("result.whenComplete((value, failure) -> Task.cancelOnFailure(tasks, failure));");
+    }
+
+    @Test
+    public void testFailedCallableCancelsTheOthers() throws Throwable {
+        // Test that callables run concurrently and the first failure interrupts the ones still running
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Profile", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ASYNC_BUILDER)
+                    public record Profile(String name, int score, @StageBuilder.Optional String avatar) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.ProfileService", """
+                    package test;
+
+                    import java.util.concurrent.CompletableFuture;
+                    import java.util.concurrent.CountDownLatch;
+
+                    public class ProfileService {
+                        public static CompletableFuture<Profile> load() {
+                            CountDownLatch started = new CountDownLatch(2);
+                            return ProfileAsyncStageBuilder.builder()
+                                .name(() -> {
+                                    started.countDown();
+                                    started.await();
+                                    return Thread.currentThread().isVirtual() ? "virtual" : "platform";
+                                })
+                                .score(() -> {
+                                    started.countDown();
+                                    started.await();
+                                    return 42;
+                                })
+                                .build();
+                        }
+
+                        public static CompletableFuture<Profile> failFast(CountDownLatch interrupted) {
+                            CountDownLatch started = new CountDownLatch(1);
+                            return ProfileAsyncStageBuilder.builder()
+                                .name(() -> {
+                                    started.countDown();
+                                    try {
+                                        Thread.sleep(60_000);
+                                    } catch (InterruptedException e) {
+                                        interrupted.countDown();
+                                        throw e;
+                                    }
+                                    return "late";
+                                })
+                                .score(() -> {
+                                    started.await();
+                                    throw new IllegalStateException("score failed");
+                                })
+                                .build();
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+
+        // Verify both callables run at the same time on virtual threads, or the latch would never open
+        CompletableFuture<?> profile = (CompletableFuture<?>) loader.invokeStatic("test.ProfileService", "load");
+        assertEquals("Profile[name=virtual, score=42, avatar=null]", profile.get(10, TimeUnit.SECONDS).toString());
+
+        // Verify the failure completes the result and interrupts the callable still sleeping
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<?> failed = (CompletableFuture<?>) loader.invokeStatic("test.ProfileService", "failFast", interrupted);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertEquals("score failed", failure.getCause().getMessage());
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS), "the sleeping callable was not interrupted");
+    }
+
+    @Test
+    public void testAsyncStagesKeepRequiredOrder() {
+        // Test that build is unavailable before all required fields are staged
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Profile", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ASYNC_BUILDER)
+                    public record Profile(String name, int score) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.InvalidUsage", """
+                    package test;
+
+                    import java.util.concurrent.CompletableFuture;
+
+                    public class InvalidUsage {
+                        public static CompletableFuture<Profile> load() {
+                            return ProfileAsyncStageBuilder.builder().name("Ann").build();
+                        }
+                    }
+                    """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("cannot find symbol");
+    }
+}
@@ -0,0 +1,301 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for the generated atomic companion.
+ */
+public class AtomicUpdaterGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testRecordUpdatesCopyInsideReference() {
+        // Test that record fields can be updated inside an AtomicReference
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Quote", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ATOMIC)
+                    public record Quote(String symbol, long volume, @StageBuilder.Optional Double price) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.QuoteBoard", """
+                    package test;
+
+                    import java.util.concurrent.atomic.AtomicReference;
+
+                    public class QuoteBoard {
+                        private final AtomicReference<Quote> quote = new AtomicReference<>(new Quote("ACME", 0, null));
+
+                        public Quote trade(long volume, double price) {
+                            QuoteAtomic.updateVolume(quote, current -> current + volume);
+                            return QuoteAtomic.setPrice(quote, price);
+                        }
+
+                        public boolean rename(String from, String to) {
+                            return QuoteAtomic.compareAndSetSymbol(quote, from, to);
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify the copy is made directly and swapped in with a single exchange
+        assertThat(compilation)
+            .generatedSourceFile("test.QuoteAtomic")
+            .contentsAsUtf8String()
+            .contains("Quote next = new Quote(current.symbol(), value, current.price());");
+        assertThat(compilation)
+            .generatedSourceFile("test.QuoteAtomic")
+            .contentsAsUtf8String()
+            .contains("Quote witness = reference.compareAndExchange(current, next);");
+    }
+
+    @Test
+    public void testMutableClassUsesVarHandles() {
+        // Test that fields of mutable classes are updated in place
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Counter", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.ATOMIC)
+                public class Counter {
+                    private long hits;
+                    private String label;
+
+                    public Counter() {
+                    }
+
+                    public long getHits() {
+                        return hits;
+                    }
+
+                    public void setHits(long hits) {
+                        this.hits = hits;
+                    }
+
+                    public String getLabel() {
+                        return label;
+                    }
+
+                    public void setLabel(String label) {
+                        this.label = label;
+                    }
+                }
+                """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify one VarHandle is resolved per field
+        assertThat(compilation)
+            .generatedSourceFile("test.CounterAtomic")
+            .contentsAsUtf8String()
+            .contains("HITS = lookup.findVarHandle(Counter.class, \"hits\", long.class);");
+        assertThat(compilation)
+            .generatedSourceFile("test.CounterAtomic")
+            .contentsAsUtf8String()
+            .contains("long witness = (long) HITS.compareAndExchange(obj, current, value);");
+    }
+
+    @Test
+    public void testFinalFieldWithoutConstructorFails() {
+        // Test that fields without a mutable instance field are rejected
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Label", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.ATOMIC)
+                public class Label {
+                    private String text;
+
+                    public Label() {
+                    }
+
+                    public void setValue(String value) {
+                        this.text = value;
+                    }
+                }
+                """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("has no non-final instance field for atomic access");
+    }
+
+    @Test
+    public void testPrivateFieldWithoutGetterFailsForCopies() {
+        // Test that copies through the all-args constructor never read a field through reflection
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Balance", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.ATOMIC)
+                public class Balance {
+                    private final String owner;
+                    private final long cents;
+
+                    public Balance(String owner, long cents) {
+                        this.owner = owner;
+                        this.cents = cents;
+                    }
+
+                    public String getOwner() {
+                        return owner;
+                    }
+                }
+                """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'cents' of Balance can only be read through reflection, "
+            + "which the atomic companion does not use; add a public getter getCents() or make the field public");
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws Throwable {
+        // Test that updates from many threads all land, both inside an AtomicReference and through VarHandles
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Quote", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ATOMIC)
+                    public record Quote(String symbol, long volume, @StageBuilder.Optional Double price) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.Counter", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ATOMIC)
+                    public class Counter {
+                        private volatile long hits;
+                        private volatile String label;
+
+                        public Counter() {
+                        }
+
+                        public long getHits() {
+                            return hits;
+                        }
+
+                        public void setHits(long hits) {
+                            this.hits = hits;
+                        }
+
+                        public String getLabel() {
+                            return label;
+                        }
+
+                        public void setLabel(String label) {
+                            this.label = label;
+                        }
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.Race", """
+                    package test;
+
+                    import java.util.ArrayList;
+                    import java.util.List;
+                    import java.util.concurrent.CountDownLatch;
+                    import java.util.concurrent.atomic.AtomicInteger;
+                    import java.util.concurrent.atomic.AtomicReference;
+
+                    public final class Race {
+                        private Race() {
+                        }
+
+                        public static String trade(int threads, int trades) throws InterruptedException {
+                            AtomicReference<Quote> quote = new AtomicReference<>(new Quote("ACME", 0, null));
+                            AtomicInteger renames = new AtomicInteger();
+                            run(threads, () -> {
+                                for (int i = 0; i < trades; i++) {
+                                    QuoteAtomic.updateVolume(quote, volume -> volume + 1);
+                                    QuoteAtomic.setPrice(quote, 1.5);
+                                }
+                                if (QuoteAtomic.compareAndSetSymbol(quote, "ACME", "ACME2")) {
+                                    renames.incrementAndGet();
+                                }
+                            });
+                            Quote settled = quote.get();
+                            boolean unchanged = QuoteAtomic.setPrice(quote, 1.5) == settled
+                                && QuoteAtomic.updateVolume(quote, volume -> volume) == settled;
+                            return settled + " renames=" + renames.get() + " unchanged=" + unchanged;
+                        }
+
+                        public static String count(int threads, int hits) throws InterruptedException {
+                            Counter counter = new Counter();
+                            AtomicInteger labels = new AtomicInteger();
+                            run(threads, () -> {
+                                for (int i = 0; i < hits; i++) {
+                                    CounterAtomic.updateHits(counter, current -> current + 1);
+                                }
+                                if (CounterAtomic.compareAndSetLabel(counter, null, Thread.currentThread().getName())) {
+                                    labels.incrementAndGet();
+                                }
+                            });
+                            return CounterAtomic.getHits(counter) + " labelled=" + (counter.getLabel() != null)
+                                + " labels=" + labels.get();
+                        }
+
+                        private static void run(int threads, Runnable task) throws InterruptedException {
+                            CountDownLatch start = new CountDownLatch(1);
+                            List<Thread> workers = new ArrayList<>();
+                            for (int t = 0; t < threads; t++) {
+                                workers.add(Thread.ofPlatform().start(() -> {
+                                    try {
+                                        start.await();
+                                    } catch (InterruptedException e) {
+                                        throw new IllegalStateException(e);
+                                    }
+                                    task.run();
+                                }));
+                            }
+                            start.countDown();
+                            for (Thread worker : workers) {
+                                worker.join();
+                            }
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+
+        // Verify no increment is lost, exactly one rename wins and unchanged values keep the instance
+        assertEquals("Quote[symbol=ACME2, volume=80000, price=1.5] renames=1 unchanged=true",
+            loader.invokeStatic("test.Race", "trade", 8, 10_000));
+
+        // Verify the VarHandle path gives the exact total and a single winning compare-and-set
+        assertEquals("80000 labelled=true labels=1", loader.invokeStatic("test.Race", "count", 8, 10_000));
+    }
+}
@@ -0,0 +1,274 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.RecordComponent;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * Tests for the generated binary codec companion class.
+ */
+public class BinaryCodecGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    private static final String MESSAGE = """
+        package test;
+        
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+        
+        @StageBuilder(features = StageBuilder.Feature.BINARY_CODEC)
+        public record Message(String name, int count, long id, double ratio, boolean flag, char code,
+                              Status status, Integer rank, byte[] payload,
+                              @StageBuilder.Default("none") String tag) {
+            public enum Status { NEW, DONE }
+        }
+        """;
+
+    private static final String MESSAGE_USAGE = """
+        package test;
+        
+        import java.nio.ByteBuffer;
+        
+        public class MessageUsage {
+            public static Message sample() {
+                return new Message("n\u00e9", -7, Long.MIN_VALUE, 0.25, true, 'x', Message.Status.DONE, null,
+                                   new byte[] {1, 2, 3}, "custom");
+            }
+            
+            public static byte[] encode(Message message) {
+                ByteBuffer buffer = ByteBuffer.allocate(256);
+                MessageBinaryCodec.write(message, buffer);
+                buffer.flip();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            }
+            
+            public static Message decode(byte[] bytes) {
+                return MessageBinaryCodec.read(ByteBuffer.wrap(bytes));
+            }
+        }
+        """;
+
+    @Test
+    public void testRecordBinaryCodecRoundTripCompiles() {
+        // Test that the codec is generated for a record with all supported value kinds
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Message", MESSAGE),
+                JavaFileObjects.forSourceString("test.MessageUsage", MESSAGE_USAGE));
+        
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+        
+        // Verify the generated codec decodes through the stage builder and keeps defaults
+        assertThat(compilation)
+            .generatedSourceFile("test.MessageBinaryCodec")
+            .contentsAsUtf8String()
+            .contains("MessageStageBuilder.builder().name(nameValue)");
+        assertThat(compilation)
+            .generatedSourceFile("test.MessageBinaryCodec")
+            .contentsAsUtf8String()
+            .contains("if (fieldCount > 9)");
+    }
+
+    @Test
+    public void testRoundTripRestoresEveryField() throws Throwable {
+        // Test that read(write(x)) restores every field of the record
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Message", MESSAGE),
+                JavaFileObjects.forSourceString("test.MessageUsage", MESSAGE_USAGE));
+        assertThat(compilation).succeededWithoutWarnings();
+        
+        var loader = new CompiledClassLoader(compilation);
+        Record original = (Record) loader.invokeStatic("test.MessageUsage", "sample");
+        byte[] bytes = (byte[]) loader.invokeStatic("test.MessageUsage", "encode", original);
+        Record decoded = (Record) loader.invokeStatic("test.MessageUsage", "decode", (Object) bytes);
+        
+        // Records compare arrays by reference, so the payload is compared by content
+        for (RecordComponent component : original.getClass().getRecordComponents()) {
+            Object expected = component.getAccessor().invoke(original);
+            Object actual = component.getAccessor().invoke(decoded);
+            if (expected instanceof byte[] array) {
+                assertArrayEquals(array, (byte[]) actual, component.getName());
+            } else {
+                assertEquals(expected, actual, component.getName());
+            }
+        }
+        
+        // Verify the payload does not alias the original array
+        assertNotSame(CompiledClassLoader.invoke(original, "payload"), CompiledClassLoader.invoke(decoded, "payload"));
+    }
+
+    @Test
+    public void testReadOlderSchemaFillsDefaults() throws Throwable {
+        // Test that data written before the default field was appended is read with the default value
+        var older = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Message", """
+                    package test;
+                    
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+                    
+                    @StageBuilder(features = StageBuilder.Feature.BINARY_CODEC)
+                    public record Message(String name, int count, long id, double ratio, boolean flag, char code,
+                                          Status status, Integer rank, byte[] payload) {
+                        public enum Status { NEW, DONE }
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.MessageUsage", """
+                    package test;
+                    
+                    import java.nio.ByteBuffer;
+                    
+                    public class MessageUsage {
+                        public static byte[] encodeSample() {
+                            ByteBuffer buffer = ByteBuffer.allocate(256);
+                            MessageBinaryCodec.write(new Message("old", 3, 4L, 0.5, false, 'o', Message.Status.NEW, 9,
+                                                                 new byte[0]), buffer);
+                            buffer.flip();
+                            byte[] bytes = new byte[buffer.remaining()];
+                            buffer.get(bytes);
+                            return bytes;
+                        }
+                    }
+                    """));
+        assertThat(older).succeededWithoutWarnings();
+        var current = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Message", MESSAGE),
+                JavaFileObjects.forSourceString("test.MessageUsage", MESSAGE_USAGE));
+        assertThat(current).succeededWithoutWarnings();
+        
+        byte[] bytes = (byte[]) new CompiledClassLoader(older).invokeStatic("test.MessageUsage", "encodeSample");
+        Object decoded = new CompiledClassLoader(current).invokeStatic("test.MessageUsage", "decode", (Object) bytes);
+        
+        // Verify the written fields are kept and the appended field takes its default
+        assertEquals("old", CompiledClassLoader.invoke(decoded, "name"));
+        assertEquals(3, CompiledClassLoader.invoke(decoded, "count"));
+        assertEquals(9, CompiledClassLoader.invoke(decoded, "rank"));
+        assertEquals("NEW", CompiledClassLoader.invoke(decoded, "status").toString());
+        assertEquals("none", CompiledClassLoader.invoke(decoded, "tag"));
+    }
+
+    @Test
+    public void testPrivateFieldWithoutAccessorFailsCompilation() {
+        // Test that the codec does not fall back to reflection for private fields without a getter
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Account", """
+                package test;
+                
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+                
+                @StageBuilder(features = StageBuilder.Feature.BINARY_CODEC)
+                public class Account {
+                    private String owner;
+                    private long balance;
+                    
+                    public Account() {}
+                    
+                    public void setOwner(String owner) { this.owner = owner; }
+                    public void setBalance(long balance) { this.balance = balance; }
+                    public String getOwner() { return owner; }
+                }
+                """));
+        
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'balance' of Account can only be read through reflection");
+        assertThat(compilation).hadErrorContaining("add a public getter getBalance()");
+    }
+
+    @Test
+    public void testClassWithPrivateFieldsBinaryCodecCompiles() {
+        // Test that the codec reads private fields through their public getters
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Account", """
+                package test;
+                
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+                
+                @StageBuilder(features = StageBuilder.Feature.BINARY_CODEC)
+                public class Account {
+                    private String owner;
+                    private long balance;
+                    
+                    public Account() {}
+                    
+                    public void setOwner(String owner) { this.owner = owner; }
+                    public void setBalance(long balance) { this.balance = balance; }
+                    public String getOwner() { return owner; }
+                    public long getBalance() { return balance; }
+                }
+                """));
+        
+        // Verify compilation succeeds without the reflective helper
+        assertThat(compilation).succeededWithoutWarnings();
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountBinaryCodec")
+            .contentsAsUtf8String()
+            .contains("obj.getBalance()");
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountBinaryCodec")
+            .contentsAsUtf8String()
+            .doesNotContain("getFieldValue");
+    }
+
+    @Test
+    public void testBinaryCodecNotGeneratedWithoutFeature() {
+        // Test that companions are only generated on request
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Plain", """
+                package test;
+                
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+                
+                @StageBuilder
+                public record Plain(String name) {
+                }
+                """));
+        
+        assertThat(compilation).succeededWithoutWarnings();
+        org.junit.jupiter.api.Assertions.assertTrue(compilation.generatedSourceFiles().stream()
+            .noneMatch(file -> file.getName().contains("BinaryCodec")));
+    }
+
+    @Test
+    public void testUnsupportedFieldTypeFailsCompilation() {
+        // Test that fields the codec cannot encode are reported on the field
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Order", """
+                package test;
+                
+                import java.util.List;
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+                
+                @StageBuilder(features = StageBuilder.Feature.BINARY_CODEC)
+                public record Order(String id, List<String> items) {
+                }
+                """));
+        
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'items' of type java.util.List<java.lang.String> is not supported by the binary codec");
+    }
+}
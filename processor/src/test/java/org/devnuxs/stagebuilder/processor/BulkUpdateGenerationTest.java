@@ -0,0 +1,212 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for the generated bulk updates.
+ */
+public class BulkUpdateGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testBulkUpdateCopiesDirectly() {
+        // Test that an update can set and map fields of lists and arrays, free of lint warnings
+        var compilation = javac()
+            .withOptions("-Xlint:all")
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Sale", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.BULK)
+                    public record Sale(long id, String region, double price) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.Repricing", """
+                    package test;
+
+                    import java.util.List;
+
+                    public class Repricing {
+                        public static List<Sale> run(List<Sale> sales) {
+                            return SaleBulk.update().setRegion("EU").mapPrice(price -> price * 1.1).applyAll(sales);
+                        }
+
+                        public static Sale[] run(Sale[] sales) {
+                            return SaleBulk.update().mapRegion(String::toUpperCase).applyAll(sales);
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify elements are copied through the constructor with primitive mappers
+        assertThat(compilation)
+            .generatedSourceFile("test.SaleBulk")
+            .contentsAsUtf8String()
+            .contains("double priceValue = priceSet ? price : priceMapper != null ? priceMapper.applyAsDouble(priceCurrent) : priceCurrent;");
+        assertThat(compilation)
+            .generatedSourceFile("test.SaleBulk")
+            .contentsAsUtf8String()
+            .contains("if (idValue == idCurrent && Objects.equals(regionValue, regionCurrent) "
+                + "&& Double.doubleToRawLongBits(priceValue) == Double.doubleToRawLongBits(priceCurrent)) {");
+        assertThat(compilation)
+            .generatedSourceFile("test.SaleBulk")
+            .contentsAsUtf8String()
+            .contains("return new Sale(idValue, regionValue, priceValue);");
+    }
+
+    @Test
+    public void testBulkUpdateWithoutConstructorUsesFrom() {
+        // Test that classes without an all-args constructor are copied through from()
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Account", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.BULK)
+                public class Account {
+                    private String owner;
+
+                    public Account() {
+                    }
+
+                    public String getOwner() {
+                        return owner;
+                    }
+
+                    public void setOwner(String owner) {
+                        this.owner = owner;
+                    }
+                }
+                """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountBulk")
+            .contentsAsUtf8String()
+            .contains("return AccountStageBuilder.from(obj).owner(ownerValue).build();");
+    }
+
+    @Test
+    public void testPrivateFieldWithoutGetterFails() {
+        // Test that elements are never read through reflection
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Account", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.BULK)
+                public class Account {
+                    private String owner;
+
+                    public Account() {
+                    }
+
+                    public void setOwner(String owner) {
+                        this.owner = owner;
+                    }
+                }
+                """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'owner' of Account can only be read through reflection, "
+            + "which the bulk update does not use; add a public getter getOwner() or make the field public");
+    }
+
+    @Test
+    public void testApplyUpdatesElementsInOrder() throws Throwable {
+        // Test that updates copy changed elements, share unchanged ones and keep the order in parallel
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Sale", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.BULK)
+                    public record Sale(long id, String region, double price) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.Sales", """
+                    package test;
+
+                    import java.util.ArrayList;
+                    import java.util.List;
+
+                    public class Sales {
+                        public static Sale sample() {
+                            return new Sale(1L, "EU", 2.0);
+                        }
+
+                        public static Sale keepRegion(Sale sale) {
+                            return SaleBulk.update().setRegion(sale.region()).mapPrice(price -> price).apply(sale);
+                        }
+
+                        public static Sale moveToUs(Sale sale) {
+                            return SaleBulk.update().setRegion("US").apply(sale);
+                        }
+
+                        public static List<Sale> doubleAll(int size) {
+                            List<Sale> sales = new ArrayList<>();
+                            for (int i = 0; i < size; i++) {
+                                sales.add(new Sale(i, "EU", i));
+                            }
+                            return SaleBulk.update().mapPrice(price -> price * 2).applyAll(sales);
+                        }
+
+                        public static int threshold() {
+                            return SaleBulk.PARALLEL_THRESHOLD;
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+        Object sale = loader.invokeStatic("test.Sales", "sample");
+
+        // Verify an update without changes returns the element itself
+        assertSame(sale, loader.invokeStatic("test.Sales", "keepRegion", sale));
+
+        // Verify a change copies the element and leaves the original as it is
+        Object moved = loader.invokeStatic("test.Sales", "moveToUs", sale);
+        assertNotSame(sale, moved);
+        assertEquals("US", CompiledClassLoader.invoke(moved, "region"));
+        assertEquals(2.0, CompiledClassLoader.invoke(moved, "price"));
+        assertEquals("EU", CompiledClassLoader.invoke(sale, "region"));
+
+        // Verify the parallel path updates every element in source order
+        int size = 4 * (int) loader.invokeStatic("test.Sales", "threshold") + 7;
+        List<?> doubled = (List<?>) loader.invokeStatic("test.Sales", "doubleAll", size);
+        assertEquals(size, doubled.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals((long) i, CompiledClassLoader.invoke(doubled.get(i), "id"));
+            assertEquals(2.0 * i, CompiledClassLoader.invoke(doubled.get(i), "price"));
+        }
+    }
+}
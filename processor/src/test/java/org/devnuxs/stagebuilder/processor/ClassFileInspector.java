@@ -0,0 +1,160 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.Compilation;
+
+import javax.tools.JavaFileObject;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the sizes that matter to the JIT from the class files of a compilation: the code length
+ * of each method and the size of the constant pool.
+ */
+final class ClassFileInspector {
+
+    /**
+     * A method of a class file.
+     *
+     * @param name the method name
+     * @param accessFlags the access flags
+     * @param codeLength the length of the bytecode, 0 for abstract methods
+     */
+    record MethodInfo(String name, int accessFlags, int codeLength) {
+        boolean isPublic() {
+            return Modifier.isPublic(accessFlags);
+        }
+    }
+
+    /**
+     * The sizes of a class file.
+     *
+     * @param name the binary class name, e.g. {@code test/OrderStageBuilder$Builder}
+     * @param constantPoolCount the number of constant pool entries
+     * @param methods the methods in declaration order
+     */
+    record ClassInfo(String name, int constantPoolCount, List<MethodInfo> methods) {
+        /**
+         * Gets the code length of the first method with the name.
+         *
+         * @param methodName the method name
+         * @return the code length
+         */
+        int codeLength(String methodName) {
+            return methods.stream().filter(method -> method.name().equals(methodName))
+                .findFirst().orElseThrow().codeLength();
+        }
+    }
+
+    private ClassFileInspector() {
+    }
+
+    /**
+     * Inspects the class files generated for the classes starting with a prefix.
+     *
+     * @param compilation a successful compilation
+     * @param classNamePrefix the binary name prefix, e.g. {@code test/OrderStageBuilder}
+     * @return the inspected classes by binary name
+     */
+    static Map<String, ClassInfo> inspect(Compilation compilation, String classNamePrefix) {
+        Map<String, ClassInfo> classes = new LinkedHashMap<>();
+        for (JavaFileObject file : compilation.generatedFiles()) {
+            if (file.getKind() != JavaFileObject.Kind.CLASS) {
+                continue;
+            }
+            try (InputStream in = file.openInputStream()) {
+                ClassInfo info = read(in.readAllBytes());
+                if (info.name().equals(classNamePrefix) || info.name().startsWith(classNamePrefix + "$")) {
+                    classes.put(info.name(), info);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Reads a class file.
+     *
+     * @param bytes the class file
+     * @return the sizes of the class
+     * @throws IOException if the class file is malformed
+     */
+    static ClassInfo read(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8 = new String[constantPoolCount];
+        int[] classNameIndex = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> utf8[i] = in.readUTF();
+                case 7 -> classNameIndex[i] = in.readUnsignedShort();
+                case 8, 16, 19, 20 -> in.skipNBytes(2);
+                case 15 -> in.skipNBytes(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipNBytes(4);
+                case 5, 6 -> {
+                    // Longs and doubles take two entries
+                    in.skipNBytes(8);
+                    i++;
+                }
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        in.readUnsignedShort();
+        String name = utf8[classNameIndex[in.readUnsignedShort()]];
+        in.readUnsignedShort();
+        in.skipNBytes(2L * in.readUnsignedShort());
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            in.skipNBytes(6);
+            skipAttributes(in);
+        }
+
+        int methodCount = in.readUnsignedShort();
+        List<MethodInfo> methods = new ArrayList<>();
+        for (int i = 0; i < methodCount; i++) {
+            int accessFlags = in.readUnsignedShort();
+            String methodName = utf8[in.readUnsignedShort()];
+            in.readUnsignedShort();
+            int codeLength = 0;
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                String attributeName = utf8[in.readUnsignedShort()];
+                int length = in.readInt();
+                if (attributeName.equals("Code")) {
+                    in.skipNBytes(4);
+                    codeLength = in.readInt();
+                    in.skipNBytes(length - 8L);
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+            methods.add(new MethodInfo(methodName, accessFlags, codeLength));
+        }
+        return new ClassInfo(name, constantPoolCount, List.copyOf(methods));
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            in.readUnsignedShort();
+            in.skipNBytes(Integer.toUnsignedLong(in.readInt()));
+        }
+    }
+}
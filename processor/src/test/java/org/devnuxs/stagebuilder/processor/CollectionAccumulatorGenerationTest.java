@@ -0,0 +1,175 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the generated accumulators of collection fields.
+ */
+public class CollectionAccumulatorGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testCollectionAccumulatorsCompile() {
+        // Test that list, set and map fields can be accumulated in the builder and the from builder
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Order", """
+                    package test;
+
+                    import java.util.List;
+                    import java.util.Map;
+                    import java.util.Set;
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder
+                    public record Order(String id, @StageBuilder.Optional List<String> lines,
+                                        @StageBuilder.Default("java.util.Set.of()") Set<Integer> codes,
+                                        @StageBuilder.Optional Map<String, Long> totals) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.OrderUsage", """
+                    package test;
+
+                    import java.util.List;
+                    import java.util.Map;
+
+                    public class OrderUsage {
+                        public static Order create() {
+                            return OrderStageBuilder.builder()
+                                .id("A-1")
+                                .linesCapacity(3)
+                                .addLines("apple")
+                                .addAllLines(List.of("pear", "plum"))
+                                .addCodes(7)
+                                .putTotals("fruit", 3L)
+                                .putAllTotals(Map.of("tax", 1L))
+                                .build();
+                        }
+
+                        public static Order extend(Order order) {
+                            return OrderStageBuilder.from(order).addLines("fig").build();
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify the accumulator is presized and starts from the current value
+        assertThat(compilation)
+            .generatedSourceFile("test.OrderStageBuilder")
+            .contentsAsUtf8String()
+            .contains("int size = Math.max(this.linesCapacity, this.lines != null ? this.lines.size() : 0);");
+        assertThat(compilation)
+            .generatedSourceFile("test.OrderStageBuilder")
+            .contentsAsUtf8String()
+            .contains("this.codesAccumulator = new LinkedHashSet<>(size + (size / 3) + 1);");
+
+        // Verify build wraps the accumulator without copying it
+        assertThat(compilation)
+            .generatedSourceFile("test.OrderStageBuilder")
+            .contentsAsUtf8String()
+            .contains("this.totals = Collections.unmodifiableMap(this.totalsAccumulator);");
+
+        // Verify optional generic fields are set through their raw setter type
+        assertThat(compilation)
+            .generatedSourceFile("test.OrderStageBuilder")
+            .contentsAsUtf8String()
+            .contains("obj.getClass().getMethod(\"setLines\", List.class)");
+    }
+
+    @Test
+    public void testRequiredCollectionKeepsStageOrder() {
+        // Test that a required collection field has to be set as a whole in its own stage
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Order", """
+                    package test;
+
+                    import java.util.List;
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder
+                    public record Order(List<String> lines, String id) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.InvalidUsage", """
+                    package test;
+
+                    public class InvalidUsage {
+                        public static Order create() {
+                            return OrderStageBuilder.builder().addLines("apple").id("A-1").build();
+                        }
+                    }
+                    """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("cannot find symbol");
+    }
+
+    @Test
+    public void testAccumulatorStateOnlyForAccumulatedFields() throws Throwable {
+        // Test that a required collection has no accumulator in the staged builder, but in the from builder
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Order", """
+                package test;
+
+                import java.util.List;
+                import java.util.Set;
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder
+                public record Order(List<String> items, String id, @StageBuilder.Optional Set<String> tags) {
+                }
+                """));
+        assertThat(compilation).succeededWithoutWarnings();
+        CompiledClassLoader classes = new CompiledClassLoader(compilation);
+
+        // Verify the fields of both builders
+        assertEquals(List.of("items", "id", "tags", "tagsAccumulator", "tagsCapacity"),
+            fieldNames(classes.load("test.OrderStageBuilder$Builder")));
+        assertEquals(List.of("items", "itemsAccumulator", "itemsCapacity", "id", "tags", "tagsAccumulator", "tagsCapacity"),
+            fieldNames(classes.load("test.OrderStageBuilder$FromBuilder")));
+
+        // Verify accumulated values end up unmodifiable and from() copies on change only
+        Object stage = classes.invokeStatic("test.OrderStageBuilder", "builder");
+        stage = CompiledClassLoader.invoke(stage, "items", List.of("apple"));
+        stage = CompiledClassLoader.invoke(stage, "id", "A-1");
+        stage = CompiledClassLoader.invoke(stage, "addTags", "fresh");
+        stage = CompiledClassLoader.invoke(stage, "tagsCapacity", 8);
+        stage = CompiledClassLoader.invoke(stage, "addAllTags", List.of("ripe", "fresh"));
+        Object order = CompiledClassLoader.invoke(stage, "build");
+        assertEquals(List.of("apple"), CompiledClassLoader.invoke(order, "items"));
+        assertEquals(List.of("fresh", "ripe"), List.copyOf((Set<?>) CompiledClassLoader.invoke(order, "tags")));
+        assertThrows(UnsupportedOperationException.class, () -> ((Set<?>) CompiledClassLoader.invoke(order, "tags")).clear());
+
+        Object from = classes.invokeStatic("test.OrderStageBuilder", "from", order);
+        Object extended = CompiledClassLoader.invoke(CompiledClassLoader.invoke(from, "addItems", "pear"), "build");
+        assertEquals(List.of("apple", "pear"), CompiledClassLoader.invoke(extended, "items"));
+        assertEquals(List.of("apple"), CompiledClassLoader.invoke(order, "items"));
+    }
+
+    private static List<String> fieldNames(Class<?> type) {
+        return Arrays.stream(type.getDeclaredFields()).map(Field::getName).toList();
+    }
+}
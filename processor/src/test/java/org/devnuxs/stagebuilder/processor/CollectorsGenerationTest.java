@@ -0,0 +1,172 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the generated collectors and bulk factories.
+ */
+public class CollectorsGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testCollectorsCompile() {
+        // Test that instances can be collected from streams and created from column arrays
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Point", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.COLLECTORS)
+                    public record Point(int x, long y, String label, @StageBuilder.Default("1") int weight) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.PointLoader", """
+                    package test;
+
+                    import java.util.List;
+                    import java.util.stream.IntStream;
+                    import java.util.stream.Stream;
+
+                    public class PointLoader {
+                        public static List<Point> diagonal(int size) {
+                            return IntStream.range(0, size).parallel().boxed()
+                                .collect(PointCollectors.toList(i -> i, i -> (long) i, String::valueOf, null));
+                        }
+
+                        public static Point[] load(int[] xs, long[] ys, String[] labels) {
+                            return PointCollectors.arrayOf(xs, ys, labels, null);
+                        }
+
+                        public static Stream<Point> stream(int[] xs, long[] ys, String[] labels, int[] weights) {
+                            return PointCollectors.streamOf(xs, ys, labels, weights);
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify primitive extractors are used and absent columns fall back to the default
+        assertThat(compilation)
+            .generatedSourceFile("test.PointCollectors")
+            .contentsAsUtf8String()
+            .contains("return new Point(this.x.applyAsInt(element), this.y.applyAsLong(element), this.label.apply(element), "
+                + "this.weight != null ? this.weight.applyAsInt(element) : 1);");
+        assertThat(compilation)
+            .generatedSourceFile("test.PointCollectors")
+            .contentsAsUtf8String()
+            .contains("return new Point(xColumn[row], yColumn[row], labelColumn[row], weightColumn != null ? weightColumn[row] : 1);");
+    }
+
+    @Test
+    public void testCollectorsCreateRowsInOrder() throws Throwable {
+        // Test that the collectors and bulk factories create every row in order, sequentially and in parallel
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Point", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.COLLECTORS)
+                    public record Point(int x, long y, String label, @StageBuilder.Default("1") int weight) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.PointLoader", """
+                    package test;
+
+                    import java.util.Arrays;
+                    import java.util.List;
+                    import java.util.stream.Collectors;
+                    import java.util.stream.IntStream;
+
+                    public class PointLoader {
+                        public static List<String> collect(int size, boolean parallel, boolean weighted) {
+                            IntStream rows = IntStream.range(0, size);
+                            return (parallel ? rows.parallel() : rows).boxed()
+                                .collect(PointCollectors.toList(i -> i, i -> -(long) i, String::valueOf, weighted ? i -> i % 7 : null))
+                                .stream().map(Point::toString).collect(Collectors.toList());
+                        }
+
+                        public static List<String> collectArray(int size) {
+                            Point[] points = IntStream.range(0, size).boxed().parallel()
+                                .collect(PointCollectors.toArray(i -> i, i -> -(long) i, String::valueOf, null));
+                            return Arrays.stream(points).map(Point::toString).collect(Collectors.toList());
+                        }
+
+                        public static List<String> load(int[] xs, long[] ys, String[] labels, int[] weights) {
+                            return Arrays.stream(PointCollectors.arrayOf(xs, ys, labels, weights))
+                                .map(Point::toString).collect(Collectors.toList());
+                        }
+
+                        public static List<String> list(int[] xs, long[] ys, String[] labels) {
+                            return PointCollectors.listOf(xs, ys, labels, null)
+                                .stream().map(Point::toString).collect(Collectors.toList());
+                        }
+
+                        public static long sumX(int[] xs, long[] ys, String[] labels, boolean parallel) {
+                            var points = PointCollectors.streamOf(xs, ys, labels, null);
+                            return (parallel ? points.parallel() : points).mapToLong(Point::x).sum();
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+        int size = (int) loader.load("test.PointCollectors").getField("PARALLEL_THRESHOLD").get(null) * 2 + 3;
+        List<String> expected = new ArrayList<>();
+        List<String> weighted = new ArrayList<>();
+        int[] xs = new int[size];
+        long[] ys = new long[size];
+        String[] labels = new String[size];
+        int[] weights = new int[size];
+        for (int i = 0; i < size; i++) {
+            expected.add("Point[x=" + i + ", y=" + -i + ", label=" + i + ", weight=1]");
+            weighted.add("Point[x=" + i + ", y=" + -i + ", label=" + i + ", weight=" + i % 7 + "]");
+            xs[i] = i;
+            ys[i] = -i;
+            labels[i] = String.valueOf(i);
+            weights[i] = i % 7;
+        }
+
+        // Verify the collectors keep encounter order and apply the default when an extractor is absent
+        assertEquals(expected, loader.invokeStatic("test.PointLoader", "collect", size, false, false));
+        assertEquals(expected, loader.invokeStatic("test.PointLoader", "collect", size, true, false));
+        assertEquals(weighted, loader.invokeStatic("test.PointLoader", "collect", size, true, true));
+        assertEquals(expected, loader.invokeStatic("test.PointLoader", "collectArray", size));
+
+        // Verify the bulk factories create the same rows above and below the parallel threshold
+        assertEquals(expected, loader.invokeStatic("test.PointLoader", "load", xs, ys, labels, null));
+        assertEquals(weighted, loader.invokeStatic("test.PointLoader", "load", xs, ys, labels, weights));
+        assertEquals(expected.subList(0, 5), loader.invokeStatic("test.PointLoader", "list",
+            Arrays.copyOf(xs, 5), Arrays.copyOf(ys, 5), Arrays.copyOf(labels, 5)));
+        long sum = (long) size * (size - 1) / 2;
+        assertEquals(sum, loader.invokeStatic("test.PointLoader", "sumX", xs, ys, labels, false));
+        assertEquals(sum, loader.invokeStatic("test.PointLoader", "sumX", xs, ys, labels, true));
+
+        // Verify columns of different lengths are rejected
+        IllegalArgumentException mismatch = assertThrows(IllegalArgumentException.class,
+            () -> loader.invokeStatic("test.PointLoader", "load", xs, Arrays.copyOf(ys, size - 1), labels, null));
+        assertEquals("Column 'y' has length " + (size - 1) + ", expected " + size, mismatch.getMessage());
+    }
+}
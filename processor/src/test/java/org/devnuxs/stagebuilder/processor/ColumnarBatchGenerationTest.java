@@ -0,0 +1,149 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for the generated columnar batch.
+ */
+public class ColumnarBatchGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testColumnarBatchCompiles() {
+        // Test that rows can be appended in stage order, scanned by column and merged
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Trade", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.COLUMNS)
+                    public record Trade(String symbol, long quantity, @StageBuilder.Default("1") int venue) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.TradeAggregation", """
+                    package test;
+
+                    public class TradeAggregation {
+                        public static long total(Iterable<Trade> trades) {
+                            TradeColumns.Merger merger = new TradeColumns.Merger();
+                            TradeColumns batch = new TradeColumns();
+                            for (Trade trade : trades) {
+                                batch.append().symbol(trade.symbol()).quantity(trade.quantity()).add();
+                            }
+                            merger.add(batch);
+                            TradeColumns merged = merger.merge();
+                            long[] quantities = merged.quantityColumn();
+                            long total = 0;
+                            for (int i = 0; i < merged.size(); i++) {
+                                total += quantities[i];
+                            }
+                            return total;
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify primitive fields are stored in primitive columns
+        assertThat(compilation)
+            .generatedSourceFile("test.TradeColumns")
+            .contentsAsUtf8String()
+            .contains("private long[] quantityColumn;");
+        assertThat(compilation)
+            .generatedSourceFile("test.TradeColumns")
+            .contentsAsUtf8String()
+            .contains("return new Trade((String) symbolColumn[row], quantityColumn[row], venueColumn[row]);");
+    }
+
+    @Test
+    public void testColumnarBatchKeepsRequiredOrder() {
+        // Test that a row cannot be added before all required fields are appended
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Trade", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.COLUMNS)
+                    public record Trade(String symbol, long quantity) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.InvalidUsage", """
+                    package test;
+
+                    public class InvalidUsage {
+                        public static int append(TradeColumns batch) {
+                            return batch.append().symbol("ACME").add();
+                        }
+                    }
+                    """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("cannot find symbol");
+    }
+
+    @Test
+    public void testFieldsNamedSizeAndRow() throws Throwable {
+        // Test that fields named like the row count and the row materialiser keep their values
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Item", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.COLUMNS)
+                    public record Item(String name, int size, long row) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.ItemLoader", """
+                    package test;
+
+                    import java.util.List;
+
+                    public class ItemLoader {
+                        public static List<Item> load() {
+                            ItemColumns items = new ItemColumns(1);
+                            items.append().name("a").size(40).row(7).add();
+                            items.append().name("b").size(3).row(9).add();
+                            return items.toList();
+                        }
+
+                        public static String cells() {
+                            ItemColumns items = new ItemColumns();
+                            items.append().name("a").size(40).row(7).add();
+                            return items.size(0) + " " + items.getRow(0) + " " + items.row(0) + " " + items.size();
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+
+        // Verify each value lands in the current row rather than at the index of its value
+        assertEquals("[Item[name=a, size=40, row=7], Item[name=b, size=3, row=9]]",
+            loader.invokeStatic("test.ItemLoader", "load").toString());
+
+        // Verify the getter of the row field is prefixed to stay apart from row(int)
+        assertEquals("40 7 Item[name=a, size=40, row=7] 1", loader.invokeStatic("test.ItemLoader", "cells"));
+    }
+}
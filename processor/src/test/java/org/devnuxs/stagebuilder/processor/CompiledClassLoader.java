@@ -0,0 +1,129 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.Compilation;
+
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads the class files of a compilation, so that tests can run the generated code.
+ */
+final class CompiledClassLoader extends ClassLoader {
+
+    private static final String CLASS_OUTPUT = "CLASS_OUTPUT/";
+
+    private final Map<String, byte[]> classes = new HashMap<>();
+
+    /**
+     * Creates a class loader for the classes of a successful compilation.
+     *
+     * @param compilation the compilation
+     */
+    CompiledClassLoader(Compilation compilation) {
+        super(CompiledClassLoader.class.getClassLoader());
+        for (JavaFileObject file : compilation.generatedFiles()) {
+            if (file.getKind() != JavaFileObject.Kind.CLASS) {
+                continue;
+            }
+            String path = file.toUri().getPath();
+            String name = path.substring(path.indexOf(CLASS_OUTPUT) + CLASS_OUTPUT.length(), path.length() - ".class".length())
+                .replace('/', '.');
+            try (InputStream in = file.openInputStream()) {
+                classes.put(name, in.readAllBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = classes.get(name);
+        if (bytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Loads a compiled class.
+     *
+     * @param name the binary name of the class
+     * @return the class
+     */
+    Class<?> load(String name) {
+        try {
+            return loadClass(name);
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError("Class " + name + " was not compiled", e);
+        }
+    }
+
+    /**
+     * Invokes a static method of a compiled class.
+     *
+     * @param className the binary name of the class
+     * @param method the name of the method
+     * @param args the arguments
+     * @return the result of the method
+     * @throws Throwable the exception thrown by the method
+     */
+    Object invokeStatic(String className, String method, Object... args) throws Throwable {
+        return invoke(load(className), null, method, args);
+    }
+
+    /**
+     * Invokes an instance method on an object created by compiled code.
+     *
+     * @param target the object
+     * @param method the name of the method
+     * @param args the arguments
+     * @return the result of the method
+     * @throws Throwable the exception thrown by the method
+     */
+    static Object invoke(Object target, String method, Object... args) throws Throwable {
+        return invoke(target.getClass(), target, method, args);
+    }
+
+    private static Object invoke(Class<?> type, Object target, String name, Object[] args) throws Throwable {
+        Method method = findMethod(type, name, args);
+        method.setAccessible(true);
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name, Object[] args) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Method method : current.getDeclaredMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() == args.length
+                    && !method.isSynthetic() && accepts(method.getParameterTypes(), args)) {
+                    return method;
+                }
+            }
+        }
+        throw new AssertionError("No method " + name + " with " + args.length + " matching parameters in " + type.getName());
+    }
+
+    private static boolean accepts(Class<?>[] parameterTypes, Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            Class<?> parameter = parameterTypes[i].isPrimitive() ? boxed(parameterTypes[i]) : parameterTypes[i];
+            if (args[i] == null ? parameterTypes[i].isPrimitive() : !parameter.isInstance(args[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> boxed(Class<?> primitive) {
+        return java.lang.invoke.MethodType.methodType(primitive).wrap().returnType();
+    }
+}
@@ -0,0 +1,165 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the generated CSV row decoder.
+ */
+public class CsvDecoderGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testCsvDecoderCompiles() {
+        // Test that rows can be decoded individually and streamed in parallel
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Quote", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.CSV)
+                    public record Quote(String symbol, long volume, @StageBuilder.Default("1.0") double price,
+                                        @StageBuilder.Optional Integer venue) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.QuoteUsage", """
+                    package test;
+
+                    import java.nio.ByteBuffer;
+                    import java.nio.charset.StandardCharsets;
+
+                    public class QuoteUsage {
+                        public static Quote decode(String line) {
+                            return QuoteCsvDecoder.forHeader("volume;symbol;price", ';').decode(line);
+                        }
+
+                        public static long totalVolume(ByteBuffer file) {
+                            return QuoteCsvDecoder.stream(file, StandardCharsets.UTF_8, true)
+                                .mapToLong(Quote::volume)
+                                .sum();
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify numbers are parsed straight from the character sequence
+        assertThat(compilation)
+            .generatedSourceFile("test.QuoteCsvDecoder")
+            .contentsAsUtf8String()
+            .contains("volumeValue = Long.parseLong(line, s, e, 10);");
+        assertThat(compilation)
+            .generatedSourceFile("test.QuoteCsvDecoder")
+            .contentsAsUtf8String()
+            .contains("throw new IllegalArgumentException(\"Header has no column for required field 'symbol' of Quote\");");
+    }
+
+    @Test
+    public void testCsvDecodesQuotedCellsAndSplitsInParallel() throws Throwable {
+        // Test quoting, defaults of empty cells and that parallel streams keep every row in order
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Quote", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.CSV)
+                    public record Quote(String symbol, long volume, @StageBuilder.Default("1.0") double price,
+                                        @StageBuilder.Optional Integer venue) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.QuoteUsage", """
+                    package test;
+
+                    import java.util.List;
+                    import java.util.stream.Collectors;
+
+                    public class QuoteUsage {
+                        public static String decode(String header, String line) {
+                            return QuoteCsvDecoder.forHeader(header, ',').decode(line).toString();
+                        }
+
+                        public static List<String> load(String content, boolean parallel) {
+                            return QuoteCsvDecoder.stream(content, parallel).map(Quote::toString).collect(Collectors.toList());
+                        }
+
+                        public static boolean splits(String rows) {
+                            return QuoteCsvDecoder.forHeader("symbol,volume", ',').spliterator(rows).trySplit() != null;
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+
+        // Verify quoted cells may contain delimiters and doubled quotes, and empty cells take defaults
+        assertEquals("Quote[symbol=A,\"B\", volume=12, price=1.0, venue=null]",
+            loader.invokeStatic("test.QuoteUsage", "decode", "\"volume\",symbol,price,venue,ignored",
+                "12,\"A,\"\"B\"\"\",,,x"));
+        assertEquals("Quote[symbol=, volume=-3, price=2.5, venue=4]",
+            loader.invokeStatic("test.QuoteUsage", "decode", "symbol,volume,price,venue", "\"\",-3,2.5,4"));
+
+        // Verify malformed rows are rejected
+        IllegalArgumentException unterminated = assertThrows(IllegalArgumentException.class,
+            () -> loader.invokeStatic("test.QuoteUsage", "decode", "symbol,volume", "\"A,1"));
+        assertEquals("Unterminated quoted cell", unterminated.getMessage());
+        IllegalArgumentException number = assertThrows(IllegalArgumentException.class,
+            () -> loader.invokeStatic("test.QuoteUsage", "decode", "symbol,volume", "A,1x"));
+        assertEquals("Invalid number in column 2: 1x", number.getMessage());
+        assertThrows(IllegalArgumentException.class,
+            () -> loader.invokeStatic("test.QuoteUsage", "decode", "volume", "1"));
+
+        // Verify a parallel load splits the content and yields the same rows as a sequential one
+        StringBuilder content = new StringBuilder("symbol,volume,price\r\n");
+        for (int i = 0; i < 20_000; i++) {
+            content.append("S").append(i).append(',').append(i).append(i % 3 == 0 ? ",\r\n" : ",0.5\n");
+        }
+        List<?> sequential = (List<?>) loader.invokeStatic("test.QuoteUsage", "load", content.toString(), false);
+        List<?> parallel = (List<?>) loader.invokeStatic("test.QuoteUsage", "load", content.toString(), true);
+        assertEquals(20_000, sequential.size());
+        assertEquals("Quote[symbol=S0, volume=0, price=1.0, venue=null]", sequential.get(0));
+        assertEquals("Quote[symbol=S19999, volume=19999, price=0.5, venue=null]", sequential.get(19_999));
+        assertEquals(sequential, parallel);
+        assertEquals(true, loader.invokeStatic("test.QuoteUsage", "splits",
+            content.substring(content.indexOf("\n") + 1)));
+    }
+
+    @Test
+    public void testUnsupportedFieldFailsCompilation() {
+        // Test that fields without a cell mapping are rejected
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Basket", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+                import java.util.List;
+
+                @StageBuilder(features = StageBuilder.Feature.CSV)
+                public record Basket(String owner, List<String> items) {
+                }
+                """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'items' of type java.util.List<java.lang.String> is not supported by the CSV decoder");
+    }
+}
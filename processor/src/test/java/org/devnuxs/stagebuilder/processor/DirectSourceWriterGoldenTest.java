@@ -0,0 +1,167 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Golden tests checking that the direct source writer emits exactly what the JavaPoet path emits.
+ */
+public class DirectSourceWriterGoldenTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testRecordWithCollectionsAndDefaults() throws IOException {
+        // Test that required, optional, defaulted and collection components are written identically
+        assertSameSource("test.OrderStageBuilder", JavaFileObjects.forSourceString("test.Order", """
+            package test;
+
+            import java.util.List;
+            import java.util.Map;
+            import java.util.Set;
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder
+            public record Order(String id, int[] sizes, @StageBuilder.Optional List<String> lines,
+                                @StageBuilder.Default("5") int count, @StageBuilder.Default("line\\nbreak \\"quoted\\"") String label,
+                                @StageBuilder.Optional Map<String, List<Long>> totals, Set<Object> tags, List<? extends Number> numbers) {
+            }
+            """));
+    }
+
+    @Test
+    public void testClassWithAccessorsAndReflection() throws IOException {
+        // Test that getters, public fields, setters and reflective access are written identically
+        assertSameSource("test.PojoStageBuilder", JavaFileObjects.forSourceString("test.Pojo", """
+            package test;
+
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder
+            public class Pojo {
+                @StageBuilder.Optional private String name;
+                public int age;
+                private long id;
+                private java.util.Date created;
+
+                public String getName() { return name; }
+                public void setName(String name) { this.name = name; }
+                public void setId(long id) { this.id = id; }
+                public void setCreated(java.util.Date created) { this.created = created; }
+            }
+            """));
+    }
+
+    @Test
+    public void testStrictClass() throws IOException {
+        // Test that strict mode setters and public fields are written identically
+        assertSameSource("test.StrictPojoStageBuilder", JavaFileObjects.forSourceString("test.StrictPojo", """
+            package test;
+
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder(strict = true)
+            public class StrictPojo {
+                public int age;
+                @StageBuilder.Optional private String name;
+
+                public String getName() { return name; }
+                public void setName(String name) { this.name = name; }
+            }
+            """));
+    }
+
+    @Test
+    public void testNestedTypeWithOnlyOptionalFields() throws IOException {
+        // Test that nested annotated types and a build stage with all fields are written identically
+        assertSameSource("test.InnerStageBuilder", JavaFileObjects.forSourceString("test.Outer", """
+            package test;
+
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            public class Outer {
+                @StageBuilder
+                public record Inner(@StageBuilder.Optional String name, @StageBuilder.Default("7") long size) {
+                }
+            }
+            """));
+    }
+
+    @Test
+    public void testNameClashesAndLineWrapping() throws IOException {
+        // Test that clashing simple names are qualified and long parameter lists are wrapped like JavaPoet
+        assertSameSource("test.ClashStageBuilder",
+            JavaFileObjects.forSourceString("test.Builder", """
+                package test;
+
+                public class Builder {
+                }
+                """),
+            JavaFileObjects.forSourceString("test.other.List", """
+                package test.other;
+
+                public class List {
+                }
+                """),
+            JavaFileObjects.forSourceString("test.SomeRatherLongValueTypeNameThatForcesWrapping", """
+                package test;
+
+                public class SomeRatherLongValueTypeNameThatForcesWrapping {
+                }
+                """),
+            JavaFileObjects.forSourceString("test.Clash", """
+                package test;
+
+                import java.util.Map;
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder
+                public record Clash(Builder builder, test.other.List other, java.util.List<String> names,
+                                    @StageBuilder.Optional Map<String, Map<String, SomeRatherLongValueTypeNameThatForcesWrapping>> lookup) {
+                }
+                """));
+    }
+
+    @Test
+    public void testDefaultPackage() throws IOException {
+        // Test that a type without package is written identically
+        assertSameSource("PlainStageBuilder", JavaFileObjects.forSourceString("Plain", """
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder
+            public record Plain(String value) {
+            }
+            """));
+    }
+
+    private static void assertSameSource(String generatedName, JavaFileObject... sources) throws IOException {
+        Compilation javaPoet = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(List.of(sources));
+        Compilation direct = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .withOptions("-A" + StageBuilderProcessor.EMITTER_OPTION + "=direct")
+            .compile(List.of(sources));
+
+        // Verify both paths compile and emit byte-identical stage builders
+        assertThat(javaPoet).succeeded();
+        assertThat(direct).succeeded();
+        assertEquals(
+            javaPoet.generatedSourceFile(generatedName).orElseThrow().getCharContent(true).toString(),
+            direct.generatedSourceFile(generatedName).orElseThrow().getCharContent(true).toString());
+    }
+}
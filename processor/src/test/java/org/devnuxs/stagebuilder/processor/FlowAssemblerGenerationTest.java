@@ -0,0 +1,219 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Flow;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the generated flow assembler.
+ */
+public class FlowAssemblerGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testFlowAssemblerCompiles() {
+        // Test that one publisher per field can be zipped into a publisher of instances, free of lint warnings
+        var compilation = javac()
+            .withOptions("-Xlint:all")
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Tick", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.FLOW_ASSEMBLER)
+                    public record Tick(String symbol, long price, @StageBuilder.Optional String venue) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.TickPipeline", """
+                    package test;
+
+                    import java.util.concurrent.Flow;
+                    import java.util.concurrent.SubmissionPublisher;
+
+                    public class TickPipeline {
+                        public static Flow.Publisher<Tick> ticks(SubmissionPublisher<String> symbols,
+                                                                 SubmissionPublisher<Long> prices) {
+                            return TickFlowAssembler.of(symbols, prices, null, 64);
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify absent optional sources leave the field unset
+        assertThat(compilation)
+            .generatedSourceFile("test.TickFlowAssembler")
+            .contentsAsUtf8String()
+            .contains("String venueValue = venue != null ? venue.poll() : null;");
+
+        // Verify sources are replenished in batches
+        assertThat(compilation)
+            .generatedSourceFile("test.TickFlowAssembler")
+            .contentsAsUtf8String()
+            .contains("this.limit = Math.max(1, prefetch - (prefetch >> 2));");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testZipHonoursDemandAndCancellation() throws Throwable {
+        // Test that elements are zipped in order, only on demand, with bounded prefetch, and that cancel reaches the sources
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Tick", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.FLOW_ASSEMBLER)
+                public record Tick(String symbol, long price, @StageBuilder.Optional String venue) {
+                }
+                """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+        List<String> symbols = new ArrayList<>();
+        List<Long> prices = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            symbols.add("S" + i);
+            prices.add((long) i);
+        }
+
+        // Verify only the requested elements are emitted and sources are asked for at most the prefetch ahead
+        ListPublisher<String> symbolSource = new ListPublisher<>(symbols, true);
+        ListPublisher<Long> priceSource = new ListPublisher<>(prices, true);
+        RecordingSubscriber ticks = new RecordingSubscriber(3);
+        ((Flow.Publisher<Object>) loader.invokeStatic("test.TickFlowAssembler", "of", symbolSource, priceSource, null, 8))
+            .subscribe(ticks);
+        assertEquals(List.of("Tick[symbol=S0, price=0, venue=null]", "Tick[symbol=S1, price=1, venue=null]",
+            "Tick[symbol=S2, price=2, venue=null]"), ticks.items);
+        assertTrue(symbolSource.requested <= 3 + 8, "requested " + symbolSource.requested);
+        assertTrue(priceSource.requested <= 3 + 8, "requested " + priceSource.requested);
+        ticks.subscription.request(100);
+        assertEquals(103, ticks.items.size());
+        assertEquals("Tick[symbol=S102, price=102, venue=null]", ticks.items.get(102));
+        assertTrue(symbolSource.requested <= 103 + 8, "requested " + symbolSource.requested);
+
+        // Verify cancelling stops the stream and cancels every source
+        ticks.subscription.cancel();
+        ticks.subscription.request(10);
+        assertEquals(103, ticks.items.size());
+        assertTrue(symbolSource.cancelled);
+        assertTrue(priceSource.cancelled);
+        assertFalse(ticks.completed);
+
+        // Verify the stream completes when the shortest source is exhausted and cancels the others
+        ListPublisher<String> shortSource = new ListPublisher<>(List.of("A", "B"), true);
+        ListPublisher<Long> endlessSource = new ListPublisher<>(prices, false);
+        ListPublisher<String> venueSource = new ListPublisher<>(List.of("X", "Y", "Z"), false);
+        RecordingSubscriber completing = new RecordingSubscriber(Long.MAX_VALUE);
+        ((Flow.Publisher<Object>) loader.invokeStatic("test.TickFlowAssembler", "of", shortSource, endlessSource, venueSource))
+            .subscribe(completing);
+        assertEquals(List.of("Tick[symbol=A, price=0, venue=X]", "Tick[symbol=B, price=1, venue=Y]"), completing.items);
+        assertTrue(completing.completed);
+        assertTrue(endlessSource.cancelled);
+        assertTrue(venueSource.cancelled);
+    }
+
+    /**
+     * Synchronous publisher of a list, recording the demand it receives and whether it was cancelled.
+     */
+    private static final class ListPublisher<T> implements Flow.Publisher<T> {
+
+        private final List<T> items;
+        private final boolean complete;
+        private long requested;
+        private boolean cancelled;
+
+        ListPublisher(List<T> items, boolean complete) {
+            this.items = items;
+            this.complete = complete;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super T> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private int index;
+                private long pending;
+                private boolean emitting;
+
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    pending += n;
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (!cancelled && pending > 0 && index < items.size()) {
+                        pending--;
+                        subscriber.onNext(items.get(index++));
+                    }
+                    emitting = false;
+                    if (!cancelled && complete && index == items.size()) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Subscriber recording the rendered elements it receives.
+     */
+    private static final class RecordingSubscriber implements Flow.Subscriber<Object> {
+
+        private final List<String> items = new ArrayList<>();
+        private final long initialRequest;
+        private Flow.Subscription subscription;
+        private boolean completed;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(Object item) {
+            items.add(item.toString());
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            throw new AssertionError(failure);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
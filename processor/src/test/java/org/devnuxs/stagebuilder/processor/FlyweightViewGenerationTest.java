@@ -0,0 +1,218 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for the generated flyweight view and record writer.
+ */
+public class FlyweightViewGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testFlyweightViewAndWriterCompile() {
+        // Test that records can be appended through the staged writer and scanned through the view
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Tick", """
+                    package test;
+                    
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+                    
+                    @StageBuilder(features = StageBuilder.Feature.FLYWEIGHT_VIEW)
+                    public record Tick(long timestamp, int price, @StageBuilder.Default("1") short venue,
+                                       @StageBuilder.Optional boolean flagged) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.TickUsage", """
+                    package test;
+                    
+                    import java.nio.ByteBuffer;
+                    
+                    public class TickUsage {
+                        public static long sumPrices() {
+                            ByteBuffer buffer = ByteBuffer.allocateDirect(TickView.SIZE * 2);
+                            TickView.Writer writer = new TickView.Writer(buffer);
+                            writer.append().timestamp(1L).price(10).commit();
+                            writer.append().timestamp(2L).price(20).venue((short) 3).flagged(true).commit();
+                            buffer.flip();
+                            
+                            long sum = 0;
+                            TickView view = new TickView();
+                            for (int i = 0; i < TickView.recordCount(buffer); i++) {
+                                sum += view.wrapRecord(buffer, i).price();
+                            }
+                            Tick first = view.wrapRecord(buffer, 0).materialize();
+                            return sum + first.venue();
+                        }
+                    }
+                    """));
+        
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+        
+        // Verify the fixed layout offsets follow declaration order
+        assertThat(compilation)
+            .generatedSourceFile("test.TickView")
+            .contentsAsUtf8String()
+            .contains("public static final int SIZE = 15;");
+    }
+
+    @Test
+    public void testViewReadsWrittenRecords() throws Throwable {
+        // Test that records appended by the writer read back through the view with their defaults
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Tick", """
+                    package test;
+                    
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+                    
+                    @StageBuilder(features = StageBuilder.Feature.FLYWEIGHT_VIEW)
+                    public record Tick(long timestamp, int price, @StageBuilder.Default("1") short venue,
+                                       @StageBuilder.Optional boolean flagged) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.TickUsage", """
+                    package test;
+                    
+                    import java.nio.ByteBuffer;
+                    import java.util.ArrayList;
+                    import java.util.List;
+                    
+                    public class TickUsage {
+                        public static List<Object> roundTrip() {
+                            ByteBuffer buffer = ByteBuffer.allocateDirect(TickView.SIZE * 3);
+                            TickView.Writer writer = new TickView.Writer(buffer);
+                            writer.append().timestamp(1L).price(10).commit();
+                            writer.append().timestamp(2L).price(-20).venue((short) 3).flagged(true).commit();
+                            writer.write(new Tick(Long.MAX_VALUE, Integer.MIN_VALUE, (short) -1, false));
+                            buffer.flip();
+                            
+                            List<Object> result = new ArrayList<>();
+                            result.add(TickView.recordCount(buffer));
+                            TickView view = new TickView();
+                            for (int i = 0; i < TickView.recordCount(buffer); i++) {
+                                result.add(view.wrapRecord(buffer, i).materialize());
+                                result.add(view.recordOffset());
+                            }
+                            result.add(view.wrapRecord(buffer, 1) == view);
+                            result.add(view.price());
+                            return result;
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+        
+        var loader = new CompiledClassLoader(compilation);
+        List<?> result = (List<?>) loader.invokeStatic("test.TickUsage", "roundTrip");
+        
+        // Verify every record is materialized with its written or default values
+        assertEquals(3, result.get(0));
+        assertEquals("Tick[timestamp=1, price=10, venue=1, flagged=false]", result.get(1).toString());
+        assertEquals(0, result.get(2));
+        assertEquals("Tick[timestamp=2, price=-20, venue=3, flagged=true]", result.get(3).toString());
+        assertEquals(15, result.get(4));
+        assertEquals("Tick[timestamp=9223372036854775807, price=-2147483648, venue=-1, flagged=false]", result.get(5).toString());
+        assertEquals(30, result.get(6));
+        
+        // Verify the view is reused and decodes the record it points at
+        assertEquals(true, result.get(7));
+        assertEquals(-20, result.get(8));
+    }
+
+    @Test
+    public void testWriterEnforcesRequiredFieldOrder() {
+        // Test that committing a record before all required fields are written fails compilation
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Tick", """
+                    package test;
+                    
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+                    
+                    @StageBuilder(features = StageBuilder.Feature.FLYWEIGHT_VIEW)
+                    public record Tick(long timestamp, int price) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.InvalidUsage", """
+                    package test;
+                    
+                    import java.nio.ByteBuffer;
+                    
+                    public class InvalidUsage {
+                        public static int write(ByteBuffer buffer) {
+                            return new TickView.Writer(buffer).append().timestamp(1L).commit();
+                        }
+                    }
+                    """));
+        
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("cannot find symbol");
+    }
+
+    @Test
+    public void testVariableSizeFieldFailsCompilation() {
+        // Test that fields without a fixed size are rejected
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Named", """
+                package test;
+                
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+                
+                @StageBuilder(features = StageBuilder.Feature.FLYWEIGHT_VIEW)
+                public record Named(long id, String name) {
+                }
+                """));
+        
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'name' of type java.lang.String has no fixed size");
+    }
+
+    @Test
+    public void testPrivateFieldWithoutGetterFailsCompilation() {
+        // Test that the writer never reads a field through reflection
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Sample", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.FLYWEIGHT_VIEW)
+                public class Sample {
+                    private final long timestamp;
+                    private final double value;
+
+                    public Sample(long timestamp, double value) {
+                        this.timestamp = timestamp;
+                        this.value = value;
+                    }
+
+                    public long getTimestamp() {
+                        return timestamp;
+                    }
+                }
+                """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'value' of Sample can only be read through reflection, "
+            + "which the flyweight writer does not use; add a public getter getValue() or make the field public");
+    }
+}
@@ -0,0 +1,201 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the bytecode size of generated builders against HotSpot's inlining and compilation limits,
+ * and the budget warnings of the processor.
+ */
+public class GeneratedBytecodeBudgetTest {
+
+    // HotSpot defaults: MaxInlineSize, FreqInlineSize and the class file limit
+    private static final int MAX_INLINE_SIZE = 35;
+    private static final int FREQ_INLINE_SIZE = 325;
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private static final Pattern ESTIMATE = Pattern.compile("Generated \\w+\\.(\\w+)\\(\\) has an estimated (\\d+) bytes");
+
+    private static final JavaFileObject ORDER = JavaFileObjects.forSourceString("test.Order", """
+        package test;
+
+        import java.util.List;
+        import java.util.Map;
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+
+        @StageBuilder
+        public record Order(String id, long customer, int quantity, double price,
+                            @StageBuilder.Optional List<String> lines, @StageBuilder.Default("1") int priority,
+                            @StageBuilder.Optional Map<String, Long> totals) {
+        }
+        """);
+
+    private static final JavaFileObject POJO = JavaFileObjects.forSourceString("test.Pojo", """
+        package test;
+
+        import java.util.Set;
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+
+        @StageBuilder
+        public class Pojo {
+            private String name;
+            private int age;
+            private long id;
+            public double score;
+            @StageBuilder.Optional private Set<String> tags;
+
+            public String getName() { return name; }
+            public void setName(String name) { this.name = name; }
+            public Set<String> getTags() { return tags; }
+        }
+        """);
+
+    private static final JavaFileObject STRICT = JavaFileObjects.forSourceString("test.StrictPojo", """
+        package test;
+
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+
+        @StageBuilder(strict = true)
+        public class StrictPojo {
+            public String name;
+            private int age;
+
+            public int getAge() { return age; }
+            public void setAge(int age) { this.age = age; }
+        }
+        """);
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testBuilderMethodsStayWithinInlineLimits() {
+        // Test that stage methods are trivially inlined and build()/from() of ordinary types are hot-inlineable
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(ORDER);
+        assertThat(compilation).succeededWithoutWarnings();
+
+        Map<String, ClassFileInspector.ClassInfo> classes = ClassFileInspector.inspect(compilation, "test/OrderStageBuilder");
+
+        // Verify the class count: builder, Builder, FromBuilder, FromStage, BuildStage and 4 required stages
+        assertEquals(9, classes.size(), classes.keySet().toString());
+
+        for (ClassFileInspector.ClassInfo info : classes.values()) {
+            // Verify no class comes close to the constant pool limit
+            assertTrue(info.constantPoolCount() < 1024, info.name() + " has " + info.constantPoolCount() + " constants");
+            for (ClassFileInspector.MethodInfo method : info.methods()) {
+                assertTrue(method.codeLength() < MAX_CODE_LENGTH, info.name() + "." + method.name());
+                // Verify every public stage method stays below MaxInlineSize
+                if (method.isPublic() && !method.name().equals("build") && !method.name().equals("from")) {
+                    assertTrue(method.codeLength() <= MAX_INLINE_SIZE,
+                        info.name() + "." + method.name() + " has " + method.codeLength() + " bytes");
+                }
+            }
+        }
+
+        // Verify build() and from() stay below FreqInlineSize
+        assertTrue(classes.get("test/OrderStageBuilder$Builder").codeLength("build") <= FREQ_INLINE_SIZE);
+        assertTrue(classes.get("test/OrderStageBuilder$FromBuilder").codeLength("build") <= FREQ_INLINE_SIZE);
+        assertTrue(classes.get("test/OrderStageBuilder").codeLength("from") <= FREQ_INLINE_SIZE);
+    }
+
+    @Test
+    public void testEstimatesBoundActualSizes() {
+        // Test that the processor estimates are tight upper bounds of the real code length
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .withOptions("-A" + StageBuilderProcessor.METHOD_BYTES_OPTION + "=1")
+            .compile(ORDER, POJO, STRICT);
+        assertThat(compilation).succeeded();
+
+        int checked = 0;
+        for (Diagnostic<? extends JavaFileObject> warning : compilation.warnings()) {
+            Matcher matcher = ESTIMATE.matcher(warning.getMessage(Locale.ENGLISH));
+            if (!matcher.find()) {
+                continue;
+            }
+            String builder = "test/" + warning.getSource().getName().replaceAll(".*/(\\w+)\\.java$", "$1") + "StageBuilder";
+            Map<String, ClassFileInspector.ClassInfo> classes = ClassFileInspector.inspect(compilation, builder);
+            int actual = matcher.group(1).equals("build")
+                ? classes.get(builder + "$Builder").codeLength("build")
+                : classes.get(builder).codeLength("from");
+            int estimate = Integer.parseInt(matcher.group(2));
+
+            // Verify the estimate never underestimates and is off by at most 3 bytes per constant
+            assertTrue(actual <= estimate, builder + "." + matcher.group(1) + ": " + actual + " > " + estimate);
+            assertTrue(estimate <= actual + actual / 10 + 4, builder + "." + matcher.group(1) + ": " + estimate + " vs " + actual);
+            checked++;
+        }
+        assertEquals(6, checked);
+    }
+
+    @Test
+    public void testHugeBuildMethodWarns() {
+        // Test that a build() above HotSpot's HugeMethodLimit is reported with the default budget
+        StringBuilder source = new StringBuilder("""
+            package test;
+
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder
+            public class Huge {
+            """);
+        for (int i = 0; i < 120; i++) {
+            source.append("    @StageBuilder.Optional private int field").append(i).append(";\n")
+                .append("    public int getField").append(i).append("() { return field").append(i).append("; }\n");
+        }
+        source.append("}\n");
+
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Huge", source.toString()));
+
+        // Verify the warning names the method and the limit
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadWarningContaining("Generated HugeStageBuilder.build() has an estimated");
+        assertThat(compilation).hadWarningContaining("HotSpot does not JIT-compile methods above 8000 bytes");
+
+        // Verify the warning is justified by the class file
+        Map<String, ClassFileInspector.ClassInfo> classes = ClassFileInspector.inspect(compilation, "test/HugeStageBuilder");
+        assertTrue(classes.get("test/HugeStageBuilder$Builder").codeLength("build") > 8000);
+        assertTrue(classes.get("test/HugeStageBuilder").codeLength("from") < 8000);
+    }
+
+    @Test
+    public void testClassBudgetWarns() {
+        // Test that the configurable class budget counts stage interfaces and companions
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .withOptions("-A" + StageBuilderProcessor.CLASSES_OPTION + "=8")
+            .compile(JavaFileObjects.forSourceString("test.Trade", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.JSON)
+                public record Trade(String symbol, long quantity, int venue, @StageBuilder.Optional String note) {
+                }
+                """));
+
+        // Verify the warning reports the lower bound of generated classes
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadWarningContaining("Generated code of Trade has at least 9 classes, above the budget of 8");
+    }
+}
@@ -0,0 +1,175 @@
+package org.devnuxs.stagebuilder.processor;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that the processor behaves as an isolating processor for incremental builds.
+ */
+public class IncrementalProcessingTest {
+
+    private static final String ORDER = """
+        package test;
+
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+
+        @StageBuilder(features = StageBuilder.Feature.JSON)
+        public record Order(String id, long amount) {
+        }
+        """;
+
+    private static final String CUSTOMER = """
+        package test;
+
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+
+        @StageBuilder
+        public record Customer(String name, Order lastOrder) {
+        }
+        """;
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testProcessorIsRegisteredAsIsolating() throws IOException {
+        // Test that Gradle finds the processor in its incremental processor registry
+        try (InputStream registry = StageBuilderProcessor.class.getResourceAsStream("/META-INF/gradle/incremental.annotation.processors")) {
+            assertNotNull(registry);
+            String content = new String(registry.readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals("org.devnuxs.stagebuilder.processor.StageBuilderProcessor,isolating", content.trim());
+        }
+    }
+
+    @Test
+    public void testEachGeneratedFileHasItsAnnotatedTypeAsOnlyOrigin(@TempDir Path output) {
+        // Test that builders and companions are attributed to exactly the type they were generated for
+        Map<String, List<String>> origins = compile(output, "", List.of(), source("Order", ORDER), source("Customer", CUSTOMER));
+
+        // Verify the originating source of every generated file
+        assertEquals(Map.of(
+            "test.CustomerStageBuilder", List.of("Customer.java"),
+            "test.OrderJson", List.of("Order.java"),
+            "test.OrderStageBuilder", List.of("Order.java")), origins);
+    }
+
+    @Test
+    public void testOnlyTouchedTypeIsRegenerated(@TempDir Path output) {
+        // Test that recompiling one changed type against the previous output regenerates only its files
+        compile(output, "", List.of(), source("Order", ORDER), source("Customer", CUSTOMER));
+        String changedOrder = ORDER.replace("long amount", "long amount, String currency");
+        Map<String, List<String>> origins = compile(output, output.toString(), List.of(), source("Order", changedOrder));
+
+        // Verify the untouched type is neither regenerated nor needed as a source
+        assertEquals(Map.of(
+            "test.OrderJson", List.of("Order.java"),
+            "test.OrderStageBuilder", List.of("Order.java")), origins);
+    }
+
+    @Test
+    public void testStatsReportsStayIsolating(@TempDir Path output) {
+        // Test that each statistics report originates from its type, so recompiling one type only rewrites its report
+        List<String> options = List.of("-A" + StageBuilderProcessor.STATS_OPTION);
+        Map<String, List<String>> origins = compile(output, "", options, source("Order", ORDER), source("Customer", CUSTOMER));
+
+        // Verify every report has its annotated type as only origin
+        assertEquals(List.of("Order.java"), origins.get(StageBuilderProcessor.STATS_DIRECTORY + "test.Order.json"));
+        assertEquals(List.of("Customer.java"), origins.get(StageBuilderProcessor.STATS_DIRECTORY + "test.Customer.json"));
+
+        // Verify an incremental run writes the report of the changed type only
+        String changedOrder = ORDER.replace("long amount", "long amount, String currency");
+        origins = compile(output, output.toString(), options, source("Order", changedOrder));
+        assertEquals(Map.of(
+            StageBuilderProcessor.STATS_DIRECTORY + "test.Order.json", List.of("Order.java"),
+            "test.OrderJson", List.of("Order.java"),
+            "test.OrderStageBuilder", List.of("Order.java")), origins);
+    }
+
+    private static JavaFileObject source(String name, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///test/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * Compiles the sources into the output directory and records the originating files of each generated source
+     * and resource.
+     */
+    private static Map<String, List<String>> compile(Path output, String extraClasspath, List<String> options,
+                                                     JavaFileObject... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, Locale.ENGLISH, StandardCharsets.UTF_8);
+        Map<String, List<String>> origins = new TreeMap<>();
+        var fileManager = new ForwardingJavaFileManager<>(standardFileManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutputForOriginatingFiles(Location location, String className, JavaFileObject.Kind kind,
+                                                                          FileObject... originatingFiles) throws IOException {
+                if (kind == JavaFileObject.Kind.SOURCE) {
+                    origins.put(className, getNames(originatingFiles));
+                }
+                return super.getJavaFileForOutputForOriginatingFiles(location, className, kind, originatingFiles);
+            }
+
+            @Override
+            public FileObject getFileForOutputForOriginatingFiles(Location location, String packageName, String relativeName,
+                                                                  FileObject... originatingFiles) throws IOException {
+                origins.put(relativeName, getNames(originatingFiles));
+                return super.getFileForOutputForOriginatingFiles(location, packageName, relativeName, originatingFiles);
+            }
+        };
+        try (fileManager) {
+            // Generated sources go to a fresh directory so they never end up on the class path
+            standardFileManager.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, List.of(output));
+            standardFileManager.setLocationFromPaths(StandardLocation.SOURCE_OUTPUT, List.of(Files.createTempDirectory(output.getParent(), "generated")));
+            String classpath = System.getProperty("java.class.path")
+                + (extraClasspath.isEmpty() ? "" : System.getProperty("path.separator") + extraClasspath);
+            List<String> arguments = new ArrayList<>(List.of("-classpath", classpath, "-proc:full"));
+            arguments.addAll(options);
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, arguments, null, List.of(sources));
+            task.setProcessors(List.of(new StageBuilderProcessor()));
+            assertTrue(task.call());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return origins;
+    }
+
+    private static List<String> getNames(FileObject... files) {
+        List<String> names = new ArrayList<>();
+        for (FileObject file : files) {
+            String path = file.toUri().getPath();
+            names.add(path.substring(path.lastIndexOf('/') + 1));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,239 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the generated JSON reader and writer.
+ */
+public class JsonCodecGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testJsonRoundTripCompiles() {
+        // Test that the generated JSON class can write to any Appendable and read back
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Order", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.JSON)
+                    public record Order(String id, long quantity, double price, Side side,
+                                        @StageBuilder.Default("true") boolean active,
+                                        @StageBuilder.Optional Integer priority) {
+                        public enum Side { BUY, SELL }
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.OrderUsage", """
+                    package test;
+
+                    import java.io.IOException;
+                    import java.io.StringWriter;
+
+                    public class OrderUsage {
+                        public static Order roundTrip(Order order) throws IOException {
+                            StringWriter writer = new StringWriter();
+                            OrderJson.write(order, writer);
+                            return OrderJson.read(writer.toString());
+                        }
+
+                        public static String toJson(Order order) {
+                            return OrderJson.toJson(order);
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify keys are matched by precomputed hash and built through the stages
+        assertThat(compilation)
+            .generatedSourceFile("test.OrderJson")
+            .contentsAsUtf8String()
+            .contains("case " + "quantity".hashCode() + ":");
+        assertThat(compilation)
+            .generatedSourceFile("test.OrderJson")
+            .contentsAsUtf8String()
+            .contains("throw new IllegalArgumentException(\"Missing required field 'id' for Order\");");
+    }
+
+    @Test
+    public void testJsonEscapesAndRangesAtRuntime() throws Throwable {
+        // Test that strings survive escaping, defaults apply and out-of-range numbers are rejected
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Order", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.JSON)
+                    public record Order(String id, long quantity, double price, Side side,
+                                        @StageBuilder.Default("true") boolean active,
+                                        @StageBuilder.Optional Integer priority) {
+                        public enum Side { BUY, SELL }
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.OrderUsage", """
+                    package test;
+
+                    public class OrderUsage {
+                        public static Order order(String id, double price) {
+                            return new Order(id, Long.MIN_VALUE, price, Order.Side.SELL, false, 7);
+                        }
+
+                        public static String toJson(Order order) {
+                            return OrderJson.toJson(order);
+                        }
+
+                        public static Order read(String json) {
+                            return OrderJson.read(json);
+                        }
+                    }
+                    """));
+        assertThat(compilation).succeededWithoutWarnings();
+
+        var loader = new CompiledClassLoader(compilation);
+
+        // Verify quotes, backslashes and control characters are escaped and read back
+        String id = "q\"b\\s\nn\t\u0001\u00e9/";
+        Object order = loader.invokeStatic("test.OrderUsage", "order", id, 0.5);
+        String json = (String) loader.invokeStatic("test.OrderUsage", "toJson", order);
+        assertTrue(json.contains("\"id\":\"q\\\"b\\\\s\\nn\\t\\u0001\u00e9/\""), json);
+        assertEquals(order, loader.invokeStatic("test.OrderUsage", "read", json));
+
+        // Verify escapes in values and keys, skipped unknown keys and defaults of absent keys
+        Object parsed = loader.invokeStatic("test.OrderUsage", "read", """
+            { "extra": {"nested": [1, "x", null, true]}, "\\u0069d": "a\\u0041\\/", "quantity": 9223372036854775807,
+              "price": 1e3, "side": "BUY" }
+            """);
+        assertEquals("Order[id=aA/, quantity=9223372036854775807, price=1000.0, side=BUY, active=true, priority=null]",
+            parsed.toString());
+
+        // Verify numbers outside the range of their field are rejected instead of wrapping
+        IllegalArgumentException intOverflow = assertThrows(IllegalArgumentException.class,
+            () -> loader.invokeStatic("test.OrderUsage", "read",
+                "{\"id\":\"a\",\"quantity\":1,\"price\":1,\"side\":\"BUY\",\"priority\":2147483648}"));
+        assertTrue(intOverflow.getMessage().startsWith("Integer out of range"), intOverflow.getMessage());
+        IllegalArgumentException longOverflow = assertThrows(IllegalArgumentException.class,
+            () -> loader.invokeStatic("test.OrderUsage", "read",
+                "{\"id\":\"a\",\"quantity\":9223372036854775808,\"price\":1,\"side\":\"BUY\"}"));
+        assertTrue(longOverflow.getMessage().startsWith("Invalid integer"), longOverflow.getMessage());
+
+        // Verify missing required fields and values JSON cannot represent are rejected
+        IllegalArgumentException missing = assertThrows(IllegalArgumentException.class,
+            () -> loader.invokeStatic("test.OrderUsage", "read", "{\"quantity\":1,\"price\":1,\"side\":\"BUY\"}"));
+        assertEquals("Missing required field 'id' for Order", missing.getMessage());
+        Object nan = loader.invokeStatic("test.OrderUsage", "order", "a", Double.NaN);
+        assertThrows(IllegalArgumentException.class, () -> loader.invokeStatic("test.OrderUsage", "toJson", nan));
+    }
+
+    @Test
+    public void testJsonReadsPrivateFieldsThroughGetters() {
+        // Test that private fields are written through their public getters
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Account", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.JSON)
+                public class Account {
+                    private final String owner;
+                    private final long balance;
+
+                    public Account(String owner, long balance) {
+                        this.owner = owner;
+                        this.balance = balance;
+                    }
+
+                    public String getOwner() {
+                        return owner;
+                    }
+
+                    public long getBalance() {
+                        return balance;
+                    }
+                }
+                """));
+
+        assertThat(compilation).succeededWithoutWarnings();
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountJson")
+            .contentsAsUtf8String()
+            .contains("long balanceValue = obj.getBalance();");
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountJson")
+            .contentsAsUtf8String()
+            .doesNotContain("getFieldValue");
+    }
+
+    @Test
+    public void testPrivateFieldWithoutGetterFailsCompilation() {
+        // Test that the writer never reads a field through reflection
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Account", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.JSON)
+                public class Account {
+                    private final String owner;
+                    private final long balance;
+
+                    public Account(String owner, long balance) {
+                        this.owner = owner;
+                        this.balance = balance;
+                    }
+
+                    public String getOwner() {
+                        return owner;
+                    }
+                }
+                """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'balance' of Account can only be read through reflection, "
+            + "which the JSON codec does not use; add a public getter getBalance() or make the field public");
+    }
+
+    @Test
+    public void testUnsupportedFieldFailsCompilation() {
+        // Test that fields without a JSON mapping are rejected
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Basket", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+                import java.util.List;
+
+                @StageBuilder(features = StageBuilder.Feature.JSON)
+                public record Basket(String owner, List<String> items) {
+                }
+                """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'items' of type java.util.List<java.lang.String> is not supported by the JSON codec");
+    }
+}
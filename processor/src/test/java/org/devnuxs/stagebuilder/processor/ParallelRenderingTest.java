@@ -0,0 +1,93 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+/**
+ * Tests that the sources of many types analysed in one round are rendered and written correctly.
+ */
+public class ParallelRenderingTest {
+
+    private static final int TYPES = 64;
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testManyTypesInOneRound() {
+        // Test that every type gets its own builder and companions when rendering runs in parallel
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (int i = 0; i < TYPES; i++) {
+            sources.add(JavaFileObjects.forSourceString("test.Type" + i, """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.JSON)
+                public record Type%d(String name, int value%d, @StageBuilder.Optional String note) {
+                }
+                """.formatted(i, i)));
+        }
+
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(sources);
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify each rendered file belongs to its own type
+        for (int i = 0; i < TYPES; i++) {
+            assertThat(compilation)
+                .generatedSourceFile("test.Type" + i + "StageBuilder")
+                .contentsAsUtf8String()
+                .contains("public BuildStage value" + i + "(int value" + i + ")");
+            assertThat(compilation)
+                .generatedSourceFile("test.Type" + i + "Json")
+                .contentsAsUtf8String()
+                .contains("public final class Type" + i + "Json");
+        }
+    }
+
+    @Test
+    public void testUnsupportedTypeDoesNotStopOthers() {
+        // Test that an analysis error of one type is reported while the other types are still written
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Valid", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder
+                    public record Valid(String name) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.Invalid", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.JSON)
+                    public record Invalid(Object payload) {
+                    }
+                    """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("is not supported by the JSON codec");
+        assertThat(compilation).hadErrorCount(1);
+    }
+}
@@ -0,0 +1,180 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the processing statistics enabled with {@code -Astagebuilder.stats}.
+ */
+public class ProcessingStatsTest {
+
+    private static final JavaFileObject ORDER = JavaFileObjects.forSourceString("test.Order", """
+        package test;
+
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+
+        @StageBuilder(features = StageBuilder.Feature.JSON)
+        public record Order(String id, int quantity) {
+        }
+        """);
+
+    private static final JavaFileObject ACCOUNT = JavaFileObjects.forSourceString("test.Account", """
+        package test;
+
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+
+        @StageBuilder
+        public class Account {
+            public String owner;
+            private long balance;
+
+            public void setBalance(long balance) { this.balance = balance; }
+        }
+        """);
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testSummaryNoteAndReport() {
+        // Test that every type and its access strategies end up in the note and the report
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .withOptions("-A" + StageBuilderProcessor.STATS_OPTION)
+            .compile(ORDER, ACCOUNT);
+
+        // Verify compilation succeeds with a summary note
+        assertThat(compilation).succeededWithoutWarnings();
+        assertThat(compilation).hadNoteContaining("StageBuilder stats: 2 types, 3 files");
+        assertThat(compilation).hadNoteContaining("1 types created reflectively, 1 fields read reflectively");
+
+        // Verify the report lists the measured types with their access strategies
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Order.json")
+            .contentsAsUtf8String()
+            .contains("\"type\": \"test.Order\",\n  \"fields\": 2,");
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Account.json")
+            .contentsAsUtf8String()
+            .contains("\"construction\": \"reflection\"");
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Order.json")
+            .contentsAsUtf8String()
+            .contains("{\"field\": \"id\", \"read\": \"direct\", \"write\": \"constructor\"}");
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Account.json")
+            .contentsAsUtf8String()
+            .contains("{\"field\": \"owner\", \"read\": \"direct\", \"write\": \"reflection\"}");
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Account.json")
+            .contentsAsUtf8String()
+            .contains("{\"field\": \"balance\", \"read\": \"reflection\", \"write\": \"reflection\"}");
+    }
+
+    @Test
+    public void testStrictWritesAreReportedDirect() {
+        // Test that the report matches the setter and field writes of strict builders
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .withOptions("-A" + StageBuilderProcessor.STATS_OPTION)
+            .compile(JavaFileObjects.forSourceString("test.Person", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(strict = true)
+                public class Person {
+                    private String name;
+                    public int age;
+
+                    public String getName() { return name; }
+
+                    public void setName(String name) { this.name = name; }
+                }
+                """));
+
+        // Verify the builder writes directly and the report says so
+        assertThat(compilation).succeededWithoutWarnings();
+        assertThat(compilation)
+            .generatedSourceFile("test.PersonStageBuilder")
+            .contentsAsUtf8String()
+            .contains("obj.setName(this.name);");
+        assertThat(compilation).hadNoteContaining("0 types created reflectively, 0 fields read reflectively");
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Person.json")
+            .contentsAsUtf8String()
+            .contains("\"construction\": \"direct\"");
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Person.json")
+            .contentsAsUtf8String()
+            .contains("{\"field\": \"name\", \"read\": \"direct\", \"write\": \"direct\"}");
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Person.json")
+            .contentsAsUtf8String()
+            .contains("{\"field\": \"age\", \"read\": \"direct\", \"write\": \"direct\"}");
+    }
+
+    @Test
+    public void testBytesWrittenWithDirectEmitter() {
+        // Test that streamed files are measured like rendered ones, with their streaming counted as generation
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .withOptions("-A" + StageBuilderProcessor.STATS_OPTION,
+                "-A" + StageBuilderProcessor.EMITTER_OPTION + "=direct")
+            .compile(ORDER);
+
+        // Verify the reported size matches the generated files
+        assertThat(compilation).succeededWithoutWarnings();
+        long size = compilation.generatedSourceFiles().stream()
+            .mapToLong(file -> {
+                try {
+                    return file.getCharContent(true).toString().getBytes(StandardCharsets.UTF_8).length;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })
+            .sum();
+        assertThat(compilation).hadNoteContaining("1 types, 2 files, " + size + " bytes");
+
+        // Verify generation and writing are both timed although nothing is rendered up front
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Order.json")
+            .contentsAsUtf8String()
+            .doesNotContain("\"generationNanos\": 0,");
+        assertThat(compilation)
+            .generatedFile(StandardLocation.CLASS_OUTPUT, "", StageBuilderProcessor.STATS_DIRECTORY + "test.Order.json")
+            .contentsAsUtf8String()
+            .doesNotContain("\"writeNanos\": 0,");
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        // Test that no statistics are collected without the option
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(ORDER);
+
+        // Verify there is neither a note nor a report
+        assertThat(compilation).succeededWithoutWarnings();
+        assertTrue(compilation.notes().stream()
+            .noneMatch(note -> note.getMessage(Locale.ENGLISH).startsWith("StageBuilder stats")));
+        assertFalse(compilation.generatedFiles().stream()
+            .anyMatch(file -> file.getName().contains(StageBuilderProcessor.STATS_DIRECTORY)));
+    }
+}
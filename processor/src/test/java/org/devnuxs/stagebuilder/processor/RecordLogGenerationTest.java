@@ -0,0 +1,182 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the generated record log.
+ */
+public class RecordLogGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testRecordLogCompiles() {
+        // Test that records can be appended and replayed sequentially or in parallel
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Event", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.RECORD_LOG)
+                    public record Event(long sequence, String payload, @StageBuilder.Default("0") int priority) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.EventStore", """
+                    package test;
+
+                    import java.io.IOException;
+                    import java.nio.file.Path;
+                    import java.util.List;
+                    import java.util.concurrent.atomic.LongAdder;
+
+                    public class EventStore {
+                        public static void persist(Path directory, List<Event> events) throws IOException {
+                            try (EventRecordLog log = EventRecordLog.open(directory, 1 << 12, 1L << 20, 100)) {
+                                for (Event event : events) {
+                                    log.append(event);
+                                }
+                            }
+                        }
+
+                        public static long count(Path directory) throws IOException {
+                            LongAdder count = new LongAdder();
+                            EventRecordLog.replayParallel(directory, event -> count.increment());
+                            return count.sum() + EventRecordLog.readAll(directory).size();
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify the binary codec encoding the records is generated as well
+        assertThat(compilation).generatedSourceFile("test.EventBinaryCodec");
+
+        // Verify the segment header carries the field schema
+        assertThat(compilation)
+            .generatedSourceFile("test.EventRecordLog")
+            .contentsAsUtf8String()
+            .contains("private static final String[] FIELD_SCHEMA = {\"sequence:long\", \"payload:java.lang.String\", \"priority:int\"};");
+    }
+
+    @Test
+    public void testReopenAppendsAndReplaysInOrder(@TempDir Path directory) throws Throwable {
+        // Test that a reopened log appends a new segment, replays in write order and reads older schemas
+        String store = """
+            package test;
+
+            import java.io.IOException;
+            import java.nio.file.Path;
+            import java.util.ArrayList;
+            import java.util.List;
+            import java.util.concurrent.atomic.LongAdder;
+
+            public class EventStore {
+                public static void persist(Path directory, long from, long to) throws IOException {
+                    try (EventRecordLog log = EventRecordLog.open(directory, 1 << 12, 256, 2)) {
+                        for (long sequence = from; sequence < to; sequence++) {
+                            log.append(EventStageBuilder.builder().sequence(sequence).payload("e" + sequence).build());
+                        }
+                    }
+                }
+
+                public static List<String> replay(Path directory) throws IOException {
+                    List<String> events = new ArrayList<>();
+                    EventRecordLog.replay(directory, event -> events.add(event.toString()));
+                    return events;
+                }
+
+                public static List<String> readAll(Path directory) throws IOException {
+                    List<String> events = new ArrayList<>();
+                    for (Event event : EventRecordLog.readAll(directory)) {
+                        events.add(event.toString());
+                    }
+                    return events;
+                }
+
+                public static long countParallel(Path directory) throws IOException {
+                    LongAdder count = new LongAdder();
+                    EventRecordLog.replayParallel(directory, event -> count.increment());
+                    return count.sum();
+                }
+            }
+            """;
+        var older = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Event", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.RECORD_LOG)
+                    public record Event(long sequence, String payload) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.EventStore", store));
+        assertThat(older).succeededWithoutWarnings();
+        var current = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Event", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.RECORD_LOG)
+                    public record Event(long sequence, String payload, @StageBuilder.Default("7") int priority) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.EventStore", store));
+        assertThat(current).succeededWithoutWarnings();
+
+        // Write with the older schema, then reopen with the current one and append
+        new CompiledClassLoader(older).invokeStatic("test.EventStore", "persist", directory, 0L, 20L);
+        var loader = new CompiledClassLoader(current);
+        loader.invokeStatic("test.EventStore", "persist", directory, 20L, 40L);
+
+        // Verify small segments were rolled over and every record is replayed in write order
+        List<String> expected = new ArrayList<>();
+        for (long sequence = 0; sequence < 40; sequence++) {
+            expected.add("Event[sequence=" + sequence + ", payload=e" + sequence + ", priority=7]");
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.sorted().toList();
+        }
+        assertTrue(segments.size() > 2, "segments: " + segments);
+        assertEquals(expected, loader.invokeStatic("test.EventStore", "replay", directory));
+        assertEquals(expected, loader.invokeStatic("test.EventStore", "readAll", directory));
+        assertEquals(40L, loader.invokeStatic("test.EventStore", "countParallel", directory));
+
+        // Verify a torn record at the tail of the last segment is dropped on replay
+        Path last = segments.get(segments.size() - 1);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertEquals(expected.subList(0, 39), loader.invokeStatic("test.EventStore", "replay", directory));
+    }
+}
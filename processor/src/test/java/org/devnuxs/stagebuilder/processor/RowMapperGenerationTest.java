@@ -0,0 +1,280 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the generated JDBC row mapper.
+ */
+public class RowMapperGenerationTest {
+
+    private static final JavaFileObject TIER = JavaFileObjects.forSourceString("test.Tier", """
+        package test;
+
+        public enum Tier { BASIC, GOLD }
+        """);
+
+    private static final JavaFileObject MEMBER = JavaFileObjects.forSourceString("test.Member", """
+        package test;
+
+        import org.devnuxs.stagebuilder.api.StageBuilder;
+
+        @StageBuilder(features = StageBuilder.Feature.ROW_MAPPER)
+        public record Member(long id, String name, Tier status, char code,
+                             @StageBuilder.Optional String nickname, @StageBuilder.Default("guest") String role,
+                             @StageBuilder.Optional Tier tier, @StageBuilder.Default("Tier.BASIC") Tier level,
+                             @StageBuilder.Default("'x'") char grade, @StageBuilder.Optional byte[] avatar,
+                             @StageBuilder.Optional Integer visits) {
+        }
+        """);
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testRowMapperUsesTypedGettersAndConstructor() {
+        // Test that records are mapped with typed getters through their canonical constructor
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Account", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                    @StageBuilder(features = StageBuilder.Feature.ROW_MAPPER)
+                    public record Account(long accountId, String owner, @StageBuilder.Default("1") int tier,
+                                          @StageBuilder.Optional Double creditLimit) {
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.AccountDao", """
+                    package test;
+
+                    import java.sql.ResultSet;
+                    import java.sql.SQLException;
+                    import java.util.List;
+
+                    public class AccountDao {
+                        public static List<Account> load(ResultSet resultSet) throws SQLException {
+                            AccountRowMapper mapper = AccountRowMapper.of(resultSet.getMetaData());
+                            return mapper.mapAll(resultSet);
+                        }
+                    }
+                    """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify columns are matched by snake case and read without getObject
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountRowMapper")
+            .contentsAsUtf8String()
+            .contains("case \"account_id\":");
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountRowMapper")
+            .contentsAsUtf8String()
+            .contains("long accountIdValue = resultSet.getLong(this.accountIdColumn);");
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountRowMapper")
+            .contentsAsUtf8String()
+            .contains("return new Account(accountIdValue, ownerValue, tierValue, creditLimitValue);");
+    }
+
+    @Test
+    public void testRowMapperBuildsThroughStagesWithoutConstructor() {
+        // Test that classes populated through setters are built through the stage builder
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Profile", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.ROW_MAPPER)
+                public class Profile {
+                    private String name;
+                    @StageBuilder.Default("3")
+                    private int level;
+
+                    public String getName() { return name; }
+                    public void setName(String name) { this.name = name; }
+                    public int getLevel() { return level; }
+                    public void setLevel(int level) { this.level = level; }
+                }
+                """));
+
+        assertThat(compilation).succeededWithoutWarnings();
+        assertThat(compilation)
+            .generatedSourceFile("test.ProfileRowMapper")
+            .contentsAsUtf8String()
+            .contains("ProfileStageBuilder.BuildStage stage = ProfileStageBuilder.builder().name(nameValue);");
+    }
+
+    @Test
+    public void testOptionalAndDefaultReferenceColumnsCompile() {
+        // Test that optional and default String, enum, char and byte[] fields generate valid null checks
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(TIER, MEMBER, JavaFileObjects.forSourceString("test.Badge", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.ROW_MAPPER)
+                public class Badge {
+                    private String label;
+                    @StageBuilder.Optional
+                    private String note;
+                    @StageBuilder.Default("Tier.GOLD")
+                    private Tier tier;
+                    @StageBuilder.Default("'b'")
+                    private char symbol;
+                    @StageBuilder.Optional
+                    private byte[] icon;
+
+                    public String getLabel() { return label; }
+                    public void setLabel(String label) { this.label = label; }
+                    public String getNote() { return note; }
+                    public void setNote(String note) { this.note = note; }
+                    public Tier getTier() { return tier; }
+                    public void setTier(Tier tier) { this.tier = tier; }
+                    public char getSymbol() { return symbol; }
+                    public void setSymbol(char symbol) { this.symbol = symbol; }
+                    public byte[] getIcon() { return icon; }
+                    public void setIcon(byte[] icon) { this.icon = icon; }
+                }
+                """));
+
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify the conditions test for a present value directly
+        assertThat(compilation)
+            .generatedSourceFile("test.MemberRowMapper")
+            .contentsAsUtf8String()
+            .contains("if (nicknameRaw != null) {");
+        assertThat(compilation)
+            .generatedSourceFile("test.MemberRowMapper")
+            .contentsAsUtf8String()
+            .contains("if (gradeRaw != null && !gradeRaw.isEmpty()) {");
+        assertThat(compilation)
+            .generatedSourceFile("test.BadgeRowMapper")
+            .contentsAsUtf8String()
+            .contains("if (tierRaw != null) {");
+    }
+
+    @Test
+    public void testMapRowsFromResultSet() throws Throwable {
+        // Test that rows are mapped at runtime with SQL NULL, missing columns and defaults
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(TIER, MEMBER);
+        assertThat(compilation).succeeded();
+        CompiledClassLoader classes = new CompiledClassLoader(compilation);
+
+        // The role and level columns are missing, the optional columns are SQL NULL in the first row
+        ResultSet resultSet = resultSet(List.of("ID", "name", "status", "code", "nickname", "tier", "grade", "avatar", "visits"),
+            List.of(Arrays.asList(7L, "Ada", "GOLD", "A", null, null, null, null, null),
+                Arrays.asList(8L, "Bob", "BASIC", "B", "bobby", "GOLD", "z", new byte[] {1, 2}, 3)));
+
+        List<?> members = (List<?>) classes.invokeStatic("test.MemberRowMapper", "readAll", resultSet);
+
+        // Verify the first row keeps nulls and defaults
+        assertEquals(2, members.size());
+        Object first = members.get(0);
+        assertEquals(7L, CompiledClassLoader.invoke(first, "id"));
+        assertEquals("Ada", CompiledClassLoader.invoke(first, "name"));
+        assertEquals("GOLD", CompiledClassLoader.invoke(first, "status").toString());
+        assertEquals('A', CompiledClassLoader.invoke(first, "code"));
+        assertNull(CompiledClassLoader.invoke(first, "nickname"));
+        assertEquals("guest", CompiledClassLoader.invoke(first, "role"));
+        assertNull(CompiledClassLoader.invoke(first, "tier"));
+        assertEquals("BASIC", CompiledClassLoader.invoke(first, "level").toString());
+        assertEquals('x', CompiledClassLoader.invoke(first, "grade"));
+        assertNull(CompiledClassLoader.invoke(first, "avatar"));
+        assertNull(CompiledClassLoader.invoke(first, "visits"));
+
+        // Verify the second row reads every present column
+        Object second = members.get(1);
+        assertEquals("bobby", CompiledClassLoader.invoke(second, "nickname"));
+        assertEquals("GOLD", CompiledClassLoader.invoke(second, "tier").toString());
+        assertEquals('z', CompiledClassLoader.invoke(second, "grade"));
+        assertArrayEquals(new byte[] {1, 2}, (byte[]) CompiledClassLoader.invoke(second, "avatar"));
+        assertEquals(3, CompiledClassLoader.invoke(second, "visits"));
+    }
+
+    @Test
+    public void testMissingRequiredColumnFails() {
+        // Test that a result set without a required column is rejected when the mapper is created
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(TIER, MEMBER);
+        assertThat(compilation).succeeded();
+        CompiledClassLoader classes = new CompiledClassLoader(compilation);
+
+        ResultSet resultSet = resultSet(List.of("id", "name", "status"), List.of());
+
+        // Verify the exception names the field
+        SQLException exception = assertThrows(SQLException.class,
+            () -> classes.invokeStatic("test.MemberRowMapper", "of", resultSet));
+        assertTrue(exception.getMessage().contains("'code'"), exception.getMessage());
+    }
+
+    private static ResultSet resultSet(List<String> labels, List<List<Object>> rows) {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(RowMapperGenerationTest.class.getClassLoader(),
+            new Class<?>[] {ResultSetMetaData.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "getColumnCount" -> labels.size();
+                case "getColumnLabel" -> labels.get((Integer) args[0] - 1);
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(RowMapperGenerationTest.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getMetaData":
+                        return metaData;
+                    case "next":
+                        return ++row[0] < rows.size();
+                    case "wasNull":
+                        return wasNull[0];
+                    default:
+                        break;
+                }
+                if (!method.getName().startsWith("get") || args == null || !(args[0] instanceof Integer column)) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                // Like JDBC drivers, SQL NULL reads as null or zero and is reported by wasNull()
+                Object value = rows.get(row[0]).get(column - 1);
+                wasNull[0] = value == null;
+                switch (method.getName()) {
+                    case "getString": return value == null ? null : value.toString();
+                    case "getBytes": return value;
+                    case "getBoolean": return value != null && (Boolean) value;
+                    case "getInt": return value == null ? 0 : ((Number) value).intValue();
+                    case "getLong": return value == null ? 0L : ((Number) value).longValue();
+                    case "getDouble": return value == null ? 0.0 : ((Number) value).doubleValue();
+                    default: throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+}
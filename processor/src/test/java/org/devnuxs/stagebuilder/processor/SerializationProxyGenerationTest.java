@@ -0,0 +1,186 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the generated serialization proxy.
+ */
+public class SerializationProxyGenerationTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testSerializationProxyCompiles() {
+        // Test that the proxy can replace the default serialized form of a type, free of serial lint warnings
+        var compilation = javac()
+            .withOptions("-Xlint:all")
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Session", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+                import java.io.Serializable;
+                import java.util.List;
+
+                @StageBuilder(features = StageBuilder.Feature.SERIALIZATION_PROXY)
+                public record Session(String user, long createdAt, List<String> roles,
+                                      @StageBuilder.Optional Integer timeout) implements Serializable {
+                    private Object writeReplace() {
+                        return new SessionSerializationProxy(this);
+                    }
+                }
+                """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify primitives use the typed calls and other types fall back to writeObject
+        assertThat(compilation)
+            .generatedSourceFile("test.SessionSerializationProxy")
+            .contentsAsUtf8String()
+            .contains("out.writeLong(createdAtValue);");
+        assertThat(compilation)
+            .generatedSourceFile("test.SessionSerializationProxy")
+            .contentsAsUtf8String()
+            .contains("out.writeObject(rolesValue);");
+        assertThat(compilation)
+            .generatedSourceFile("test.SessionSerializationProxy")
+            .contentsAsUtf8String()
+            .contains("private Object readResolve() throws ObjectStreamException {");
+    }
+
+    @Test
+    public void testProxyRoundTripsThroughObjectStreams() throws Throwable {
+        // Test that instances written through the proxy are read back equal, also by a newer version of the type
+        String usage = """
+            package test;
+
+            import java.io.ByteArrayInputStream;
+            import java.io.ByteArrayOutputStream;
+            import java.io.IOException;
+            import java.io.ObjectInputStream;
+            import java.io.ObjectOutputStream;
+
+            public class SessionUsage {
+                public static byte[] write(Object value) throws IOException {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                        out.writeObject(value);
+                    }
+                    return bytes.toByteArray();
+                }
+
+                public static Object read(byte[] bytes) throws IOException, ClassNotFoundException {
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        return in.readObject();
+                    }
+                }
+            }
+            """;
+        var older = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Session", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+                    import java.io.Serializable;
+                    import java.util.List;
+
+                    @StageBuilder(features = StageBuilder.Feature.SERIALIZATION_PROXY)
+                    public record Session(String user, long createdAt, List<String> roles) implements Serializable {
+                        public static Session sample() {
+                            return new Session("old", 1L, List.of());
+                        }
+
+                        private Object writeReplace() {
+                            return new SessionSerializationProxy(this);
+                        }
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.SessionUsage", usage));
+        assertThat(older).succeededWithoutWarnings();
+        var current = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(
+                JavaFileObjects.forSourceString("test.Session", """
+                    package test;
+
+                    import org.devnuxs.stagebuilder.api.StageBuilder;
+                    import java.io.Serializable;
+                    import java.util.List;
+
+                    @StageBuilder(features = StageBuilder.Feature.SERIALIZATION_PROXY)
+                    public record Session(String user, long createdAt, List<String> roles,
+                                          @StageBuilder.Optional Integer timeout) implements Serializable {
+                        public static Session sample() {
+                            return new Session("us\u00e9r", Long.MIN_VALUE, List.of("admin", "ops"), 30);
+                        }
+
+                        private Object writeReplace() {
+                            return new SessionSerializationProxy(this);
+                        }
+                    }
+                    """),
+                JavaFileObjects.forSourceString("test.SessionUsage", usage));
+        assertThat(current).succeededWithoutWarnings();
+
+        // Verify the proxy replaces the type in the stream and resolves back to an equal instance
+        var loader = new CompiledClassLoader(current);
+        Object session = loader.invokeStatic("test.Session", "sample");
+        byte[] bytes = (byte[]) loader.invokeStatic("test.SessionUsage", "write", session);
+        assertTrue(new String(bytes, StandardCharsets.ISO_8859_1).contains("test.SessionSerializationProxy"));
+        assertEquals(session, loader.invokeStatic("test.SessionUsage", "read", (Object) bytes));
+
+        // Verify data written before the optional field was added is read with its default
+        var olderLoader = new CompiledClassLoader(older);
+        byte[] olderBytes = (byte[]) olderLoader.invokeStatic("test.SessionUsage", "write",
+            olderLoader.invokeStatic("test.Session", "sample"));
+        assertEquals("Session[user=old, createdAt=1, roles=[], timeout=null]",
+            loader.invokeStatic("test.SessionUsage", "read", (Object) olderBytes).toString());
+    }
+
+    @Test
+    public void testPrivateFieldWithoutGetterFailsCompilation() {
+        // Test that the proxy never reads a field through reflection
+        var compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Account", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.SERIALIZATION_PROXY)
+                public class Account {
+                    private final String owner;
+                    private final long balance;
+
+                    public Account(String owner, long balance) {
+                        this.owner = owner;
+                        this.balance = balance;
+                    }
+
+                    public long getBalance() {
+                        return balance;
+                    }
+                }
+                """));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Field 'owner' of Account can only be read through reflection, "
+            + "which the serialization proxy does not use; add a public getter getOwner() or make the field public");
+    }
+}
@@ -0,0 +1,177 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+/**
+ * Tests strict mode, which rejects reflective field access instead of generating it.
+ */
+public class StrictModeTest {
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testReflectiveFieldsAreErrors() {
+        // Test that fields without getter or setter are reported on the field itself
+        JavaFileObject source = JavaFileObjects.forSourceString("test.Account", """
+            package test;
+
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder(strict = true)
+            public class Account {
+                public String owner;
+                private long balance;
+                private final String currency = "EUR";
+
+                public long getBalance() { return balance; }
+                public String getCurrency() { return currency; }
+            }
+            """);
+
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(source);
+
+        // Verify each inaccessible field gets its own error on its declaration
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorCount(2);
+        assertThat(compilation)
+            .hadErrorContaining("Field 'balance' of Account can only be set through reflection")
+            .inFile(source)
+            .onLine(8);
+        assertThat(compilation)
+            .hadErrorContaining("a public setter setBalance(long) or make the field public and non-final")
+            .inFile(source)
+            .onLine(8);
+        assertThat(compilation)
+            .hadErrorContaining("Field 'currency' of Account can only be set through reflection")
+            .inFile(source)
+            .onLine(9);
+    }
+
+    @Test
+    public void testReflectiveReadIsError() {
+        // Test that a field that cannot be read for from() is reported
+        JavaFileObject source = JavaFileObjects.forSourceString("test.Secret", """
+            package test;
+
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder(strict = true)
+            public class Secret {
+                private String value;
+
+                public void setValue(String value) { this.value = value; }
+            }
+            """);
+
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(source);
+
+        // Verify the error explains how to make the field readable
+        assertThat(compilation).failed();
+        assertThat(compilation)
+            .hadErrorContaining("Field 'value' of Secret can only be read through reflection, which strict mode forbids; "
+                + "add a public getter getValue() or make the field public")
+            .inFile(source)
+            .onLine(7);
+    }
+
+    @Test
+    public void testStrictOptionGeneratesDirectAccess() {
+        // Test that the processor option enables strict mode for all types
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .withOptions("-A" + StageBuilderProcessor.STRICT_OPTION)
+            .compile(JavaFileObjects.forSourceString("test.Account", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(features = StageBuilder.Feature.JSON)
+                public class Account {
+                    public String owner;
+                    private long balance;
+                    @StageBuilder.Optional private String note;
+
+                    public long getBalance() { return balance; }
+                    public void setBalance(long balance) { this.balance = balance; }
+                    public String getNote() { return note; }
+                    public void setNote(String note) { this.note = note; }
+                }
+                """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify fields are set through setters and public fields only
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountStageBuilder")
+            .contentsAsUtf8String()
+            .contains("obj.owner = this.owner;");
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountStageBuilder")
+            .contentsAsUtf8String()
+            .contains("obj.setBalance(this.balance);");
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountStageBuilder")
+            .contentsAsUtf8String()
+            .contains("obj.setNote(this.note);");
+
+        // Verify no reflection is left in the builder
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountStageBuilder")
+            .contentsAsUtf8String()
+            .doesNotContain("getMethod");
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountStageBuilder")
+            .contentsAsUtf8String()
+            .doesNotContain("java.lang.reflect");
+        assertThat(compilation)
+            .generatedSourceFile("test.AccountStageBuilder")
+            .contentsAsUtf8String()
+            .doesNotContain("getFieldValue");
+    }
+
+    @Test
+    public void testStrictRecordUsesOnlyConstructor() {
+        // Test that records in strict mode are created without setting optional fields afterwards
+        Compilation compilation = javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Point", """
+                package test;
+
+                import org.devnuxs.stagebuilder.api.StageBuilder;
+
+                @StageBuilder(strict = true)
+                public record Point(int x, @StageBuilder.Optional Integer y) {
+                }
+                """));
+
+        // Verify compilation succeeds
+        assertThat(compilation).succeededWithoutWarnings();
+
+        // Verify the constructor is the only write path
+        assertThat(compilation)
+            .generatedSourceFile("test.PointStageBuilder")
+            .contentsAsUtf8String()
+            .contains("Point obj = new Point(this.x, this.y);\n      return obj;");
+        assertThat(compilation)
+            .generatedSourceFile("test.PointStageBuilder")
+            .contentsAsUtf8String()
+            .doesNotContain("getMethod");
+    }
+}
@@ -0,0 +1,90 @@
+package org.devnuxs.stagebuilder.processor;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+/**
+ * Tests processing of wide synthetic types, whose cost grows with repeated member scans. This is
+ * the regression guard; the wide-type table of the compile benchmark measures the actual cost.
+ */
+public class WideTypeProcessingTest {
+
+    private static final int WIDTH = 400;
+
+    // Constructors are limited to 255 parameter slots, where long values take two
+    private static final int RECORD_WIDTH = 120;
+
+    @BeforeAll
+    public static void setup() {
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testWideClassWithAccessors() {
+        // Test that a class with many private fields, getters and setters is processed in bounded time
+        StringBuilder source = new StringBuilder("""
+            package test;
+
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder(features = StageBuilder.Feature.JSON)
+            public class Wide {
+            """);
+        for (int i = 0; i < WIDTH; i++) {
+            source.append("    @StageBuilder.Optional private String field").append(i).append(";\n")
+                .append("    public String getField").append(i).append("() { return field").append(i).append("; }\n")
+                .append("    public void setField").append(i).append("(String value) { this.field").append(i).append(" = value; }\n");
+        }
+        source.append("}\n");
+
+        Compilation compilation = assertTimeout(Duration.ofSeconds(60), () -> javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.Wide", source.toString())));
+
+        // Verify compilation succeeds and fields are read through their getters
+        assertThat(compilation).succeeded();
+        assertThat(compilation)
+            .generatedSourceFile("test.WideStageBuilder")
+            .contentsAsUtf8String()
+            .contains("builder.field" + (WIDTH - 1) + " = obj.getField" + (WIDTH - 1) + "();");
+    }
+
+    @Test
+    public void testWideRecordUsesAllArgsConstructor() {
+        // Test that a record with many components is matched to its canonical constructor
+        StringBuilder source = new StringBuilder("""
+            package test;
+
+            import java.util.List;
+            import org.devnuxs.stagebuilder.api.StageBuilder;
+
+            @StageBuilder(features = StageBuilder.Feature.BULK)
+            public record WideRecord(
+            """);
+        for (int i = 0; i < RECORD_WIDTH; i++) {
+            source.append(i % 2 == 0 ? "    long value" : "    List<? extends Number> values").append(i)
+                .append(i < RECORD_WIDTH - 1 ? ",\n" : "\n");
+        }
+        source.append(") {\n}\n");
+
+        Compilation compilation = assertTimeout(Duration.ofSeconds(60), () -> javac()
+            .withProcessors(new StageBuilderProcessor())
+            .compile(JavaFileObjects.forSourceString("test.WideRecord", source.toString())));
+
+        // Verify compilation succeeds and the bulk update copies through the constructor
+        assertThat(compilation).succeeded();
+        assertThat(compilation)
+            .generatedSourceFile("test.WideRecordBulk")
+            .contentsAsUtf8String()
+            .contains("new WideRecord(");
+    }
+}